@@ -0,0 +1,346 @@
+//~ Imports ...............................................................
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Maps account numbers to accounts and their owners across a whole bank.
+ * Keys are primitive ints stored in an open-addressing table with linear
+ * probing, so a lookup is a few array reads with no boxing. Lookups use an
+ * optimistic read and only fall back to a read lock if a writer got in the
+ * way; writers are serialized.
+ * @author Farhan Abdulla
+ * @version 01.22.2022
+ */
+public class AccountIndex
+{
+    //~ Fields ................................................................
+    private static final int EMPTY = 0;
+
+    private final StampedLock lock;
+    private volatile Table table;
+    private int size;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty account index
+     */
+    public AccountIndex()
+    {
+        this.lock = new StampedLock();
+        this.table = new Table(64);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the account with this account number
+     * @param accountNumber Integer containing the account number
+     * @return BankAccount representing the account, or null if none exists
+     */
+    public BankAccount getAccount(int accountNumber)
+    {
+        long stamp = this.lock.tryOptimisticRead();
+        Table t = this.table;
+        int slot = t.find(accountNumber);
+        BankAccount account = slot < 0 ? null : t.accounts[slot];
+        if (!this.lock.validate(stamp))
+        {
+            stamp = this.lock.readLock();
+            try
+            {
+                t = this.table;
+                slot = t.find(accountNumber);
+                account = slot < 0 ? null : t.accounts[slot];
+            }
+            finally
+            {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Gets the customer who owns the account with this account number
+     * @param accountNumber Integer containing the account number
+     * @return Customer representing the owner, or null if none exists
+     */
+    public Customer getOwner(int accountNumber)
+    {
+        long stamp = this.lock.tryOptimisticRead();
+        Table t = this.table;
+        int slot = t.find(accountNumber);
+        Customer owner = slot < 0 ? null : t.owners[slot];
+        if (!this.lock.validate(stamp))
+        {
+            stamp = this.lock.readLock();
+            try
+            {
+                t = this.table;
+                slot = t.find(accountNumber);
+                owner = slot < 0 ? null : t.owners[slot];
+            }
+            finally
+            {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Adds an account to the index
+     * @param owner Customer containing the owner of the account
+     * @param account BankAccount containing the account to add
+     * @return Boolean representing whether the account was added; false if
+     *  its account number is already in use
+     */
+    public boolean add(Customer owner, BankAccount account)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            Table t = this.table;
+            if ((this.size + 1) * 2 > t.keys.length)
+            {
+                t = t.resize(t.keys.length * 2);
+                this.table = t;
+            }
+            if (!t.insert(account.getAccountNumber(), owner, account))
+            {
+                return false;
+            }
+            this.size++;
+            return true;
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds a batch of accounts to the index under one write lock, growing
+     * the table at most once. Either every account is added or, if any of
+     * their numbers is already in use or repeated, none is.
+     * @param owners Array of Customers containing the owner of each account
+     * @param accounts Array of BankAccounts containing the accounts to add
+     * @return Boolean representing whether the accounts were added
+     */
+    public boolean addAll(Customer[] owners, BankAccount[] accounts)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            Table t = this.table;
+            int capacity = t.keys.length;
+            while ((this.size + accounts.length) * 2 > capacity)
+            {
+                capacity *= 2;
+            }
+            if (capacity > t.keys.length)
+            {
+                t = t.resize(capacity);
+                this.table = t;
+            }
+            for (int i = 0; i < accounts.length; i++)
+            {
+                if (!t.insert(accounts[i].getAccountNumber(), owners[i],
+                    accounts[i]))
+                {
+                    // Readers wait on the write lock, so never see these
+                    for (int j = 0; j < i; j++)
+                    {
+                        t.delete(accounts[j].getAccountNumber());
+                    }
+                    return false;
+                }
+            }
+            this.size += accounts.length;
+            return true;
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes an account from the index
+     * @param accountNumber Integer containing the account number
+     * @return BankAccount representing the removed account, or null if the
+     *  number was not in the index
+     */
+    public BankAccount remove(int accountNumber)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            BankAccount removed = this.table.delete(accountNumber);
+            if (removed != null)
+            {
+                this.size--;
+            }
+            return removed;
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of accounts in the index
+     * @return Integer representing the number of accounts
+     */
+    public int size()
+    {
+        long stamp = this.lock.readLock();
+        try
+        {
+            return this.size;
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Holds the parallel key, account and owner arrays of the hash table
+     */
+    private static final class Table
+    {
+        private final int[] keys;
+        private final BankAccount[] accounts;
+        private final Customer[] owners;
+        private final int mask;
+
+        /**
+         * Creates an empty table
+         * @param capacity Integer containing a power of two capacity
+         */
+        private Table(int capacity)
+        {
+            this.keys = new int[capacity];
+            this.accounts = new BankAccount[capacity];
+            this.owners = new Customer[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Gets the home slot of a key
+         * @param key Integer containing the account number
+         * @return Integer representing the first slot to probe
+         */
+        private int home(int key)
+        {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & this.mask;
+        }
+
+        /**
+         * Finds the slot holding a key
+         * @param key Integer containing the account number
+         * @return Integer representing the slot, or -1 if absent
+         */
+        private int find(int key)
+        {
+            int i = this.home(key);
+            for (int probes = 0; probes <= this.mask; probes++)
+            {
+                int k = this.keys[i];
+                if (k == key)
+                {
+                    return i;
+                }
+                if (k == EMPTY)
+                {
+                    return -1;
+                }
+                i = (i + 1) & this.mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Inserts a key that is not yet present
+         * @param key Integer containing the account number
+         * @param owner Customer containing the owner
+         * @param account BankAccount containing the account
+         * @return Boolean representing false if the key was already present
+         */
+        private boolean insert(int key, Customer owner, BankAccount account)
+        {
+            int i = this.home(key);
+            while (this.keys[i] != EMPTY)
+            {
+                if (this.keys[i] == key)
+                {
+                    return false;
+                }
+                i = (i + 1) & this.mask;
+            }
+            this.accounts[i] = account;
+            this.owners[i] = owner;
+            this.keys[i] = key;
+            return true;
+        }
+
+        /**
+         * Deletes a key, shifting later entries of its probe run back so
+         * that no tombstones are needed
+         * @param key Integer containing the account number
+         * @return BankAccount representing the removed account or null
+         */
+        private BankAccount delete(int key)
+        {
+            int i = this.find(key);
+            if (i < 0)
+            {
+                return null;
+            }
+            BankAccount removed = this.accounts[i];
+            int gap = i;
+            int j = (i + 1) & this.mask;
+            while (this.keys[j] != EMPTY)
+            {
+                int h = this.home(this.keys[j]);
+                if (((j - h) & this.mask) >= ((j - gap) & this.mask))
+                {
+                    this.keys[gap] = this.keys[j];
+                    this.accounts[gap] = this.accounts[j];
+                    this.owners[gap] = this.owners[j];
+                    gap = j;
+                }
+                j = (j + 1) & this.mask;
+            }
+            this.keys[gap] = EMPTY;
+            this.accounts[gap] = null;
+            this.owners[gap] = null;
+            return removed;
+        }
+
+        /**
+         * Copies every entry into a larger table
+         * @param capacity Integer containing the new power of two capacity
+         * @return Table representing the larger table
+         */
+        private Table resize(int capacity)
+        {
+            Table bigger = new Table(capacity);
+            for (int i = 0; i < this.keys.length; i++)
+            {
+                if (this.keys[i] != EMPTY)
+                {
+                    bigger.insert(this.keys[i], this.owners[i],
+                        this.accounts[i]);
+                }
+            }
+            return bigger;
+        }
+    }
+
+} // End of class
@@ -0,0 +1,131 @@
+//~ Imports ...............................................................
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique 8-digit account numbers. Each number is the next value of
+ * an atomic counter passed through a fixed permutation of the range
+ * 10000000-99999999, so numbers look scattered but can never repeat, and
+ * allocating one costs a single atomic increment with no collision checks.
+ * @author Farhan Abdulla
+ * @version 01.22.2022
+ */
+public class AccountNumberAllocator
+{
+    //~ Fields ................................................................
+    /** Smallest account number */
+    public static final int FIRST_NUMBER = 10000000;
+    /** How many distinct account numbers exist */
+    public static final int CAPACITY = 90000000;
+
+    // The multiplier shares no factor with CAPACITY (2^7 * 3^2 * 5^7), so
+    // i -> (MULTIPLIER * i + OFFSET) mod CAPACITY is a permutation.
+    private static final long MULTIPLIER = 48271;
+    private static final long OFFSET = 31415927;
+    private static final long INVERSE = inverse(MULTIPLIER, CAPACITY);
+
+    private static final AccountNumberAllocator DEFAULT =
+        new AccountNumberAllocator();
+
+    private final AtomicLong counter;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an allocator that has not handed out any numbers yet
+     */
+    public AccountNumberAllocator()
+    {
+        this.counter = new AtomicLong();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the allocator shared by every account in this process
+     * @return AccountNumberAllocator representing the shared allocator
+     */
+    public static AccountNumberAllocator getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Allocates the next account number
+     * @return Integer representing a never-before-used account number
+     * @throws IllegalStateException if every account number has been used
+     */
+    public int next()
+    {
+        return this.numberAt(this.counter.getAndIncrement());
+    }
+
+    /**
+     * Allocates a block of account numbers with a single atomic update
+     * @param count Integer containing how many numbers to allocate
+     * @return Array of integers representing the allocated numbers
+     * @throws IllegalStateException if not enough account numbers remain
+     */
+    public int[] reserve(int count)
+    {
+        long first = this.counter.getAndAdd(count);
+        int[] numbers = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            numbers[i] = this.numberAt(first + i);
+        }
+        return numbers;
+    }
+
+    /**
+     * Makes sure an account number that was allocated earlier, for example
+     * by a previous run of the program, is never handed out again
+     * @param accountNumber Integer containing a previously used number
+     */
+    public void markUsed(int accountNumber)
+    {
+        long position = ((accountNumber - FIRST_NUMBER - OFFSET) % CAPACITY
+            + CAPACITY) % CAPACITY * INVERSE % CAPACITY;
+        this.counter.accumulateAndGet(position + 1, Math::max);
+    }
+
+    /**
+     * Maps a counter position to its account number
+     * @param position Long containing the counter position
+     * @return Integer representing the account number
+     */
+    private int numberAt(long position)
+    {
+        if (position >= CAPACITY)
+        {
+            throw new IllegalStateException("All account numbers are in use");
+        }
+        return (int) (FIRST_NUMBER + (MULTIPLIER * position + OFFSET) 
+            % CAPACITY);
+    }
+
+    /**
+     * Computes the modular inverse of a number
+     * @param value Long containing the number to invert
+     * @param modulus Long containing the modulus
+     * @return Long representing the inverse of value modulo modulus
+     */
+    private static long inverse(long value, long modulus)
+    {
+        long t = 0;
+        long newT = 1;
+        long r = modulus;
+        long newR = value;
+        while (newR != 0)
+        {
+            long q = r / newR;
+            long tmp = t - q * newT;
+            t = newT;
+            newT = tmp;
+            tmp = r - q * newR;
+            r = newR;
+            newR = tmp;
+        }
+        return t < 0 ? t + modulus : t;
+    }
+
+} // End of class
@@ -1,41 +1,403 @@
 //~ Imports ...............................................................
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 /**
  * Represents a bank that manages a series of customer bank accounts. Will perform
  * adminstrative tasks, such as: Adding, removing, and searching up customers
  * members in its records. As well as assigning unique customer IDs to each 
- * customer.
+ * customer. The customer registry is safe to share between teller threads:
+ * lookups never block, and adding or removing a customer is serialized on a
+ * lock stripe chosen by the customer ID. Every account opened by a customer
+ * is also kept in a bank-wide index, so any account can be found by its
+ * account number in constant time.
+ * <p>
+ * A bank opened with {@link #open(Path)} is durable: every change made
+ * through the Bank's own methods (customers, accounts, deposits,
+ * withdrawals and transfers) is recorded in a {@link WriteAheadLog} before
+ * the method returns, and the log is replayed when the bank is opened
+ * again. Changes made directly on Customer or account objects are not
+ * logged.
+ * <p>
+ * A bank can also be opened from a {@link BankSnapshot} with
+ * {@link #openSnapshot(Path)}. Only the snapshot's indexes are read up
+ * front; each customer and their accounts are built the first time they
+ * are looked up. Methods that see every customer build them all first.
+ * <p>
+ * Deposits, withdrawals and transfers made through the Bank are timed in
+ * the default {@link BankMetrics}.
+ * <p>
+ * Reports that must see every customer and account at one moment, while
+ * tellers keep working, read through a {@link BankView} from
+ * {@link #openView()}.
+ * <p>
+ * Many customers and accounts are opened at once, all or nothing, with an
+ * {@link OnboardingBatch}.
  * @author Farhan Abdulla
  * @version 01.06.2022
  */
 public class Bank
 {
     //~ Fields ................................................................
-    private Map<String, Customer> customerById;
+    private static final int LOCK_STRIPES = stripeCount();
+
+    private final Map<String, Customer> customerById;
+    // The map keeps each of its own entries atomic, but a customer ID also
+    // ties together the name index, the account index and the order of the
+    // customer's log records. Taking an ID and filing it, removing a
+    // customer with all their accounts, and opening or closing an account
+    // against a customer who may be leaving all check one of these and
+    // change the others, so they run under the ID's stripe.
+    private final Object[] customerLocks;
+    private final TransferEngine transfers;
+    private final AccountIndex accountIndex;
+    private final CustomerIdGenerator idGenerator;
+    private volatile WriteAheadLog log;
+    private volatile BankSnapshot snapshot;
+    private final CycleScheduler cycles;
+    private final MaturityScheduler maturities;
+    private final BankAggregates aggregates;
+    private final Queue<Customer> retired;
+    private final CustomerNameIndex names;
 
     //~ Constructor ...........................................................
 
     /**
-     * Represents a bank that manages all accounts owned by its customers
+     * Represents a bank that manages all accounts owned by its customers.
+     * Customer IDs are generated sequentially and never collide.
      */
     public Bank()
     {
-        customerById = new HashMap<String, Customer>();
+        this(new SequentialCustomerIdGenerator());
+    }
+
+    /**
+     * Represents a bank that manages all accounts owned by its customers,
+     * using the given source of customer IDs
+     * @param idGenerator CustomerIdGenerator containing the ID source
+     */
+    public Bank(CustomerIdGenerator idGenerator)
+    {
+        this.idGenerator = idGenerator;
+        customerById = new ConcurrentHashMap<String, Customer>(16, 0.75f,
+            LOCK_STRIPES);
+        customerLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            customerLocks[i] = new Object();
+        }
+        transfers = new TransferEngine();
+        accountIndex = new AccountIndex();
+        cycles = new CycleScheduler(this);
+        maturities = new MaturityScheduler(this);
+        aggregates = new BankAggregates();
+        retired = new ConcurrentLinkedQueue<Customer>();
+        names = new CustomerNameIndex();
     }
 
     //~ Methods ...............................................................
 
     /**
-     * Maps a unique 8 character customer ID to a newly created Customer object.
-     * This represents adding a new bank customer joining this bank.
+     * Opens a durable bank backed by a log file. If the file already exists
+     * its records are replayed first, rebuilding the bank as it was; new
+     * changes are then appended to the same file.
+     * @param logFile Path containing the log file
+     * @return Bank representing the recovered bank
+     * @throws IOException if the log cannot be read or opened
+     */
+    public static Bank open(Path logFile)
+        throws IOException
+    {
+        Bank bank = new Bank();
+        long start = System.nanoTime();
+        int records = WriteAheadLog.replay(logFile, bank);
+        WriteAheadLog log = new WriteAheadLog(logFile);
+        log.setRecovery(records, System.nanoTime() - start);
+        bank.log = log;
+        return bank;
+    }
+
+    /**
+     * Opens a bank from a snapshot file. Opening only maps the file and
+     * reserves the customer IDs and account numbers it holds; customers and
+     * accounts are built from the snapshot when first looked up.
+     * @param snapshotFile Path containing the snapshot file
+     * @return Bank representing the bank saved in the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static Bank openSnapshot(Path snapshotFile)
+        throws IOException
+    {
+        Bank bank = new Bank();
+        BankSnapshot saved = BankSnapshot.open(snapshotFile);
+        AccountNumberAllocator numbers = AccountNumberAllocator.getDefault();
+        for (int i = 0; i < saved.getAccountCount(); i++)
+        {
+            numbers.markUsed(saved.getAccountNumber(i));
+        }
+        for (int i = 0; i < saved.getCustomerCount(); i++)
+        {
+            bank.idGenerator.markUsed(saved.getCustomerId(i));
+        }
+        bank.snapshot = saved;
+        return bank;
+    }
+
+    /**
+     * Saves every customer and account of this bank to a snapshot file. The
+     * bank should not be changed while the snapshot is written.
+     * @param snapshotFile Path containing the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(Path snapshotFile)
+        throws IOException
+    {
+        BankSnapshot.write(this, snapshotFile);
+    }
+
+    /**
+     * Gets the log this bank records its changes in
+     * @return WriteAheadLog representing the log, or null if the bank is not
+     *  durable
+     */
+    public WriteAheadLog getLog()
+    {
+        return this.log;
+    }
+
+    /**
+     * Maps a unique customer ID to a newly created Customer object.
+     * This represents adding a new bank customer joining this bank. An
+     * existing customer is never replaced: if the ID generator can repeat
+     * IDs, a taken ID is skipped and another one is drawn. The customer and
+     * their checking account are added in one {@link VersionClock} section,
+     * so a view never sees the customer without the account.
      * @param name String containing the customer's first and last name
+     * @return String representing the new customer's ID
+     * @throws IllegalArgumentException if the bank keeps a log and the
+     *  name is too long for it
+     */
+    public String addCustomer(String name)
+    {
+        WriteAheadLog wal = this.log;
+        if (wal != null)
+        {
+            WriteAheadLog.checkString(name);
+        }
+        while (true)
+        {
+            String newCustomerId = idGenerator.next();
+            long sequence = 0;
+            VersionClock versions = VersionClock.getDefault();
+            long epoch = versions.enter();
+            try
+            {
+                synchronized (this.getCustomerLock(newCustomerId))
+                {
+                    if (idGenerator.isCollisionFree() 
+                        || !this.isTaken(newCustomerId))
+                    {
+                        Customer customer = new Customer(newCustomerId, name);
+                        BankAccount checking = new CheckingAccount();
+                        // Linked before the customer is published, inside
+                        // this section rather than a nested one of its own
+                        customer.adoptAccounts(new BankAccount[] {checking});
+                        customer.setJoinedEpoch(epoch);
+                        customer.setBank(this);
+                        this.indexAccount(customer, checking);
+                        customerById.put(newCustomerId, customer);
+                        names.add(customer);
+                        if (wal != null)
+                        {
+                            wal.logAddCustomer(newCustomerId, name);
+                            sequence = this.logOpenAccount(wal, customer,
+                                checking, -1, 0);
+                        }
+                    }
+                    else
+                    {
+                        continue;
+                    }
+                }
+            }
+            finally
+            {
+                versions.exit(epoch);
+            }
+            if (sequence > 0)
+            {
+                wal.awaitDurable(sequence);
+            }
+            return newCustomerId;
+        }
+    }
+
+    /**
+     * Adds a customer with a known ID and no accounts, while rebuilding the
+     * bank from its log
+     * @param customerId String containing the customer's original ID
+     * @param name String containing the customer's name
+     */
+    void restoreCustomer(String customerId, String name)
+    {
+        idGenerator.markUsed(customerId);
+        Customer customer = new Customer(customerId, name);
+        customer.setBank(this);
+        synchronized (this.getCustomerLock(customerId))
+        {
+            customerById.put(customerId, customer);
+            names.add(customer);
+        }
+    }
+
+    /**
+     * Takes on a batch of new customers whose accounts are already linked
+     * to them, as built by an {@link OnboardingBatch}. Every customer lock
+     * stripe is held throughout, and the batch is added in one
+     * {@link VersionClock} section, so a view sees all of it or none of it.
+     * The accounts are indexed first, all at once; if any of their numbers
+     * is taken, nothing has been changed. A durable bank then logs the
+     * batch as one unit. Nothing after that can fail, and the customers
+     * are added to the registry, the name search, the running totals and
+     * the schedulers in parallel on the pool. Taken customer IDs are drawn
+     * again when the ID generator can repeat them.
+     * @param customers Array of Customers containing the new customers
+     * @param owners Array of Customers containing each account's owner
+     * @param accounts Array of BankAccounts containing the new accounts
+     * @param amountCents Array of longs containing each account's opening
+     *  amount in cents, or -1 if it was opened with its defaults
+     * @param terms Array of integers containing each account's CD term
+     * @param pool ForkJoinPool containing the worker threads
+     * @throws IllegalStateException if an account number is already in use
+     */
+    void onboard(Customer[] customers, Customer[] owners,
+        BankAccount[] accounts, long[] amountCents, int[] terms,
+        ForkJoinPool pool)
+    {
+        WriteAheadLog wal = this.log;
+        long[] sequence = new long[1];
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = versions.enter();
+        try
+        {
+            this.withAllCustomerLocks(0, () ->
+            {
+                if (!idGenerator.isCollisionFree())
+                {
+                    this.redrawTakenIds(customers);
+                }
+                if (!accountIndex.addAll(owners, accounts))
+                {
+                    throw new IllegalStateException("An account number in "
+                        + "the batch is already in use");
+                }
+                if (wal != null)
+                {
+                    try
+                    {
+                        sequence[0] = wal.logBatch(customers.length
+                            + accounts.length, () ->
+                        {
+                            for (Customer customer : customers)
+                            {
+                                wal.logAddCustomer(customer.getCustomerId(),
+                                    customer.getName());
+                            }
+                            for (int i = 0; i < accounts.length; i++)
+                            {
+                                this.logOpenAccount(wal, owners[i],
+                                    accounts[i], amountCents[i], terms[i]);
+                            }
+                        });
+                    }
+                    catch (RuntimeException e)
+                    {
+                        for (BankAccount account : accounts)
+                        {
+                            accountIndex.remove(account.getAccountNumber());
+                        }
+                        throw e;
+                    }
+                }
+                // Filing the names is serial, so it overlaps the rest
+                ForkJoinTask<?> filing = pool.submit(() ->
+                    names.addAll(customers));
+                pool.submit(() -> IntStream.range(0, customers.length)
+                    .parallel().forEach(i ->
+                    {
+                        Customer customer = customers[i];
+                        customer.setJoinedEpoch(epoch);
+                        customer.setBank(this);
+                        customerById.put(customer.getCustomerId(), customer);
+                    })).join();
+                pool.submit(() -> IntStream.range(0, accounts.length)
+                    .parallel().forEach(i -> this.scheduleAccount(
+                        accounts[i]))).join();
+                filing.join();
+            });
+        }
+        finally
+        {
+            versions.exit(epoch);
+        }
+        if (sequence[0] > 0)
+        {
+            wal.awaitDurable(sequence[0]);
+        }
+    }
+
+    /**
+     * Runs some work while holding every customer lock stripe, taken in
+     * order so that two callers cannot deadlock
+     * @param stripe Integer containing the first stripe not yet held
+     * @param work Runnable containing the work to run
+     */
+    private void withAllCustomerLocks(int stripe, Runnable work)
+    {
+        if (stripe == customerLocks.length)
+        {
+            work.run();
+            return;
+        }
+        synchronized (customerLocks[stripe])
+        {
+            this.withAllCustomerLocks(stripe + 1, work);
+        }
+    }
+
+    /**
+     * Gives a new ID to every customer of a batch whose ID is taken, by a
+     * customer of the bank or earlier in the batch. Callers must hold
+     * every customer lock stripe.
+     * @param customers Array of Customers containing the new customers
+     */
+    private void redrawTakenIds(Customer[] customers)
+    {
+        Set<String> drawn = new HashSet<String>();
+        for (Customer customer : customers)
+        {
+            String id = customer.getCustomerId();
+            while (this.isTaken(id) || !drawn.add(id))
+            {
+                id = idGenerator.next();
+            }
+            customer.setCustomerId(id);
+        }
+    }
+
+    /**
+     * Gets the source of customer IDs for this bank
+     * @return CustomerIdGenerator representing the ID source
      */
-    public void addCustomer(String name)
+    public CustomerIdGenerator getIdGenerator()
     {
-        String newCustomerId = UUID.randomUUID().toString().substring(0, 6);
-        customerById.put(newCustomerId, new Customer(newCustomerId, name));
-        customerById.get(newCustomerId).openAccount();
+        return idGenerator;
     }
 
     /**
@@ -47,40 +409,904 @@ public class Bank
      */
     public void removeCustomer(String customerId)
     {
-        customerById.remove(customerId);
+        WriteAheadLog wal = this.log;
+        long sequence = 0;
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = versions.enter();
+        try
+        {
+            synchronized (this.getCustomerLock(customerId))
+            {
+                Customer removed = this.getCustomer(customerId);
+                if (removed != null)
+                {
+                    // Kept for any open view, before it leaves the registry
+                    removed.setLeftEpoch(epoch);
+                    if (versions.isPinned())
+                    {
+                        retired.add(removed);
+                    }
+                    customerById.remove(customerId);
+                    names.remove(removed);
+                    for (BankAccount account : removed.getAccounts())
+                    {
+                        this.unindexAccount(account);
+                    }
+                    removed.setBank(null);
+                    if (wal != null)
+                    {
+                        sequence = wal.logRemoveCustomer(customerId);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            versions.exit(epoch);
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Opens a new account of a type with its default opening balance for a
+     * customer. Types are 1 checking, 2 savings, 3 money market, 4 CD and 
+     * 5 IRA; any other number opens a checking account.
+     * @param customerId String containing the customer's ID
+     * @param type Integer containing the type of account to open
+     * @return BankAccount representing the new account, or null if there is
+     *  no such customer
+     */
+    public BankAccount openAccount(String customerId, int type)
+    {
+        return this.openAccount(customerId, Customer.createAccount(type), 
+            -1, 0);
+    }
+
+    /**
+     * Opens a new account for a customer. For an IRA the balance is its
+     * monthly deposit, and the term is only used by CDs.
+     * @param customerId String containing the customer's ID
+     * @param type Integer containing the type of account to open
+     * @param balance Double containing opening balance of account
+     * @param term Integer containing the CD term in months
+     * @return BankAccount representing the new account, or null if there is
+     *  no such customer
+     */
+    public BankAccount openAccount(String customerId, int type, 
+        double balance, int term)
+    {
+        return this.openAccount(customerId, 
+            Customer.createAccount(type, balance, term), 
+            Money.toCents(balance), term);
+    }
+
+    /**
+     * Links a newly created account to a customer and logs it
+     * @param customerId String containing the customer's ID
+     * @param account BankAccount containing the new account
+     * @param amountCents Long containing the opening amount in cents, or -1
+     *  if the account was created with its defaults
+     * @param term Integer containing the CD term in months
+     * @return BankAccount representing the account, or null if there is no
+     *  such customer
+     */
+    private BankAccount openAccount(String customerId, BankAccount account,
+        long amountCents, int term)
+    {
+        WriteAheadLog wal = this.log;
+        long sequence = 0;
+        synchronized (this.getCustomerLock(customerId))
+        {
+            Customer customer = this.getCustomer(customerId);
+            if (customer == null)
+            {
+                return null;
+            }
+            customer.addAccount(account);
+            if (wal != null)
+            {
+                sequence = this.logOpenAccount(wal, customer, account,
+                    amountCents, term);
+            }
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+        return account;
+    }
+
+    /**
+     * Recreates an account with its original number and opening day, while
+     * rebuilding the bank from its log
+     * @param customerId String containing the owner's ID
+     * @param type Integer containing the account type number
+     * @param accountNumber Integer containing the original account number
+     * @param openingDay Integer containing the original opening epoch day
+     * @param amountCents Long containing the opening amount in cents, or -1
+     *  for an account opened with its defaults
+     * @param term Integer containing the CD term in months
+     */
+    void restoreAccount(String customerId, int type, int accountNumber,
+        int openingDay, long amountCents, int term)
+    {
+        Customer customer = customerById.get(customerId);
+        if (customer == null)
+        {
+            return;
+        }
+        BankAccount account;
+        if (amountCents < 0)
+        {
+            account = Customer.createAccount(type);
+        }
+        else
+        {
+            account = Customer.createAccount(type, 
+                Money.toDollars(amountCents), term);
+        }
+        ((CheckingAccount) account).restoreIdentity(accountNumber, openingDay);
+        synchronized (this.getCustomerLock(customerId))
+        {
+            customer.addAccount(account);
+        }
+    }
+
+    /**
+     * Closes one of a customer's accounts
+     * @param customerId String containing the customer's ID
+     * @param accountNumber Integer containing the account number
+     * @return Boolean representing whether an account was closed
+     */
+    public boolean closeAccount(String customerId, int accountNumber)
+    {
+        WriteAheadLog wal = this.log;
+        long sequence = 0;
+        synchronized (this.getCustomerLock(customerId))
+        {
+            Customer customer = this.getCustomer(customerId);
+            BankAccount account = customer == null ? null 
+                : customer.getAccount(accountNumber);
+            if (account == null)
+            {
+                return false;
+            }
+            customer.closeAccount(account);
+            if (wal != null)
+            {
+                sequence = wal.logCloseAccount(customerId, accountNumber);
+            }
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+        return true;
+    }
+
+    /**
+     * Deposits money into any account of the bank
+     * @param accountNumber Integer containing the account number
+     * @param amount Double containing the amount to deposit
+     * @return Boolean representing whether the deposit was accepted
+     */
+    public boolean deposit(int accountNumber, double amount)
+    {
+        return this.depositCents(accountNumber, Money.toCents(amount));
+    }
+
+    /**
+     * Deposits money, given in cents, into any account of the bank
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount to deposit in cents
+     * @return Boolean representing whether the deposit was accepted
+     */
+    public boolean depositCents(int accountNumber, long cents)
+    {
+        return this.changeBalance(WriteAheadLog.DEPOSIT, accountNumber, cents)
+            != null;
+    }
+
+    /**
+     * Deposits money, given in cents, into any account of the bank and
+     * reads the balance it left before the account is unlocked, so no other
+     * change to the account shows in the balance
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount to deposit in cents
+     * @return Long representing the balance in cents after the deposit, or
+     *  null if no account has the number or the deposit was refused
+     */
+    public Long depositAndGetBalance(int accountNumber, long cents)
+    {
+        return this.changeBalance(WriteAheadLog.DEPOSIT, accountNumber, cents);
+    }
+
+    /**
+     * Withdraws money from any account of the bank
+     * @param accountNumber Integer containing the account number
+     * @param amount Double containing the amount to withdraw
+     * @return Boolean representing whether the withdrawal was accepted
+     */
+    public boolean withdraw(int accountNumber, double amount)
+    {
+        return this.withdrawCents(accountNumber, Money.toCents(amount));
+    }
+
+    /**
+     * Withdraws money, given in cents, from any account of the bank
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount to withdraw in cents
+     * @return Boolean representing whether the withdrawal was accepted
+     */
+    public boolean withdrawCents(int accountNumber, long cents)
+    {
+        return this.changeBalance(WriteAheadLog.WITHDRAW, accountNumber, 
+            cents) != null;
+    }
+
+    /**
+     * Withdraws money, given in cents, from any account of the bank and
+     * reads the balance it left before the account is unlocked, so no other
+     * change to the account shows in the balance
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount to withdraw in cents
+     * @return Long representing the balance in cents after the withdrawal,
+     *  or null if no account has the number or the withdrawal was refused
+     */
+    public Long withdrawAndGetBalance(int accountNumber, long cents)
+    {
+        return this.changeBalance(WriteAheadLog.WITHDRAW, accountNumber,
+            cents);
+    }
+
+    /**
+     * Reads the balance of any account of the bank. The read is timed in
+     * the default {@link BankMetrics}.
+     * @param accountNumber Integer containing the account number
+     * @return Long representing the balance in cents, or null if no account
+     *  has the number
+     */
+    public Long getBalanceCents(int accountNumber)
+    {
+        BankMetrics metrics = BankMetrics.getDefault();
+        long start = metrics.startTimer();
+        BankAccount account = this.getAccount(accountNumber);
+        if (account == null)
+        {
+            return null;
+        }
+        long cents = account.getBalanceCents();
+        metrics.recordLatency(BankMetrics.Operation.GET_BALANCE, account,
+            start);
+        return cents;
+    }
+
+    /**
+     * Deposits into or withdraws from an account, logging the change while
+     * the account is still locked
+     * @param type Byte containing the log record type of the change
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount in cents
+     * @return Long representing the balance in cents the change left, or
+     *  null if there is no such account or the change was refused
+     */
+    private Long changeBalance(byte type, int accountNumber, long cents)
+    {
+        BankMetrics metrics = BankMetrics.getDefault();
+        long start = metrics.startTimer();
+        BankAccount account = this.getAccount(accountNumber);
+        if (account == null)
+        {
+            return null;
+        }
+        try
+        {
+            return this.changeBalance(type, account, cents);
+        }
+        finally
+        {
+            metrics.recordLatency(type == WriteAheadLog.DEPOSIT
+                ? BankMetrics.Operation.DEPOSIT
+                : BankMetrics.Operation.WITHDRAW, account, start);
+        }
+    }
+
+    /**
+     * Deposits into or withdraws from an account that has been found
+     * @param type Byte containing the log record type of the change
+     * @param account BankAccount containing the account
+     * @param cents Long containing the amount in cents
+     * @return Long representing the balance in cents the change left, or
+     *  null if the change was refused
+     */
+    private Long changeBalance(byte type, BankAccount account, long cents)
+    {
+        WriteAheadLog wal = this.log;
+        long sequence = 0;
+        long balance;
+        synchronized (account)
+        {
+            boolean accepted = type == WriteAheadLog.DEPOSIT 
+                ? account.depositCents(cents) : account.withdrawCents(cents);
+            if (!accepted)
+            {
+                return null;
+            }
+            balance = account.getBalanceCents();
+            if (wal != null)
+            {
+                sequence = wal.logEffect(type, (CheckingAccount) account);
+            }
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+        return balance;
+    }
+
+    /**
+     * Credits the interest of a CD whose term is over, logging the credit
+     * while the account is still locked so that replay puts it back
+     * @param certificate CertificateDepositAccount containing the CD
+     * @return Long representing the interest credited in cents, or 0 if
+     *  nothing was credited
+     */
+    public long creditMaturedInterest(CertificateDepositAccount certificate)
+    {
+        WriteAheadLog wal = this.log;
+        long sequence = 0;
+        long cents;
+        synchronized (certificate)
+        {
+            cents = certificate.creditMaturedInterest();
+            if (cents > 0 && wal != null)
+            {
+                sequence = wal.logEffect(WriteAheadLog.INTEREST, certificate);
+            }
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+        return cents;
     }
 
     /**
      * Returns the account holder using its customer ID. If the person does 
-     * not have an account, null value will be returned.
-     * @param name Name of the person being looked up in bank customerById
+     * not have an account, null value will be returned. Never blocks.
+     * @param customerId Customer ID of the person being looked up
      * @return Person object value representing an account holder  or null
      */
     public Customer getCustomer(String customerId)
     {
-        if (customerById.containsKey(customerId))
+        Customer customer = customerById.get(customerId);
+        BankSnapshot saved = this.snapshot;
+        if (customer == null && saved != null)
+        {
+            int ordinal = saved.findCustomer(customerId);
+            if (ordinal >= 0)
+            {
+                customer = this.load(saved, ordinal, customerId);
+            }
+        }
+        return customer;
+    }
+
+    /**
+     * Finds customers by name, for a teller who knows only part of it.
+     * Customers with a name word starting with each word of the query come
+     * first, as in "Abdulla, F"; if there are fewer than the limit, the
+     * names spelled most like the query follow. Case, accents, punctuation
+     * and word order do not matter. Builds every customer first on a bank
+     * opened from a snapshot.
+     * @param query String containing the name or the start of it
+     * @param limit Integer containing the most customers to return
+     * @return List of Customers representing the matches, best first
+     */
+    public List<Customer> findCustomers(String query, int limit)
+    {
+        this.loadAll();
+        List<Customer> found = names.findByPrefix(query, limit);
+        if (found.size() < limit)
+        {
+            for (Customer customer : names.findSimilar(query, limit))
+            {
+                if (found.size() < limit && !found.contains(customer))
+                {
+                    found.add(customer);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the index behind {@link #findCustomers(String, int)}, for
+     * callers that want only prefix or only similar matches. It holds the
+     * customers built so far on a bank opened from a snapshot.
+     * @return CustomerNameIndex representing the name index
+     */
+    public CustomerNameIndex getNameIndex()
+    {
+        return names;
+    }
+
+    /**
+     * Gets any account in the bank by its account number, without scanning
+     * customers
+     * @param accountNumber Integer containing the account number
+     * @return BankAccount representing the account or null
+     */
+    public BankAccount getAccount(int accountNumber)
+    {
+        BankAccount account = accountIndex.getAccount(accountNumber);
+        if (account == null && this.loadOwner(accountNumber))
+        {
+            account = accountIndex.getAccount(accountNumber);
+        }
+        return account;
+    }
+
+    /**
+     * Gets the customer who owns an account
+     * @param accountNumber Integer containing the account number
+     * @return Customer representing the account holder or null
+     */
+    public Customer getAccountOwner(int accountNumber)
+    {
+        Customer owner = accountIndex.getOwner(accountNumber);
+        if (owner == null && this.loadOwner(accountNumber))
+        {
+            owner = accountIndex.getOwner(accountNumber);
+        }
+        return owner;
+    }
+
+    /**
+     * Gets the number of open accounts across all customers, including
+     * accounts still only in the snapshot. Never builds customers, so it is
+     * cheap enough to poll; while accounts are being opened, closed or built
+     * from the snapshot the count may be off by the ones in flight.
+     * @return Integer representing the number of accounts
+     */
+    public int getAccountCount()
+    {
+        BankSnapshot saved = this.snapshot;
+        return accountIndex.size()
+            + (saved == null ? 0 : saved.getUnloadedAccountCount());
+    }
+
+    /**
+     * Gets the number of customers, including customers still only in the
+     * snapshot. Never builds customers; while customers are being added,
+     * removed or built from the snapshot the count may be off by the ones
+     * in flight.
+     * @return Integer representing the number of customers
+     */
+    public int getCustomerCount()
+    {
+        BankSnapshot saved = this.snapshot;
+        return customerById.size()
+            + (saved == null ? 0 : saved.getUnloadedCustomerCount());
+    }
+
+    /**
+     * Builds the owner of an account from the snapshot if they have not
+     * been built yet
+     * @param accountNumber Integer containing the account number
+     * @return Boolean representing whether the snapshot has the account
+     */
+    private boolean loadOwner(int accountNumber)
+    {
+        BankSnapshot saved = this.snapshot;
+        if (saved == null)
+        {
+            return false;
+        }
+        int ordinal = saved.findOwner(accountNumber);
+        if (ordinal < 0)
+        {
+            return false;
+        }
+        this.load(saved, ordinal, saved.getCustomerId(ordinal));
+        return true;
+    }
+
+    /**
+     * Builds every customer that is still only in the snapshot, and then
+     * lets go of the snapshot
+     */
+    private void loadAll()
+    {
+        BankSnapshot saved = this.snapshot;
+        if (saved == null)
+        {
+            return;
+        }
+        for (int i = 0; i < saved.getCustomerCount(); i++)
+        {
+            this.load(saved, i, saved.getCustomerId(i));
+        }
+        this.snapshot = null;
+    }
+
+    /**
+     * Builds a customer and their accounts from the snapshot and adds them
+     * to the bank, unless that already happened. A customer removed after
+     * being built is not brought back.
+     * @param saved BankSnapshot containing the customer
+     * @param ordinal Integer containing the customer's position
+     * @param customerId String containing the customer's ID
+     * @return Customer representing the customer, or null if removed
+     */
+    private Customer load(BankSnapshot saved, int ordinal, String customerId)
+    {
+        synchronized (this.getCustomerLock(customerId))
+        {
+            if (!saved.claim(ordinal))
+            {
+                return customerById.get(customerId);
+            }
+            Customer customer = saved.readCustomer(ordinal);
+            customer.setBank(this);
+            for (BankAccount account : customer.getAccounts())
+            {
+                this.indexAccount(customer, account);
+            }
+            customerById.put(customerId, customer);
+            names.add(customer);
+            return customer;
+        }
+    }
+
+    /**
+     * Checks whether a customer ID belongs to a customer of this bank,
+     * including customers that are still only in the snapshot
+     * @param customerId String containing the customer ID
+     * @return Boolean representing whether the ID is taken
+     */
+    private boolean isTaken(String customerId)
+    {
+        BankSnapshot saved = this.snapshot;
+        return customerById.containsKey(customerId)
+            || (saved != null && saved.findCustomer(customerId) >= 0);
+    }
+
+    /**
+     * Transfers funds between two accounts of this bank, found by account
+     * number alone. The transfer is atomic: either both accounts change or
+     * neither does.
+     * @param fromAccountNumber Integer containing the account to withdraw from
+     * @param toAccountNumber Integer containing the account to deposit into
+     * @param amount Double containing amount of money to transfer
+     * @return Boolean representing whether the transfer happened
+     */
+    public boolean transferFunds(int fromAccountNumber, int toAccountNumber,
+        double amount)
+    {
+        return this.transferCents(fromAccountNumber, toAccountNumber, 
+            Money.toCents(amount));
+    }
+
+    /**
+     * Transfers funds, given in cents, between two accounts of this bank
+     * @param fromAccountNumber Integer containing the account to withdraw from
+     * @param toAccountNumber Integer containing the account to deposit into
+     * @param cents Long containing amount of money to transfer in cents
+     * @return Boolean representing whether the transfer happened
+     */
+    public boolean transferCents(int fromAccountNumber, int toAccountNumber,
+        long cents)
+    {
+        BankMetrics metrics = BankMetrics.getDefault();
+        long start = metrics.startTimer();
+        BankAccount from = this.getAccount(fromAccountNumber);
+        try
+        {
+            return this.transfer(from, this.getAccount(toAccountNumber), 
+                cents);
+        }
+        finally
+        {
+            metrics.recordLatency(BankMetrics.Operation.TRANSFER_FUNDS, from,
+                start);
+        }
+    }
+
+    /**
+     * Transfers funds between two accounts and logs the transfer while both
+     * accounts are still locked
+     * @param from BankAccount containing the account to withdraw from
+     * @param to BankAccount containing the account to deposit into
+     * @param cents Long containing amount of money to transfer in cents
+     * @return Boolean representing whether the transfer happened
+     */
+    private boolean transfer(BankAccount from, BankAccount to, long cents)
+    {
+        WriteAheadLog wal = this.log;
+        if (wal == null)
+        {
+            return transfers.transferCents(from, to, cents);
+        }
+        long[] sequence = new long[1];
+        boolean done = transfers.transferCents(from, to, cents, () ->
+            sequence[0] = wal.logTransfer((CheckingAccount) from,
+                (CheckingAccount) to));
+        if (done)
+        {
+            wal.awaitDurable(sequence[0]);
+        }
+        return done;
+    }
+
+    /**
+     * Adds a customer's new account to the account index
+     * @param owner Customer containing the account holder
+     * @param account BankAccount containing the new account
+     * @throws IllegalStateException if the account number is already in use
+     */
+    void indexAccount(Customer owner, BankAccount account)
+    {
+        if (!accountIndex.add(owner, account))
         {
-            return customerById.get(customerId);
+            throw new IllegalStateException("Account number " 
+                + account.getAccountNumber() + " is already in use");
         }
-        return null;
+        this.scheduleAccount(account);
+    }
+
+    /**
+     * Adds an indexed account to the running totals, and to the scheduler
+     * that resets its withdraw cycle or matures it, if it has one
+     * @param account BankAccount containing the new account
+     */
+    private void scheduleAccount(BankAccount account)
+    {
+        if (account instanceof CheckingAccount)
+        {
+            ((CheckingAccount) account).attachAggregates(aggregates);
+        }
+        if (account instanceof SavingsAccount)
+        {
+            cycles.schedule((SavingsAccount) account);
+        }
+        else if (account instanceof CertificateDepositAccount)
+        {
+            maturities.schedule((CertificateDepositAccount) account);
+        }
+    }
+
+    /**
+     * Gets the scheduler that resets the withdraw cycles of this bank's
+     * savings and money market accounts
+     * @return CycleScheduler representing the bank's scheduler
+     */
+    public CycleScheduler getCycleScheduler()
+    {
+        return cycles;
+    }
+
+    /**
+     * Gets the scheduler that matures this bank's CDs
+     * @return MaturityScheduler representing the bank's scheduler
+     */
+    public MaturityScheduler getMaturityScheduler()
+    {
+        return maturities;
     }
 
     /**
-     * Gets all the keys stored in customerById map
+     * Gets the running totals of this bank's accounts: the ledger total,
+     * ledger balance and count by type, and accounts below their minimum.
+     * Reading them costs the same however many accounts there are; the
+     * first call on a bank opened from a snapshot builds every customer
+     * first.
+     * @return BankAggregates representing the bank's totals
+     */
+    public BankAggregates getAggregates()
+    {
+        this.loadAll();
+        return aggregates;
+    }
+
+    /**
+     * Renames a customer, files them under the new name and logs the
+     * change, all under the customer's lock stripe. A customer who has
+     * left the bank meanwhile is only renamed.
+     * @param customer Customer containing the customer to rename
+     * @param name String containing the new name
+     * @throws IllegalArgumentException if the bank keeps a log and the
+     *  name is too long for it
+     */
+    void renameCustomer(Customer customer, String name)
+    {
+        WriteAheadLog wal = this.log;
+        if (wal != null)
+        {
+            WriteAheadLog.checkString(name);
+        }
+        long sequence = 0;
+        String customerId = customer.getCustomerId();
+        synchronized (this.getCustomerLock(customerId))
+        {
+            customer.assignName(name);
+            if (this.getCustomer(customerId) != customer)
+            {
+                return;
+            }
+            names.update(customer);
+            if (wal != null)
+            {
+                sequence = wal.logRenameCustomer(customerId, name);
+            }
+        }
+        if (sequence > 0)
+        {
+            wal.awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Removes a closed account from the account index
+     * @param account BankAccount containing the closed account
+     */
+    void unindexAccount(BankAccount account)
+    {
+        accountIndex.remove(account.getAccountNumber());
+        if (account instanceof CheckingAccount)
+        {
+            ((CheckingAccount) account).detachAggregates();
+        }
+    }
+
+    /**
+     * Transfers funds between two accounts, which may belong to different
+     * customers. The transfer is atomic: either both accounts change or
+     * neither does.
+     * @param fromCustomerId String containing the ID of the paying customer
+     * @param fromAccountNumber Integer containing the account to withdraw from
+     * @param toCustomerId String containing the ID of the receiving customer
+     * @param toAccountNumber Integer containing the account to deposit into
+     * @param amount Double containing amount of money to transfer
+     * @return Boolean representing whether the transfer happened
+     */
+    public boolean transferFunds(String fromCustomerId, int fromAccountNumber,
+        String toCustomerId, int toAccountNumber, double amount)
+    {
+        BankMetrics metrics = BankMetrics.getDefault();
+        long start = metrics.startTimer();
+        Customer payer = this.getCustomer(fromCustomerId);
+        Customer payee = this.getCustomer(toCustomerId);
+        if (payer == null || payee == null)
+        {
+            return false;
+        }
+        BankAccount from = payer.getAccount(fromAccountNumber);
+        try
+        {
+            return this.transfer(from, payee.getAccount(toAccountNumber),
+                Money.toCents(amount));
+        }
+        finally
+        {
+            metrics.recordLatency(BankMetrics.Operation.TRANSFER_FUNDS, from,
+                start);
+        }
+    }
+
+    /**
+     * Appends the record of a newly opened account. Callers must hold the
+     * owner's lock stripe.
+     * @param wal WriteAheadLog containing the log
+     * @param owner Customer containing the account holder
+     * @param account BankAccount containing the new account
+     * @param amountCents Long containing the opening amount in cents, or -1
+     * @param term Integer containing the CD term in months
+     * @return Long representing the record's sequence number
+     */
+    private long logOpenAccount(WriteAheadLog wal, Customer owner,
+        BankAccount account, long amountCents, int term)
+    {
+        return wal.logOpenAccount(owner.getCustomerId(), 
+            Customer.typeOf(account), account.getAccountNumber(),
+            ((CheckingAccount) account).getOpeningDay(), amountCents, term);
+    }
+
+    /**
+     * Gets the lock stripe guarding mutations of the customer with this ID.
+     * Callers that update a customer's accounts from several threads should
+     * synchronize on this object.
+     * @param customerId String containing the customer ID
+     * @return Object representing the lock for that customer
+     */
+    public Object getCustomerLock(String customerId)
+    {
+        int h = customerId.hashCode();
+        h ^= (h >>> 16);
+        return customerLocks[h & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Gets all the keys stored in customerById map. The set is a read-only,
+     * weakly consistent view that can be iterated while customers are added
+     * or removed.
      * @return Set of String objects representing all the customer IDs
      */
     public Set<String> getAllCustomerId()
     {
-        return this.customerById.keySet();
+        this.loadAll();
+        return Collections.unmodifiableSet(this.customerById.keySet());
     }
 
     /**
-     * Gets all the values stored in the customerById map
+     * Gets all the values stored in the customerById map. The collection is
+     * a read-only, weakly consistent view that can be iterated while
+     * customers are added or removed.
      * @return Collection of Customer objects representing all the customers
      */
     public Collection<Customer> getAllCustomers()
     {
-        return this.customerById.values();
+        this.loadAll();
+        return Collections.unmodifiableCollection(this.customerById.values());
+    }
+
+    /**
+     * Opens a view of every customer and account as they stand now, which
+     * stays the same while tellers keep changing the bank. Nothing is
+     * locked while the view is open; the view must be closed when done.
+     * Builds every customer first on a bank opened from a snapshot.
+     * @return BankView representing the bank at this moment
+     */
+    public BankView openView()
+    {
+        this.loadAll();
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = versions.pin();
+        retired.removeIf(customer -> customer.getLeftEpoch() <= epoch);
+        List<Customer> customers = new ArrayList<Customer>();
+        for (Customer customer : customerById.values())
+        {
+            if (customer.getJoinedEpoch() <= epoch)
+            {
+                customers.add(customer);
+            }
+        }
+        // Customers removed since the pin, which the walk may have missed
+        Set<Customer> removed = Collections.newSetFromMap(
+            new IdentityHashMap<Customer, Boolean>());
+        removed.addAll(retired);
+        if (!removed.isEmpty())
+        {
+            customers.removeIf(removed::contains);
+            for (Customer customer : removed)
+            {
+                if (customer.getJoinedEpoch() <= epoch)
+                {
+                    customers.add(customer);
+                }
+            }
+        }
+        return new BankView(versions, epoch, customers);
+    }
+
+    /**
+     * Gets the number of lock stripes: a power of two of at least four times
+     * the number of available processors.
+     * @return Integer representing the stripe count
+     */
+    private static int stripeCount()
+    {
+        int target = Runtime.getRuntime().availableProcessors() * 4;
+        int stripes = 1;
+        while (stripes < target)
+        {
+            stripes <<= 1;
+        }
+        return stripes;
     }
 
 } // End of Class
\ No newline at end of file
@@ -1,6 +1,8 @@
 /**
  * This interface represents the general type of Bank Account and contains the 
  * features that must all be present in each subtype of bank account.
+ * Money is handled in whole cents through the methods ending in "Cents";
+ * the double-based methods are dollar adapters kept for compatibility.
  * @author Farhan Abdulla
  * @version 01.06.2022
  */
@@ -27,6 +29,12 @@ public interface BankAccount
      * @return The balance of the account as a double value
      */
     public double getBalance();
+
+    /**
+     * Gets the account's balance in cents.
+     * @return The balance of the account as a long count of cents
+     */
+    public long getBalanceCents();
     
     /**
      * Returns String stating current balance in account
@@ -51,6 +59,55 @@ public interface BankAccount
      */
     public boolean withdraw(double amount);
 
+    /**
+     * Adds money to the account balance if and only if the amount is
+     * positive. Also records a deposit in transaction history
+     * @param cents Long value representing the amount deposited in cents
+     * @return Boolean representing if conditions to deposit were met
+     */
+    public boolean depositCents(long cents);
+
+    /**
+     * Subtracts money from the account balance if and only if the amount
+     * does not put the balance below zero. Also records a withdrawal in
+     * transaction history.
+     * @param cents Long value representing the amount withdrawn in cents
+     * @return Boolean representing if conditions to withdraw were met
+     */
+    public boolean withdrawCents(long cents);
+
+    /**
+     * Checks whether a deposit of this amount would currently be accepted,
+     * without changing the account.
+     * @param amount Double value representing the amount to deposit
+     * @return Boolean representing if conditions to deposit are met
+     */
+    public boolean canDeposit(double amount);
+
+    /**
+     * Checks whether a withdrawal of this amount would currently be accepted,
+     * without changing the balance.
+     * @param amount Double value representing the amount to withdraw
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    public boolean canWithdraw(double amount);
+
+    /**
+     * Checks whether a deposit of this many cents would currently be 
+     * accepted, without changing the account.
+     * @param cents Long value representing the amount to deposit in cents
+     * @return Boolean representing if conditions to deposit are met
+     */
+    public boolean canDepositCents(long cents);
+
+    /**
+     * Checks whether a withdrawal of this many cents would currently be
+     * accepted, without changing the balance.
+     * @param cents Long value representing the amount to withdraw in cents
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    public boolean canWithdrawCents(long cents);
+
     /**
      * Updates history of transactions whenever money is deposited
      * or withdrawn from the account. Accepts a boolean parameter; true
@@ -61,6 +118,14 @@ public interface BankAccount
      */
     public void addTransaction(boolean deposit, double amount);
 
+    /**
+     * Updates history of transactions whenever money is deposited
+     * or withdrawn from the account, with the amount given in cents.
+     * @param deposit Boolean representing if money is being deposited
+     * @param cents Contains amount of money deposited or withdrawn in cents
+     */
+    public void addTransactionCents(boolean deposit, long cents);
+
     /**
      * Gets all the transactions for this day
      * @param date String containing the date 
@@ -69,6 +134,28 @@ public interface BankAccount
      */
     public String getTransactionForDay(String date);
 
+    /**
+     * Gets the transactions made from one date to another, both included,
+     * in time order
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @return TransactionCursor representing the transactions
+     */
+    public TransactionCursor getTransactions(String fromDate, String toDate);
+
+    /**
+     * Gets one page of the transactions made from one date to another, both
+     * included, in time order
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @param start Integer containing the previous page's next start, or 0
+     *  for the first page
+     * @param pageSize Integer containing the most transactions on the page
+     * @return TransactionPage representing the page
+     */
+    public TransactionPage getTransactionPage(String fromDate, String toDate,
+        int start, int pageSize);
+
     /**
      * Gets the current date in dd-MM-yyyy format as a String
      * @return String representing current date
@@ -0,0 +1,238 @@
+//~ Imports ...............................................................
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps bank-wide totals up to date as money moves, so that reading them
+ * never walks the customers: the ledger total, the ledger balance and the
+ * number of accounts of each type, and the number of savings and money
+ * market accounts below their minimum balance. Every account a
+ * {@link Bank} indexes reports each change of its balance here while it
+ * holds its own lock, and is added when opened and taken off when closed.
+ * <p>
+ * Totals are kept in striped adders, so tellers changing different
+ * accounts never contend on them, and a read sums a handful of cells.
+ * Ledger balances are deposits less withdrawals, before any interest a
+ * savings account or IRA has earned. The minimum, though, is enforced on
+ * the balance with interest, so each account works out whether it is
+ * under its minimum from that balance whenever it reports a change. As
+ * interest grows with the date rather than with transactions,
+ * {@link EndOfDayBatch} has every account check again once a day.
+ * A read made while money is moving may see one account's change and not
+ * another's. {@link #recompute(Bank)} adds everything up again from the
+ * accounts, in parallel, to check the running totals against; it matches
+ * the under-minimum count as of the last end-of-day run.
+ * @author Farhan Abdulla
+ * @version 02.04.2022
+ */
+public class BankAggregates
+{
+    //~ Fields ................................................................
+    private static final int TYPES = 5;
+
+    private final LongAdder[] balances;
+    private final LongAdder[] counts;
+    private final LongAdder underMinimum;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents totals for a bank with no accounts
+     */
+    public BankAggregates()
+    {
+        this.balances = new LongAdder[TYPES];
+        this.counts = new LongAdder[TYPES];
+        for (int i = 0; i < TYPES; i++)
+        {
+            this.balances[i] = new LongAdder();
+            this.counts[i] = new LongAdder();
+        }
+        this.underMinimum = new LongAdder();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Adds up the totals of every account in a bank from scratch, working
+     * through the customers in parallel. Each account is read under its own
+     * lock, so the result matches the running totals whenever no money was
+     * moving during the count.
+     * @param bank Bank containing the accounts
+     * @return BankAggregates representing the recomputed totals
+     */
+    public static BankAggregates recompute(Bank bank)
+    {
+        BankAggregates totals = new BankAggregates();
+        bank.getAllCustomers().parallelStream()
+            .flatMap(customer -> customer.getAccounts().stream())
+            .filter(account -> account instanceof CheckingAccount)
+            .forEach(account ->
+            {
+                CheckingAccount checking = (CheckingAccount) account;
+                synchronized (checking)
+                {
+                    totals.opened(Customer.typeOf(checking),
+                        checking.getLedgerBalanceCents(),
+                        checking.isUnderMinimum());
+                }
+            });
+        return totals;
+    }
+
+    /**
+     * Gets the total ledger balance across every account
+     * @return Long representing the total in cents
+     */
+    public long getTotalLedgerCents()
+    {
+        long total = 0;
+        for (LongAdder balance : this.balances)
+        {
+            total += balance.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the total ledger balance of the accounts of one type
+     * @param type Integer containing the account type, numbered as in
+     *  {@link Bank#openAccount(String, int)}
+     * @return Long representing the total in cents
+     * @throws IllegalArgumentException if the type is not 1 to 5
+     */
+    public long getLedgerCents(int type)
+    {
+        return this.balances[slot(type)].sum();
+    }
+
+    /**
+     * Gets the number of open accounts of one type
+     * @param type Integer containing the account type
+     * @return Long representing the account count
+     * @throws IllegalArgumentException if the type is not 1 to 5
+     */
+    public long getAccountCount(int type)
+    {
+        return this.counts[slot(type)].sum();
+    }
+
+    /**
+     * Gets the number of savings and money market accounts whose balance,
+     * interest included, is below the minimum their type requires
+     * @return Long representing the account count
+     */
+    public long getUnderMinimumCount()
+    {
+        return this.underMinimum.sum();
+    }
+
+    /**
+     * Checks whether two sets of totals agree on every figure
+     * @param other BankAggregates containing the totals to compare with
+     * @return Boolean representing true if every figure is the same
+     */
+    public boolean matches(BankAggregates other)
+    {
+        for (int type = 1; type <= TYPES; type++)
+        {
+            if (this.getLedgerCents(type) != other.getLedgerCents(type)
+                || this.getAccountCount(type) != other.getAccountCount(type))
+            {
+                return false;
+            }
+        }
+        return this.getUnderMinimumCount() == other.getUnderMinimumCount();
+    }
+
+    /**
+     * Adds a newly opened account. Called with the account locked.
+     * @param type Integer containing the account type
+     * @param cents Long containing the account's ledger balance in cents
+     * @param under Boolean containing true if it is under its minimum
+     */
+    void opened(int type, long cents, boolean under)
+    {
+        int slot = slot(type);
+        this.balances[slot].add(cents);
+        this.counts[slot].increment();
+        if (under)
+        {
+            this.underMinimum.increment();
+        }
+    }
+
+    /**
+     * Takes off a closed account. Called with the account locked.
+     * @param type Integer containing the account type
+     * @param cents Long containing the account's ledger balance in cents
+     * @param under Boolean containing true if it was counted as under its
+     *  minimum
+     */
+    void closed(int type, long cents, boolean under)
+    {
+        int slot = slot(type);
+        this.balances[slot].add(-cents);
+        this.counts[slot].decrement();
+        if (under)
+        {
+            this.underMinimum.decrement();
+        }
+    }
+
+    /**
+     * Records a change of an account's ledger balance, or of whether it is
+     * under its minimum. Called with the account locked.
+     * @param type Integer containing the account type
+     * @param delta Long containing the signed ledger change in cents
+     * @param wasUnder Boolean containing true if it was counted as under
+     *  its minimum
+     * @param under Boolean containing true if it is under its minimum now
+     */
+    void changed(int type, long delta, boolean wasUnder, boolean under)
+    {
+        if (delta != 0)
+        {
+            this.balances[slot(type)].add(delta);
+        }
+        if (wasUnder != under)
+        {
+            this.underMinimum.add(under ? 1 : -1);
+        }
+    }
+
+    /**
+     * Gets the totals as text, for logs and the console
+     * @return String representing the totals
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("Ledger $");
+        Money.appendTo(sb, this.getTotalLedgerCents());
+        for (int type = 1; type <= TYPES; type++)
+        {
+            sb.append(", type ").append(type).append(": ")
+                .append(this.getAccountCount(type)).append(" accounts $");
+            Money.appendTo(sb, this.getLedgerCents(type));
+        }
+        return sb.append(", under minimum: ")
+            .append(this.getUnderMinimumCount()).toString();
+    }
+
+    /**
+     * Gets the position of an account type in the adder arrays
+     * @param type Integer containing the account type
+     * @return Integer representing the position
+     * @throws IllegalArgumentException if the type is not 1 to 5
+     */
+    private static int slot(int type)
+    {
+        if (type < 1 || type > TYPES)
+        {
+            throw new IllegalArgumentException("Unknown account type "
+                + type);
+        }
+        return type - 1;
+    }
+
+} // End of class
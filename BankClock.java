@@ -0,0 +1,187 @@
+//~ Imports ...............................................................
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Represents the source of "today" for every account. Dates are handled as
+ * epoch days (days since 01/01/1970) so that date checks are plain integer
+ * comparisons; date strings in M/d/yy format are only produced for display.
+ * Accounts take the default clock when they are created, so tests can
+ * install a {@link ManualBankClock} with {@link #setDefault(BankClock)} to
+ * control time.
+ * @author Farhan Abdulla
+ * @version 01.21.2022
+ */
+public abstract class BankClock
+{
+    //~ Fields ................................................................
+    /** Format used to display dates */
+    public static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("M/d/yy");
+
+    private static volatile BankClock defaultClock = new SystemBankClock();
+
+    private volatile CachedDay cachedDay;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a clock that accounts use to find the current date
+     */
+    protected BankClock()
+    {
+        this.cachedDay = new CachedDay(LocalDate.ofEpochDay(0));
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the clock new accounts will use
+     * @return BankClock representing the default clock
+     */
+    public static BankClock getDefault()
+    {
+        return defaultClock;
+    }
+
+    /**
+     * Sets the clock new accounts will use. Accounts that already exist keep
+     * the clock they were created with.
+     * @param clock BankClock containing the new default clock
+     */
+    public static void setDefault(BankClock clock)
+    {
+        defaultClock = clock;
+    }
+
+    /**
+     * Gets the current day
+     * @return Integer representing today as an epoch day
+     */
+    public abstract int today();
+
+    /**
+     * Gets the current time
+     * @return Long representing the current time in epoch milliseconds
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * Gets the current day as a date. The date object is cached, so calling
+     * this repeatedly on the same day creates no objects.
+     * @return LocalDate representing today
+     */
+    public LocalDate todayDate()
+    {
+        return this.cached(this.today()).date;
+    }
+
+    /**
+     * Gets the current day formatted for display in M/d/yy format. The
+     * string is cached for the day.
+     * @return String representing today's date
+     */
+    public String todayString()
+    {
+        return this.cached(this.today()).text;
+    }
+
+    /**
+     * Gets the current month as a count of months since year 0, which makes
+     * the number of months between two dates a subtraction
+     * @return Integer representing the month index of today
+     */
+    public int monthIndex()
+    {
+        return this.cached(this.today()).monthIndex;
+    }
+
+    /**
+     * Gets the cached values for a day, replacing the cache if the day has
+     * changed
+     * @param day Integer containing the epoch day
+     * @return CachedDay holding the date, display string and month index
+     */
+    private CachedDay cached(int day)
+    {
+        CachedDay current = this.cachedDay;
+        if (current.day != day)
+        {
+            current = new CachedDay(LocalDate.ofEpochDay(day));
+            this.cachedDay = current;
+        }
+        return current;
+    }
+
+    /**
+     * Formats an epoch day for display in M/d/yy format
+     * @param epochDay Integer containing the epoch day
+     * @return String representing the date
+     */
+    public static String format(int epochDay)
+    {
+        return LocalDate.ofEpochDay(epochDay).format(DATE_FORMAT);
+    }
+
+    /**
+     * Parses a date in M/d/yy format into an epoch day
+     * @param date String containing the date
+     * @return Integer representing the epoch day
+     * @throws java.time.format.DateTimeParseException if the text is not a
+     *  date in M/d/yy format
+     */
+    public static int parse(String date)
+    {
+        return (int) LocalDate.parse(date, DATE_FORMAT).toEpochDay();
+    }
+
+    /**
+     * Gets the month index (months since year 0) of an epoch day
+     * @param epochDay Integer containing the epoch day
+     * @return Integer representing the month index
+     */
+    public static int monthIndex(int epochDay)
+    {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * Adds a number of months to an epoch day, clamping to the end of the
+     * month where needed
+     * @param epochDay Integer containing the epoch day
+     * @param months Integer containing the number of months to add
+     * @return Integer representing the resulting epoch day
+     */
+    public static int plusMonths(int epochDay, int months)
+    {
+        return (int) LocalDate.ofEpochDay(epochDay).plusMonths(months)
+            .toEpochDay();
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Holds the values derived from one day so they are computed once
+     */
+    private static final class CachedDay
+    {
+        private final int day;
+        private final LocalDate date;
+        private final String text;
+        private final int monthIndex;
+
+        /**
+         * Derives and stores the values for a date
+         * @param date LocalDate containing the day to cache
+         */
+        private CachedDay(LocalDate date)
+        {
+            this.day = (int) date.toEpochDay();
+            this.date = date;
+            this.text = date.format(DATE_FORMAT);
+            this.monthIndex = date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+    }
+
+} // End of class
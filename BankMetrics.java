@@ -0,0 +1,651 @@
+//~ Imports ...............................................................
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Collects per-operation latencies and refusal counts for the bank and
+ * publishes them, together with customer and account counts, as JMX
+ * MBeans. Deposits, withdrawals and transfers are timed when they go
+ * through {@link Bank}, and so are balance reads, through
+ * {@link Bank#getBalanceCents(int)}; reads the accounts make of their own
+ * balance are not timed. Each is kept in a
+ * {@link LatencyHistogram} per account type, keyed by the account the money
+ * leaves for transfers.
+ * <p>
+ * Refusals are counted by reason wherever an account turns a deposit or
+ * withdrawal down, and IRA withdrawals that are charged the early
+ * withdrawal penalty are counted alongside them. Counting happens on the
+ * refusal path only, so accepted operations pay nothing for it.
+ * <p>
+ * Timing an operation costs two clock reads and one array increment. A
+ * clock read alone can take 20 to 50ns, depending on the machine, so by
+ * default only one operation in eight, picked at random, is timed; the
+ * others pay for one random number. The percentiles of the sample match
+ * those of every operation, but the histogram counts are counts of timed
+ * operations. {@link #setSampleInterval(int)} changes the rate, and
+ * {@link #setEnabled(boolean)} switches timing off. The MBeans are
+ * registered under the "Bank" domain:
+ * <pre>
+ * Bank:type=Latency,operation=deposit,account=Checking
+ * Bank:type=Refusals,reason=SavingsWithdrawLimit
+ * Bank:type=Bank,name=main
+ * </pre>
+ * @author Farhan Abdulla
+ * @version 01.30.2022
+ */
+public class BankMetrics
+{
+    //~ Fields ................................................................
+    private static final String DOMAIN = "Bank";
+    private static final String[] ACCOUNT_NAMES = {"Checking", "Savings",
+        "MoneyMarket", "CertificateDeposit", "IndividualRetirement"};
+    private static final int DEFAULT_SAMPLE_INTERVAL = 8;
+    private static final BankMetrics DEFAULT = new BankMetrics();
+
+    private final LatencyHistogram[][] latencies;
+    private final LongAdder[] reasons;
+    private volatile boolean enabled;
+    private volatile int sampleMask;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty set of metrics that times one operation in eight
+     */
+    public BankMetrics()
+    {
+        Operation[] operations = Operation.values();
+        this.latencies = new LatencyHistogram[operations.length][];
+        for (Operation operation : operations)
+        {
+            LatencyHistogram[] byType =
+                new LatencyHistogram[ACCOUNT_NAMES.length];
+            for (int i = 0; i < byType.length; i++)
+            {
+                byType[i] = new LatencyHistogram();
+            }
+            this.latencies[operation.ordinal()] = byType;
+        }
+        this.reasons = new LongAdder[Reason.values().length];
+        for (int i = 0; i < this.reasons.length; i++)
+        {
+            this.reasons[i] = new LongAdder();
+        }
+        this.enabled = true;
+        this.sampleMask = DEFAULT_SAMPLE_INTERVAL - 1;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the metrics that the bank and its accounts record into
+     * @return BankMetrics representing the shared metrics
+     */
+    public static BankMetrics getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Switches timing on or off. Refusals are counted either way.
+     * @param enabled Boolean containing true to time operations
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks whether operations are being timed
+     * @return Boolean representing true if timing is on
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Sets how many operations there are for every one that is timed
+     * @param interval Integer containing a power of two, or 1 to time every
+     *  operation
+     * @throws IllegalArgumentException if the interval is not a power of two
+     */
+    public void setSampleInterval(int interval)
+    {
+        if (interval < 1 || Integer.bitCount(interval) != 1)
+        {
+            throw new IllegalArgumentException("Sample interval must be a "
+                + "power of two: " + interval);
+        }
+        this.sampleMask = interval - 1;
+    }
+
+    /**
+     * Gets how many operations there are for every one that is timed
+     * @return Integer representing the sample interval
+     */
+    public int getSampleInterval()
+    {
+        return this.sampleMask + 1;
+    }
+
+    /**
+     * Starts timing an operation, if timing is on and the operation is
+     * picked for the sample
+     * @return Long representing the start time to pass to
+     *  {@link #recordLatency(Operation, BankAccount, long)}, or 0 if the
+     *  operation is not timed
+     */
+    public long startTimer()
+    {
+        if (!this.enabled
+            || (ThreadLocalRandom.current().nextInt() & this.sampleMask) != 0)
+        {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records how long an operation on an account took
+     * @param operation Operation containing what was done
+     * @param account BankAccount containing the account, or null if the
+     *  operation found no account
+     * @param start Long containing the value {@link #startTimer()} returned
+     */
+    public void recordLatency(Operation operation, BankAccount account,
+        long start)
+    {
+        if (start != 0 && account != null)
+        {
+            this.latencies[operation.ordinal()][Customer.typeOf(account) - 1]
+                .record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts a refused deposit or withdrawal under the reason the account
+     * gives for it
+     * @param account BankAccount containing the account that refused
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long containing the amount in cents
+     */
+    public void recordRefusal(BankAccount account, boolean deposit,
+        long cents)
+    {
+        if (account instanceof CheckingAccount)
+        {
+            this.record(((CheckingAccount) account)
+                .getRefusalReason(deposit, cents));
+        }
+    }
+
+    /**
+     * Counts one occurrence of a reason
+     * @param reason Reason containing what happened
+     */
+    public void record(Reason reason)
+    {
+        this.reasons[reason.ordinal()].increment();
+    }
+
+    /**
+     * Gets the latencies of an operation on one type of account
+     * @param operation Operation containing the operation
+     * @param type Integer containing the account type, numbered as in
+     *  {@link Bank#openAccount(String, int)}
+     * @return LatencyHistogram representing the latencies
+     */
+    public LatencyHistogram getLatency(Operation operation, int type)
+    {
+        return this.latencies[operation.ordinal()][type - 1];
+    }
+
+    /**
+     * Gets how many times a reason has been counted
+     * @param reason Reason containing the reason
+     * @return Long representing the count
+     */
+    public long getCount(Reason reason)
+    {
+        return this.reasons[reason.ordinal()].sum();
+    }
+
+    /**
+     * Clears every latency histogram and count
+     */
+    public void reset()
+    {
+        for (LatencyHistogram[] byType : this.latencies)
+        {
+            for (LatencyHistogram histogram : byType)
+            {
+                histogram.reset();
+            }
+        }
+        for (LongAdder count : this.reasons)
+        {
+            count.reset();
+        }
+    }
+
+    /**
+     * Registers an MBean for every latency histogram and refusal count with
+     * the platform MBean server. Registering twice does nothing.
+     * @throws JMException if an MBean cannot be registered
+     */
+    public void registerMBeans()
+        throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : Operation.values())
+        {
+            for (int i = 0; i < ACCOUNT_NAMES.length; i++)
+            {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Latency,"
+                    + "operation=" + operation.getName() + ",account="
+                    + ACCOUNT_NAMES[i]);
+                register(server, name, new StandardMBean(
+                    new Latency(this.latencies[operation.ordinal()][i]),
+                    LatencyMBean.class));
+            }
+        }
+        for (Reason reason : Reason.values())
+        {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Refusals,"
+                + "reason=" + reason.getName());
+            register(server, name, new StandardMBean(
+                new Counter(this.reasons[reason.ordinal()]),
+                CounterMBean.class));
+        }
+    }
+
+    /**
+     * Registers an MBean with the platform MBean server that reports the
+     * number of customers and accounts in a bank
+     * @param bank Bank containing the customers
+     * @param bankName String containing the name to register the bank under
+     * @return ObjectName representing the registered name
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static ObjectName registerBank(Bank bank, String bankName)
+        throws JMException
+    {
+        ObjectName name = new ObjectName(DOMAIN + ":type=Bank,name="
+            + ObjectName.quote(bankName));
+        register(ManagementFactory.getPlatformMBeanServer(), name,
+            new StandardMBean(new Gauges(bank), GaugesMBean.class));
+        return name;
+    }
+
+    /**
+     * Registers an MBean unless the name is already taken
+     * @param server MBeanServer to register with
+     * @param name ObjectName containing the MBean's name
+     * @param mbean Object containing the MBean
+     * @throws JMException if the MBean cannot be registered
+     */
+    private static void register(MBeanServer server, ObjectName name,
+        Object mbean)
+        throws JMException
+    {
+        if (!server.isRegistered(name))
+        {
+            server.registerMBean(mbean, name);
+        }
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents the operations that are timed
+     */
+    public enum Operation
+    {
+        DEPOSIT("deposit"),
+        WITHDRAW("withdraw"),
+        GET_BALANCE("getBalance"),
+        TRANSFER_FUNDS("transferFunds");
+
+        private final String name;
+
+        /**
+         * Represents an operation with its MBean name
+         * @param name String containing the method name it times
+         */
+        Operation(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name used in the operation's MBean names
+         * @return String representing the method name
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+    }
+
+    /**
+     * Represents why an account refused a deposit or withdrawal, plus the
+     * IRA early withdrawal penalty, which is charged rather than refused
+     */
+    public enum Reason
+    {
+        INVALID_AMOUNT("InvalidAmount"),
+        INSUFFICIENT_FUNDS("InsufficientFunds"),
+        SAVINGS_WITHDRAW_LIMIT("SavingsWithdrawLimit"),
+        SAVINGS_MINIMUM_BALANCE("SavingsMinimumBalance"),
+        MONEY_MARKET_MINIMUM_BALANCE("MoneyMarketMinimumBalance"),
+        CD_IN_TERM("CdInTerm"),
+        IRA_EARLY_WITHDRAWAL_PENALTY("IraEarlyWithdrawalPenalty");
+
+        private final String name;
+
+        /**
+         * Represents a reason with its MBean name
+         * @param name String containing the name used in MBean names
+         */
+        Reason(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name used in the reason's MBean name
+         * @return String representing the name
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+    }
+
+    /**
+     * Represents the JMX view of one latency histogram. Latencies are in
+     * nanoseconds.
+     */
+    public interface LatencyMBean
+    {
+        /**
+         * Gets the number of operations timed, which is about one in
+         * every sample interval
+         * @return Long representing the count
+         */
+        long getCount();
+
+        /**
+         * Gets the average latency
+         * @return Double representing the mean in nanoseconds
+         */
+        double getMean();
+
+        /**
+         * Gets the median latency
+         * @return Long representing the 50th percentile in nanoseconds
+         */
+        long getP50();
+
+        /**
+         * Gets the 90th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        long getP90();
+
+        /**
+         * Gets the 99th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        long getP99();
+
+        /**
+         * Gets the 99.9th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        long getP999();
+
+        /**
+         * Gets the largest latency
+         * @return Long representing the latency in nanoseconds
+         */
+        long getMax();
+
+        /**
+         * Clears the histogram
+         */
+        void reset();
+    }
+
+    /**
+     * Represents the JMX view of one count
+     */
+    public interface CounterMBean
+    {
+        /**
+         * Gets the count
+         * @return Long representing the count
+         */
+        long getCount();
+    }
+
+    /**
+     * Represents the JMX view of a bank's size
+     */
+    public interface GaugesMBean
+    {
+        /**
+         * Gets the number of customers
+         * @return Integer representing the customer count
+         */
+        int getCustomerCount();
+
+        /**
+         * Gets the number of open accounts
+         * @return Integer representing the account count
+         */
+        int getAccountCount();
+
+        /**
+         * Gets the total ledger balance, before interest earned
+         * @return Long representing the total in cents
+         */
+        long getTotalLedgerCents();
+
+        /**
+         * Gets the number of accounts below their minimum balance
+         * @return Long representing the account count
+         */
+        long getUnderMinimumCount();
+    }
+
+    /**
+     * Represents a latency histogram as an MBean
+     */
+    private static final class Latency
+        implements LatencyMBean
+    {
+        private final LatencyHistogram histogram;
+
+        /**
+         * Represents the MBean for a histogram
+         * @param histogram LatencyHistogram containing the latencies
+         */
+        private Latency(LatencyHistogram histogram)
+        {
+            this.histogram = histogram;
+        }
+
+        /**
+         * Gets the number of operations timed
+         * @return Long representing the count
+         */
+        @Override
+        public long getCount()
+        {
+            return this.histogram.getCount();
+        }
+
+        /**
+         * Gets the average latency
+         * @return Double representing the mean in nanoseconds
+         */
+        @Override
+        public double getMean()
+        {
+            return this.histogram.getMean();
+        }
+
+        /**
+         * Gets the median latency
+         * @return Long representing the 50th percentile in nanoseconds
+         */
+        @Override
+        public long getP50()
+        {
+            return this.histogram.getValueAtPercentile(0.50);
+        }
+
+        /**
+         * Gets the 90th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        @Override
+        public long getP90()
+        {
+            return this.histogram.getValueAtPercentile(0.90);
+        }
+
+        /**
+         * Gets the 99th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        @Override
+        public long getP99()
+        {
+            return this.histogram.getValueAtPercentile(0.99);
+        }
+
+        /**
+         * Gets the 99.9th percentile latency
+         * @return Long representing the latency in nanoseconds
+         */
+        @Override
+        public long getP999()
+        {
+            return this.histogram.getValueAtPercentile(0.999);
+        }
+
+        /**
+         * Gets the largest latency
+         * @return Long representing the latency in nanoseconds
+         */
+        @Override
+        public long getMax()
+        {
+            return this.histogram.getMax();
+        }
+
+        /**
+         * Clears the histogram
+         */
+        @Override
+        public void reset()
+        {
+            this.histogram.reset();
+        }
+    }
+
+    /**
+     * Represents a count as an MBean
+     */
+    private static final class Counter
+        implements CounterMBean
+    {
+        private final LongAdder count;
+
+        /**
+         * Represents the MBean for a count
+         * @param count LongAdder containing the count
+         */
+        private Counter(LongAdder count)
+        {
+            this.count = count;
+        }
+
+        /**
+         * Gets the count
+         * @return Long representing the count
+         */
+        @Override
+        public long getCount()
+        {
+            return this.count.sum();
+        }
+    }
+
+    /**
+     * Represents a bank's customer and account counts as an MBean
+     */
+    private static final class Gauges
+        implements GaugesMBean
+    {
+        private final Bank bank;
+
+        /**
+         * Represents the MBean for a bank
+         * @param bank Bank containing the customers
+         */
+        private Gauges(Bank bank)
+        {
+            this.bank = bank;
+        }
+
+        /**
+         * Gets the number of customers in the bank
+         * @return Integer representing the customer count
+         */
+        @Override
+        public int getCustomerCount()
+        {
+            return this.bank.getCustomerCount();
+        }
+
+        /**
+         * Gets the number of open accounts in the bank
+         * @return Integer representing the account count
+         */
+        @Override
+        public int getAccountCount()
+        {
+            return this.bank.getAccountCount();
+        }
+
+        /**
+         * Gets the total ledger balance of the bank's accounts
+         * @return Long representing the total in cents
+         */
+        @Override
+        public long getTotalLedgerCents()
+        {
+            return this.bank.getAggregates().getTotalLedgerCents();
+        }
+
+        /**
+         * Gets the number of the bank's accounts below their minimum balance
+         * @return Long representing the account count
+         */
+        @Override
+        public long getUnderMinimumCount()
+        {
+            return this.bank.getAggregates().getUnderMinimumCount();
+        }
+    }
+
+} // End of class
@@ -0,0 +1,476 @@
+//~ Imports ...............................................................
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+
+/**
+ * Serves a bank over a simple line protocol. Each request is one line of
+ * words separated by spaces, and each reply is one line starting with OK
+ * or ERR:
+ * <pre>
+ * ADD name                      OK customerId
+ * REMOVE customerId             OK
+ * CUSTOMER customerId           OK name account account ...
+ * OPEN customerId type          OK accountNumber
+ * OPEN customerId type amount term
+ * CLOSE customerId accountNumber
+ * DEPOSIT accountNumber amount  OK balance
+ * WITHDRAW accountNumber amount OK balance
+ * BALANCE accountNumber         OK balance
+ * TRANSFER from to amount       OK
+ * PING                          OK PONG
+ * QUIT                          OK BYE, then the connection closes
+ * </pre>
+ * Account types are numbered as in {@link Bank#openAccount(String, int)}.
+ * OPEN takes an opening amount and a term together, the term being ignored
+ * by every account but a CD; an amount alone is a missing argument.
+ * <p>
+ * Every connection gets its own thread, which blocks on the socket. On a
+ * runtime with virtual threads those threads are virtual; otherwise small
+ * platform threads are used. There is no thread pool between connections
+ * and accounts: operations on one account are ordered by the account's own
+ * lock, as they are for any other caller of {@link Bank}.
+ * <p>
+ * The server only listens on the loopback address, so only clients on the
+ * same host can connect. The protocol has no authentication or
+ * encryption; put it behind a proxy that provides them before exposing it.
+ * @author Farhan Abdulla
+ * @version 01.28.2022
+ */
+public class BankServer
+    implements Closeable
+{
+    //~ Fields ................................................................
+    private static final int BACKLOG = 1024;
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    private static final long FIRST_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final Bank bank;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> open;
+    private final AtomicLong accepted;
+    private final AtomicLong requests;
+    private final AtomicLong acceptFailures;
+    private final Thread acceptor;
+    private volatile boolean running;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a server for a bank on a loopback port, with one thread per
+     * connection. The server does not accept connections until it is
+     * started.
+     * @param bank Bank containing the customers to serve
+     * @param port Integer containing the port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public BankServer(Bank bank, int port)
+        throws IOException
+    {
+        this(bank, port, newConnectionExecutor());
+    }
+
+    /**
+     * Represents a server for a bank on a loopback port, running each
+     * connection as a task on the given executor. The executor must be able
+     * to run every open connection at once, and is shut down when the
+     * server closes.
+     * @param bank Bank containing the customers to serve
+     * @param port Integer containing the port, or 0 for any free port
+     * @param connections ExecutorService containing the connection threads
+     * @throws IOException if the port cannot be bound
+     */
+    public BankServer(Bank bank, int port, ExecutorService connections)
+        throws IOException
+    {
+        this.bank = bank;
+        this.serverSocket = new ServerSocket(port, BACKLOG,
+            InetAddress.getLoopbackAddress());
+        this.connections = connections;
+        this.open = ConcurrentHashMap.newKeySet();
+        this.accepted = new AtomicLong();
+        this.requests = new AtomicLong();
+        this.acceptFailures = new AtomicLong();
+        this.acceptor = new Thread(this::acceptLoop, "bank-server-accept");
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs a server for an empty bank until the process is stopped. The
+     * bank's metrics are published over JMX.
+     * @param args Array of Strings containing the port, or nothing for 7070
+     * @throws IOException if the port cannot be bound
+     * @throws JMException if the metrics cannot be published
+     */
+    public static void main(String[] args)
+        throws IOException, JMException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        Bank bank = new Bank();
+        BankMetrics.getDefault().registerMBeans();
+        BankMetrics.registerBank(bank, "main");
+        BankServer server = new BankServer(bank, port);
+        server.start();
+        System.out.println("Bank server listening on port "
+            + server.getPort());
+    }
+
+    /**
+     * Creates an executor that starts a new thread for every task: a
+     * virtual thread when the runtime has them, otherwise a daemon platform
+     * thread with a small stack
+     * @return ExecutorService representing the executor
+     */
+    public static ExecutorService newConnectionExecutor()
+    {
+        try
+        {
+            return (ExecutorService) MethodHandles.publicLookup()
+                .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class))
+                .invoke();
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task ->
+            {
+                Thread thread = new Thread(null, task, "bank-connection-"
+                    + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Cannot create executor", e);
+        }
+    }
+
+    /**
+     * Starts accepting connections
+     */
+    public void start()
+    {
+        this.running = true;
+        this.acceptor.start();
+    }
+
+    /**
+     * Gets the port the server listens on
+     * @return Integer representing the local port
+     */
+    public int getPort()
+    {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of connections currently open
+     * @return Integer representing the open connections
+     */
+    public int getOpenConnections()
+    {
+        return this.open.size();
+    }
+
+    /**
+     * Gets the number of connections accepted since the server started
+     * @return Long representing the accepted connections
+     */
+    public long getAcceptedConnections()
+    {
+        return this.accepted.get();
+    }
+
+    /**
+     * Gets the number of times accepting a connection failed while the
+     * server was running, for example because the process ran out of file
+     * descriptors
+     * @return Long representing the failed accepts
+     */
+    public long getAcceptFailures()
+    {
+        return this.acceptFailures.get();
+    }
+
+    /**
+     * Gets the number of requests answered since the server started
+     * @return Long representing the requests
+     */
+    public long getRequestCount()
+    {
+        return this.requests.get();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and shuts down the
+     * connection executor
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        this.running = false;
+        this.serverSocket.close();
+        for (Socket socket : this.open)
+        {
+            closeQuietly(socket);
+        }
+        this.connections.shutdown();
+    }
+
+    /**
+     * Accepts connections and hands each to its own thread until the server
+     * is closed. When accepting fails while the server is running, which
+     * keeps happening while the process is out of file descriptors, the
+     * failure is counted and the loop waits before trying again, twice as
+     * long after each failure in a row up to a second.
+     */
+    private void acceptLoop()
+    {
+        long backoff = FIRST_BACKOFF_MILLIS;
+        while (this.running)
+        {
+            Socket socket;
+            try
+            {
+                socket = this.serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                if (!this.running)
+                {
+                    return;
+                }
+                this.acceptFailures.incrementAndGet();
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch (InterruptedException interrupted)
+                {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                continue;
+            }
+            backoff = FIRST_BACKOFF_MILLIS;
+            this.accepted.incrementAndGet();
+            this.open.add(socket);
+            try
+            {
+                this.connections.execute(() -> this.serve(socket));
+            }
+            catch (RuntimeException e)
+            {
+                this.open.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Answers requests on one connection until the client quits or
+     * disconnects
+     * @param socket Socket containing the connection
+     */
+    private void serve(Socket socket)
+    {
+        try (Socket s = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                s.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                String reply = this.handle(line);
+                this.requests.incrementAndGet();
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+                if (reply.equals("OK BYE"))
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away or the server is closing
+        }
+        finally
+        {
+            this.open.remove(socket);
+        }
+    }
+
+    /**
+     * Carries out one request
+     * @param line String containing the request line
+     * @return String representing the reply line
+     */
+    String handle(String line)
+    {
+        String[] words = line.trim().split("\\s+");
+        try
+        {
+            switch (words[0].toUpperCase())
+            {
+                case "PING":
+                    return "OK PONG";
+                case "QUIT":
+                    return "OK BYE";
+                case "ADD":
+                    String name = line.trim().substring(3).trim();
+                    if (name.isEmpty())
+                    {
+                        return "ERR missing name";
+                    }
+                    return "OK " + this.bank.addCustomer(name);
+                case "REMOVE":
+                    this.bank.removeCustomer(words[1]);
+                    return "OK";
+                case "CUSTOMER":
+                    return this.describe(words[1]);
+                case "OPEN":
+                    // An amount without a term would otherwise be dropped
+                    if (words.length == 4)
+                    {
+                        return "ERR missing argument";
+                    }
+                    BankAccount account = words.length > 4
+                        ? this.bank.openAccount(words[1],
+                            Integer.parseInt(words[2]),
+                            Double.parseDouble(words[3]),
+                            Integer.parseInt(words[4]))
+                        : this.bank.openAccount(words[1],
+                            Integer.parseInt(words[2]));
+                    return account == null ? "ERR unknown customer"
+                        : "OK " + account.getAccountNumber();
+                case "CLOSE":
+                    return this.bank.closeAccount(words[1],
+                        Integer.parseInt(words[2])) ? "OK"
+                        : "ERR unknown account";
+                case "DEPOSIT":
+                    return this.change(true, Integer.parseInt(words[1]),
+                        words[2]);
+                case "WITHDRAW":
+                    return this.change(false, Integer.parseInt(words[1]),
+                        words[2]);
+                case "BALANCE":
+                    Long balance = this.bank.getBalanceCents(
+                        Integer.parseInt(words[1]));
+                    return balance == null ? "ERR unknown account"
+                        : "OK " + Money.format(balance);
+                case "TRANSFER":
+                    return this.bank.transferFunds(Integer.parseInt(words[1]),
+                        Integer.parseInt(words[2]),
+                        Double.parseDouble(words[3])) ? "OK" : "ERR rejected";
+                default:
+                    return "ERR unknown command";
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            return "ERR missing argument";
+        }
+        catch (NumberFormatException e)
+        {
+            return "ERR bad number";
+        }
+        catch (RuntimeException e)
+        {
+            String message = e.getMessage();
+            return "ERR " + (message != null ? message
+                : e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Deposits into or withdraws from an account and reports the balance
+     * the change left, read before any other change to the account
+     * @param deposit Boolean containing true for a deposit
+     * @param accountNumber Integer containing the account number
+     * @param amount String containing the amount in dollars
+     * @return String representing the reply line
+     */
+    private String change(boolean deposit, int accountNumber, String amount)
+    {
+        if (this.bank.getAccount(accountNumber) == null)
+        {
+            return "ERR unknown account";
+        }
+        long cents = Money.toCents(Double.parseDouble(amount));
+        Long balance = deposit
+            ? this.bank.depositAndGetBalance(accountNumber, cents)
+            : this.bank.withdrawAndGetBalance(accountNumber, cents);
+        return balance != null ? "OK " + Money.format(balance)
+            : "ERR rejected";
+    }
+
+    /**
+     * Describes a customer and their account numbers
+     * @param customerId String containing the customer ID
+     * @return String representing the reply line
+     */
+    private String describe(String customerId)
+    {
+        Customer customer = this.bank.getCustomer(customerId);
+        if (customer == null)
+        {
+            return "ERR unknown customer";
+        }
+        StringBuilder reply = new StringBuilder("OK ");
+        reply.append(customer.getName().replace(' ', '_'));
+        synchronized (this.bank.getCustomerLock(customerId))
+        {
+            for (BankAccount account : customer.getAccounts())
+            {
+                reply.append(' ').append(account.getAccountNumber());
+            }
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Closes a socket, ignoring errors
+     * @param socket Socket to close
+     */
+    private static void closeQuietly(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // Already closed
+        }
+    }
+
+} // End of class
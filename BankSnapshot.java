@@ -0,0 +1,416 @@
+//~ Imports ...............................................................
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a compact binary image of a bank, written and read through a
+ * memory-mapped file. A snapshot holds every customer with their accounts,
+ * including savings deposit lots, CD terms and IRA monthly deposits;
+ * transaction histories are not included.
+ * <p>
+ * The file starts with a header, followed by one record per customer, a
+ * customer index sorted by customer ID and an account index sorted by
+ * account number. Opening a snapshot only maps the file, so a bank can look
+ * customers and accounts up with a binary search and build the objects the
+ * first time they are needed. Snapshots are limited to 2 GB.
+ * @author Farhan Abdulla
+ * @version 01.24.2022
+ */
+public class BankSnapshot
+{
+    //~ Fields ................................................................
+    private static final int MAGIC = 0x424E4B53;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final int customerCount;
+    private final int accountCount;
+    private final int customerIndex;
+    private final int accountIndex;
+    private final boolean[] loaded;
+    private final AtomicInteger unloadedCustomers;
+    private final AtomicInteger unloadedAccounts;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a snapshot mapped into memory
+     * @param buffer ByteBuffer containing the whole snapshot file
+     * @throws IOException if the buffer does not hold a snapshot
+     */
+    private BankSnapshot(ByteBuffer buffer)
+        throws IOException
+    {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a bank snapshot");
+        }
+        if (buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported snapshot version "
+                + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.customerCount = buffer.getInt(8);
+        this.accountCount = buffer.getInt(12);
+        this.customerIndex = buffer.getInt(16);
+        this.accountIndex = buffer.getInt(20);
+        this.loaded = new boolean[this.customerCount];
+        this.unloadedCustomers = new AtomicInteger(this.customerCount);
+        this.unloadedAccounts = new AtomicInteger(this.accountCount);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Maps a snapshot file into memory. The file stays mapped for as long
+     * as the snapshot is reachable.
+     * @param path Path containing the snapshot file
+     * @return BankSnapshot representing the mapped snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static BankSnapshot open(Path path)
+        throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Snapshot is larger than 2 GB");
+            }
+            MappedByteBuffer mapped = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, size);
+            return new BankSnapshot(mapped);
+        }
+    }
+
+    /**
+     * Writes every customer and account of a bank to a snapshot file. The
+     * file is written next to the target and then moved over it, so an
+     * existing snapshot is only replaced by a complete one. The bank should
+     * not be changed while the snapshot is written.
+     * @param bank Bank containing the customers to save
+     * @param path Path containing the snapshot file
+     * @throws IOException if the file cannot be written
+     * @throws ConcurrentModificationException if the bank grew or shrank
+     *  while it was being written, in which case the file is not replaced
+     */
+    public static void write(Bank bank, Path path)
+        throws IOException
+    {
+        List<Customer> customers = new ArrayList<Customer>(
+            bank.getAllCustomers());
+        customers.sort((a, b) -> a.getCustomerId().compareTo(
+            b.getCustomerId()));
+        int count = customers.size();
+        byte[][] ids = new byte[count][];
+        byte[][] names = new byte[count][];
+        long size = HEADER_SIZE;
+        int accounts = 0;
+        for (int i = 0; i < count; i++)
+        {
+            Customer customer = customers.get(i);
+            ids[i] = customer.getCustomerId().getBytes(StandardCharsets.UTF_8);
+            names[i] = customer.getName().getBytes(StandardCharsets.UTF_8);
+            size += 12 + ids[i].length + names[i].length;
+            for (BankAccount account : customer.getAccounts())
+            {
+                size += 1 + ((CheckingAccount) account).getStateSize();
+                accounts++;
+            }
+        }
+        long customerIndex = size;
+        long accountIndex = customerIndex + 4L * count;
+        size = accountIndex + 8L * accounts;
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Snapshot would be larger than 2 GB");
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+            StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE,
+                0, size);
+            out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(accounts)
+                .putInt((int) customerIndex).putInt((int) accountIndex);
+            int[] offsets = new int[count];
+            long[] numbers = new long[accounts];
+            int next = 0;
+            try
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    offsets[i] = out.position();
+                    List<BankAccount> owned = customers.get(i).getAccounts();
+                    out.putInt(ids[i].length).put(ids[i]);
+                    out.putInt(names[i].length).put(names[i]);
+                    out.putInt(owned.size());
+                    for (BankAccount account : owned)
+                    {
+                        out.put((byte) Customer.typeOf(account));
+                        ((CheckingAccount) account).writeState(out);
+                        numbers[next++] =
+                            ((long) account.getAccountNumber() << 32) | i;
+                    }
+                }
+            }
+            catch (BufferOverflowException | ArrayIndexOutOfBoundsException e)
+            {
+                throw new ConcurrentModificationException(
+                    "Bank changed while its snapshot was written");
+            }
+            // The header already points at the indexes, and a short account
+            // index would break the binary search
+            if (out.position() != customerIndex || next != accounts)
+            {
+                throw new ConcurrentModificationException(
+                    "Bank changed while its snapshot was written");
+            }
+            for (int offset : offsets)
+            {
+                out.putInt(offset);
+            }
+            Arrays.sort(numbers, 0, next);
+            for (int i = 0; i < next; i++)
+            {
+                out.putInt((int) (numbers[i] >>> 32)).putInt((int) numbers[i]);
+            }
+            out.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the number of customers in the snapshot
+     * @return Integer representing the customer count
+     */
+    public int getCustomerCount()
+    {
+        return this.customerCount;
+    }
+
+    /**
+     * Gets the number of accounts in the snapshot
+     * @return Integer representing the account count
+     */
+    public int getAccountCount()
+    {
+        return this.accountCount;
+    }
+
+    /**
+     * Gets the number of customers that have not been built yet
+     * @return Integer representing the customers still only in the snapshot
+     */
+    public int getUnloadedCustomerCount()
+    {
+        return this.unloadedCustomers.get();
+    }
+
+    /**
+     * Gets the number of accounts whose owners have not been built yet
+     * @return Integer representing the accounts still only in the snapshot
+     */
+    public int getUnloadedAccountCount()
+    {
+        return this.unloadedAccounts.get();
+    }
+
+    /**
+     * Gets the ID of a customer by their position in the customer index
+     * @param ordinal Integer containing the customer's position
+     * @return String representing the customer ID
+     */
+    public String getCustomerId(int ordinal)
+    {
+        return this.getString(this.getRecordOffset(ordinal));
+    }
+
+    /**
+     * Gets an account number by its position in the account index
+     * @param position Integer containing the account's position
+     * @return Integer representing the account number
+     */
+    public int getAccountNumber(int position)
+    {
+        return this.buffer.getInt(this.accountIndex + position * 8);
+    }
+
+    /**
+     * Finds a customer in the customer index
+     * @param customerId String containing the customer ID
+     * @return Integer representing the customer's position, or -1 if the
+     *  customer is not in the snapshot
+     */
+    public int findCustomer(String customerId)
+    {
+        int low = 0;
+        int high = this.customerCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = this.getCustomerId(mid).compareTo(customerId);
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the owner of an account in the account index
+     * @param accountNumber Integer containing the account number
+     * @return Integer representing the owner's position in the customer
+     *  index, or -1 if the account is not in the snapshot
+     */
+    public int findOwner(int accountNumber)
+    {
+        int low = 0;
+        int high = this.accountCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int number = this.getAccountNumber(mid);
+            if (number < accountNumber)
+            {
+                low = mid + 1;
+            }
+            else if (number > accountNumber)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return this.buffer.getInt(this.accountIndex + mid * 8 + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a customer as taken out of the snapshot, so that they are only
+     * built once. Callers must hold the bank's lock stripe for the
+     * customer's ID.
+     * @param ordinal Integer containing the customer's position
+     * @return Boolean representing true the first time only
+     */
+    boolean claim(int ordinal)
+    {
+        if (this.loaded[ordinal])
+        {
+            return false;
+        }
+        this.loaded[ordinal] = true;
+        this.unloadedCustomers.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Builds a customer and their accounts from the snapshot. The customer
+     * is not yet linked to a bank.
+     * @param ordinal Integer containing the customer's position
+     * @return Customer representing the rebuilt customer
+     */
+    Customer readCustomer(int ordinal)
+    {
+        ByteBuffer in = this.buffer.duplicate();
+        in.position(this.getRecordOffset(ordinal));
+        String id = this.readString(in);
+        String name = this.readString(in);
+        Customer customer = new Customer(id, name);
+        int accounts = in.getInt();
+        this.unloadedAccounts.addAndGet(-accounts);
+        for (int i = 0; i < accounts; i++)
+        {
+            customer.addAccount(readAccount(in.get(), in));
+        }
+        return customer;
+    }
+
+    /**
+     * Builds an account of a type from its saved state
+     * @param type Byte containing the account type number
+     * @param state ByteBuffer containing the saved state at its position
+     * @return BankAccount representing the rebuilt account
+     */
+    private static BankAccount readAccount(byte type, ByteBuffer state)
+    {
+        switch (type)
+        {
+            case 2:
+                return new SavingsAccount(state);
+            case 3:
+                return new MoneyMarketAccount(state);
+            case 4:
+                return new CertificateDepositAccount(state);
+            case 5:
+                return new IndividualRetirementAccount(state);
+            default:
+                return new CheckingAccount(state);
+        }
+    }
+
+    /**
+     * Gets where a customer's record starts
+     * @param ordinal Integer containing the customer's position
+     * @return Integer representing the record's offset in the file
+     */
+    private int getRecordOffset(int ordinal)
+    {
+        return this.buffer.getInt(this.customerIndex + ordinal * 4);
+    }
+
+    /**
+     * Reads a length-prefixed string at an offset without moving the buffer
+     * @param offset Integer containing the offset of the length
+     * @return String representing the decoded string
+     */
+    private String getString(int offset)
+    {
+        ByteBuffer in = this.buffer.duplicate();
+        in.position(offset);
+        return this.readString(in);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string
+     * @param in ByteBuffer containing the string at its position
+     * @return String representing the decoded string
+     */
+    private String readString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+} // End of class
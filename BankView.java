@@ -0,0 +1,137 @@
+//~ Imports ...............................................................
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a bank as it stood at one moment, for reports that need every
+ * customer and account to add up while tellers keep working. A view is
+ * opened with {@link Bank#openView()}, which pins an epoch of the default
+ * {@link VersionClock}: the view sees the customers, accounts and ledger
+ * balances left by every change of that epoch and earlier, and nothing
+ * changed later, so money moving between two accounts is seen either in
+ * both or in neither. Tellers are never held up by an open view; only the
+ * first change to each customer or account after the view was opened keeps
+ * a copy of what it replaced.
+ * <p>
+ * Balances are ledger balances, deposits less withdrawals, as in
+ * {@link BankAggregates}. Customer names are read as they are now. Money
+ * that a {@link ShardedExecutor} has withdrawn but not yet credited on
+ * another shard is in no account. A view should be closed once the report
+ * is done, and must not be opened by a thread holding an account lock.
+ * @author Farhan Abdulla
+ * @version 02.05.2022
+ */
+public final class BankView
+    implements AutoCloseable
+{
+    //~ Fields ................................................................
+    private final VersionClock versions;
+    private final long epoch;
+    private final List<Customer> customers;
+    private boolean closed;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a view of a pinned epoch
+     * @param versions VersionClock containing the pinned epoch
+     * @param epoch Long containing the pinned epoch
+     * @param customers List of Customers containing the customers then
+     */
+    BankView(VersionClock versions, long epoch, List<Customer> customers)
+    {
+        this.versions = versions;
+        this.epoch = epoch;
+        this.customers = Collections.unmodifiableList(customers);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the epoch this view shows
+     * @return Long representing the pinned epoch
+     */
+    public long getEpoch()
+    {
+        return this.epoch;
+    }
+
+    /**
+     * Gets the bank's customers
+     * @return List of Customers representing the customers
+     */
+    public List<Customer> getCustomers()
+    {
+        return this.customers;
+    }
+
+    /**
+     * Gets the accounts a customer held
+     * @param customer Customer containing the customer
+     * @return List of BankAccounts representing the accounts
+     */
+    public List<BankAccount> getAccounts(Customer customer)
+    {
+        return customer.getAccounts(this.epoch);
+    }
+
+    /**
+     * Gets the ledger balance an account had
+     * @param account BankAccount containing the account
+     * @return Long representing the balance in cents
+     */
+    public long getBalanceCents(BankAccount account)
+    {
+        if (account instanceof CheckingAccount)
+        {
+            return ((CheckingAccount) account).getLedgerBalanceCents(
+                this.epoch);
+        }
+        return account.getBalanceCents();
+    }
+
+    /**
+     * Adds up the ledger balances of every account
+     * @return Long representing the total in cents
+     */
+    public long getTotalCents()
+    {
+        long total = 0;
+        for (Customer customer : this.customers)
+        {
+            for (BankAccount account : this.getAccounts(customer))
+            {
+                total += this.getBalanceCents(account);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts every account
+     * @return Long representing the account count
+     */
+    public long getAccountCount()
+    {
+        long count = 0;
+        for (Customer customer : this.customers)
+        {
+            count += this.getAccounts(customer).size();
+        }
+        return count;
+    }
+
+    /**
+     * Lets go of the pinned epoch. Closing a view twice does nothing.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (!this.closed)
+        {
+            this.closed = true;
+            this.versions.unpin();
+        }
+    }
+
+} // End of class
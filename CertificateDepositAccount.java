@@ -1,11 +1,13 @@
 //~ Imports ...............................................................
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a Certificate of Deposit account which grows money over a fixed
  * interest rate, and has a fixed term length of where the money needs to be
- * left in the account
+ * left in the account. Once the term is over the account is flipped to a
+ * matured state, either by the bank's {@link MaturityScheduler} on the day
+ * the term ends or by the first check after it, so the deposit and
+ * withdraw checks on a matured CD only read a flag.
  * @author Farhan Abdulla
  * @version 01.12.2022
  */
@@ -14,7 +16,9 @@ public class CertificateDepositAccount
 {
     //~ Fields ................................................................
     private int termLength;
-    private String endDate;
+    private int endDay;
+    private boolean interestCredited;
+    private volatile boolean matured;
 
     //~ Constructor ...........................................................
 
@@ -58,6 +62,35 @@ public class CertificateDepositAccount
         this.createNewTerm(18);
     }
 
+    /**
+     * Represents a CD opened as part of a batch, with the end of its term
+     * taken from the shared opening dates
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param cents Long containing the opening balance in cents
+     * @param months Integer containing term length
+     */
+    CertificateDepositAccount(OpeningDay opening, int number, long cents,
+        int months)
+    {
+        super(opening, number, cents);
+        this.setInterestRate(1);
+        this.termLength = months;
+        this.endDay = opening.getTermEndDay(months);
+    }
+
+    /**
+     * Recreates a CD account, with its term, from a saved state
+     * @param state ByteBuffer containing the saved state at its position
+     */
+    CertificateDepositAccount(ByteBuffer state)
+    {
+        super(state);
+        this.termLength = state.getInt();
+        this.endDay = state.getInt();
+        this.interestCredited = state.get() != 0;
+    }
+
     //~ Methods ...............................................................
 
     /**
@@ -70,12 +103,21 @@ public class CertificateDepositAccount
     }
 
     /**
-     * Gets the end date of CD term in MM/dd/yy format
+     * Gets the end date of CD term in M/d/yy format
      * @return String representing CD term end date
      */
     public String getEndDate()
     {
-        return this.endDate;
+        return BankClock.format(this.endDay);
+    }
+
+    /**
+     * Gets the end date of CD term
+     * @return Integer representing CD term end date as an epoch day
+     */
+    public int getEndDay()
+    {
+        return this.endDay;
     }
 
     /**
@@ -83,65 +125,164 @@ public class CertificateDepositAccount
      * the new term length.
      * @param newTermLength Integer containing new CD term length
      */
-    public void createNewTerm(int newTermLength)
+    public synchronized void createNewTerm(int newTermLength)
     {
         this.termLength = newTermLength;
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.MONTH, newTermLength);
-        this.endDate = new SimpleDateFormat().format(cal.getTime()).
-            split(",")[0];
+        this.endDay = BankClock.plusMonths(this.getClock().today(), 
+            newTermLength);
+        this.interestCredited = false;
+        this.matured = false;
     }
 
     /**
-     * Checks to see if CD term is over
-     * @return Boolean representing whether CD term has ended is true
+     * Restores the account number and opening day, and measures the term
+     * from the opening day
+     * @param number Integer containing the original account number
+     * @param day Integer containing the original opening epoch day
      */
-    public boolean pastTerm()
+    @Override
+    synchronized void restoreIdentity(int number, int day)
     {
-        int month = this.dateToInt(this.getEndDate())[0];
-        int date = this.dateToInt(this.getEndDate())[1];;
-        int year = this.dateToInt(this.getEndDate())[2];;
-        Calendar today = Calendar.getInstance();
-        Calendar end = Calendar.getInstance();
-        end.set(year, month, date);
-        return (this.getCurrentDate().equals(this.getEndDate()))
-            || today.after(end);
+        super.restoreIdentity(number, day);
+        this.endDay = BankClock.plusMonths(day, this.termLength);
+        this.matured = false;
     }
 
     /**
-     * Adds money to the account balance if and only if the amount is
-     * positive, and account is not under a CD term. Also records a deposit 
-     * in transaction history. 
-     * @param amount Double value representing the amount of money deposited
-     * @return Boolean representing if conditons to deposit were met
+     * Gets the number of bytes {@link #writeState(ByteBuffer)} writes
+     * @return Integer representing the size of the saved state
      */
     @Override
-    public boolean deposit(double amount)
+    int getStateSize()
+    {
+        return super.getStateSize() + 9;
+    }
+
+    /**
+     * Writes the account's state followed by its term
+     * @param out ByteBuffer to write the state into
+     */
+    @Override
+    synchronized void writeState(ByteBuffer out)
+    {
+        super.writeState(out);
+        out.putInt(this.termLength);
+        out.putInt(this.endDay);
+        out.put((byte) (this.interestCredited ? 1 : 0));
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeEffect(ByteBuffer)} writes
+     * @return Integer representing the size of a logged effect
+     */
+    @Override
+    int getEffectSize()
+    {
+        return super.getEffectSize() + 1;
+    }
+
+    /**
+     * Writes the last change followed by whether the term's interest has
+     * been credited
+     * @param out ByteBuffer to write the effect into
+     */
+    @Override
+    synchronized void writeEffect(ByteBuffer out)
+    {
+        super.writeEffect(out);
+        out.put((byte) (this.interestCredited ? 1 : 0));
+    }
+
+    /**
+     * Puts back whether the term's interest has been credited
+     * @param cents Long containing the signed amount moved in cents
+     * @param in ByteBuffer containing the flag at its position
+     */
+    @Override
+    void restoreEffect(long cents, ByteBuffer in)
+    {
+        this.interestCredited = in.get() != 0;
+    }
+
+    /**
+     * Checks to see if CD term is over. The term is over from its end date
+     * onwards. A matured CD only reads its flag; one still in its term
+     * reads the date, in case the term ended before the scheduler got to
+     * it.
+     * @return Boolean representing whether CD term has ended is true
+     */
+    public boolean pastTerm()
     {
-        if (this.pastTerm())
+        if (this.matured)
         {
-            super.deposit(amount);
+            return true;
+        }
+        if (this.getClock().today() >= this.endDay)
+        {
+            this.matured = true;
             return true;
         }
         return false;
     }
 
     /**
-     * Subtracts money from the account balance if and only if the amount
-     * does not put the balance below zero, and if the account is not under a 
-     * CD term. Also records a withdrawal in transaction history.
-     * @param amount Double value representing the amount of money withdrawn
-     * @return Boolean representing if conditions to withdraw were met
+     * Checks whether the account has been flipped to its matured state
+     * for the current term
+     * @return Boolean representing whether the CD has matured
+     */
+    public boolean isMatured()
+    {
+        return this.matured;
+    }
+
+    /**
+     * Flips the account to its matured state. Called by the scheduler with
+     * the account locked, once the term has ended.
+     */
+    void markMatured()
+    {
+        this.matured = true;
+    }
+
+    /**
+     * Checks whether a deposit would be accepted: the amount must be
+     * positive, and account must not be under a CD term.
+     * @param cents Long value representing the amount deposited in cents
+     * @return Boolean representing if conditons to deposit are met
      */
     @Override
-    public boolean withdraw(double amount)
+    public boolean canDepositCents(long cents)
     {
-        if (this.pastTerm())
+        return this.pastTerm() && super.canDepositCents(cents);
+    }
+
+    /**
+     * Checks whether a withdrawal would be accepted: the amount must not put
+     * the balance below zero, and the account must not be under a CD term.
+     * @param cents Long value representing the amount withdrawn in cents
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public synchronized boolean canWithdrawCents(long cents)
+    {
+        return this.pastTerm() && super.canWithdrawCents(cents);
+    }
+
+    /**
+     * Gets why a deposit or withdrawal was refused, which is the term
+     * while the account is under one
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long value representing the amount in cents
+     * @return Reason representing the refusal reason
+     */
+    @Override
+    BankMetrics.Reason getRefusalReason(boolean deposit, long cents)
+    {
+        if (!this.pastTerm())
         {
-            super.withdraw(amount);
-            return true;
+            return BankMetrics.Reason.CD_IN_TERM;
         }
-        return false;
+        return super.getRefusalReason(deposit, cents);
     }
 
     /**
@@ -151,19 +292,50 @@ public class CertificateDepositAccount
     @Override
     public double getAccruedInterest()
     {
-        return this.getBalance() * Math.pow((1 + this.getInterestRate() 
-            / 36500), 365.0 * this.getTermLength() / 12 ) - this.getBalance();
+        double balance = Money.toDollars(this.getBalanceCents());
+        return balance * Math.pow((1 + this.getInterestRate() / 36500),
+            365.0 * this.getTermLength() / 12) - balance;
     }
 
     /**
-     * Credits interest gained from account if term has been past
+     * Credits interest gained from account if term has been past. Interest
+     * is only credited once per term.
      */
     public void creditBalance()
     {
-        if (this.pastTerm())
+        this.creditMaturedInterest();
+    }
+
+    /**
+     * Credits the interest for the term once the term is over, unless it
+     * has already been credited for this term. Interest that rounds to no
+     * cents marks the term credited without a deposit, which would only be
+     * refused and counted as an invalid amount.
+     * @return Long representing the interest credited in cents, or 0 if
+     *  nothing was credited
+     */
+    public synchronized long creditMaturedInterest()
+    {
+        if (this.interestCredited || !this.pastTerm())
+        {
+            return 0;
+        }
+        this.interestCredited = true;
+        long cents = Money.toCents(this.getAccruedInterest());
+        if (cents <= 0)
         {
-            this.deposit(this.getAccruedInterest());
+            return 0;
         }
+        return this.depositCents(cents) ? cents : 0;
+    }
+
+    /**
+     * Checks whether the interest for the current term has been credited
+     * @return Boolean representing whether interest was credited
+     */
+    public synchronized boolean isInterestCredited()
+    {
+        return this.interestCredited;
     }
 
 } // End of class
\ No newline at end of file
@@ -1,12 +1,16 @@
 //~ Imports ...............................................................
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.nio.ByteBuffer;
+import java.time.format.DateTimeParseException;
 
 /**
  * Represents a Checking account. Will contain simple operations
  * such as: Checking balance, deposits, withdrawals, recording transactions,
- * and more.
+ * and more. Balance changes are synchronized on the account itself, which
+ * is also the lock a {@link TransferEngine} takes when moving money.
+ * The balance is kept in whole cents; subclasses override the "Cents"
+ * methods, and the double-based methods convert dollars and delegate.
+ * Dates come from the {@link BankClock} that was the default when the
+ * account was opened, and are stored as epoch days.
  * @author Farhan Abdulla
  * @version 01.06.2022
  */
@@ -14,40 +18,86 @@ public class CheckingAccount
     implements BankAccount
 {
 //~ Fields ................................................................
-    private double balance;
-    private Map<String, String> transactionsByDate;
+    private long balance;
+    private TransactionLedger transactions;
     private int accountNumber;
-    private String openingDate;
+    private int openingDay;
+    private int openingMonthIndex;
     private double interestRate;
+    private final BankClock clock;
+    private BankAggregates aggregates;
+    private int aggregateType;
+    private boolean underMinimum;
+    private long versionEpoch;
+    private long versionedBalance;
+    private long sectionEpoch;
 
 //~ Constructor ...........................................................
     
     /**
      * Represents a checking account. A minimum $25 is 
-     * required to open a checkings account for this bank. An 8-digit 
+     * required to open a checkings account for this bank. A unique 8-digit 
      * account number is also generated.
      * @param balance Double representing opening deposit
      */
     public CheckingAccount(double balance)
     {
-        this.balance = balance;
-        this.transactionsByDate = new HashMap<String, String>();
-        this.openingDate = this.getCurrentDate();
-        this.accountNumber = ThreadLocalRandom.current().
-            nextInt(10000000, 100000000);
+        this.clock = BankClock.getDefault();
+        this.balance = Money.toCents(balance);
+        this.transactions = new TransactionLedger();
+        this.openingDay = this.clock.today();
+        this.openingMonthIndex = this.clock.monthIndex();
+        this.accountNumber = AccountNumberAllocator.getDefault().next();
     }
     /**
      * Represents a checking account. A minimum $25 is 
-     * required to open a checkings account for this bank. An 8-digit 
+     * required to open a checkings account for this bank. A unique 8-digit 
      * account number is also generated.
      */
     public CheckingAccount()
     {
-        this.balance = 25.00;
-        this.transactionsByDate = new HashMap<String, String>();
-        this.openingDate = this.getCurrentDate();
-        this.accountNumber = ThreadLocalRandom.current().
-            nextInt(10000000, 100000000);
+        this.clock = BankClock.getDefault();
+        this.balance = 25 * Money.CENTS_PER_DOLLAR;
+        this.transactions = new TransactionLedger();
+        this.openingDay = this.clock.today();
+        this.openingMonthIndex = this.clock.monthIndex();
+        this.accountNumber = AccountNumberAllocator.getDefault().next();
+    }
+
+    /**
+     * Represents a checking account opened as part of a batch, with an
+     * account number the batch already reserved and the dates it worked
+     * out once for every account
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param cents Long containing the opening deposit in cents
+     */
+    CheckingAccount(OpeningDay opening, int number, long cents)
+    {
+        this.clock = opening.getClock();
+        this.balance = cents;
+        this.transactions = new TransactionLedger();
+        this.openingDay = opening.getDay();
+        this.openingMonthIndex = opening.getMonthIndex();
+        this.accountNumber = number;
+    }
+
+    /**
+     * Recreates a checking account from the state written by 
+     * {@link #writeState(ByteBuffer)}, keeping its account number. No new
+     * number is allocated; the number must already be marked as used. The
+     * transaction history is not part of the state and starts out empty.
+     * @param state ByteBuffer containing the saved state at its position
+     */
+    CheckingAccount(ByteBuffer state)
+    {
+        this.clock = BankClock.getDefault();
+        this.balance = state.getLong();
+        this.accountNumber = state.getInt();
+        this.openingDay = state.getInt();
+        this.openingMonthIndex = BankClock.monthIndex(this.openingDay);
+        this.interestRate = state.getDouble();
+        this.transactions = new TransactionLedger();
     }
 
 //~ Methods ...............................................................
@@ -55,13 +105,134 @@ public class CheckingAccount
     //Account information
     /**
      * Gets the date when the account was first opened. Date is a String in
-     * MM-dd-yy format
+     * M/d/yy format
      * @return String representing the opening date of the account
      */
     @Override
     public String getOpeningDate()
     {
-        return this.openingDate;
+        return BankClock.format(this.openingDay);
+    }
+
+    /**
+     * Gets the day when the account was first opened
+     * @return Integer representing the opening date as an epoch day
+     */
+    public int getOpeningDay()
+    {
+        return this.openingDay;
+    }
+
+    /**
+     * Gets the number of whole calendar months between the opening month and
+     * the current month
+     * @return Integer representing the months the account has been open
+     */
+    public int getMonthsOpen()
+    {
+        return this.clock.monthIndex() - this.openingMonthIndex;
+    }
+
+    /**
+     * Gives a freshly created account the account number and opening day it
+     * had before, when rebuilding a bank from its log or a snapshot. The
+     * number is marked as used so it is never allocated again. Subclasses
+     * recompute any dates that depend on the opening day.
+     * @param number Integer containing the original account number
+     * @param day Integer containing the original opening epoch day
+     */
+    void restoreIdentity(int number, int day)
+    {
+        this.accountNumber = number;
+        this.openingDay = day;
+        this.openingMonthIndex = BankClock.monthIndex(day);
+        AccountNumberAllocator.getDefault().markUsed(number);
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeState(ByteBuffer)} writes
+     * @return Integer representing the size of the saved state
+     */
+    int getStateSize()
+    {
+        return 24;
+    }
+
+    /**
+     * Writes the state needed to recreate this account in a snapshot.
+     * Subclasses write their own fields after the fields of their super
+     * class, in the order their ByteBuffer constructor reads them.
+     * @param out ByteBuffer to write the state into
+     */
+    synchronized void writeState(ByteBuffer out)
+    {
+        out.putLong(this.balance);
+        out.putInt(this.accountNumber);
+        out.putInt(this.openingDay);
+        out.putDouble(this.interestRate);
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeEffect(ByteBuffer)} writes
+     * @return Integer representing the size of a logged effect
+     */
+    int getEffectSize()
+    {
+        return 20;
+    }
+
+    /**
+     * Writes what the last deposit or withdrawal did to this account, for
+     * the bank's log: the transaction as it was recorded, with its time
+     * and the amount actually moved. Subclasses write the state the
+     * change left behind after it. Callers must hold the account lock,
+     * right after the change.
+     * @param out ByteBuffer to write the effect into
+     */
+    synchronized void writeEffect(ByteBuffer out)
+    {
+        int last = this.transactions.size() - 1;
+        out.putLong(this.transactions.getTimestamp(last));
+        out.putInt(this.transactions.getLastDay());
+        out.putLong(this.transactions.getAmountCents(last));
+    }
+
+    /**
+     * Makes a change written by {@link #writeEffect(ByteBuffer)} again,
+     * while rebuilding a bank from its log. None of the account's rules
+     * are checked: the change was accepted when it was made, and is
+     * recorded with its original time.
+     * @param in ByteBuffer containing the effect at its position
+     */
+    synchronized void applyEffect(ByteBuffer in)
+    {
+        long timestamp = in.getLong();
+        int day = in.getInt();
+        long cents = in.getLong();
+        this.restoreEffect(cents, in);
+        this.changeBalance(cents);
+        this.transactions.append(timestamp, day, cents, cents > 0
+            ? TransactionLedger.DEPOSIT : TransactionLedger.WITHDRAWAL);
+    }
+
+    /**
+     * Restores the state a subclass wrote after a logged transaction,
+     * before the balance is changed. A checking account writes none.
+     * @param cents Long containing the signed amount moved in cents
+     * @param in ByteBuffer containing the subclass state at its position
+     */
+    void restoreEffect(long cents, ByteBuffer in)
+    {
+        // Nothing beyond the balance and the transaction
+    }
+
+    /**
+     * Gets the clock this account reads the current date from
+     * @return BankClock representing the account's clock
+     */
+    public BankClock getClock()
+    {
+        return this.clock;
     }
 
     /**
@@ -76,11 +247,21 @@ public class CheckingAccount
     
     //Account operative methods
     /**
-     * Gets the account's balance.
+     * Gets the account's balance
      * @return The balance of the account as a double value
      */
     @Override
     public double getBalance()
+    {
+        return Money.toDollars(this.getBalanceCents());
+    }
+
+    /**
+     * Gets the account's balance in cents.
+     * @return The balance of the account as a long count of cents
+     */
+    @Override
+    public synchronized long getBalanceCents()
     {
         return this.balance;
     }
@@ -92,7 +273,8 @@ public class CheckingAccount
     @Override
     public String checkBalance()
     {
-        return "Your current balance is: $" + this.getBalance();
+        return "Your current balance is: $" 
+            + Money.format(this.getBalanceCents());
     }
 
     /**
@@ -104,12 +286,59 @@ public class CheckingAccount
     @Override
     public boolean deposit(double amount)
     {
-        if (amount > 0)
+        return this.depositCents(Money.toCents(amount));
+    }
+    
+    /**
+     * Subtracts money from the account balance if and only if the amount
+     * does not put the balance below zero. Also records a withdrawal in
+     * transaction history.
+     * @param amount Double value representing the amount of money withdrawn
+     * @return Boolean representing if conditions to withdraw were met
+     */
+    @Override
+    public boolean withdraw(double amount)
+    {
+        return this.withdrawCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether a deposit of this amount would be accepted.
+     * @param amount Double value representing the amount to deposit
+     * @return Boolean representing if conditions to deposit are met
+     */
+    @Override
+    public boolean canDeposit(double amount)
+    {
+        return this.canDepositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether a withdrawal of this amount would be accepted.
+     * @param amount Double value representing the amount to withdraw
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public boolean canWithdraw(double amount)
+    {
+        return this.canWithdrawCents(Money.toCents(amount));
+    }
+
+    /**
+     * Adds money to the account balance if and only if the amount is
+     * positive. Also records a deposit in transaction history
+     * @param cents Long value representing the amount deposited in cents
+     * @return Boolean representing if conditons to deposit were met
+     */
+    @Override
+    public synchronized boolean depositCents(long cents)
+    {
+        if (this.canDepositCents(cents))
         {
-            this.balance += amount;
-            this.addTransaction(true, amount);
+            this.credit(cents);
             return true;
         }
+        BankMetrics.getDefault().recordRefusal(this, true, cents);
         return false;
     }
     
@@ -117,21 +346,245 @@ public class CheckingAccount
      * Subtracts money from the account balance if and only if the amount
      * does not put the balance below zero. Also records a withdrawal in
      * transaction history.
-     * @param amount Double value representing the amount of money withdrawn
+     * @param cents Long value representing the amount withdrawn in cents
      * @return Boolean representing if conditions to withdraw were met
      */
     @Override
-    public boolean withdraw(double amount)
+    public synchronized boolean withdrawCents(long cents)
     {
-        if (this.getBalance() - amount >= 0 && amount > 0)
+        if (this.canWithdrawCents(cents))
         {   
-            this.balance -= amount;
-            this.addTransaction(false, amount);
+            this.debit(cents);
             return true;
         }
+        BankMetrics.getDefault().recordRefusal(this, false, cents);
         return false;
     }
 
+    /**
+     * Checks whether a deposit of this amount would be accepted. Any
+     * positive amount can be deposited into a checking account.
+     * @param cents Long value representing the amount to deposit in cents
+     * @return Boolean representing if conditions to deposit are met
+     */
+    @Override
+    public boolean canDepositCents(long cents)
+    {
+        return cents > 0;
+    }
+
+    /**
+     * Checks whether a withdrawal of this amount would be accepted. The
+     * amount must be positive and must not put the balance below zero.
+     * @param cents Long value representing the amount to withdraw in cents
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public synchronized boolean canWithdrawCents(long cents)
+    {
+        return this.getBalanceCents() - cents >= 0 && cents > 0;
+    }
+
+    /**
+     * Gets why a deposit or withdrawal that was just refused was refused.
+     * Only called on the refusal path, with the account locked; subclasses
+     * with rules of their own check them before falling back to these.
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long value representing the amount in cents
+     * @return Reason representing the refusal reason
+     */
+    BankMetrics.Reason getRefusalReason(boolean deposit, long cents)
+    {
+        if (cents <= 0 || deposit)
+        {
+            return BankMetrics.Reason.INVALID_AMOUNT;
+        }
+        return BankMetrics.Reason.INSUFFICIENT_FUNDS;
+    }
+
+    /**
+     * Adds money to the balance and records the deposit, without checking
+     * any conditions. Callers must hold the account lock.
+     * @param cents Long value representing the amount credited in cents
+     */
+    protected void credit(long cents)
+    {
+        this.changeBalance(cents);
+        this.addTransactionCents(true, cents);
+    }
+
+    /**
+     * Subtracts money from the balance and records the withdrawal, without
+     * checking any conditions. Callers must hold the account lock.
+     * @param cents Long value representing the amount debited in cents
+     */
+    protected void debit(long cents)
+    {
+        this.changeBalance(-cents);
+        this.addTransactionCents(false, cents);
+    }
+
+    /**
+     * Changes the balance inside a write section of the default
+     * {@link VersionClock}: the section of a transfer holding this account,
+     * or one of its own. The first change in a new epoch keeps the balance
+     * it replaces, for reports that pinned an earlier epoch. Callers must
+     * hold the account lock.
+     * @param delta Long containing the signed change in cents
+     */
+    private void changeBalance(long delta)
+    {
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = this.sectionEpoch;
+        boolean own = epoch == 0;
+        if (own)
+        {
+            epoch = versions.enter();
+        }
+        try
+        {
+            if (this.versionEpoch < epoch)
+            {
+                this.versionedBalance = this.balance;
+                this.versionEpoch = epoch;
+            }
+            this.balance += delta;
+            if (this.aggregates != null)
+            {
+                this.reportChange(delta);
+            }
+        }
+        finally
+        {
+            if (own)
+            {
+                versions.exit(epoch);
+            }
+        }
+    }
+
+    /**
+     * Makes every balance change until {@link #endSection()} belong to a
+     * write section the caller entered, so that the changes to all the
+     * accounts of a transfer land in the same epoch. Callers must hold the
+     * account lock until the section ends.
+     * @param epoch Long containing the section's epoch
+     */
+    void beginSection(long epoch)
+    {
+        this.sectionEpoch = epoch;
+    }
+
+    /**
+     * Ends the section begun by {@link #beginSection(long)}
+     */
+    void endSection()
+    {
+        this.sectionEpoch = 0;
+    }
+
+    /**
+     * Gets the ledger balance as it stood at the end of an epoch a report
+     * has pinned
+     * @param epoch Long containing the pinned epoch
+     * @return Long representing the ledger balance in cents
+     */
+    synchronized long getLedgerBalanceCents(long epoch)
+    {
+        return this.versionEpoch <= epoch ? this.balance
+            : this.versionedBalance;
+    }
+
+    /**
+     * Gets the balance as deposited and withdrawn, before any interest a
+     * subclass adds on. Callers must hold the account lock.
+     * @return Long representing the ledger balance in cents
+     */
+    long getLedgerBalanceCents()
+    {
+        return this.balance;
+    }
+
+    /**
+     * Gets the lowest balance the account must keep, which for a checking
+     * account is none
+     * @return Long representing the minimum in cents
+     */
+    long getMinimumBalanceCents()
+    {
+        return 0;
+    }
+
+    /**
+     * Checks whether the balance the account's minimum is enforced on, its
+     * interest included, is below that minimum. Callers must hold the
+     * account lock.
+     * @return Boolean representing true if the account is under its minimum
+     */
+    boolean isUnderMinimum()
+    {
+        long minimum = this.getMinimumBalanceCents();
+        return minimum > 0 && this.getBalanceCents() < minimum;
+    }
+
+    /**
+     * Starts reporting every change of the balance to a bank's totals,
+     * adding the account to them as it stands
+     * @param totals BankAggregates containing the bank's totals
+     */
+    synchronized void attachAggregates(BankAggregates totals)
+    {
+        if (this.aggregates == null)
+        {
+            this.aggregateType = Customer.typeOf(this);
+            this.aggregates = totals;
+            this.underMinimum = this.isUnderMinimum();
+            totals.opened(this.aggregateType, this.balance,
+                this.underMinimum);
+        }
+    }
+
+    /**
+     * Stops reporting balance changes, taking the account off the totals it
+     * was added to
+     */
+    synchronized void detachAggregates()
+    {
+        if (this.aggregates != null)
+        {
+            this.aggregates.closed(this.aggregateType, this.balance,
+                this.underMinimum);
+            this.aggregates = null;
+        }
+    }
+
+    /**
+     * Checks the account against its minimum again and updates the bank's
+     * totals if it has crossed it, as interest can carry a balance over
+     * the minimum without any transaction
+     */
+    synchronized void refreshAggregates()
+    {
+        if (this.aggregates != null)
+        {
+            this.reportChange(0);
+        }
+    }
+
+    /**
+     * Reports a change of the ledger balance to the bank's totals, with
+     * whether the account is now under its minimum. Callers must hold the
+     * account lock, and any deposit lots must already be updated.
+     * @param delta Long containing the signed change in cents
+     */
+    private void reportChange(long delta)
+    {
+        boolean under = this.isUnderMinimum();
+        this.aggregates.changed(this.aggregateType, delta, this.underMinimum,
+            under);
+        this.underMinimum = under;
+    }
+
     /**
      * Updates history of transactions whenever money is deposited
      * or withdrawn from the account. Accepts a boolean parameter; true
@@ -143,22 +596,27 @@ public class CheckingAccount
     @Override
     public void addTransaction(boolean deposit, double amount)
     {
-        String date = this.getCurrentDate();
-        if (deposit && transactionsByDate.containsKey(date))
-        {
-            transactionsByDate.compute(date, (k, v) -> v + ",+" + amount);
-        }
-        else if (!deposit && transactionsByDate.containsKey(date))
-        {
-            transactionsByDate.compute(date, (k, v) -> v + ",-" + amount);
-        }
-        else if (deposit)
+        this.addTransactionCents(deposit, Money.toCents(amount));
+    }
+
+    /**
+     * Updates history of transactions whenever money is deposited
+     * or withdrawn from the account, with the amount given in cents.
+     * @param deposit Boolean representing if money is being deposited
+     * @param cents Contains amount of money deposited or withdrawn in cents
+     */
+    @Override
+    public synchronized void addTransactionCents(boolean deposit, long cents)
+    {
+        if (deposit)
         {
-            transactionsByDate.put(date, "+" + amount);
+            transactions.append(clock.currentTimeMillis(), clock.today(), 
+                cents, TransactionLedger.DEPOSIT);
         }
         else
         {
-            transactionsByDate.put(date, "-" + amount);
+            transactions.append(clock.currentTimeMillis(), clock.today(), 
+                -cents, TransactionLedger.WITHDRAWAL);
         }
     }
 
@@ -168,10 +626,67 @@ public class CheckingAccount
      * @return String representing all transactions made on a Specific day
      */
     @Override
-    public String getTransactionForDay(String date)
+    public synchronized String getTransactionForDay(String date)
     {
+        String day = null;
+        try
+        {
+            day = transactions.renderDay(BankClock.parse(date));
+        }
+        catch (DateTimeParseException e)
+        {
+            // Not a date; there can be no transactions on it
+        }
         return date + "\n" + "-".repeat(10) + "\n" 
-            + transactionsByDate.get(date);
+            + (day == null ? "No transactions" : day);
+    }
+
+    /**
+     * Gets the transactions made from one date to another, both included,
+     * in time order
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @return TransactionCursor representing the transactions
+     * @throws DateTimeParseException if either date cannot be parsed
+     */
+    @Override
+    public TransactionCursor getTransactions(String fromDate, String toDate)
+    {
+        return this.getTransactions(BankClock.parse(fromDate), 
+            BankClock.parse(toDate));
+    }
+
+    /**
+     * Gets the transactions made from one day to another, both included, in
+     * time order. The cursor can be read after the account's lock has been
+     * let go, and does not see transactions made after it was created.
+     * @param fromDay Integer containing the first epoch day
+     * @param toDay Integer containing the last epoch day
+     * @return TransactionCursor representing the transactions
+     */
+    public synchronized TransactionCursor getTransactions(int fromDay, 
+        int toDay)
+    {
+        return transactions.range(fromDay, toDay);
+    }
+
+    /**
+     * Gets one page of the transactions made from one date to another, both
+     * included, in time order
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @param start Integer containing the previous page's next start, or 0
+     *  for the first page
+     * @param pageSize Integer containing the most transactions on the page
+     * @return TransactionPage representing the page
+     * @throws DateTimeParseException if either date cannot be parsed
+     */
+    @Override
+    public synchronized TransactionPage getTransactionPage(String fromDate,
+        String toDate, int start, int pageSize)
+    {
+        return transactions.page(BankClock.parse(fromDate), 
+            BankClock.parse(toDate), start, pageSize);
     }
     
     /**
@@ -197,27 +712,26 @@ public class CheckingAccount
     
     //Account utlities
     /**
-     * Gets the current date in MM/dd/yy format as a String
+     * Gets the current date in M/d/yy format as a String
      * @return String representing current date
      */
     @Override
     public String getCurrentDate()
     {
-        Calendar cal = Calendar.getInstance();
-        return new SimpleDateFormat().format(cal.getTime()).split(",")[0];
+        return this.clock.todayString();
     }
 
     /**
      * Parses the date into its integer components
-     * @param date String containing the date
+     * @param date String containing the date in M/d/yy format
      * @return Array of integers representing month, day, year in that order
      */
     @Override
     public int[] dateToInt(String date)
     {
         String[] str = date.split("/");
-        int[] parts = {Integer.parseInt(str[0]), Integer.parseInt(str[0]), 
-            Integer.parseInt(str[0])};
+        int[] parts = {Integer.parseInt(str[0]), Integer.parseInt(str[1]), 
+            2000 + Integer.parseInt(str[2])};
         return parts;
     }
 
@@ -1,18 +1,30 @@
 //~ Imports ...............................................................
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents an individual account holder. Will hold operations for 
- * opening, closing, and finding an account.
+ * opening, closing, and finding an account. The account list is copied on
+ * every change, so it can be walked while accounts are opened and closed;
+ * the first change in a new {@link VersionClock} epoch also keeps the list
+ * it replaces, for a {@link BankView} of an earlier epoch.
  * @author Farhan Abdulla
  * @version 01.06.2022
  */
 public class Customer 
 {
     //~ Fields ................................................................
-    private String name;
+    private static final TransferEngine TRANSFERS = new TransferEngine();
+
+    private volatile String name;
     private String customerId;
     private List<BankAccount> accounts;
+    private Bank bank;
+    private long joinedEpoch;
+    private volatile long leftEpoch;
+    private long versionEpoch;
+    private BankAccount[] versionedAccounts;
+    private int nameSlot;
 
     //~ Constructor ...........................................................
 
@@ -25,7 +37,8 @@ public class Customer
     {
         this.customerId = customerId;
         this.name = name;
-        this.accounts = new ArrayList<BankAccount>();
+        this.accounts = new CopyOnWriteArrayList<BankAccount>();
+        this.nameSlot = -1;
     }
 
     //~ Methods ...............................................................
@@ -41,12 +54,24 @@ public class Customer
     }
 
     /**
-     * Sets the first and last name of the person
+     * Sets the first and last name of the person. A bank customer is
+     * renamed through the bank, which files them under the new name in its
+     * name search and logs the change.
      * @param newName String containg first and last name of person
+     * @throws IllegalArgumentException if the bank keeps a log and the
+     *  name is too long for it
      */
     public void setName(String newName)
     {
-        this.name = newName;
+        Bank owner = this.bank;
+        if (owner != null)
+        {
+            owner.renameCustomer(this, newName);
+        }
+        else
+        {
+            this.name = newName;
+        }
     }
 
     /**
@@ -74,7 +99,7 @@ public class Customer
      */
     public void openAccount()
     {
-        this.accounts.add(new CheckingAccount());
+        this.addAccount(new CheckingAccount());
     }
 
     /**
@@ -83,7 +108,7 @@ public class Customer
      */
     public void openAccount(double balance)
     {
-        this.accounts.add(new CheckingAccount(balance));
+        this.addAccount(new CheckingAccount(balance));
     }
 
     /**
@@ -100,15 +125,16 @@ public class Customer
                 this.openAccount();
                 break;
             case 2: 
-                this.accounts.add(new SavingsAccount());
+                this.addAccount(new SavingsAccount());
                 break;
             case 3:
-                this.accounts.add(new MoneyMarketAccount());
+                this.addAccount(new MoneyMarketAccount());
                 break;
             case 4:
-                this.accounts.add(new CertificateDepositAccount());
+                this.addAccount(new CertificateDepositAccount());
+                break;
             case 5:
-                this.accounts.add(new IndividualRetirementAccount());
+                this.addAccount(new IndividualRetirementAccount());
                 break;
             default:
                 this.openAccount();
@@ -123,27 +149,130 @@ public class Customer
      * @param balance Double containing opening balance of account
      */
     public void openAccount(int type, double balance, int term)
+    {
+        this.addAccount(createAccount(type, balance, term));
+    }
+
+    /**
+     * Creates a new account of the given type with its default opening
+     * balance, without linking it to anyone. Types are 1 checking,
+     * 2 savings, 3 money market, 4 CD and 5 IRA; any other number makes a
+     * checking account.
+     * @param type Integer containing the type of account to make
+     * @return BankAccount representing the new account
+     */
+    static BankAccount createAccount(int type)
     {
         switch (type)
         {
-            case 1:
-                this.openAccount(balance);
-                break;
             case 2: 
-                this.accounts.add(new SavingsAccount(balance));
-                break;
+                return new SavingsAccount();
             case 3:
-                this.accounts.add(new MoneyMarketAccount(balance));
-                break;
+                return new MoneyMarketAccount();
             case 4:
-                this.accounts.add(new CertificateDepositAccount(balance, term));
-                break;
+                return new CertificateDepositAccount();
             case 5:
-                this.accounts.add(new IndividualRetirementAccount(balance));
-                break;
+                return new IndividualRetirementAccount();
+            default:
+                return new CheckingAccount();
+        }
+    }
+
+    /**
+     * Creates a new account of the given type, without linking it to anyone.
+     * For an IRA the balance is its monthly deposit, and the term is only
+     * used by CDs.
+     * @param type Integer containing the type of account to make
+     * @param balance Double containing opening balance of account
+     * @param term Integer containing the CD term in months
+     * @return BankAccount representing the new account
+     */
+    static BankAccount createAccount(int type, double balance, int term)
+    {
+        switch (type)
+        {
+            case 2: 
+                return new SavingsAccount(balance);
+            case 3:
+                return new MoneyMarketAccount(balance);
+            case 4:
+                return new CertificateDepositAccount(balance, term);
+            case 5:
+                return new IndividualRetirementAccount(balance);
+            default:
+                return new CheckingAccount(balance);
+        }
+    }
+
+    /**
+     * Creates a new account of the given type for a batch, with an account
+     * number the batch reserved and its shared opening dates, without
+     * linking it to anyone. The account is the same as the other
+     * createAccount methods would make on the opening day.
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param type Integer containing the type of account to make
+     * @param amountCents Long containing the opening balance in cents, or
+     *  the monthly deposit for an IRA, or -1 for the type's defaults
+     * @param term Integer containing the CD term in months
+     * @return BankAccount representing the new account
+     */
+    static BankAccount createAccount(OpeningDay opening, int number, 
+        int type, long amountCents, int term)
+    {
+        boolean defaults = amountCents < 0;
+        switch (type)
+        {
+            case 2: 
+                return defaults 
+                    ? new SavingsAccount(opening, number, 
+                        300 * Money.CENTS_PER_DOLLAR, 
+                        25 * Money.CENTS_PER_DOLLAR)
+                    : new SavingsAccount(opening, number, amountCents, 
+                        amountCents);
+            case 3:
+                return new MoneyMarketAccount(opening, number, defaults 
+                    ? 500 * Money.CENTS_PER_DOLLAR : amountCents);
+            case 4:
+                return defaults
+                    ? new CertificateDepositAccount(opening, number,
+                        1000 * Money.CENTS_PER_DOLLAR, 18)
+                    : new CertificateDepositAccount(opening, number,
+                        amountCents, term);
+            case 5:
+                return new IndividualRetirementAccount(opening, number,
+                    defaults ? 300 * Money.CENTS_PER_DOLLAR : amountCents);
             default:
-                this.openAccount(balance);
+                return new CheckingAccount(opening, number, defaults 
+                    ? 25 * Money.CENTS_PER_DOLLAR : amountCents);
+        }
+    }
+
+    /**
+     * Gets the type number of an account, as used by openAccount
+     * @param account BankAccount containing the account
+     * @return Integer representing 1 checking, 2 savings, 3 money market,
+     *  4 CD or 5 IRA
+     */
+    static int typeOf(BankAccount account)
+    {
+        if (account instanceof MoneyMarketAccount)
+        {
+            return 3;
+        }
+        if (account instanceof SavingsAccount)
+        {
+            return 2;
+        }
+        if (account instanceof CertificateDepositAccount)
+        {
+            return 4;
         }
+        if (account instanceof IndividualRetirementAccount)
+        {
+            return 5;
+        }
+        return 1;
     }
 
     /**
@@ -152,7 +281,20 @@ public class Customer
      */
     public void closeAccount(BankAccount account)
     {
-        this.accounts.remove(account);
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = versions.enter();
+        try
+        {
+            this.keepVersion(epoch);
+            if (this.accounts.remove(account) && this.bank != null)
+            {
+                this.bank.unindexAccount(account);
+            }
+        }
+        finally
+        {
+            versions.exit(epoch);
+        }
     }
     
     /**
@@ -161,11 +303,155 @@ public class Customer
      */
     public void closeAccount(int accountNumber)
     {
-        this.accounts.remove(this.getAccount(accountNumber));
+        BankAccount account = this.getAccount(accountNumber);
+        if (account != null)
+        {
+            this.closeAccount(account);
+        }
+    }
+
+    /**
+     * Links a newly created account to this person, and registers it with
+     * the bank's account index if this person is a bank customer
+     * @param account Account object containing the new account
+     */
+    void addAccount(BankAccount account)
+    {
+        VersionClock versions = VersionClock.getDefault();
+        long epoch = versions.enter();
+        try
+        {
+            this.keepVersion(epoch);
+            if (this.bank != null)
+            {
+                this.bank.indexAccount(this, account);
+            }
+            this.accounts.add(account);
+        }
+        finally
+        {
+            versions.exit(epoch);
+        }
+    }
+
+    /**
+     * Gives a person who is not yet a bank customer, and has no accounts,
+     * a batch of newly created accounts in one step. The bank indexes them
+     * when it takes the person on.
+     * @param opened Array of BankAccounts containing the new accounts
+     */
+    void adoptAccounts(BankAccount[] opened)
+    {
+        this.accounts = new CopyOnWriteArrayList<BankAccount>(opened);
+    }
+
+    /**
+     * Keeps the account list as it stands before the first change made in
+     * a new epoch
+     * @param epoch Long containing the epoch of the change
+     */
+    private synchronized void keepVersion(long epoch)
+    {
+        if (this.versionEpoch < epoch)
+        {
+            this.versionedAccounts = this.accounts.toArray(new BankAccount[0]);
+            this.versionEpoch = epoch;
+        }
+    }
+
+    /**
+     * Gets the accounts this person held at the end of an epoch a report
+     * has pinned
+     * @param epoch Long containing the pinned epoch
+     * @return List of BankAccounts representing the accounts then
+     */
+    synchronized List<BankAccount> getAccounts(long epoch)
+    {
+        BankAccount[] held = this.versionEpoch <= epoch
+            ? this.accounts.toArray(new BankAccount[0])
+            : this.versionedAccounts;
+        return Collections.unmodifiableList(Arrays.asList(held));
+    }
+
+    /**
+     * Records the epoch in which this person became a bank customer
+     * @param epoch Long containing the epoch
+     */
+    void setJoinedEpoch(long epoch)
+    {
+        this.joinedEpoch = epoch;
+    }
+
+    /**
+     * Gets the epoch in which this person became a bank customer
+     * @return Long representing the epoch, or 0 if they were built from a
+     *  snapshot or log
+     */
+    long getJoinedEpoch()
+    {
+        return this.joinedEpoch;
+    }
+
+    /**
+     * Records the epoch in which this person stopped being a bank customer
+     * @param epoch Long containing the epoch
+     */
+    void setLeftEpoch(long epoch)
+    {
+        this.leftEpoch = epoch;
+    }
+
+    /**
+     * Gets the epoch in which this person stopped being a bank customer
+     * @return Long representing the epoch, or 0 while they are a customer
+     */
+    long getLeftEpoch()
+    {
+        return this.leftEpoch;
+    }
+
+    /**
+     * Sets the name alone. Called by the bank, which files and logs it.
+     * @param newName String containing the new name
+     */
+    void assignName(String newName)
+    {
+        this.name = newName;
+    }
+
+    /**
+     * Records where this person is filed in a {@link CustomerNameIndex}.
+     * Called by the index with its lock held.
+     * @param slot Integer containing the slot, or -1 once removed
+     */
+    void setNameSlot(int slot)
+    {
+        this.nameSlot = slot;
+    }
+
+    /**
+     * Gets where this person is filed in a {@link CustomerNameIndex}
+     * @return Integer representing the slot, or -1 if not filed
+     */
+    int getNameSlot()
+    {
+        return this.nameSlot;
+    }
+
+    /**
+     * Sets the bank this person is a customer of. Called by the bank when
+     * the customer joins or leaves.
+     * @param newBank Bank object containing the bank, or null
+     */
+    void setBank(Bank newBank)
+    {
+        this.bank = newBank;
     }
 
     /**
-     * Gets all the open accounts under this person
+     * Gets all the open accounts under this person. The list can be walked
+     * while accounts are opened and closed, and a walk sees the accounts
+     * as they were when it began.
      * @return List of Account objects representing all accounts under this person
      */
     public List<BankAccount> getAccounts()
@@ -175,12 +461,21 @@ public class Customer
 
     /**
      * Gets the account linked to the account number or returns null
-     * if no such account exists
+     * if no such account exists. Bank customers are looked up in the
+     * bank's account index instead of scanning their accounts.
      * @param accountNumber Integer containing account number
      * @return Account object representing Account or null
      */
     public BankAccount getAccount(int accountNumber)
     {
+        if (this.bank != null)
+        {
+            if (this.bank.getAccountOwner(accountNumber) == this)
+            {
+                return this.bank.getAccount(accountNumber);
+            }
+            return null;
+        }
         for (BankAccount account : this.getAccounts())
         {
             if (account.getAccountNumber() == accountNumber)
@@ -193,10 +488,10 @@ public class Customer
 
     /**
      * Transfers funds from account 1 to account 2. Process will only
-     * execute if transfer amount does not exceed balance in account 1.
-     * Moving forward, money is withdrawn from account 1 and deposited
-     * into account 2. A boolean value is returned where true indicates
-     * a successful transfer.
+     * execute if account 1 allows the withdrawal and account 2 allows the
+     * deposit. Both accounts are locked for the whole transfer, so money is
+     * never withdrawn without being deposited. A boolean value is returned 
+     * where true indicates a successful transfer.
      * @param acc1 Account object containing account to withdraw funds from
      * @param acc2 Account object containing account to deposit funds into
      * @param amount Double containing amount of money to transfer
@@ -204,13 +499,7 @@ public class Customer
      */
     public boolean transferFunds(BankAccount acc1, BankAccount acc2, double amount)
     {
-        if ((acc1.getBalance() - amount >= 0) && amount > 0 &&
-            acc1.withdraw(amount))
-        {
-            acc2.deposit(amount);
-            return true;
-        }
-        return false;
+        return TRANSFERS.transfer(acc1, acc2, amount);
     }
     
 } // End of class
\ No newline at end of file
@@ -0,0 +1,40 @@
+/**
+ * This interface represents a source of customer IDs for a bank. Every ID a
+ * generator hands out must be unique for that generator.
+ * @author Farhan Abdulla
+ * @version 01.24.2022
+ */
+public interface CustomerIdGenerator
+{
+
+//~ Methods ...............................................................
+
+    /**
+     * Generates the next customer ID
+     * @return String representing a new customer ID
+     */
+    public String next();
+
+    /**
+     * Generates a block of customer IDs at once, for opening many customers
+     * in one go
+     * @param count Integer containing how many IDs to generate
+     * @return Array of Strings representing the new customer IDs
+     */
+    public String[] reserve(int count);
+
+    /**
+     * Tells whether this generator can ever repeat an ID. A bank checks for
+     * an existing customer before using an ID from a generator that can.
+     * @return Boolean representing whether IDs are guaranteed to be unique
+     */
+    public boolean isCollisionFree();
+
+    /**
+     * Makes sure an ID that was handed out earlier, for example before the
+     * bank was restarted, is never handed out again
+     * @param customerId String containing a previously used ID
+     */
+    public void markUsed(String customerId);
+
+} // End of class
@@ -0,0 +1,1039 @@
+//~ Imports ...............................................................
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Finds customers by name without scanning them all. Names are split into
+ * words, which are lower-cased and stripped of accents and punctuation, so
+ * "Abdulla, F" is the words "abdulla" and "f". Every distinct word is kept
+ * once, in alphabetical order, with the customers whose name has it; every
+ * word is also listed under each of its trigrams (three-letter runs, with
+ * the start and end of the word marked) for finding words that are spelled
+ * a little differently. Each customer in turn keeps the words they are
+ * filed under, so a candidate is checked without splitting their name
+ * again, and a customer is taken out of a word's list in one step however
+ * many others share the word.
+ * <p>
+ * A prefix search finds the customers with a name word starting with each
+ * query word. It walks the customers of the query word that starts the
+ * fewest names, its matching words in alphabetical order so that an exact
+ * word comes first, and stops once it has enough. A similar search scores
+ * the dictionary words that share trigrams with each query word, then
+ * ranks the customers holding the best ones by how closely their whole
+ * name matches, stopping once no customer left could beat those found.
+ * Both only look at customers holding the words that matched, however many
+ * customers there are.
+ * <p>
+ * A rename only has to tell the index which customer changed: the index
+ * takes them out of the words they were filed under and files them under
+ * their name as it is then, so renames racing each other or a removal
+ * still leave the customer filed under their latest name. A word that no
+ * name has any more is dropped from the dictionary and its trigrams, and
+ * its id is given to the next new word, so renames and removals do not
+ * grow the index. Searches share a read lock, and adding, removing and
+ * renaming are serialized.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class CustomerNameIndex
+{
+    //~ Fields ................................................................
+    private static final double MIN_SIMILARITY = 0.4;
+    private static final int CANDIDATE_LIMIT = 1024;
+
+    private final StampedLock lock;
+    private final NavigableMap<String, Word> words;
+    private final Map<Long, IntList> trigrams;
+    private final List<Word> wordsById;
+    private final IntList freeWordIds;
+    private byte[] gramsById;
+    private Customer[] customers;
+    private Word[][] filedUnder;
+    private int[][] positions;
+    private final IntList freeSlots;
+    private int size;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty index
+     */
+    public CustomerNameIndex()
+    {
+        this.lock = new StampedLock();
+        this.words = new TreeMap<String, Word>();
+        this.trigrams = new HashMap<Long, IntList>();
+        this.wordsById = new ArrayList<Word>();
+        this.freeWordIds = new IntList();
+        this.gramsById = new byte[64];
+        this.customers = new Customer[64];
+        this.filedUnder = new Word[64][];
+        this.positions = new int[64][];
+        this.freeSlots = new IntList();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Adds a customer under their current name. A customer already in the
+     * index is left as it is.
+     * @param customer Customer containing the customer
+     */
+    public void add(Customer customer)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            if (customer.getNameSlot() < 0)
+            {
+                this.file(customer, split(customer.getName()));
+            }
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds a batch of customers under their current names. The names are
+     * split into words on the common fork-join pool first, and the
+     * customers are then filed under one write lock, so a search sees
+     * either none of the batch or all of it. Customers already in the index
+     * are left as they are.
+     * @param batch Array of Customers containing the customers
+     */
+    public void addAll(Customer[] batch)
+    {
+        String[][] texts = new String[batch.length][];
+        Arrays.parallelSetAll(texts, i -> split(batch[i].getName()));
+        long stamp = this.lock.writeLock();
+        try
+        {
+            int needed = this.size + batch.length;
+            if (needed > this.customers.length)
+            {
+                int capacity = Integer.highestOneBit(needed - 1) << 1;
+                this.customers = Arrays.copyOf(this.customers, capacity);
+                this.filedUnder = Arrays.copyOf(this.filedUnder, capacity);
+                this.positions = Arrays.copyOf(this.positions, capacity);
+            }
+            for (int i = 0; i < batch.length; i++)
+            {
+                if (batch[i].getNameSlot() < 0)
+                {
+                    this.file(batch[i], texts[i]);
+                }
+            }
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a customer. A customer not in the index is ignored.
+     * @param customer Customer containing the customer
+     */
+    public void remove(Customer customer)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            int slot = customer.getNameSlot();
+            if (slot < 0)
+            {
+                return;
+            }
+            Word[] filed = this.filedUnder[slot];
+            this.unlink(slot);
+            this.prune(filed);
+            this.customers[slot] = null;
+            customer.setNameSlot(-1);
+            this.freeSlots.add(slot);
+            this.size--;
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Files a customer under their current name instead of the one they
+     * were indexed under. A customer not in the index is ignored.
+     * @param customer Customer containing the renamed customer
+     */
+    public void update(Customer customer)
+    {
+        long stamp = this.lock.writeLock();
+        try
+        {
+            int slot = customer.getNameSlot();
+            if (slot < 0)
+            {
+                return;
+            }
+            Word[] filed = this.filedUnder[slot];
+            this.unlink(slot);
+            this.link(slot, split(customer.getName()));
+            this.prune(filed);
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of customers in the index
+     * @return Integer representing the customer count
+     */
+    public int size()
+    {
+        long stamp = this.lock.readLock();
+        try
+        {
+            return this.size;
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of distinct words customers are filed under
+     * @return Integer representing the dictionary size
+     */
+    int getWordCount()
+    {
+        long stamp = this.lock.readLock();
+        try
+        {
+            return this.words.size();
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Finds customers with a name word starting with each word of the
+     * query, ignoring case, accents and punctuation
+     * @param query String containing the start of the name, such as
+     *  "Abdulla, F"
+     * @param limit Integer containing the most customers to return
+     * @return List of Customers representing the matches
+     */
+    public List<Customer> findByPrefix(String query, int limit)
+    {
+        String[] wanted = split(query);
+        List<Customer> found = new ArrayList<Customer>();
+        if (wanted.length == 0 || limit <= 0)
+        {
+            return found;
+        }
+        long stamp = this.lock.readLock();
+        try
+        {
+            Collection<Word> driver = null;
+            long cheapest = Long.MAX_VALUE;
+            for (String text : wanted)
+            {
+                Collection<Word> matching = this.words.subMap(text, true,
+                    text + Character.MAX_VALUE, false).values();
+                long held = countHolders(matching, cheapest);
+                if (held < cheapest)
+                {
+                    cheapest = held;
+                    driver = matching;
+                }
+            }
+            // A name with two words starting with the driver is met twice
+            IntCounter seen = new IntCounter();
+            for (Word word : driver)
+            {
+                for (int i = 0; i < word.size; i++)
+                {
+                    int slot = word.slots[i];
+                    if (seen.increment(slot + 1) == 1
+                        && hasPrefixes(this.filedUnder[slot], wanted))
+                    {
+                        found.add(this.customers[slot]);
+                        if (found.size() == limit)
+                        {
+                            return found;
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Finds the customers whose names are spelled most like the query,
+     * ignoring case, accents, punctuation and word order. Each query word
+     * of three letters or more is matched to the name word sharing the
+     * most trigrams with it, and shorter ones, usually initials, to a name
+     * word they start; a name scores the average of its matches, from 0 to
+     * 1. Only customers holding a word close to the query word whose close
+     * words are held by the fewest customers are looked at, closest words
+     * first, and at most about a thousand of them. A query of initials alone
+     * is a prefix search.
+     * @param query String containing the name to look for
+     * @param limit Integer containing the most customers to return
+     * @return List of Customers representing the matches, best first
+     */
+    public List<Customer> findSimilar(String query, int limit)
+    {
+        String[] wanted = split(query);
+        int longest = 0;
+        for (String text : wanted)
+        {
+            longest = Math.max(longest, text.length());
+        }
+        if (longest < 3)
+        {
+            return this.findByPrefix(query, limit);
+        }
+        List<Customer> found = new ArrayList<Customer>();
+        if (limit <= 0)
+        {
+            return found;
+        }
+        long stamp = this.lock.readLock();
+        try
+        {
+            Closeness[] similarity = new Closeness[wanted.length];
+            long cheapest = Long.MAX_VALUE;
+            int driver = -1;
+            for (int i = 0; i < wanted.length; i++)
+            {
+                if (wanted[i].length() < 3)
+                {
+                    continue;
+                }
+                similarity[i] = this.closenessTo(wanted[i]);
+                if (similarity[i].held < cheapest)
+                {
+                    cheapest = similarity[i].held;
+                    driver = i;
+                }
+            }
+            Closeness close = similarity[driver];
+            close.sort(this.wordsById);
+            PriorityQueue<Match> best = new PriorityQueue<Match>(
+                Math.min(limit, CANDIDATE_LIMIT) + 1);
+            IntCounter seen = new IntCounter();
+            search:
+            for (int n = 0; n < close.near.length; n++)
+            {
+                Word word = close.near[n];
+                // Customers reached from here match the driver no better
+                double bound = (close.nearDice[n] + wanted.length - 1)
+                    / wanted.length;
+                for (int i = 0; i < word.size; i++)
+                {
+                    if (seen.size >= CANDIDATE_LIMIT || (best.size() == limit
+                        && best.peek().score >= bound))
+                    {
+                        break search;
+                    }
+                    int slot = word.slots[i];
+                    if (seen.increment(slot + 1) > 1)
+                    {
+                        continue;
+                    }
+                    double score = score(wanted, similarity,
+                        this.filedUnder[slot]);
+                    if (score >= MIN_SIMILARITY)
+                    {
+                        best.add(new Match(this.customers[slot], score));
+                        if (best.size() > limit)
+                        {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+            while (!best.isEmpty())
+            {
+                found.add(best.poll().customer);
+            }
+            Collections.reverse(found);
+            return found;
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Counts the trigrams each dictionary word shares with a word. Callers
+     * must hold the lock.
+     * @param text String containing the normalized word
+     * @return Closeness representing the shared counts
+     */
+    private Closeness closenessTo(String text)
+    {
+        long[] grams = trigramsOf(text);
+        IntList[] lists = new IntList[grams.length];
+        int total = 0;
+        for (int g = 0; g < grams.length; g++)
+        {
+            lists[g] = this.trigrams.get(grams[g]);
+            total += lists[g] == null ? 0 : lists[g].size;
+        }
+        IntCounter shared = new IntCounter(total);
+        for (IntList ids : lists)
+        {
+            for (int i = 0; ids != null && i < ids.size; i++)
+            {
+                shared.increment(ids.values[i]);
+            }
+        }
+        return new Closeness(grams.length, shared, this.wordsById,
+            this.gramsById);
+    }
+
+    /**
+     * Gives a customer a free slot and files it under the words of their
+     * name. Callers must hold the write lock.
+     * @param customer Customer containing the customer, not yet in the
+     *  index
+     * @param texts Array of Strings containing the name split into words
+     */
+    private void file(Customer customer, String[] texts)
+    {
+        int slot;
+        if (this.freeSlots.size > 0)
+        {
+            slot = this.freeSlots.values[--this.freeSlots.size];
+        }
+        else
+        {
+            slot = this.size;
+            if (slot == this.customers.length)
+            {
+                this.customers = Arrays.copyOf(this.customers, slot * 2);
+                this.filedUnder = Arrays.copyOf(this.filedUnder, slot * 2);
+                this.positions = Arrays.copyOf(this.positions, slot * 2);
+            }
+        }
+        this.size++;
+        this.customers[slot] = customer;
+        customer.setNameSlot(slot);
+        this.link(slot, texts);
+    }
+
+    /**
+     * Files a slot under the words of a name. Callers must hold the write
+     * lock.
+     * @param slot Integer containing the customer's slot
+     * @param texts Array of Strings containing the name split into words
+     */
+    private void link(int slot, String[] texts)
+    {
+        Word[] filed = new Word[texts.length];
+        int[] at = new int[texts.length];
+        int count = 0;
+        for (String text : texts)
+        {
+            Word word = this.wordFor(text);
+            // A name with the same word twice is filed under it once
+            if (!Arrays.asList(filed).subList(0, count).contains(word))
+            {
+                filed[count] = word;
+                at[count++] = word.add(slot);
+            }
+        }
+        this.filedUnder[slot] = Arrays.copyOf(filed, count);
+        this.positions[slot] = Arrays.copyOf(at, count);
+    }
+
+    /**
+     * Takes a slot out of the words it is filed under. Each word's last
+     * slot is moved into the gap, and its position updated. Callers must
+     * hold the write lock.
+     * @param slot Integer containing the customer's slot
+     */
+    private void unlink(int slot)
+    {
+        Word[] filed = this.filedUnder[slot];
+        int[] at = this.positions[slot];
+        for (int k = 0; k < filed.length; k++)
+        {
+            Word word = filed[k];
+            int moved = word.slots[--word.size];
+            if (at[k] != word.size)
+            {
+                word.slots[at[k]] = moved;
+                Word[] movedFiled = this.filedUnder[moved];
+                for (int j = 0; j < movedFiled.length; j++)
+                {
+                    if (movedFiled[j] == word)
+                    {
+                        this.positions[moved][j] = at[k];
+                    }
+                }
+            }
+        }
+        this.filedUnder[slot] = null;
+        this.positions[slot] = null;
+    }
+
+    /**
+     * Drops the words that no customer is filed under any more from the
+     * dictionary and their trigrams, freeing their ids. Callers must hold
+     * the write lock.
+     * @param filed Array of Words containing the words a slot was filed
+     *  under before it was unlinked
+     */
+    private void prune(Word[] filed)
+    {
+        for (Word word : filed)
+        {
+            if (word.size > 0)
+            {
+                continue;
+            }
+            this.words.remove(word.text);
+            for (long gram : trigramsOf(word.text))
+            {
+                IntList ids = this.trigrams.get(gram);
+                ids.remove(word.id);
+                if (ids.size == 0)
+                {
+                    this.trigrams.remove(gram);
+                }
+            }
+            this.wordsById.set(word.id - 1, null);
+            this.freeWordIds.add(word.id);
+        }
+    }
+
+    /**
+     * Gets the entry for a word, adding it to the dictionary and its
+     * trigrams if it is new. Callers must hold the write lock.
+     * @param text String containing the normalized word
+     * @return Word representing the entry
+     */
+    private Word wordFor(String text)
+    {
+        Word word = this.words.get(text);
+        if (word == null)
+        {
+            long[] grams = trigramsOf(text);
+            // Ids start at 1 so that 0 can mark an empty counter slot
+            int id;
+            if (this.freeWordIds.size > 0)
+            {
+                id = this.freeWordIds.values[--this.freeWordIds.size];
+                word = new Word(text, id, grams.length);
+                this.wordsById.set(id - 1, word);
+            }
+            else
+            {
+                id = this.wordsById.size() + 1;
+                word = new Word(text, id, grams.length);
+                this.wordsById.add(word);
+            }
+            this.words.put(text, word);
+            if (id == this.gramsById.length)
+            {
+                this.gramsById = Arrays.copyOf(this.gramsById, id * 2);
+            }
+            // Kept apart from the words so that scoring them stays in cache
+            this.gramsById[id] = (byte) Math.min(grams.length, 127);
+            for (long gram : grams)
+            {
+                this.trigrams.computeIfAbsent(gram, g -> new IntList())
+                    .add(id);
+            }
+        }
+        return word;
+    }
+
+    /**
+     * Splits a name into normalized words: lower case, without accents,
+     * and broken at anything that is not a letter or digit
+     * @param name String containing the name
+     * @return Array of Strings representing the words, possibly empty
+     */
+    static String[] split(String name)
+    {
+        if (name == null)
+        {
+            return new String[0];
+        }
+        String plain = name;
+        for (int i = 0; i < name.length(); i++)
+        {
+            // Plain ASCII, the usual case, has no accents to take apart
+            if (name.charAt(i) >= 0x80)
+            {
+                plain = Normalizer.normalize(name, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        plain = plain.toLowerCase(Locale.ROOT);
+        List<String> parts = new ArrayList<String>(3);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= plain.length(); i++)
+        {
+            char c = i < plain.length() ? plain.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c))
+            {
+                sb.append(c);
+            }
+            else if (Character.getType(c) != Character.NON_SPACING_MARK
+                && sb.length() > 0)
+            {
+                parts.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        return parts.toArray(new String[0]);
+    }
+
+    /**
+     * Counts the customers holding some words, stopping early once the
+     * count passes a cap. A customer holding two of the words is counted
+     * twice.
+     * @param matching Collection of Words containing the words
+     * @param cap Long containing the count past which to stop
+     * @return Long representing the count, or a number above the cap
+     */
+    private static long countHolders(Collection<Word> matching, long cap)
+    {
+        long held = 0;
+        for (Word word : matching)
+        {
+            held += word.size;
+            if (held > cap)
+            {
+                break;
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Checks that every query word starts some word of a name
+     * @param filed Array of Words containing the name's words
+     * @param wanted Array of Strings containing the query words
+     * @return Boolean representing true if every query word matched
+     */
+    private static boolean hasPrefixes(Word[] filed, String[] wanted)
+    {
+        for (String prefix : wanted)
+        {
+            boolean matched = false;
+            for (Word word : filed)
+            {
+                if (word.text.startsWith(prefix))
+                {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scores how closely a name matches the query words
+     * @param wanted Array of Strings containing the query words
+     * @param similarity Array of Closenesses containing, for each query
+     *  word of three letters or more, its closeness to dictionary words
+     * @param filed Array of Words containing the name's words
+     * @return Double representing the average match from 0 to 1
+     */
+    private static double score(String[] wanted, Closeness[] similarity,
+        Word[] filed)
+    {
+        double total = 0;
+        for (int i = 0; i < wanted.length; i++)
+        {
+            double best = 0;
+            for (Word word : filed)
+            {
+                if (similarity[i] == null)
+                {
+                    best = word.text.startsWith(wanted[i]) ? 1 : best;
+                }
+                else
+                {
+                    best = Math.max(best, similarity[i].to(word));
+                }
+            }
+            total += best;
+        }
+        return total / wanted.length;
+    }
+
+    /**
+     * Gets the distinct trigrams of a word, with its start and end marked
+     * so that short words and word edges count, each packed into a long
+     * @param text String containing the normalized word
+     * @return Array of longs representing the trigrams, sorted
+     */
+    private static long[] trigramsOf(String text)
+    {
+        String padded = "^" + text + "$";
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++)
+        {
+            grams[i] = ((long) padded.charAt(i) << 32)
+                | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++)
+        {
+            if (i == 0 || grams[i] != grams[i - 1])
+            {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents one distinct word and the slots of the customers whose
+     * name has it, in no particular order
+     */
+    private static final class Word
+    {
+        private final String text;
+        private final int id;
+        private final int grams;
+        private int[] slots = new int[2];
+        private int size;
+
+        /**
+         * Represents a word with no customers yet
+         * @param text String containing the normalized word
+         * @param id Integer containing the word's id, from 1
+         * @param grams Integer containing the number of trigrams it has
+         */
+        private Word(String text, int id, int grams)
+        {
+            this.text = text;
+            this.id = id;
+            this.grams = grams;
+        }
+
+        /**
+         * Adds a customer's slot
+         * @param slot Integer containing the slot
+         * @return Integer representing where the slot was put
+         */
+        private int add(int slot)
+        {
+            if (this.size == this.slots.length)
+            {
+                this.slots = Arrays.copyOf(this.slots, this.size * 2);
+            }
+            this.slots[this.size] = slot;
+            return this.size++;
+        }
+    }
+
+    /**
+     * Represents how close each dictionary word is to one query word: the
+     * number of trigrams they share, kept by word id, and the words held
+     * by a customer that are similar enough, sorted closest first only if
+     * the search walks them
+     */
+    private static final class Closeness
+    {
+        private final int grams;
+        private final IntCounter shared;
+        private final long[] keys;
+        private int count;
+        private long held;
+        private Word[] near;
+        private double[] nearDice;
+
+        /**
+         * Represents the shared trigram counts of a query word, and picks
+         * out its similar words
+         * @param grams Integer containing the query word's trigram count
+         * @param shared IntCounter containing the counts by word id
+         * @param wordsById List of Words containing the words by id less 1
+         * @param gramsById Array of bytes containing each word's trigram
+         *  count by id
+         */
+        private Closeness(int grams, IntCounter shared, List<Word> wordsById,
+            byte[] gramsById)
+        {
+            this.grams = grams;
+            this.shared = shared;
+            // Sorted as longs: the distance from 1 above, the id below
+            this.keys = new long[shared.size];
+            // Even a one-trigram word needs this many in common
+            double least = MIN_SIMILARITY * (grams + 1) / 2;
+            for (int i = 0; i < shared.keys.length; i++)
+            {
+                int id = shared.keys[i];
+                if (id == 0 || shared.counts[i] < least)
+                {
+                    continue;
+                }
+                double dice = 2.0 * shared.counts[i] / (grams + gramsById[id]);
+                int holders = dice >= MIN_SIMILARITY
+                    ? wordsById.get(id - 1).size : 0;
+                if (holders > 0)
+                {
+                    this.keys[this.count++] = (long) ((1 - dice) * 1e9) << 32
+                        | id;
+                    this.held += holders;
+                }
+            }
+        }
+
+        /**
+         * Sorts the similar words closest first, into near and nearDice
+         * @param wordsById List of Words containing the words by id less 1
+         */
+        private void sort(List<Word> wordsById)
+        {
+            Arrays.sort(this.keys, 0, this.count);
+            this.near = new Word[this.count];
+            this.nearDice = new double[this.count];
+            for (int i = 0; i < this.count; i++)
+            {
+                this.near[i] = wordsById.get((int) this.keys[i] - 1);
+                this.nearDice[i] = 1 - (this.keys[i] >>> 32) / 1e9;
+            }
+        }
+
+        /**
+         * Gets the trigram similarity of a word to the query word: the
+         * Dice coefficient, shared trigrams over their average count
+         * @param word Word containing the dictionary word
+         * @return Double representing the similarity, or 0 if it is below
+         *  the least that counts as similar
+         */
+        private double to(Word word)
+        {
+            double dice = 2.0 * this.shared.get(word.id)
+                / (this.grams + word.grams);
+            return dice >= MIN_SIMILARITY ? dice : 0;
+        }
+    }
+
+    /**
+     * Represents a customer found by a similar search and their score,
+     * ordered by score so that the worst of the best is polled first
+     */
+    private static final class Match
+        implements Comparable<Match>
+    {
+        private final Customer customer;
+        private final double score;
+
+        /**
+         * Represents a scored customer
+         * @param customer Customer containing the customer
+         * @param score Double containing the score
+         */
+        private Match(Customer customer, double score)
+        {
+            this.customer = customer;
+            this.score = score;
+        }
+
+        /**
+         * Orders matches by score, lowest first
+         * @param other Match containing the match to compare with
+         * @return Integer representing the comparison
+         */
+        @Override
+        public int compareTo(Match other)
+        {
+            return Double.compare(this.score, other.score);
+        }
+    }
+
+    /**
+     * Represents a growable list of ints
+     */
+    private static final class IntList
+    {
+        private int[] values = new int[4];
+        private int size;
+
+        /**
+         * Appends a value
+         * @param value Integer containing the value
+         */
+        private void add(int value)
+        {
+            if (this.size == this.values.length)
+            {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        /**
+         * Removes one occurrence of a value, moving the last value into
+         * its place
+         * @param value Integer containing the value
+         */
+        private void remove(int value)
+        {
+            for (int i = 0; i < this.size; i++)
+            {
+                if (this.values[i] == value)
+                {
+                    this.values[i] = this.values[--this.size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Represents counts kept for positive int keys, in an open-addressing
+     * table that grows as keys are added
+     */
+    private static final class IntCounter
+    {
+        private int[] keys;
+        private int[] counts;
+        private int size;
+
+        /**
+         * Represents an empty counter
+         */
+        private IntCounter()
+        {
+            this(32);
+        }
+
+        /**
+         * Represents an empty counter with room for some keys
+         * @param expected Integer containing the number of keys expected
+         */
+        private IntCounter(int expected)
+        {
+            int capacity = Integer.highestOneBit(Math.max(32, expected) * 2)
+                << 1;
+            this.keys = new int[capacity];
+            this.counts = new int[capacity];
+        }
+
+        /**
+         * Gets the count of a key
+         * @param key Integer containing the key, which must be positive
+         * @return Integer representing the count, 0 if never incremented
+         */
+        private int get(int key)
+        {
+            int mask = this.keys.length - 1;
+            int i = home(key, this.keys.length);
+            while (this.keys[i] != 0)
+            {
+                if (this.keys[i] == key)
+                {
+                    return this.counts[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return 0;
+        }
+
+        /**
+         * Adds one to the count of a key
+         * @param key Integer containing the key, which must be positive
+         * @return Integer representing the key's new count
+         */
+        private int increment(int key)
+        {
+            if ((this.size + 1) * 2 > this.keys.length)
+            {
+                this.grow();
+            }
+            int mask = this.keys.length - 1;
+            int i = home(key, this.keys.length);
+            while (this.keys[i] != 0 && this.keys[i] != key)
+            {
+                i = (i + 1) & mask;
+            }
+            if (this.keys[i] == 0)
+            {
+                this.keys[i] = key;
+                this.size++;
+            }
+            return ++this.counts[i];
+        }
+
+        /**
+         * Doubles the table, putting every key back
+         */
+        private void grow()
+        {
+            int[] oldKeys = this.keys;
+            int[] oldCounts = this.counts;
+            this.keys = new int[oldKeys.length * 2];
+            this.counts = new int[oldKeys.length * 2];
+            int mask = this.keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++)
+            {
+                if (oldKeys[j] != 0)
+                {
+                    int i = home(oldKeys[j], this.keys.length);
+                    while (this.keys[i] != 0)
+                    {
+                        i = (i + 1) & mask;
+                    }
+                    this.keys[i] = oldKeys[j];
+                    this.counts[i] = oldCounts[j];
+                }
+            }
+        }
+
+        /**
+         * Gets the slot a key is first looked for in, from the top bits of
+         * the key times the golden ratio, which spreads out runs of ids
+         * @param key Integer containing the key
+         * @param capacity Integer containing the table size, a power of 2
+         * @return Integer representing the slot
+         */
+        private static int home(int key, int capacity)
+        {
+            return (key * 0x9E3779B9)
+                >>> Integer.numberOfLeadingZeros(capacity - 1);
+        }
+    }
+
+} // End of class
@@ -0,0 +1,208 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+
+/**
+ * Resets the withdraw cycles of a bank's savings and money market accounts
+ * on the day each cycle ends. Every account is kept in a timing wheel: a
+ * ring of one slot per day, each holding the account numbers whose cycle
+ * ends that day, so that moving to a new day only touches the accounts that
+ * are due. Slots hold plain int arrays, four bytes per account plus room
+ * to grow, so ten million accounts take about 64 MB.
+ * <p>
+ * A cycle lasts one month, well inside the 64 days the wheel covers, so
+ * each slot normally holds only the accounts due on one day; an account
+ * whose cycle ends further out is looked at when its slot comes round and
+ * put back until it is due. Closed accounts are dropped when their slot
+ * comes round.
+ * <p>
+ * {@link Bank} adds every savings and money market account to its
+ * scheduler when the account is indexed, and {@link EndOfDayBatch} moves
+ * the scheduler to the current day. Adding accounts is safe from any thread
+ * while the scheduler is moving; only the slot being added to is locked.
+ * @author Farhan Abdulla
+ * @version 02.01.2022
+ */
+public class CycleScheduler
+{
+    //~ Fields ................................................................
+    private static final int WHEEL_DAYS = 64;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Bank bank;
+    private final BankClock clock;
+    private final Slot[] slots;
+    private volatile int lastDay;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a scheduler for the accounts of a bank, reading the date
+     * from the default clock. Today's slot has not been processed yet.
+     * @param bank Bank containing the accounts
+     */
+    public CycleScheduler(Bank bank)
+    {
+        this.bank = bank;
+        this.clock = BankClock.getDefault();
+        this.slots = new Slot[WHEEL_DAYS];
+        for (int i = 0; i < WHEEL_DAYS; i++)
+        {
+            this.slots[i] = new Slot();
+        }
+        this.lastDay = this.clock.today() - 1;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Adds an account to the wheel on the day its current cycle ends. An
+     * account whose cycle has already ended is due on the next day the
+     * scheduler processes.
+     * @param account SavingsAccount containing the account
+     */
+    public void schedule(SavingsAccount account)
+    {
+        this.schedule(account.getAccountNumber(), account.getEndDay());
+    }
+
+    /**
+     * Adds an account number to the wheel on a day
+     * @param accountNumber Integer containing the account number
+     * @param endDay Integer containing the epoch day the cycle ends
+     */
+    void schedule(int accountNumber, int endDay)
+    {
+        while (true)
+        {
+            int due = Math.max(endDay, this.lastDay + 1);
+            Slot slot = this.slots[Math.floorMod(due, WHEEL_DAYS)];
+            synchronized (slot)
+            {
+                // The day may have been processed since it was picked
+                if (this.lastDay < due)
+                {
+                    slot.add(accountNumber);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes every day up to today, starting a new cycle for each
+     * account whose cycle has ended and putting it back on the wheel at
+     * the end of its new cycle
+     * @return Integer representing the number of cycles reset
+     */
+    public synchronized int advance()
+    {
+        int today = this.clock.today();
+        int resets = 0;
+        int from = Math.max(this.lastDay + 1, today - WHEEL_DAYS + 1);
+        for (int day = from; day <= today; day++)
+        {
+            Slot slot = this.slots[Math.floorMod(day, WHEEL_DAYS)];
+            int[] due;
+            int count;
+            synchronized (slot)
+            {
+                this.lastDay = day;
+                due = slot.numbers;
+                count = slot.size;
+                slot.clear();
+            }
+            for (int i = 0; i < count; i++)
+            {
+                resets += this.process(due[i]);
+            }
+        }
+        return resets;
+    }
+
+    /**
+     * Resets one account's cycle if it has ended and puts the account back
+     * on the wheel
+     * @param accountNumber Integer containing the account number
+     * @return Integer representing 1 if the cycle was reset, otherwise 0
+     */
+    private int process(int accountNumber)
+    {
+        BankAccount account = this.bank.getAccount(accountNumber);
+        if (!(account instanceof SavingsAccount))
+        {
+            return 0;
+        }
+        SavingsAccount savings = (SavingsAccount) account;
+        int reset;
+        int endDay;
+        synchronized (savings)
+        {
+            reset = savings.rollCycle() ? 1 : 0;
+            endDay = savings.getEndDay();
+        }
+        this.schedule(accountNumber, endDay);
+        return reset;
+    }
+
+    /**
+     * Gets the last day that has been processed
+     * @return Integer representing the epoch day
+     */
+    public int getLastDay()
+    {
+        return this.lastDay;
+    }
+
+    /**
+     * Gets the number of entries on the wheel, including closed accounts
+     * that have not been dropped yet
+     * @return Long representing the scheduled count
+     */
+    public long getScheduledCount()
+    {
+        long total = 0;
+        for (Slot slot : this.slots)
+        {
+            synchronized (slot)
+            {
+                total += slot.size;
+            }
+        }
+        return total;
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents the account numbers due on one day of the wheel. Guarded
+     * by its own lock.
+     */
+    private static final class Slot
+    {
+        private int[] numbers = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Appends an account number, growing the array when it is full
+         * @param accountNumber Integer containing the account number
+         */
+        private void add(int accountNumber)
+        {
+            if (this.size == this.numbers.length)
+            {
+                this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+            }
+            this.numbers[this.size++] = accountNumber;
+        }
+
+        /**
+         * Empties the slot, handing its array over to the caller
+         */
+        private void clear()
+        {
+            this.numbers = new int[INITIAL_CAPACITY];
+            this.size = 0;
+        }
+    }
+
+} // End of class
@@ -0,0 +1,366 @@
+//~ Imports ...............................................................
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the end-of-day work for every account of a bank in one parallel
+ * pass: matured CDs have their interest credited, IRA valuations are
+ * brought up to date and totalled, and every account checks again whether
+ * interest has carried it over its minimum balance, for the bank's
+ * {@link BankAggregates}. Customers are split into slices that a
+ * fork-join pool works through, and progress is reported as slices finish.
+ * Savings and money market accounts whose withdraw cycle has ended start a
+ * new cycle through the bank's {@link CycleScheduler}, and CDs whose term
+ * has ended are marked matured through its {@link MaturityScheduler}; both
+ * only visit the accounts that are due, and run before the pass begins.
+ * <p>
+ * Each account is updated under its own lock, so the batch can run while
+ * tellers keep using the bank. Interest is credited through
+ * {@link Bank#creditMaturedInterest}, which logs it like any deposit.
+ * Running it twice on the same day changes nothing the second time.
+ * @author Farhan Abdulla
+ * @version 01.26.2022
+ */
+public class EndOfDayBatch
+{
+    //~ Fields ................................................................
+    private static final int SLICE_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final AtomicLong processed;
+    private volatile long total;
+    private volatile ProgressListener listener;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an end-of-day batch that runs on the common fork-join pool
+     */
+    public EndOfDayBatch()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Represents an end-of-day batch that runs on the given pool. The
+     * pool's parallelism sets how many cores the batch uses.
+     * @param pool ForkJoinPool containing the worker threads
+     */
+    public EndOfDayBatch(ForkJoinPool pool)
+    {
+        this.pool = pool;
+        this.processed = new AtomicLong();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Sets the listener told about progress while the batch runs
+     * @param newListener ProgressListener containing the listener, or null
+     */
+    public void setProgressListener(ProgressListener newListener)
+    {
+        this.listener = newListener;
+    }
+
+    /**
+     * Runs the end-of-day work for every customer of a bank and waits for
+     * it to finish
+     * @param bank Bank containing the customers
+     * @return Report representing what the batch did
+     */
+    public Report run(Bank bank)
+    {
+        long start = System.nanoTime();
+        Customer[] customers = bank.getAllCustomers().toArray(new Customer[0]);
+        this.processed.set(0);
+        this.total = customers.length;
+        int cyclesRolled = bank.getCycleScheduler().advance();
+        bank.getMaturityScheduler().advance();
+        Report report = this.pool.invoke(new Slice(bank, customers, 0,
+            customers.length));
+        report.cyclesRolled = cyclesRolled;
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Gets the number of customers processed by the current or last run
+     * @return Long representing the processed customers
+     */
+    public long getProcessedCustomers()
+    {
+        return this.processed.get();
+    }
+
+    /**
+     * Gets the number of customers in the current or last run
+     * @return Long representing the customers to process
+     */
+    public long getTotalCustomers()
+    {
+        return this.total;
+    }
+
+    /**
+     * Gets how far the current or last run has got
+     * @return Double representing the processed fraction from 0 to 1
+     */
+    public double getProgress()
+    {
+        long all = this.total;
+        return all == 0 ? 1 : (double) this.processed.get() / all;
+    }
+
+    /**
+     * Runs the end-of-day work for one account
+     * @param bank Bank containing the account, which logs any credit
+     * @param account BankAccount containing the account
+     * @param report Report collecting the results
+     */
+    private static void process(Bank bank, BankAccount account,
+        Report report)
+    {
+        report.accounts++;
+        if (account instanceof CheckingAccount)
+        {
+            ((CheckingAccount) account).refreshAggregates();
+        }
+        if (account instanceof CertificateDepositAccount)
+        {
+            long posted = bank.creditMaturedInterest(
+                (CertificateDepositAccount) account);
+            if (posted > 0)
+            {
+                report.certificatesCredited++;
+                report.interestPostedCents += posted;
+            }
+        }
+        else if (account instanceof IndividualRetirementAccount)
+        {
+            report.retirementValuationCents += account.getBalanceCents();
+        }
+    }
+
+    /**
+     * Counts finished customers and tells the listener
+     * @param done Integer containing the customers just finished
+     */
+    private void advance(int done)
+    {
+        long now = this.processed.addAndGet(done);
+        ProgressListener current = this.listener;
+        if (current != null)
+        {
+            current.progress(now, this.total);
+        }
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Receives progress updates from a running batch. Updates come from the
+     * pool's worker threads, possibly several at once.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Called each time a slice of customers is finished
+         * @param processed Long containing the customers processed so far
+         * @param total Long containing the customers in this run
+         */
+        void progress(long processed, long total);
+    }
+
+    /**
+     * Represents what one end-of-day run did
+     */
+    public static final class Report
+    {
+        private long customers;
+        private long accounts;
+        private long certificatesCredited;
+        private long interestPostedCents;
+        private long cyclesRolled;
+        private long retirementValuationCents;
+        private long elapsedNanos;
+
+        /**
+         * Adds the counts of another part of the run to this one
+         * @param other Report containing the other part
+         * @return Report representing this report
+         */
+        private Report add(Report other)
+        {
+            this.customers += other.customers;
+            this.accounts += other.accounts;
+            this.certificatesCredited += other.certificatesCredited;
+            this.interestPostedCents += other.interestPostedCents;
+            this.cyclesRolled += other.cyclesRolled;
+            this.retirementValuationCents += other.retirementValuationCents;
+            return this;
+        }
+
+        /**
+         * Gets the number of customers processed
+         * @return Long representing the customer count
+         */
+        public long getCustomers()
+        {
+            return this.customers;
+        }
+
+        /**
+         * Gets the number of accounts processed
+         * @return Long representing the account count
+         */
+        public long getAccounts()
+        {
+            return this.accounts;
+        }
+
+        /**
+         * Gets the number of CDs that had their interest credited
+         * @return Long representing the credited CD count
+         */
+        public long getCertificatesCredited()
+        {
+            return this.certificatesCredited;
+        }
+
+        /**
+         * Gets the total CD interest credited
+         * @return Long representing the interest in cents
+         */
+        public long getInterestPostedCents()
+        {
+            return this.interestPostedCents;
+        }
+
+        /**
+         * Gets the number of savings and money market accounts that started
+         * a new withdraw cycle
+         * @return Long representing the rolled cycle count
+         */
+        public long getCyclesRolled()
+        {
+            return this.cyclesRolled;
+        }
+
+        /**
+         * Gets the total valuation of all IRAs
+         * @return Long representing the valuation in cents
+         */
+        public long getRetirementValuationCents()
+        {
+            return this.retirementValuationCents;
+        }
+
+        /**
+         * Gets how long the run took
+         * @return Long representing the run time in nanoseconds
+         */
+        public long getElapsedNanos()
+        {
+            return this.elapsedNanos;
+        }
+
+        /**
+         * Gets the throughput of the run
+         * @return Double representing accounts processed per second
+         */
+        public double getAccountsPerSecond()
+        {
+            return this.elapsedNanos == 0 ? 0
+                : this.accounts * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * Describes the run
+         * @return String representing the counts and throughput
+         */
+        @Override
+        public String toString()
+        {
+            return "customers=" + this.customers + " accounts=" + this.accounts
+                + " cdsCredited=" + this.certificatesCredited
+                + " interestPosted=" + Money.format(this.interestPostedCents)
+                + " cyclesRolled=" + this.cyclesRolled
+                + " iraValuation="
+                + Money.format(this.retirementValuationCents)
+                + String.format(" accounts/s=%.0f",
+                    this.getAccountsPerSecond());
+        }
+    }
+
+    /**
+     * Processes a range of customers, splitting it in half until it is
+     * small enough to do directly
+     */
+    private final class Slice
+        extends RecursiveTask<Report>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Bank bank;
+        private final transient Customer[] customers;
+        private final int from;
+        private final int to;
+
+        /**
+         * Represents a range of customers to process
+         * @param bank Bank containing the customers
+         * @param customers Array of Customers containing every customer
+         * @param from Integer containing the first index of the range
+         * @param to Integer containing the index after the range
+         */
+        private Slice(Bank bank, Customer[] customers, int from, int to)
+        {
+            this.bank = bank;
+            this.customers = customers;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Processes the range, in parallel if it is large
+         * @return Report representing the work done on the range
+         */
+        @Override
+        protected Report compute()
+        {
+            if (this.to - this.from > SLICE_SIZE)
+            {
+                int mid = (this.from + this.to) >>> 1;
+                Slice left = new Slice(this.bank, this.customers, this.from,
+                    mid);
+                left.fork();
+                Report right = new Slice(this.bank, this.customers, mid,
+                    this.to).compute();
+                return right.add(left.join());
+            }
+            Report report = new Report();
+            for (int i = this.from; i < this.to; i++)
+            {
+                Customer customer = this.customers[i];
+                BankAccount[] accounts;
+                synchronized (this.bank.getCustomerLock(
+                    customer.getCustomerId()))
+                {
+                    List<BankAccount> owned = customer.getAccounts();
+                    accounts = owned.toArray(new BankAccount[0]);
+                }
+                for (BankAccount account : accounts)
+                {
+                    process(this.bank, account, report);
+                }
+                report.customers++;
+            }
+            advance(this.to - this.from);
+            return report;
+        }
+    }
+
+} // End of class
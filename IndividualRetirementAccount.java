@@ -1,5 +1,6 @@
 //~ Imports ...............................................................
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
 import java.util.Calendar;
 
 /**
@@ -13,9 +14,13 @@ public class IndividualRetirementAccount
     extends CheckingAccount
 {
     //~ Fields ................................................................
-    private Calendar fiveYears;
-    private String endDate;
-    private double monthlyDeposit;
+    private static final long MONTHLY_DEPOSIT_CAP = 
+        500 * Money.CENTS_PER_DOLLAR;
+
+    private int termEndDay;
+    private long monthlyDeposit;
+    private int valuationPeriod;
+    private double valuation;
     //~ Constructor ...........................................................
 
     /**
@@ -27,9 +32,7 @@ public class IndividualRetirementAccount
     {
         super();
         this.setInterestRate(7);
-        this.fiveYears = Calendar.getInstance();
-        this.fiveYears.set(Calendar.YEAR, 5);
-        this.endDate = this.getDate(fiveYears);
+        this.termEndDay = BankClock.plusMonths(this.getOpeningDay(), 60);
         this.setMonthlyDeposit(monthlyDeposit);
     }
 
@@ -41,12 +44,41 @@ public class IndividualRetirementAccount
     {
         super();
         this.setInterestRate(7);
-        this.fiveYears = Calendar.getInstance();
-        this.fiveYears.set(Calendar.YEAR, 5);
-        this.endDate = this.getDate(fiveYears);
+        this.termEndDay = BankClock.plusMonths(this.getOpeningDay(), 60);
         this.setMonthlyDeposit(300);
     }
 
+    /**
+     * Represents a Roth IRA opened as part of a batch, with the end of its
+     * term taken from the shared opening dates. It opens with $25, as
+     * every IRA does.
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param monthlyDepositCents Long containing the monthly deposit in
+     *  cents
+     */
+    IndividualRetirementAccount(OpeningDay opening, int number,
+        long monthlyDepositCents)
+    {
+        super(opening, number, 25 * Money.CENTS_PER_DOLLAR);
+        this.setInterestRate(7);
+        this.termEndDay = opening.getRetirementEndDay();
+        this.setMonthlyDepositCents(monthlyDepositCents);
+    }
+
+    /**
+     * Recreates an IRA from a saved state. The five year term is measured
+     * from the restored opening day.
+     * @param state ByteBuffer containing the saved state at its position
+     */
+    IndividualRetirementAccount(ByteBuffer state)
+    {
+        super(state);
+        this.monthlyDeposit = state.getLong();
+        this.termEndDay = BankClock.plusMonths(this.getOpeningDay(), 60);
+        this.valuationPeriod = -1;
+    }
+
     //~ Methods ...............................................................
     
     /**
@@ -54,6 +86,15 @@ public class IndividualRetirementAccount
      * @return Double representing the monthly deposit
      */
     public double getMonthlyDeposit()
+    {
+        return Money.toDollars(this.getMonthlyDepositCents());
+    }
+
+    /**
+     * Gets the monthly deposit of the account in cents
+     * @return Long representing the monthly deposit in cents
+     */
+    public synchronized long getMonthlyDepositCents()
     {
         return this.monthlyDeposit;
     }
@@ -65,24 +106,93 @@ public class IndividualRetirementAccount
      */
     public void setMonthlyDeposit(double amount)
     {
-        if (amount > 500)
+        this.setMonthlyDepositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Sets the monthly deposit of the account in cents. Cannot exceed $500 to
+     * stay under yearly cap
+     * @param cents Long containing the monthly deposit in cents
+     */
+    public synchronized void setMonthlyDepositCents(long cents)
+    {
+        if (cents > MONTHLY_DEPOSIT_CAP)
         {
-            monthlyDeposit = 500;
+            monthlyDeposit = MONTHLY_DEPOSIT_CAP;
         }
         else
         {
-            this.monthlyDeposit = amount;
+            this.monthlyDeposit = cents;
         }
+        this.valuationPeriod = -1;
+    }
+
+    /**
+     * Sets the annual interest rate of this account, and discards the cached
+     * valuation
+     * @param newRate Double containing the interest rate
+     */
+    @Override
+    public synchronized void setInterestRate(double newRate)
+    {
+        super.setInterestRate(newRate);
+        this.valuationPeriod = -1;
     }
 
     /**
-     * Gets the date from calendar object in MM/dd/yy format
+     * Gets the date from calendar object in M/d/yy format
      * @param cal Calendar object containing the calendar date
      * @return String representing the date retrieved
      */
     public String getDate(Calendar cal)
     {
-        return new SimpleDateFormat().format(cal.getTime()).split(",")[0];
+        return LocalDate.of(cal.get(Calendar.YEAR), 
+            cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH))
+            .format(BankClock.DATE_FORMAT);
+    }
+
+    /**
+     * Gets the date the 5 year term ends in M/d/yy format
+     * @return String representing the end of the 5 year term
+     */
+    public String getEndDate()
+    {
+        return BankClock.format(this.termEndDay);
+    }
+
+    /**
+     * Restores the account number and opening day, and measures the five
+     * year term from the opening day
+     * @param number Integer containing the original account number
+     * @param day Integer containing the original opening epoch day
+     */
+    @Override
+    synchronized void restoreIdentity(int number, int day)
+    {
+        super.restoreIdentity(number, day);
+        this.termEndDay = BankClock.plusMonths(day, 60);
+        this.valuationPeriod = -1;
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeState(ByteBuffer)} writes
+     * @return Integer representing the size of the saved state
+     */
+    @Override
+    int getStateSize()
+    {
+        return super.getStateSize() + 8;
+    }
+
+    /**
+     * Writes the account's state followed by its monthly deposit
+     * @param out ByteBuffer to write the state into
+     */
+    @Override
+    synchronized void writeState(ByteBuffer out)
+    {
+        super.writeState(out);
+        out.putLong(this.monthlyDeposit);
     }
 
     /**
@@ -92,9 +202,7 @@ public class IndividualRetirementAccount
      */
     public boolean pastTerm()
     {
-        Calendar today = Calendar.getInstance();
-        return (this.getDate(today).equals(this.endDate))
-            || today.after(this.fiveYears);
+        return this.getClock().today() >= this.termEndDay;
     }
 
     /**
@@ -106,32 +214,129 @@ public class IndividualRetirementAccount
      * @return Boolean representing if conditions to withdraw were met
      */
     @Override
-    public boolean withdraw(double amount)
+    public synchronized boolean withdrawCents(long cents)
     {
-        if (pastTerm() && this.getBalance() - amount >= 0 && amount > 0)
+        if (this.canWithdrawCents(cents))
         {
-            super.withdraw(amount);
+            this.debit(this.getWithdrawChargeCents(cents));
+            if (!this.pastTerm())
+            {
+                BankMetrics.getDefault().record(
+                    BankMetrics.Reason.IRA_EARLY_WITHDRAWAL_PENALTY);
+            }
             return true;
         }
-        else if (this.getBalance() - amount >= 0 && amount > 0)
+        BankMetrics.getDefault().recordRefusal(this, false, cents);
+        return false;
+    }
+
+    /**
+     * Checks whether a withdrawal would be accepted. The amount, including
+     * the early-withdrawal penalty if one applies, must not put the balance 
+     * below zero.
+     * @param cents Long value representing the amount withdrawn in cents
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public synchronized boolean canWithdrawCents(long cents)
+    {
+        return cents > 0
+            && this.getBalanceCents() - this.getWithdrawChargeCents(cents) >= 0;
+    }
+
+    /**
+     * Gets the amount actually taken out of the account for a withdrawal,
+     * which includes a 10% penalty within the first five years.
+     * @param amount Double value representing the amount of money withdrawn
+     * @return Double representing the amount charged to the account
+     */
+    public double getWithdrawCharge(double amount)
+    {
+        return Money.toDollars(this.getWithdrawChargeCents(
+            Money.toCents(amount)));
+    }
+
+    /**
+     * Gets the amount in cents actually taken out of the account for a
+     * withdrawal, which includes a 10% penalty (rounded to the nearest cent)
+     * within the first five years.
+     * @param cents Long value representing the amount withdrawn in cents
+     * @return Long representing the amount charged to the account in cents
+     */
+    public long getWithdrawChargeCents(long cents)
+    {
+        if (this.pastTerm())
         {
-            super.withdraw(amount * 1.1);
-            return true;
+            return cents;
         }
-        return false;
+        return cents + (cents + 5) / 10;
     }
 
     /**
      * Gets the accumalated appreciated balance of the IRA
-     * @return Double representing the balance of the account
+     * @return Long representing the balance of the account in cents
      */
     @Override
-    public double getBalance()
+    public long getBalanceCents()
+    {
+        return Money.toCents(this.getValuation());
+    }
+
+    /**
+     * Gets the accumalated appreciated balance of the IRA in dollars, before
+     * rounding to cents. Every monthly deposit grows by the same monthly
+     * factor g, so the balance after n months is the geometric series
+     * deposit * (g + g^2 + ... + g^n) = deposit * g * (g^n - 1) / (g - 1).
+     * The result is cached until the period, rate or monthly deposit changes.
+     * @return Double representing the valuation of the account
+     */
+    public synchronized double getValuation()
+    {
+        int period = this.getPeriod();
+        if (period != this.valuationPeriod)
+        {
+            this.valuation = this.getValuation(period);
+            this.valuationPeriod = period;
+        }
+        return this.valuation;
+    }
+
+    /**
+     * Computes the closed-form valuation of the IRA after a number of months
+     * @param period Integer containing the number of monthly deposits made
+     * @return Double representing the valuation in dollars
+     */
+    private double getValuation(int period)
+    {
+        if (period <= 0)
+        {
+            return 0;
+        }
+        double monthlyDeposit = Money.toDollars(this.monthlyDeposit);
+        double base = 1 + getInterestRate() / 36500;
+        double monthly = Math.pow(base, 365.0 / 12);
+        if (monthly == 1)
+        {
+            return monthlyDeposit * period;
+        }
+        return monthlyDeposit * monthly 
+            * (Math.pow(base, 365.0 * period / 12) - 1) / (monthly - 1);
+    }
+
+    /**
+     * Gets the accumalated appreciated balance of the IRA by adding up every
+     * monthly deposit. Gives the same result as {@link #getValuation()} up to
+     * floating point rounding, and can be used to verify it.
+     * @return Double representing the valuation of the account
+     */
+    public synchronized double recomputeValuation()
     {
+        double monthlyDeposit = Money.toDollars(this.monthlyDeposit);
         double sum = 0;
-        for (int i = 0; i < this.getPeriod(); i++)
+        int months = this.getPeriod();
+        for (int i = 0; i < months; i++)
         {
-            int period = getPeriod() - i;
+            int period = months - i;
             sum += monthlyDeposit * Math.pow(1 + getInterestRate() / 36500,
                 365.0 * period / 12);
         }
@@ -145,11 +350,7 @@ public class IndividualRetirementAccount
      */
     public int getPeriod()
     {
-        int initialMonth = this.dateToInt(this.getOpeningDate())[0];
-        int initialYear = this.dateToInt(this.getOpeningDate())[2];
-        int finalMonth = this.dateToInt(this.getCurrentDate())[0];
-        int finalYear = this.dateToInt(this.getCurrentDate())[2];
-        return ((finalYear - initialYear) * 12) + (finalMonth - initialMonth);
+        return this.getMonthsOpen();
     }
 
 } // End of class
\ No newline at end of file
@@ -0,0 +1,230 @@
+//~ Imports ...............................................................
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Represents a histogram of latencies in nanoseconds, in the style of an
+ * HDR histogram: values below 64 are counted exactly, and every power of
+ * two above that is split into 32 equal buckets, so a recorded value is
+ * off by at most about 3%. Values up to about an hour fit; longer ones are
+ * counted in the last bucket.
+ * <p>
+ * Recording is one array increment and never allocates. The counts are
+ * kept in several stripes chosen by thread, so threads recording at the
+ * same time rarely touch the same cache line. Reading the histogram adds
+ * up the stripes, so a reading taken while values are being recorded may
+ * miss the latest few.
+ * @author Farhan Abdulla
+ * @version 01.30.2022
+ */
+public class LatencyHistogram
+{
+    //~ Fields ................................................................
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 42;
+    private static final int BUCKETS =
+        (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray counts;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty histogram
+     */
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(STRIPES * BUCKETS);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Records one latency
+     * @param nanos Long containing the latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        this.counts.getAndIncrement(stripe * BUCKETS + bucketOf(nanos));
+    }
+
+    /**
+     * Gets the number of latencies recorded
+     * @return Long representing the count
+     */
+    public long getCount()
+    {
+        long total = 0;
+        for (long count : this.merge())
+        {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the latency that a fraction of the recorded latencies are at or
+     * below, rounded up to the top of its bucket
+     * @param fraction Double containing the percentile from 0 to 1
+     * @return Long representing the latency in nanoseconds, or 0 if nothing
+     *  was recorded
+     */
+    public long getValueAtPercentile(double fraction)
+    {
+        long[] merged = this.merge();
+        long total = 0;
+        for (long count : merged)
+        {
+            total += count;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += merged[i];
+            if (seen >= rank)
+            {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * Gets the largest latency recorded, rounded up to the top of its
+     * bucket
+     * @return Long representing the latency in nanoseconds, or 0
+     */
+    public long getMax()
+    {
+        long[] merged = this.merge();
+        for (int i = BUCKETS - 1; i >= 0; i--)
+        {
+            if (merged[i] != 0)
+            {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the average latency, taking each bucket at its midpoint
+     * @return Double representing the mean in nanoseconds, or 0
+     */
+    public double getMean()
+    {
+        long[] merged = this.merge();
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            total += merged[i];
+            sum += merged[i]
+                * ((lowestValueOf(i) + highestValueOf(i)) / 2.0);
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Clears every count. Latencies recorded while the reset runs may be
+     * kept or dropped.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < this.counts.length(); i++)
+        {
+            this.counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Adds up the stripes into one count per bucket
+     * @return Array of longs representing the count of every bucket
+     */
+    private long[] merge()
+    {
+        long[] merged = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++)
+        {
+            int base = stripe * BUCKETS;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                merged[i] += this.counts.get(base + i);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the bucket a latency is counted in
+     * @param nanos Long containing the latency in nanoseconds
+     * @return Integer representing the bucket index
+     */
+    private static int bucketOf(long nanos)
+    {
+        if (nanos < 2 * SUB_BUCKETS)
+        {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude > MAX_MAGNITUDE)
+        {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+    }
+
+    /**
+     * Gets the smallest latency counted in a bucket
+     * @param bucket Integer containing the bucket index
+     * @return Long representing the latency in nanoseconds
+     */
+    private static long lowestValueOf(int bucket)
+    {
+        if (bucket < 2 * SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Gets the largest latency counted in a bucket
+     * @param bucket Integer containing the bucket index
+     * @return Long representing the latency in nanoseconds
+     */
+    private static long highestValueOf(int bucket)
+    {
+        if (bucket < 2 * SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return lowestValueOf(bucket) + (1L << shift) - 1;
+    }
+
+    /**
+     * Picks the number of stripes: the next power of two at or above the
+     * number of processors, at most 16
+     * @return Integer representing the stripe count
+     */
+    private static int stripeCount()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (processors <= 1)
+        {
+            return 1;
+        }
+        return Math.min(16, Integer.highestOneBit(processors - 1) << 1);
+    }
+
+} // End of class
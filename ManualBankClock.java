@@ -0,0 +1,82 @@
+//~ Imports ...............................................................
+import java.time.LocalDate;
+
+/**
+ * Represents a clock whose date only changes when it is told to. Install it
+ * with {@link BankClock#setDefault(BankClock)} before creating accounts to
+ * get deterministic dates, for example to move past the end of a CD term or
+ * a savings withdrawal cycle. The date can be read from any thread, and
+ * every change to it is made under the clock's lock, so changes made from
+ * several threads at once are never lost.
+ * @author Farhan Abdulla
+ * @version 01.21.2022
+ */
+public class ManualBankClock
+    extends BankClock
+{
+    //~ Fields ................................................................
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private volatile int today;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a manual clock set to the given date
+     * @param date LocalDate containing the starting date
+     */
+    public ManualBankClock(LocalDate date)
+    {
+        this.today = (int) date.toEpochDay();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the day the clock is set to
+     * @return Integer representing today as an epoch day
+     */
+    @Override
+    public int today()
+    {
+        return this.today;
+    }
+
+    /**
+     * Gets the start of the day the clock is set to, in UTC
+     * @return Long representing the time in epoch milliseconds
+     */
+    @Override
+    public long currentTimeMillis()
+    {
+        return this.today * MILLIS_PER_DAY;
+    }
+
+    /**
+     * Sets the clock to a date
+     * @param date LocalDate containing the new date
+     */
+    public synchronized void setToday(LocalDate date)
+    {
+        this.today = (int) date.toEpochDay();
+    }
+
+    /**
+     * Moves the clock forward by a number of days
+     * @param days Integer containing the number of days to advance
+     */
+    public synchronized void advanceDays(int days)
+    {
+        this.today += days;
+    }
+
+    /**
+     * Moves the clock forward by a number of months
+     * @param months Integer containing the number of months to advance
+     */
+    public synchronized void advanceMonths(int months)
+    {
+        this.today = BankClock.plusMonths(this.today, months);
+    }
+
+} // End of class
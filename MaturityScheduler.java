@@ -0,0 +1,229 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+
+/**
+ * Marks a bank's certificates of deposit as matured on the day their term
+ * ends. Pending maturities are kept in a priority queue ordered by end
+ * day, stored as a binary heap of longs that pack the end day with the
+ * account number, so a bank holding millions of CDs keeps eight bytes for
+ * each and no objects. Moving to a new day pops only the CDs that are due.
+ * <p>
+ * When a CD is due it is flipped to its matured state, which is what its
+ * deposit and withdraw checks read. With automatic crediting switched on,
+ * the interest for the term is also credited right away, through
+ * {@link Bank#creditMaturedInterest} so that the credit is logged;
+ * otherwise it is left for the {@link EndOfDayBatch}. A CD that started
+ * a new term since it was queued is queued again at its new end day, and
+ * closed accounts are dropped. A CD that starts a new term after it
+ * matured has to be scheduled again; until it is, its checks read the
+ * date and it still matures on time.
+ * <p>
+ * {@link Bank} queues every CD when the account is indexed, and
+ * {@link EndOfDayBatch} moves the scheduler to the current day.
+ * @author Farhan Abdulla
+ * @version 02.02.2022
+ */
+public class MaturityScheduler
+{
+    //~ Fields ................................................................
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Bank bank;
+    private final BankClock clock;
+    private long[] heap;
+    private int size;
+    private volatile boolean autoCredit;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a scheduler for the CDs of a bank, reading the date from
+     * the default clock. Interest is not credited automatically.
+     * @param bank Bank containing the accounts
+     */
+    public MaturityScheduler(Bank bank)
+    {
+        this.bank = bank;
+        this.clock = BankClock.getDefault();
+        this.heap = new long[INITIAL_CAPACITY];
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Sets whether a CD's interest is credited as soon as it matures.
+     * Interest credited this way is not counted again in the reports of an
+     * {@link EndOfDayBatch}, since it is only ever credited once.
+     * @param credit Boolean containing true to credit automatically
+     */
+    public void setAutoCredit(boolean credit)
+    {
+        this.autoCredit = credit;
+    }
+
+    /**
+     * Checks whether a CD's interest is credited as soon as it matures
+     * @return Boolean representing true if crediting is automatic
+     */
+    public boolean isAutoCredit()
+    {
+        return this.autoCredit;
+    }
+
+    /**
+     * Queues a CD to mature at the end of its current term
+     * @param account CertificateDepositAccount containing the CD
+     */
+    public void schedule(CertificateDepositAccount account)
+    {
+        this.push(account.getEndDay(), account.getAccountNumber());
+    }
+
+    /**
+     * Matures every queued CD whose term has ended by today
+     * @return Integer representing the number of CDs that matured
+     */
+    public int advance()
+    {
+        int today = this.clock.today();
+        long[] due = this.popDue(today);
+        int matured = 0;
+        for (long entry : due)
+        {
+            matured += this.process((int) entry, today);
+        }
+        return matured;
+    }
+
+    /**
+     * Matures one CD if its term has ended, or queues it again at the end
+     * of the term it is in now
+     * @param accountNumber Integer containing the account number
+     * @param today Integer containing the current epoch day
+     * @return Integer representing 1 if the CD matured, otherwise 0
+     */
+    private int process(int accountNumber, int today)
+    {
+        BankAccount account = this.bank.getAccount(accountNumber);
+        if (!(account instanceof CertificateDepositAccount))
+        {
+            return 0;
+        }
+        CertificateDepositAccount certificate =
+            (CertificateDepositAccount) account;
+        int endDay;
+        synchronized (certificate)
+        {
+            endDay = certificate.getEndDay();
+            if (endDay <= today)
+            {
+                certificate.markMatured();
+            }
+        }
+        if (endDay > today)
+        {
+            this.push(endDay, accountNumber);
+            return 0;
+        }
+        if (this.autoCredit)
+        {
+            // Through the bank so the credit is logged; it checks the term
+            // and the credited flag again under the account's lock
+            this.bank.creditMaturedInterest(certificate);
+        }
+        return 1;
+    }
+
+    /**
+     * Gets the number of CDs waiting to mature, including closed accounts
+     * that have not been dropped yet
+     * @return Integer representing the queued count
+     */
+    public synchronized int getPendingCount()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the end day of the next CD to mature
+     * @return Integer representing the epoch day, or Integer.MAX_VALUE if
+     *  nothing is queued
+     */
+    public synchronized int getNextMaturityDay()
+    {
+        return this.size == 0 ? Integer.MAX_VALUE
+            : (int) (this.heap[0] >> 32);
+    }
+
+    /**
+     * Adds an entry to the heap
+     * @param endDay Integer containing the epoch day the term ends
+     * @param accountNumber Integer containing the account number
+     */
+    private synchronized void push(int endDay, int accountNumber)
+    {
+        if (this.size == this.heap.length)
+        {
+            this.heap = Arrays.copyOf(this.heap, this.size * 2);
+        }
+        long entry = ((long) endDay << 32) | (accountNumber & 0xFFFFFFFFL);
+        int i = this.size++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (this.heap[parent] <= entry)
+            {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            i = parent;
+        }
+        this.heap[i] = entry;
+    }
+
+    /**
+     * Removes every entry due on or before a day
+     * @param today Integer containing the current epoch day
+     * @return Array of longs representing the entries removed
+     */
+    private synchronized long[] popDue(int today)
+    {
+        long[] due = new long[INITIAL_CAPACITY];
+        int count = 0;
+        while (this.size > 0 && (int) (this.heap[0] >> 32) <= today)
+        {
+            if (count == due.length)
+            {
+                due = Arrays.copyOf(due, count * 2);
+            }
+            due[count++] = this.heap[0];
+            long last = this.heap[--this.size];
+            int i = 0;
+            while (true)
+            {
+                int child = 2 * i + 1;
+                if (child >= this.size)
+                {
+                    break;
+                }
+                if (child + 1 < this.size
+                    && this.heap[child + 1] < this.heap[child])
+                {
+                    child++;
+                }
+                if (last <= this.heap[child])
+                {
+                    break;
+                }
+                this.heap[i] = this.heap[child];
+                i = child;
+            }
+            if (this.size > 0)
+            {
+                this.heap[i] = last;
+            }
+        }
+        return Arrays.copyOf(due, count);
+    }
+
+} // End of class
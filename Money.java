@@ -0,0 +1,85 @@
+//~ Imports ...............................................................
+
+/**
+ * Converts between the whole-cent amounts that accounts store internally and
+ * the dollar amounts used by the double-based compatibility methods. All
+ * balances are kept as a primitive long count of cents so that repeated
+ * deposits and withdrawals never drift through floating point rounding.
+ * @author Farhan Abdulla
+ * @version 01.20.2022
+ */
+public final class Money
+{
+    //~ Fields ................................................................
+    /** Number of cents in one dollar */
+    public static final long CENTS_PER_DOLLAR = 100;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Money only holds static conversions and cannot be created
+     */
+    private Money()
+    {
+        // Not instantiable
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Converts a dollar amount into cents, rounding to the nearest cent
+     * @param dollars Double containing an amount of money in dollars
+     * @return Long representing the same amount in cents
+     */
+    public static long toCents(double dollars)
+    {
+        return Math.round(dollars * CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Converts an amount in cents into dollars
+     * @param cents Long containing an amount of money in cents
+     * @return Double representing the same amount in dollars
+     */
+    public static double toDollars(long cents)
+    {
+        return (double) cents / CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Formats an amount in cents as a dollar string with two decimals,
+     * such as "12.05" or "-0.50"
+     * @param cents Long containing an amount of money in cents
+     * @return String representing the amount in dollars
+     */
+    public static String format(long cents)
+    {
+        StringBuilder sb = new StringBuilder(12);
+        appendTo(sb, cents);
+        return sb.toString();
+    }
+
+    /**
+     * Appends an amount in cents to a builder as a dollar string with two
+     * decimals, without creating any intermediate strings
+     * @param sb StringBuilder to append to
+     * @param cents Long containing an amount of money in cents
+     * @return StringBuilder passed in, for chaining
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long cents)
+    {
+        if (cents < 0)
+        {
+            sb.append('-');
+        }
+        long abs = Math.abs(cents);
+        long fraction = abs % CENTS_PER_DOLLAR;
+        sb.append(abs / CENTS_PER_DOLLAR).append('.');
+        if (fraction < 10)
+        {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+} // End of class
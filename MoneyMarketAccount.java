@@ -1,4 +1,5 @@
 //~ Imports ...............................................................
+import java.nio.ByteBuffer;
 
 /**
  * Represents a Money Market Account that pays interest based on current 
@@ -10,7 +11,7 @@ public class MoneyMarketAccount
     extends SavingsAccount
 {
     //~ Fields ................................................................
-    
+    static final long MINIMUM_BALANCE = 500 * Money.CENTS_PER_DOLLAR;
 
     //~ Constructor ...........................................................
 
@@ -34,26 +35,69 @@ public class MoneyMarketAccount
         this.setInterestRate(0.3);
     }
 
+    /**
+     * Represents a Money Market account opened as part of a batch
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param cents Long containing the opening balance in cents
+     */
+    MoneyMarketAccount(OpeningDay opening, int number, long cents)
+    {
+        super(opening, number, cents, cents);
+        this.setInterestRate(0.3);
+    }
+
+    /**
+     * Recreates a Money Market account from a saved state
+     * @param state ByteBuffer containing the saved state at its position
+     */
+    MoneyMarketAccount(ByteBuffer state)
+    {
+        super(state);
+    }
+
     //~ Methods ...............................................................
 
     /**
-     * Subtracts money from the account balance if and only if the amount
-     * does not put the balance below 1000. Also records a withdrawal in
-     * transaction history. Only six withdrawals can be executed per month
-     * @param amount Double containing the withdraw amount
-     * @return Boolean representing whether conditions for a withdraw were met
+     * Gets the lowest balance the account must keep
+     * @return Long representing the minimum in cents
+     */
+    @Override
+    long getMinimumBalanceCents()
+    {
+        return MINIMUM_BALANCE;
+    }
+
+    /**
+     * Checks whether a withdrawal of this amount would be accepted. The
+     * balance must stay at or above 500, and only six withdrawals can be 
+     * executed per month
+     * @param cents Long containing the withdraw amount in cents
+     * @return Boolean representing whether conditions for a withdraw are met
      *  or not
      */
     @Override
-    public boolean withdraw(double amount)
+    public synchronized boolean canWithdrawCents(long cents)
+    {
+        return super.canWithdrawCents(cents)
+            && this.getBalanceCents() - cents >= MINIMUM_BALANCE;
+    }
+
+    /**
+     * Gets why a deposit or withdrawal was refused, which for a withdrawal
+     * the savings rules allow is the $500 floor
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long containing the amount in cents
+     * @return Reason representing the refusal reason
+     */
+    @Override
+    BankMetrics.Reason getRefusalReason(boolean deposit, long cents)
     {
-        if (this.getBalance() - amount >= 500 && this.getWithdrawCount() < 6
-            && amount > 0)
+        if (!deposit && super.canWithdrawCents(cents))
         {
-            super.withdraw(amount);
-            return true;
+            return BankMetrics.Reason.MONEY_MARKET_MINIMUM_BALANCE;
         }
-        return false;
+        return super.getRefusalReason(deposit, cents);
     }
 
 } // End of Class
\ No newline at end of file
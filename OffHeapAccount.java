@@ -0,0 +1,399 @@
+//~ Imports ...............................................................
+import java.util.Collections;
+
+/**
+ * Represents one account in an {@link OffHeapAccountStore}. A view holds
+ * only the store and the account's row; every read and change goes
+ * straight to the store's columns, so any number of views of the same
+ * account can exist and they all see the same state. Two views are equal
+ * when they are of the same row of the same store.
+ * <p>
+ * The store keeps no transaction history, so recording a transaction does
+ * nothing and date-range queries are always empty. Only a certificate of
+ * deposit reports accrued interest.
+ * @author Farhan Abdulla
+ * @version 02.03.2022
+ */
+public final class OffHeapAccount
+    implements BankAccount
+{
+    //~ Fields ................................................................
+    private final OffHeapAccountStore store;
+    private final int row;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a view of one row of a store
+     * @param store OffHeapAccountStore containing the account
+     * @param row Integer containing the account's row
+     */
+    OffHeapAccount(OffHeapAccountStore store, int row)
+    {
+        this.store = store;
+        this.row = row;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the account's row in its store
+     * @return Integer representing the row
+     */
+    public int getRow()
+    {
+        return this.row;
+    }
+
+    /**
+     * Gets the account's type, numbered as in
+     * {@link Bank#openAccount(String, int)}
+     * @return Integer representing the account type
+     */
+    public int getType()
+    {
+        return this.store.type(this.row);
+    }
+
+    /**
+     * Gets the withdrawals made in the current cycle of a savings or money
+     * market account
+     * @return Integer representing the withdraw count
+     */
+    public int getWithdrawCount()
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.withdrawCount(this.row);
+        }
+    }
+
+    /**
+     * Gets the day the current withdraw cycle ends
+     * @return Integer representing the epoch day
+     */
+    public int getCycleEndDay()
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.cycleEnd(this.row);
+        }
+    }
+
+    /**
+     * Gets the day the term of a CD or IRA ends
+     * @return Integer representing the epoch day
+     */
+    public int getTermEndDay()
+    {
+        return this.store.termEnd(this.row);
+    }
+
+    /**
+     * Credits a matured CD's interest for its term, once per term
+     * @return Long representing the interest credited in cents, or 0
+     */
+    public long creditMaturedInterest()
+    {
+        return this.store.creditMaturedInterest(this.row);
+    }
+
+    /**
+     * Gets the date when the account was first opened
+     * @return String representing the opening date of the account
+     */
+    @Override
+    public String getOpeningDate()
+    {
+        return BankClock.format(this.store.openingDay(this.row));
+    }
+
+    /**
+     * Gets the 8-digit account number
+     * @return Integer representing the account number
+     */
+    @Override
+    public int getAccountNumber()
+    {
+        return this.store.number(this.row);
+    }
+
+    /**
+     * Gets the account's balance
+     * @return Double representing the balance in dollars
+     */
+    @Override
+    public double getBalance()
+    {
+        return Money.toDollars(this.getBalanceCents());
+    }
+
+    /**
+     * Gets the account's balance in cents
+     * @return Long representing the balance in cents
+     */
+    @Override
+    public long getBalanceCents()
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.balance(this.row);
+        }
+    }
+
+    /**
+     * Returns String stating current balance in account
+     * @return String representing current balance
+     */
+    @Override
+    public String checkBalance()
+    {
+        return "Your current balance is: $"
+            + Money.format(this.getBalanceCents());
+    }
+
+    /**
+     * Adds money to the account if the deposit is allowed
+     * @param amount Double containing the amount in dollars
+     * @return Boolean representing if conditions to deposit were met
+     */
+    @Override
+    public boolean deposit(double amount)
+    {
+        return this.depositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Takes money out of the account if the withdrawal is allowed
+     * @param amount Double containing the amount in dollars
+     * @return Boolean representing if conditions to withdraw were met
+     */
+    @Override
+    public boolean withdraw(double amount)
+    {
+        return this.withdrawCents(Money.toCents(amount));
+    }
+
+    /**
+     * Adds money to the account if the deposit is allowed
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing if conditions to deposit were met
+     */
+    @Override
+    public boolean depositCents(long cents)
+    {
+        return this.store.deposit(this.row, cents);
+    }
+
+    /**
+     * Takes money out of the account if the withdrawal is allowed
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing if conditions to withdraw were met
+     */
+    @Override
+    public boolean withdrawCents(long cents)
+    {
+        return this.store.withdraw(this.row, cents);
+    }
+
+    /**
+     * Checks whether a deposit would currently be accepted
+     * @param amount Double containing the amount in dollars
+     * @return Boolean representing if conditions to deposit are met
+     */
+    @Override
+    public boolean canDeposit(double amount)
+    {
+        return this.canDepositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether a withdrawal would currently be accepted
+     * @param amount Double containing the amount in dollars
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public boolean canWithdraw(double amount)
+    {
+        return this.canWithdrawCents(Money.toCents(amount));
+    }
+
+    /**
+     * Checks whether a deposit would currently be accepted
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing if conditions to deposit are met
+     */
+    @Override
+    public boolean canDepositCents(long cents)
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.canDeposit(this.row, cents);
+        }
+    }
+
+    /**
+     * Checks whether a withdrawal would currently be accepted
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing if conditions to withdraw are met
+     */
+    @Override
+    public boolean canWithdrawCents(long cents)
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.canWithdraw(this.row, cents);
+        }
+    }
+
+    /**
+     * Does nothing, since the store keeps no transaction history
+     * @param deposit Boolean representing if money is being deposited
+     * @param amount Double containing the amount in dollars
+     */
+    @Override
+    public void addTransaction(boolean deposit, double amount)
+    {
+        // The store keeps no history
+    }
+
+    /**
+     * Does nothing, since the store keeps no transaction history
+     * @param deposit Boolean representing if money is being deposited
+     * @param cents Long containing the amount in cents
+     */
+    @Override
+    public void addTransactionCents(boolean deposit, long cents)
+    {
+        // The store keeps no history
+    }
+
+    /**
+     * Gets all the transactions for a day, of which there are none
+     * @param date String containing the date
+     * @return String representing that there are no transactions
+     */
+    @Override
+    public String getTransactionForDay(String date)
+    {
+        return "No transactions";
+    }
+
+    /**
+     * Gets the transactions made from one date to another, of which there
+     * are none
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @return TransactionCursor representing an empty run
+     */
+    @Override
+    public TransactionCursor getTransactions(String fromDate, String toDate)
+    {
+        return new TransactionCursor(new long[0], new long[0], new byte[0],
+            new int[0], new int[0], 0, 0, 0);
+    }
+
+    /**
+     * Gets one page of the transactions made from one date to another, of
+     * which there are none
+     * @param fromDate String containing the first date in M/d/yy format
+     * @param toDate String containing the last date in M/d/yy format
+     * @param start Integer containing the previous page's next start
+     * @param pageSize Integer containing the most transactions on the page
+     * @return TransactionPage representing an empty last page
+     */
+    @Override
+    public TransactionPage getTransactionPage(String fromDate, String toDate,
+        int start, int pageSize)
+    {
+        return new TransactionPage(Collections.emptyList(), -1);
+    }
+
+    /**
+     * Gets the current date as a String
+     * @return String representing current date
+     */
+    @Override
+    public String getCurrentDate()
+    {
+        return this.store.getClock().todayString();
+    }
+
+    /**
+     * Gets the account's interest rate
+     * @return Double representing the interest rate
+     */
+    @Override
+    public double getInterestRate()
+    {
+        return this.store.rate(this.row);
+    }
+
+    /**
+     * Sets the account's interest rate
+     * @param newRate Double containing the interest rate
+     */
+    @Override
+    public void setInterestRate(double newRate)
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            this.store.setRate(this.row, newRate);
+        }
+    }
+
+    /**
+     * Parses the date into its integer components
+     * @param date String containing the date in M/d/yy format
+     * @return Array of integers representing month, day, year in that order
+     */
+    @Override
+    public int[] dateToInt(String date)
+    {
+        String[] str = date.split("/");
+        int[] parts = {Integer.parseInt(str[0]), Integer.parseInt(str[1]),
+            2000 + Integer.parseInt(str[2])};
+        return parts;
+    }
+
+    /**
+     * Gets the interest a CD earns over its term. Other types keep no
+     * interest history in the store and report none.
+     * @return Double representing the accrued interest
+     */
+    @Override
+    public double getAccruedInterest()
+    {
+        synchronized (this.store.lockFor(this.row))
+        {
+            return this.store.accruedInterest(this.row);
+        }
+    }
+
+    /**
+     * Checks whether another view is of the same account
+     * @param other Object containing the object to compare
+     * @return Boolean representing true for a view of the same row
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof OffHeapAccount))
+        {
+            return false;
+        }
+        OffHeapAccount view = (OffHeapAccount) other;
+        return view.store == this.store && view.row == this.row;
+    }
+
+    /**
+     * Gets a hash code for the account
+     * @return Integer representing the hash code
+     */
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(this.store) * 31 + this.row;
+    }
+
+} // End of class
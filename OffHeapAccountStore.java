@@ -0,0 +1,710 @@
+//~ Imports ...............................................................
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps the state of a very large number of accounts outside the Java
+ * heap, as columns of primitives: one direct buffer per field, indexed by
+ * row. An account costs 42 bytes of column space plus 16 to 32 bytes of
+ * index, and the garbage collector never has to look at any of it.
+ * Accounts are read and changed through {@link OffHeapAccount} views,
+ * which hold only the store and a row, and can be made and thrown away
+ * freely.
+ * <p>
+ * The store is meant for banks whose account count makes one object graph
+ * per account too expensive. It keeps what the rules need (balance,
+ * interest rate, withdraw count and cycle end, term length and end) and
+ * applies the same deposit and withdraw rules as the account classes, but
+ * keeps no transaction history, no savings deposit lots and no IRA
+ * valuation; each account's balance is exactly what was put in and taken
+ * out, and CD interest is computed from the balance as a CD does.
+ * <p>
+ * Every change to a row is made while holding the lock stripe for that
+ * row, and transfers take both stripes in stripe order, or the one stripe
+ * when both rows share it. The capacity is fixed when the store is made,
+ * and rows are never freed. Account numbers come from the default
+ * {@link AccountNumberAllocator}, so they never clash with accounts kept
+ * as objects.
+ * @author Farhan Abdulla
+ * @version 02.03.2022
+ */
+public class OffHeapAccountStore
+{
+    //~ Fields ................................................................
+    /** Bytes of column space used by each account */
+    public static final int ROW_BYTES = 42;
+
+    private static final long SAVINGS_MINIMUM = 300 * Money.CENTS_PER_DOLLAR;
+    private static final long MONEY_MARKET_MINIMUM =
+        500 * Money.CENTS_PER_DOLLAR;
+    private static final int WITHDRAW_LIMIT = 6;
+    private static final int IRA_TERM_MONTHS = 60;
+    private static final byte INTEREST_CREDITED = 1;
+    private static final int LOCK_STRIPES = 1024;
+    private static final VarHandle INT_VIEW =
+        MethodHandles.byteBufferViewVarHandle(int[].class,
+            ByteOrder.nativeOrder());
+
+    private final int capacity;
+    private final BankClock clock;
+    private final ByteBuffer balances;
+    private final ByteBuffer numbers;
+    private final ByteBuffer types;
+    private final ByteBuffer openingDays;
+    private final ByteBuffer rates;
+    private final ByteBuffer withdrawCounts;
+    private final ByteBuffer cycleEnds;
+    private final ByteBuffer termLengths;
+    private final ByteBuffer termEnds;
+    private final ByteBuffer flags;
+    private final ByteBuffer indexKeys;
+    private final ByteBuffer indexRows;
+    private final int indexMask;
+    private final Object[] locks;
+    private volatile int size;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty store with room for a fixed number of accounts,
+     * reading dates from the default clock. All memory is allocated up
+     * front.
+     * @param capacity Integer containing the most accounts the store holds
+     * @throws IllegalArgumentException if the capacity is not positive or
+     *  too large
+     */
+    public OffHeapAccountStore(int capacity)
+    {
+        if (capacity <= 0 || capacity > AccountNumberAllocator.CAPACITY)
+        {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.clock = BankClock.getDefault();
+        this.balances = column(capacity, 8);
+        this.numbers = column(capacity, 4);
+        this.types = column(capacity, 1);
+        this.openingDays = column(capacity, 4);
+        this.rates = column(capacity, 8);
+        this.withdrawCounts = column(capacity, 4);
+        this.cycleEnds = column(capacity, 4);
+        this.termLengths = column(capacity, 4);
+        this.termEnds = column(capacity, 4);
+        this.flags = column(capacity, 1);
+        int slots = Integer.highestOneBit(capacity - 1 | 1) << 2;
+        this.indexKeys = column(slots, 4);
+        this.indexRows = column(slots, 4);
+        this.indexMask = slots - 1;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            this.locks[i] = new Object();
+        }
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Opens an account in the store
+     * @param type Integer containing the account type, numbered as in
+     *  {@link Bank#openAccount(String, int)}
+     * @param openingCents Long containing the opening balance in cents
+     * @param termMonths Integer containing the CD term in months, which is
+     *  ignored for other types
+     * @return OffHeapAccount representing a view of the new account
+     * @throws IllegalArgumentException if the type is not 1 to 5
+     * @throws IllegalStateException if the store is full
+     */
+    public synchronized OffHeapAccount open(int type, long openingCents,
+        int termMonths)
+    {
+        if (type < 1 || type > 5)
+        {
+            throw new IllegalArgumentException("Unknown account type "
+                + type);
+        }
+        int row = this.size;
+        if (row == this.capacity)
+        {
+            throw new IllegalStateException("Store is full");
+        }
+        int number = AccountNumberAllocator.getDefault().next();
+        int today = this.clock.today();
+        this.balances.putLong(row * 8, openingCents);
+        this.numbers.putInt(row * 4, number);
+        this.types.put(row, (byte) type);
+        this.openingDays.putInt(row * 4, today);
+        this.rates.putDouble(row * 8, defaultRate(type));
+        this.withdrawCounts.putInt(row * 4, 0);
+        this.cycleEnds.putInt(row * 4, BankClock.plusMonths(today, 1));
+        int term = type == 4 ? termMonths : type == 5 ? IRA_TERM_MONTHS : 0;
+        this.termLengths.putInt(row * 4, term);
+        this.termEnds.putInt(row * 4, BankClock.plusMonths(today, term));
+        this.flags.put(row, (byte) 0);
+        this.insert(number, row);
+        this.size = row + 1;
+        return new OffHeapAccount(this, row);
+    }
+
+    /**
+     * Gets a view of an account by its account number
+     * @param accountNumber Integer containing the account number
+     * @return OffHeapAccount representing the account, or null if the store
+     *  does not hold it
+     */
+    public OffHeapAccount getAccount(int accountNumber)
+    {
+        int row = this.findRow(accountNumber);
+        return row < 0 ? null : new OffHeapAccount(this, row);
+    }
+
+    /**
+     * Gets a view of an account by its row
+     * @param row Integer containing the row
+     * @return OffHeapAccount representing the account
+     * @throws IndexOutOfBoundsException if no account has that row
+     */
+    public OffHeapAccount getAccountAt(int row)
+    {
+        if (row < 0 || row >= this.size)
+        {
+            throw new IndexOutOfBoundsException("No row " + row);
+        }
+        return new OffHeapAccount(this, row);
+    }
+
+    /**
+     * Gets the number of accounts in the store
+     * @return Integer representing the account count
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the most accounts the store can hold
+     * @return Integer representing the capacity
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the memory the store holds outside the heap, for its columns and
+     * its account number index
+     * @return Long representing the size in bytes
+     */
+    public long getOffHeapBytes()
+    {
+        return (long) this.capacity * ROW_BYTES
+            + 2L * this.indexKeys.capacity();
+    }
+
+    /**
+     * Moves money from one account in the store to another as a single
+     * step: either both change or neither does
+     * @param fromAccountNumber Integer containing the account to withdraw from
+     * @param toAccountNumber Integer containing the account to deposit into
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the transfer happened
+     */
+    public boolean transferCents(int fromAccountNumber, int toAccountNumber,
+        long cents)
+    {
+        int from = this.findRow(fromAccountNumber);
+        int to = this.findRow(toAccountNumber);
+        if (from < 0 || to < 0 || from == to)
+        {
+            return false;
+        }
+        // Order by stripe, not row: rows far apart can share stripes
+        int fromStripe = from & (LOCK_STRIPES - 1);
+        int toStripe = to & (LOCK_STRIPES - 1);
+        if (fromStripe == toStripe)
+        {
+            synchronized (this.locks[fromStripe])
+            {
+                return this.transferLocked(from, to, cents);
+            }
+        }
+        Object first = this.locks[Math.min(fromStripe, toStripe)];
+        Object second = this.locks[Math.max(fromStripe, toStripe)];
+        synchronized (first)
+        {
+            synchronized (second)
+            {
+                return this.transferLocked(from, to, cents);
+            }
+        }
+    }
+
+    /**
+     * Gets the lock stripe guarding a row
+     * @param row Integer containing the row
+     * @return Object representing the lock
+     */
+    Object lockFor(int row)
+    {
+        return this.locks[row & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Gets the account number of a row
+     * @param row Integer containing the row
+     * @return Integer representing the account number
+     */
+    int number(int row)
+    {
+        return this.numbers.getInt(row * 4);
+    }
+
+    /**
+     * Gets the type of a row
+     * @param row Integer containing the row
+     * @return Integer representing the account type
+     */
+    int type(int row)
+    {
+        return this.types.get(row);
+    }
+
+    /**
+     * Gets the opening day of a row
+     * @param row Integer containing the row
+     * @return Integer representing the epoch day
+     */
+    int openingDay(int row)
+    {
+        return this.openingDays.getInt(row * 4);
+    }
+
+    /**
+     * Gets the balance of a row. Callers must hold the row's lock.
+     * @param row Integer containing the row
+     * @return Long representing the balance in cents
+     */
+    long balance(int row)
+    {
+        return this.balances.getLong(row * 8);
+    }
+
+    /**
+     * Gets the interest rate of a row
+     * @param row Integer containing the row
+     * @return Double representing the rate
+     */
+    double rate(int row)
+    {
+        return this.rates.getDouble(row * 8);
+    }
+
+    /**
+     * Sets the interest rate of a row. Callers must hold the row's lock.
+     * @param row Integer containing the row
+     * @param rate Double containing the new rate
+     */
+    void setRate(int row, double rate)
+    {
+        this.rates.putDouble(row * 8, rate);
+    }
+
+    /**
+     * Gets the withdrawals made in a row's current cycle. Callers must hold
+     * the row's lock.
+     * @param row Integer containing the row
+     * @return Integer representing the withdraw count
+     */
+    int withdrawCount(int row)
+    {
+        return this.withdrawCounts.getInt(row * 4);
+    }
+
+    /**
+     * Gets the day a row's withdraw cycle ends. Callers must hold the row's
+     * lock.
+     * @param row Integer containing the row
+     * @return Integer representing the epoch day
+     */
+    int cycleEnd(int row)
+    {
+        return this.cycleEnds.getInt(row * 4);
+    }
+
+    /**
+     * Gets a row's term length
+     * @param row Integer containing the row
+     * @return Integer representing the term in months
+     */
+    int termLength(int row)
+    {
+        return this.termLengths.getInt(row * 4);
+    }
+
+    /**
+     * Gets the day a row's term ends
+     * @param row Integer containing the row
+     * @return Integer representing the epoch day
+     */
+    int termEnd(int row)
+    {
+        return this.termEnds.getInt(row * 4);
+    }
+
+    /**
+     * Gets the store's clock
+     * @return BankClock representing the clock dates are read from
+     */
+    BankClock getClock()
+    {
+        return this.clock;
+    }
+
+    /**
+     * Checks whether a row would accept a deposit. Callers must hold the
+     * row's lock.
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the deposit is allowed
+     */
+    boolean canDeposit(int row, long cents)
+    {
+        return cents > 0 && (this.type(row) != 4 || this.pastTerm(row));
+    }
+
+    /**
+     * Checks whether a row would accept a withdrawal, under the rules of
+     * its account type. A savings or money market row whose cycle has
+     * ended starts a new one first. Callers must hold the row's lock.
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the withdrawal is allowed
+     */
+    boolean canWithdraw(int row, long cents)
+    {
+        if (cents <= 0)
+        {
+            return false;
+        }
+        long balance = this.balance(row);
+        switch (this.type(row))
+        {
+            case 2:
+            case 3:
+                this.rollCycle(row);
+                long minimum = this.type(row) == 3 ? MONEY_MARKET_MINIMUM
+                    : SAVINGS_MINIMUM;
+                return this.withdrawCount(row) < WITHDRAW_LIMIT
+                    && balance - cents >= minimum;
+            case 4:
+                return this.pastTerm(row) && balance - cents >= 0;
+            case 5:
+                return balance - this.withdrawCharge(row, cents) >= 0;
+            default:
+                return balance - cents >= 0;
+        }
+    }
+
+    /**
+     * Deposits into a row if the deposit is allowed
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the deposit was made
+     */
+    boolean deposit(int row, long cents)
+    {
+        synchronized (this.lockFor(row))
+        {
+            if (!this.canDeposit(row, cents))
+            {
+                BankMetrics.getDefault().record(
+                    this.getRefusalReason(row, true, cents));
+                return false;
+            }
+            this.balances.putLong(row * 8, this.balance(row) + cents);
+            return true;
+        }
+    }
+
+    /**
+     * Withdraws from a row if the withdrawal is allowed, charging an IRA's
+     * early withdrawal penalty
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the withdrawal was made
+     */
+    boolean withdraw(int row, long cents)
+    {
+        synchronized (this.lockFor(row))
+        {
+            if (!this.canWithdraw(row, cents))
+            {
+                BankMetrics.getDefault().record(
+                    this.getRefusalReason(row, false, cents));
+                return false;
+            }
+            this.debit(row, cents);
+            return true;
+        }
+    }
+
+    /**
+     * Credits a matured CD row's interest for its term, once per term
+     * @param row Integer containing the row
+     * @return Long representing the interest credited in cents, or 0
+     */
+    long creditMaturedInterest(int row)
+    {
+        synchronized (this.lockFor(row))
+        {
+            if (this.type(row) != 4 || !this.pastTerm(row)
+                || (this.flags.get(row) & INTEREST_CREDITED) != 0)
+            {
+                return 0;
+            }
+            this.flags.put(row, (byte) (this.flags.get(row)
+                | INTEREST_CREDITED));
+            long cents = Money.toCents(this.accruedInterest(row));
+            this.balances.putLong(row * 8, this.balance(row) + cents);
+            return cents;
+        }
+    }
+
+    /**
+     * Gets the interest a row earns: a CD's interest over its term, and
+     * nothing for other types, which keep no interest history here
+     * @param row Integer containing the row
+     * @return Double representing the interest in dollars
+     */
+    double accruedInterest(int row)
+    {
+        if (this.type(row) != 4)
+        {
+            return 0.0;
+        }
+        double balance = Money.toDollars(this.balance(row));
+        return balance * Math.pow(1 + this.rate(row) / 36500,
+            365.0 * this.termLength(row) / 12) - balance;
+    }
+
+    /**
+     * Gets why a row refused a deposit or withdrawal
+     * @param row Integer containing the row
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long containing the amount in cents
+     * @return Reason representing the refusal reason
+     */
+    BankMetrics.Reason getRefusalReason(int row, boolean deposit, long cents)
+    {
+        int type = this.type(row);
+        if (type == 4 && !this.pastTerm(row))
+        {
+            return BankMetrics.Reason.CD_IN_TERM;
+        }
+        if (cents <= 0 || deposit)
+        {
+            return BankMetrics.Reason.INVALID_AMOUNT;
+        }
+        if (type == 2 || type == 3)
+        {
+            if (this.withdrawCount(row) >= WITHDRAW_LIMIT)
+            {
+                return BankMetrics.Reason.SAVINGS_WITHDRAW_LIMIT;
+            }
+            if (type == 3 && this.balance(row) - cents >= SAVINGS_MINIMUM)
+            {
+                return BankMetrics.Reason.MONEY_MARKET_MINIMUM_BALANCE;
+            }
+            return BankMetrics.Reason.SAVINGS_MINIMUM_BALANCE;
+        }
+        return BankMetrics.Reason.INSUFFICIENT_FUNDS;
+    }
+
+    /**
+     * Moves money between two rows. Callers must hold both rows' locks.
+     * @param from Integer containing the row to withdraw from
+     * @param to Integer containing the row to deposit into
+     * @param cents Long containing the amount in cents
+     * @return Boolean representing whether the transfer happened
+     */
+    private boolean transferLocked(int from, int to, long cents)
+    {
+        if (!this.canWithdraw(from, cents))
+        {
+            BankMetrics.getDefault().record(
+                this.getRefusalReason(from, false, cents));
+            return false;
+        }
+        if (!this.canDeposit(to, cents))
+        {
+            BankMetrics.getDefault().record(
+                this.getRefusalReason(to, true, cents));
+            return false;
+        }
+        this.debit(from, cents);
+        this.balances.putLong(to * 8, this.balance(to) + cents);
+        return true;
+    }
+
+    /**
+     * Takes an allowed withdrawal out of a row, counting it against the
+     * cycle for savings types and charging the penalty for an IRA. Callers
+     * must hold the row's lock.
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     */
+    private void debit(int row, long cents)
+    {
+        int type = this.type(row);
+        long charge = cents;
+        if (type == 2 || type == 3)
+        {
+            this.withdrawCounts.putInt(row * 4, this.withdrawCount(row) + 1);
+        }
+        else if (type == 5)
+        {
+            charge = this.withdrawCharge(row, cents);
+            if (charge != cents)
+            {
+                BankMetrics.getDefault().record(
+                    BankMetrics.Reason.IRA_EARLY_WITHDRAWAL_PENALTY);
+            }
+        }
+        this.balances.putLong(row * 8, this.balance(row) - charge);
+    }
+
+    /**
+     * Starts a new withdraw cycle for a row if its cycle has ended. The
+     * date is only read once the withdraw limit has been reached.
+     * @param row Integer containing the row
+     */
+    private void rollCycle(int row)
+    {
+        if (this.withdrawCount(row) >= WITHDRAW_LIMIT)
+        {
+            int today = this.clock.today();
+            if (today >= this.cycleEnd(row))
+            {
+                this.withdrawCounts.putInt(row * 4, 0);
+                this.cycleEnds.putInt(row * 4, BankClock.plusMonths(today, 1));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a row's term is over
+     * @param row Integer containing the row
+     * @return Boolean representing true from the term's end day onwards
+     */
+    private boolean pastTerm(int row)
+    {
+        return this.clock.today() >= this.termEnd(row);
+    }
+
+    /**
+     * Gets what an IRA withdrawal takes out of a row: the amount, plus a
+     * 10% penalty within the first five years
+     * @param row Integer containing the row
+     * @param cents Long containing the amount in cents
+     * @return Long representing the charge in cents
+     */
+    private long withdrawCharge(int row, long cents)
+    {
+        return this.pastTerm(row) ? cents : cents + (cents + 5) / 10;
+    }
+
+    /**
+     * Finds the row of an account number
+     * @param accountNumber Integer containing the account number
+     * @return Integer representing the row, or -1 if it is not in the store
+     */
+    private int findRow(int accountNumber)
+    {
+        if (accountNumber == 0)
+        {
+            return -1;
+        }
+        int slot = mix(accountNumber) & this.indexMask;
+        while (true)
+        {
+            int key = (int) INT_VIEW.getAcquire(this.indexKeys, slot * 4);
+            if (key == accountNumber)
+            {
+                return this.indexRows.getInt(slot * 4);
+            }
+            if (key == 0)
+            {
+                return -1;
+            }
+            slot = (slot + 1) & this.indexMask;
+        }
+    }
+
+    /**
+     * Adds an account number to the index. The key is published last, so
+     * a reader that finds the key also sees the row and its columns.
+     * Callers must hold the store's lock.
+     * @param accountNumber Integer containing the account number
+     * @param row Integer containing the row
+     */
+    private void insert(int accountNumber, int row)
+    {
+        int slot = mix(accountNumber) & this.indexMask;
+        while (this.indexKeys.getInt(slot * 4) != 0)
+        {
+            slot = (slot + 1) & this.indexMask;
+        }
+        this.indexRows.putInt(slot * 4, row);
+        INT_VIEW.setRelease(this.indexKeys, slot * 4, accountNumber);
+    }
+
+    /**
+     * Gets the default interest rate of an account type, as the account
+     * classes set it
+     * @param type Integer containing the account type
+     * @return Double representing the rate
+     */
+    private static double defaultRate(int type)
+    {
+        switch (type)
+        {
+            case 2:
+                return 0.1;
+            case 3:
+                return 0.3;
+            case 4:
+                return 1;
+            case 5:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Allocates one zeroed column outside the heap
+     * @param rows Integer containing the number of rows
+     * @param width Integer containing the bytes per row
+     * @return ByteBuffer representing the column
+     */
+    private static ByteBuffer column(int rows, int width)
+    {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(rows, width))
+            .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Spreads the bits of an account number for the index
+     * @param accountNumber Integer containing the account number
+     * @return Integer representing the hash
+     */
+    private static int mix(int accountNumber)
+    {
+        int h = accountNumber * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+} // End of class
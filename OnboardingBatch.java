@@ -0,0 +1,432 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Opens many new customers and accounts at once, for example when moving
+ * them over from another system. Customers and their accounts are listed
+ * first; nothing reaches the bank until {@link #apply(Bank)}, which then
+ * takes the whole batch on or, if anything goes wrong, none of it.
+ * <p>
+ * Applying a batch does the per-account work of
+ * {@link Bank#addCustomer(String)} and
+ * {@link Bank#openAccount(String, int, double, int)} in bulk. The
+ * customer IDs and account numbers are reserved with one call each, and
+ * the opening dates, such as the end of
+ * a savings cycle or of a CD term, are worked out once in an
+ * {@link OpeningDay} for every account. The customers and accounts are
+ * then built in slices on a fork-join pool, with no lock held and nothing
+ * shared but the reserved numbers. Only at the end is the batch handed to
+ * the bank, which indexes the accounts, files the names, logs the batch
+ * as one unit in a durable bank and adds the customers in a single
+ * {@link VersionClock} section, so a {@link BankView} sees all of the
+ * batch or none of it.
+ * <p>
+ * Every name, amount and term is checked as it is listed, so a batch
+ * that was listed without an error can only fail to apply if one of its
+ * account numbers has meanwhile been used by hand. Customers get only the
+ * accounts listed for them; unlike {@link Bank#addCustomer(String)}, no
+ * checking account is opened for them by default.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class OnboardingBatch
+{
+    //~ Fields ................................................................
+    private static final int SLICE_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+    private String[] names;
+    private int customerCount;
+    private int[] owners;
+    private byte[] types;
+    private long[] amounts;
+    private int[] terms;
+    private int accountCount;
+    private boolean applied;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty batch that is built on the common fork-join pool
+     */
+    public OnboardingBatch()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Represents an empty batch that is built on the given pool. The
+     * pool's parallelism sets how many cores applying the batch uses.
+     * @param pool ForkJoinPool containing the worker threads
+     */
+    public OnboardingBatch(ForkJoinPool pool)
+    {
+        this.pool = pool;
+        this.names = new String[64];
+        this.owners = new int[64];
+        this.types = new byte[64];
+        this.amounts = new long[64];
+        this.terms = new int[64];
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Lists a new customer
+     * @param name String containing the customer's first and last name
+     * @return Integer representing the customer's position in the batch,
+     *  from 0, which their accounts are listed under
+     * @throws IllegalArgumentException if the name is null, or longer
+     *  than a log record holds
+     */
+    public int addCustomer(String name)
+    {
+        if (name == null)
+        {
+            throw new IllegalArgumentException("A customer needs a name");
+        }
+        WriteAheadLog.checkString(name);
+        if (this.customerCount == this.names.length)
+        {
+            this.names = Arrays.copyOf(this.names, this.customerCount * 2);
+        }
+        this.names[this.customerCount] = name;
+        return this.customerCount++;
+    }
+
+    /**
+     * Lists a new account of a type with its default opening balance.
+     * Types are 1 checking, 2 savings, 3 money market, 4 CD and 5 IRA; any
+     * other number opens a checking account.
+     * @param customer Integer containing the owner's position in the batch
+     * @param type Integer containing the type of account to open
+     * @return Integer representing the account's position in the batch
+     * @throws IllegalArgumentException if there is no such customer
+     */
+    public int openAccount(int customer, int type)
+    {
+        return this.list(customer, type, -1, 0);
+    }
+
+    /**
+     * Lists a new account. For an IRA the balance is its monthly deposit,
+     * and the term is only used by CDs.
+     * @param customer Integer containing the owner's position in the batch
+     * @param type Integer containing the type of account to open
+     * @param balance Double containing opening balance of account
+     * @param term Integer containing the CD term in months
+     * @return Integer representing the account's position in the batch
+     * @throws IllegalArgumentException if there is no such customer, the
+     *  balance is negative or not a number, or a CD term is not positive
+     */
+    public int openAccount(int customer, int type, double balance, int term)
+    {
+        if (!(balance >= 0) || Double.isInfinite(balance))
+        {
+            throw new IllegalArgumentException("Opening balance " + balance
+                + " is not a valid amount");
+        }
+        if (type == 4 && term < 1)
+        {
+            throw new IllegalArgumentException("CD term " + term
+                + " is not a positive number of months");
+        }
+        return this.list(customer, type, Money.toCents(balance), term);
+    }
+
+    /**
+     * Gets the number of customers listed
+     * @return Integer representing the customer count
+     */
+    public int getCustomerCount()
+    {
+        return this.customerCount;
+    }
+
+    /**
+     * Gets the number of accounts listed
+     * @return Integer representing the account count
+     */
+    public int getAccountCount()
+    {
+        return this.accountCount;
+    }
+
+    /**
+     * Builds every listed customer and account and adds them all to a
+     * bank. Other changes to customers of the bank, such as adding one or
+     * opening an account, wait while the batch is added at the end;
+     * deposits, withdrawals and transfers do not. A batch can be applied
+     * only once.
+     * @param bank Bank containing the bank to add the batch to
+     * @return Report representing the customers and accounts added
+     * @throws IllegalStateException if the batch was already applied, or
+     *  an account number was taken meanwhile, in which case nothing was
+     *  added
+     */
+    public Report apply(Bank bank)
+    {
+        if (this.applied)
+        {
+            throw new IllegalStateException("The batch was already applied");
+        }
+        long start = System.nanoTime();
+        String[] ids = bank.getIdGenerator().reserve(this.customerCount);
+        int[] numbers = AccountNumberAllocator.getDefault().reserve(
+            this.accountCount);
+        OpeningDay opening = new OpeningDay(BankClock.getDefault());
+
+        // Each customer's accounts, in the order they were listed
+        int[] first = new int[this.customerCount + 1];
+        for (int i = 0; i < this.accountCount; i++)
+        {
+            first[this.owners[i] + 1]++;
+        }
+        for (int c = 0; c < this.customerCount; c++)
+        {
+            first[c + 1] += first[c];
+        }
+        int[] order = new int[this.accountCount];
+        int[] next = Arrays.copyOf(first, this.customerCount);
+        for (int i = 0; i < this.accountCount; i++)
+        {
+            order[next[this.owners[i]]++] = i;
+        }
+
+        Customer[] customers = new Customer[this.customerCount];
+        BankAccount[] accounts = new BankAccount[this.accountCount];
+        Customer[] holders = new Customer[this.accountCount];
+        this.pool.invoke(new Slice(opening, ids, numbers, first, order,
+            customers, accounts, holders, 0, this.customerCount));
+        bank.onboard(customers, holders, accounts,
+            Arrays.copyOf(this.amounts, this.accountCount),
+            Arrays.copyOf(this.terms, this.accountCount), this.pool);
+        this.applied = true;
+        return new Report(customers, accounts, System.nanoTime() - start);
+    }
+
+    /**
+     * Lists a new account after its amount has been checked
+     * @param customer Integer containing the owner's position in the batch
+     * @param type Integer containing the type of account to open
+     * @param amountCents Long containing the opening amount in cents, or -1
+     *  for the type's defaults
+     * @param term Integer containing the CD term in months
+     * @return Integer representing the account's position in the batch
+     * @throws IllegalArgumentException if there is no such customer
+     */
+    private int list(int customer, int type, long amountCents, int term)
+    {
+        if (customer < 0 || customer >= this.customerCount)
+        {
+            throw new IllegalArgumentException("No customer " + customer
+                + " in the batch");
+        }
+        if (this.accountCount == this.owners.length)
+        {
+            int capacity = this.accountCount * 2;
+            this.owners = Arrays.copyOf(this.owners, capacity);
+            this.types = Arrays.copyOf(this.types, capacity);
+            this.amounts = Arrays.copyOf(this.amounts, capacity);
+            this.terms = Arrays.copyOf(this.terms, capacity);
+        }
+        this.owners[this.accountCount] = customer;
+        this.types[this.accountCount] = (byte) (type >= 1 && type <= 5
+            ? type : 1);
+        this.amounts[this.accountCount] = amountCents;
+        this.terms[this.accountCount] = term;
+        return this.accountCount++;
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents what applying a batch added
+     */
+    public static final class Report
+    {
+        private final Customer[] customers;
+        private final BankAccount[] accounts;
+        private final long elapsedNanos;
+
+        /**
+         * Represents the customers and accounts of an applied batch
+         * @param customers Array of Customers containing the customers, in
+         *  the order they were listed
+         * @param accounts Array of BankAccounts containing the accounts, in
+         *  the order they were listed
+         * @param elapsedNanos Long containing how long applying took
+         */
+        private Report(Customer[] customers, BankAccount[] accounts,
+            long elapsedNanos)
+        {
+            this.customers = customers;
+            this.accounts = accounts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of customers added
+         * @return Integer representing the customer count
+         */
+        public int getCustomers()
+        {
+            return this.customers.length;
+        }
+
+        /**
+         * Gets the number of accounts opened
+         * @return Integer representing the account count
+         */
+        public int getAccounts()
+        {
+            return this.accounts.length;
+        }
+
+        /**
+         * Gets the ID a listed customer was given
+         * @param customer Integer containing the customer's position in the
+         *  batch
+         * @return String representing the customer ID
+         */
+        public String getCustomerId(int customer)
+        {
+            return this.customers[customer].getCustomerId();
+        }
+
+        /**
+         * Gets the number a listed account was given
+         * @param account Integer containing the account's position in the
+         *  batch
+         * @return Integer representing the account number
+         */
+        public int getAccountNumber(int account)
+        {
+            return this.accounts[account].getAccountNumber();
+        }
+
+        /**
+         * Gets how long applying the batch took
+         * @return Long representing the time in nanoseconds
+         */
+        public long getElapsedNanos()
+        {
+            return this.elapsedNanos;
+        }
+
+        /**
+         * Gets the throughput of applying the batch
+         * @return Double representing accounts opened per second
+         */
+        public double getAccountsPerSecond()
+        {
+            return this.elapsedNanos == 0 ? 0
+                : this.accounts.length * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * Describes the batch
+         * @return String representing the counts and throughput
+         */
+        @Override
+        public String toString()
+        {
+            return "customers=" + this.customers.length
+                + " accounts=" + this.accounts.length
+                + String.format(" accounts/s=%.0f",
+                    this.getAccountsPerSecond());
+        }
+    }
+
+    /**
+     * Builds a range of customers and their accounts, splitting it in half
+     * until it is small enough to do directly
+     */
+    private final class Slice
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient OpeningDay opening;
+        private final transient String[] ids;
+        private final transient int[] numbers;
+        private final transient int[] first;
+        private final transient int[] order;
+        private final transient Customer[] customers;
+        private final transient BankAccount[] accounts;
+        private final transient Customer[] holders;
+        private final int from;
+        private final int to;
+
+        /**
+         * Represents a range of customers to build
+         * @param opening OpeningDay containing the shared opening dates
+         * @param ids Array of Strings containing the reserved customer IDs
+         * @param numbers Array of integers containing the reserved account
+         *  numbers
+         * @param first Array of integers containing where each customer's
+         *  accounts start in the order
+         * @param order Array of integers containing the account positions
+         *  grouped by customer
+         * @param customers Array of Customers to fill in
+         * @param accounts Array of BankAccounts to fill in
+         * @param holders Array of Customers to fill in with each account's
+         *  owner
+         * @param from Integer containing the first customer of the range
+         * @param to Integer containing the customer after the range
+         */
+        private Slice(OpeningDay opening, String[] ids, int[] numbers,
+            int[] first, int[] order, Customer[] customers,
+            BankAccount[] accounts, Customer[] holders, int from, int to)
+        {
+            this.opening = opening;
+            this.ids = ids;
+            this.numbers = numbers;
+            this.first = first;
+            this.order = order;
+            this.customers = customers;
+            this.accounts = accounts;
+            this.holders = holders;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Builds the range, in parallel if it is large
+         */
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from > SLICE_SIZE)
+            {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Slice(this.opening, this.ids, this.numbers,
+                    this.first, this.order, this.customers, this.accounts,
+                    this.holders, this.from, mid),
+                    new Slice(this.opening, this.ids, this.numbers,
+                    this.first, this.order, this.customers, this.accounts,
+                    this.holders, mid, this.to));
+                return;
+            }
+            for (int c = this.from; c < this.to; c++)
+            {
+                Customer customer = new Customer(this.ids[c], names[c]);
+                BankAccount[] owned =
+                    new BankAccount[this.first[c + 1] - this.first[c]];
+                for (int k = 0; k < owned.length; k++)
+                {
+                    int i = this.order[this.first[c] + k];
+                    owned[k] = Customer.createAccount(this.opening,
+                        this.numbers[i], types[i], amounts[i], terms[i]);
+                    this.accounts[i] = owned[k];
+                    this.holders[i] = customer;
+                }
+                customer.adoptAccounts(owned);
+                this.customers[c] = customer;
+            }
+        }
+    }
+
+} // End of class
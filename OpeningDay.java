@@ -0,0 +1,106 @@
+/**
+ * Holds the dates that every account opened on one day shares: the day
+ * and its month, the end of a savings withdraw cycle, the end of an IRA's
+ * five year term and the end of a CD for each common term length. They
+ * are worked out once from a {@link BankClock}, so a batch of accounts
+ * opened together does no date arithmetic per account. An opening day
+ * never changes once made, and can be shared between threads.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public final class OpeningDay
+{
+    //~ Fields ................................................................
+    // CD terms up to ten years have their end day worked out up front
+    private static final int CACHED_TERMS = 120;
+
+    private final BankClock clock;
+    private final int day;
+    private final int monthIndex;
+    private final int cycleEndDay;
+    private final int retirementEndDay;
+    private final int[] termEndDays;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents the current day of a clock
+     * @param clock BankClock containing the clock the accounts will use
+     */
+    public OpeningDay(BankClock clock)
+    {
+        this.clock = clock;
+        this.day = clock.today();
+        this.monthIndex = BankClock.monthIndex(this.day);
+        this.cycleEndDay = BankClock.plusMonths(this.day, 1);
+        this.retirementEndDay = BankClock.plusMonths(this.day, 60);
+        this.termEndDays = new int[CACHED_TERMS + 1];
+        for (int months = 0; months <= CACHED_TERMS; months++)
+        {
+            this.termEndDays[months] = BankClock.plusMonths(this.day, months);
+        }
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the clock the accounts read the current date from
+     * @return BankClock representing the clock
+     */
+    public BankClock getClock()
+    {
+        return this.clock;
+    }
+
+    /**
+     * Gets the opening day
+     * @return Integer representing the day as an epoch day
+     */
+    public int getDay()
+    {
+        return this.day;
+    }
+
+    /**
+     * Gets the month of the opening day
+     * @return Integer representing the month as counted by
+     *  {@link BankClock#monthIndex(int)}
+     */
+    public int getMonthIndex()
+    {
+        return this.monthIndex;
+    }
+
+    /**
+     * Gets the day the first withdraw cycle of a savings account ends
+     * @return Integer representing the day as an epoch day
+     */
+    public int getCycleEndDay()
+    {
+        return this.cycleEndDay;
+    }
+
+    /**
+     * Gets the day the five year term of an IRA ends
+     * @return Integer representing the day as an epoch day
+     */
+    public int getRetirementEndDay()
+    {
+        return this.retirementEndDay;
+    }
+
+    /**
+     * Gets the day a CD term of some length ends
+     * @param months Integer containing the term length in months
+     * @return Integer representing the day as an epoch day
+     */
+    public int getTermEndDay(int months)
+    {
+        if (months >= 0 && months <= CACHED_TERMS)
+        {
+            return this.termEndDays[months];
+        }
+        return BankClock.plusMonths(this.day, months);
+    }
+
+} // End of class
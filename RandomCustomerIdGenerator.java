@@ -0,0 +1,83 @@
+//~ Imports ...............................................................
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates short random customer IDs of 6 hexadecimal characters, in the
+ * same style as the original bank IDs. Random IDs can repeat, so a bank
+ * using this generator retries when an ID is already taken.
+ * @author Farhan Abdulla
+ * @version 01.24.2022
+ */
+public class RandomCustomerIdGenerator
+    implements CustomerIdGenerator
+{
+    //~ Fields ................................................................
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int LENGTH = 6;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a generator of random 6 character customer IDs
+     */
+    public RandomCustomerIdGenerator()
+    {
+        // No state; randomness comes from the calling thread
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Generates a random 6 character customer ID
+     * @return String representing a customer ID
+     */
+    @Override
+    public String next()
+    {
+        int bits = ThreadLocalRandom.current().nextInt(1 << (4 * LENGTH));
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--)
+        {
+            chars[i] = HEX[bits & 0xF];
+            bits >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Generates a block of random customer IDs
+     * @param count Integer containing how many IDs to generate
+     * @return Array of Strings representing the customer IDs
+     */
+    @Override
+    public String[] reserve(int count)
+    {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            ids[i] = this.next();
+        }
+        return ids;
+    }
+
+    /**
+     * Random IDs can repeat
+     * @return Boolean representing false
+     */
+    @Override
+    public boolean isCollisionFree()
+    {
+        return false;
+    }
+
+    /**
+     * Does nothing; the bank already skips random IDs that are taken
+     * @param customerId String containing a previously used ID
+     */
+    @Override
+    public void markUsed(String customerId)
+    {
+        // Taken IDs are detected when they are drawn again
+    }
+
+} // End of class
@@ -1,13 +1,18 @@
 //~ Imports ...............................................................
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a Savings bank account. It is an extended class that inherits
  * from the Checking Account class. This class will actively be utilizing
- * compound interest, and is limited to six account withdrawals per month
+ * compound interest, and is limited to six account withdrawals per month.
+ * Deposit lots are kept in a primitive array of cents, so deposits and
+ * withdrawals never box an amount. The accrued interest is maintained
+ * incrementally: each lot's discounted value is added or subtracted when
+ * the lot changes, and the growth factor is only recomputed when the period
+ * or the interest rate changes.
  * @author Farhan Abdulla
  * @version 01.12.2022
  */
@@ -15,11 +20,17 @@ public class SavingsAccount
     extends CheckingAccount
 {
     //~ Fields ................................................................
+    static final long MINIMUM_BALANCE = 300 * Money.CENTS_PER_DOLLAR;
+
     private int withdrawCount;
-    private String startDate;
-    private String endDate;
-    private List<Double> deposits;
+    private int startDay;
+    private int endDay;
+    private long[] deposits;
+    private int depositCount;
     private double interestRate;
+    private double discountedDeposits;
+    private int growthPeriod;
+    private double growth;
 
     //~ Constructor ...........................................................
     /**
@@ -34,8 +45,8 @@ public class SavingsAccount
         super(balance);
         this.setInterestRate(0.1);
         this.createNewCycle();
-        this.deposits = new ArrayList<Double>();
-        this.deposits.add(balance);
+        this.deposits = new long[8];
+        this.addDeposit(Money.toCents(balance));
     }
 
     /**
@@ -49,8 +60,49 @@ public class SavingsAccount
         super(300);
         this.setInterestRate(0.1);
         this.createNewCycle();
-        this.deposits = new ArrayList<Double>();
-        this.deposits.add(25.0);
+        this.deposits = new long[8];
+        this.addDeposit(25 * Money.CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Represents a savings account opened as part of a batch, with its
+     * first withdraw cycle taken from the shared opening dates
+     * @param opening OpeningDay containing the shared opening dates
+     * @param number Integer containing the reserved account number
+     * @param cents Long containing the opening balance in cents
+     * @param depositCents Long containing the first deposit lot in cents,
+     *  which the default account keeps at $25
+     */
+    SavingsAccount(OpeningDay opening, int number, long cents,
+        long depositCents)
+    {
+        super(opening, number, cents);
+        this.setInterestRate(0.1);
+        this.startDay = opening.getDay();
+        this.endDay = opening.getCycleEndDay();
+        this.deposits = new long[8];
+        this.addDeposit(depositCents);
+    }
+
+    /**
+     * Recreates a savings account, with its cycle and deposit lots, from a
+     * saved state
+     * @param state ByteBuffer containing the saved state at its position
+     */
+    SavingsAccount(ByteBuffer state)
+    {
+        super(state);
+        this.withdrawCount = state.getInt();
+        this.startDay = state.getInt();
+        this.endDay = state.getInt();
+        double rate = state.getDouble();
+        this.depositCount = state.getInt();
+        this.deposits = new long[Math.max(8, this.depositCount)];
+        for (int i = 0; i < this.depositCount; i++)
+        {
+            this.deposits[i] = state.getLong();
+        }
+        this.setInterestRate(rate);
     }
 
     //~ Methods ...............................................................
@@ -81,7 +133,7 @@ public class SavingsAccount
      */
     public String getStartDate()
     {
-        return this.startDate;
+        return BankClock.format(this.startDay);
     }
 
     /**
@@ -91,21 +143,124 @@ public class SavingsAccount
      */
     public String getEndDate()
     {
-        return this.endDate;
+        return BankClock.format(this.endDay);
+    }
+
+    /**
+     * Gets the first day of the monthly cycle
+     * @return Integer representing start of cycle as an epoch day
+     */
+    public int getStartDay()
+    {
+        return this.startDay;
+    }
+
+    /**
+     * Gets the day that ends the monthly cycle
+     * @return Integer representing end of cycle as an epoch day
+     */
+    public int getEndDay()
+    {
+        return this.endDay;
+    }
+
+    /**
+     * Restores the account number and opening day, and starts the withdraw
+     * cycle from the opening day
+     * @param number Integer containing the original account number
+     * @param day Integer containing the original opening epoch day
+     */
+    @Override
+    synchronized void restoreIdentity(int number, int day)
+    {
+        super.restoreIdentity(number, day);
+        this.startDay = day;
+        this.endDay = BankClock.plusMonths(day, 1);
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeState(ByteBuffer)} writes
+     * @return Integer representing the size of the saved state
+     */
+    @Override
+    synchronized int getStateSize()
+    {
+        return super.getStateSize() + 24 + this.depositCount * 8;
+    }
+
+    /**
+     * Writes the account's state followed by its cycle and deposit lots
+     * @param out ByteBuffer to write the state into
+     */
+    @Override
+    synchronized void writeState(ByteBuffer out)
+    {
+        super.writeState(out);
+        out.putInt(this.withdrawCount);
+        out.putInt(this.startDay);
+        out.putInt(this.endDay);
+        out.putDouble(this.interestRate);
+        out.putInt(this.depositCount);
+        for (int i = 0; i < this.depositCount; i++)
+        {
+            out.putLong(this.deposits[i]);
+        }
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeEffect(ByteBuffer)} writes
+     * @return Integer representing the size of a logged effect
+     */
+    @Override
+    int getEffectSize()
+    {
+        return super.getEffectSize() + 12;
+    }
+
+    /**
+     * Writes the last change followed by the withdraw cycle it left
+     * @param out ByteBuffer to write the effect into
+     */
+    @Override
+    synchronized void writeEffect(ByteBuffer out)
+    {
+        super.writeEffect(out);
+        out.putInt(this.startDay);
+        out.putInt(this.endDay);
+        out.putInt(this.withdrawCount);
+    }
+
+    /**
+     * Adds a logged deposit as a lot, or takes a logged withdrawal off the
+     * lots, and puts the withdraw cycle back as the change left it
+     * @param cents Long containing the signed amount moved in cents
+     * @param in ByteBuffer containing the cycle at its position
+     */
+    @Override
+    void restoreEffect(long cents, ByteBuffer in)
+    {
+        if (cents > 0)
+        {
+            this.addDeposit(cents);
+        }
+        else
+        {
+            this.removeDepositsCents(-cents);
+        }
+        this.startDay = in.getInt();
+        this.endDay = in.getInt();
+        this.withdrawCount = in.getInt();
     }
 
     /**
      * Creates a new 1 month cycle by resetting the start and end dates.
      * Start date gets set to current date, and end date gets set to the date
-     * that is 30 days after the start date. Date format is MM/dd/yy
+     * that is one month after the start date.
      */
     public void createNewCycle()
     {
-        this.startDate = this.getCurrentDate();
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.MONTH, 1);
-        this.endDate = new SimpleDateFormat().format(cal.getTime()).
-            split(",")[0];
+        this.startDay = this.getClock().today();
+        this.endDay = BankClock.plusMonths(this.startDay, 1);
     }
     
      /**
@@ -121,18 +276,69 @@ public class SavingsAccount
      * Sets the interest of the account
      * @param newRate Double containing the interest rate of the account
      */
-    public void setInterestRate(double newRate)
+    public synchronized void setInterestRate(double newRate)
     {
         this.interestRate = newRate;
+        this.growthPeriod = Integer.MIN_VALUE;
+        this.discountedDeposits = 0;
+        for (int i = 0; i < this.depositCount; i++)
+        {
+            this.discountedDeposits += this.getDiscountedDeposit(
+                this.deposits[i], i);
+        }
     }
 
     /**
-     * Gets all the deposits made to this account
+     * Gets all the deposits made to this account. The list is a copy in
+     * dollars; see {@link #getDepositsCents()} for the stored amounts.
      * @return List of doubles, each representing every deposit
      */
-    public List<Double> getDeposits()
+    public synchronized List<Double> getDeposits()
+    {
+        List<Double> copy = new ArrayList<Double>(this.depositCount);
+        for (int i = 0; i < this.depositCount; i++)
+        {
+            copy.add(Money.toDollars(this.deposits[i]));
+        }
+        return copy;
+    }
+
+    /**
+     * Gets all the deposits made to this account, in cents
+     * @return Array of longs, each representing a remaining deposit lot
+     */
+    public synchronized long[] getDepositsCents()
+    {
+        return Arrays.copyOf(this.deposits, this.depositCount);
+    }
+
+    /**
+     * Appends a deposit lot, growing the lot array when it is full
+     * @param cents Long containing the deposit amount in cents
+     */
+    private void addDeposit(long cents)
+    {
+        if (this.depositCount == this.deposits.length)
+        {
+            this.deposits = Arrays.copyOf(this.deposits, 
+                this.deposits.length * 2);
+        }
+        this.discountedDeposits += this.getDiscountedDeposit(cents,
+            this.depositCount);
+        this.deposits[this.depositCount++] = cents;
+    }
+
+    /**
+     * Gets the value of a deposit lot discounted back by its position, so
+     * that the sum over all lots only has to be multiplied by the growth 
+     * for the current period to give the accrued interest
+     * @param cents Long containing the lot amount in cents
+     * @param position Integer containing the lot's position in the list
+     * @return Double representing the discounted value in dollars
+     */
+    private double getDiscountedDeposit(long cents, int position)
     {
-        return this.deposits;
+        return this.getAccruedInterest(Money.toDollars(cents), -position);
     }
 
     /**
@@ -143,7 +349,35 @@ public class SavingsAccount
      */
     public boolean endOfCycle(String endDate)
     {
-        if (this.getCurrentDate().equals(endDate))
+        return this.endOfCycle(BankClock.parse(endDate));
+    }
+
+    /**
+     * Checks to see if the cycle has ended, on its end day or any day after.
+     * If true, then start and end dates are reset, and monthly withdraw
+     * count is set to 0.
+     * @param endDay Integer containing the end of the cycle as an epoch day
+     * @return Boolean representing whether end of cycle is true or false
+     */
+    public synchronized boolean endOfCycle(int endDay)
+    {
+        if (this.getClock().today() >= endDay)
+        {
+            this.createNewCycle();
+            this.setWithdrawCount(0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts a new cycle and resets the withdraw count if the current cycle
+     * has ended, even if no withdrawal was made on its last day
+     * @return Boolean representing whether a new cycle was started
+     */
+    public synchronized boolean rollCycle()
+    {
+        if (this.getClock().today() >= this.endDay)
         {
             this.createNewCycle();
             this.setWithdrawCount(0);
@@ -154,29 +388,41 @@ public class SavingsAccount
 
     /**
      * Gets the balance of the account along with its accrued interest
-     * @return Double representing the balance of the savings account
+     * @return Long representing the balance of the savings account in cents
      */
     @Override
-    public double getBalance()
+    public synchronized long getBalanceCents()
     {
-        return this.getAccruedInterest();
+        return Money.toCents(this.getAccruedInterest());
+    }
+
+    /**
+     * Gets the lowest balance the account must keep
+     * @return Long representing the minimum in cents
+     */
+    @Override
+    long getMinimumBalanceCents()
+    {
+        return MINIMUM_BALANCE;
     }
 
     /**
      * Add news feature to deposit where every deposit is recorded into
      * deposits field, which will be accessed when calculating compound
      * interest. It is assumed that deposits will be made once a month
-     * @param amount Double containing deposit amount
+     * @param cents Long containing deposit amount in cents
      * @return Boolean representing whether conditions for deposit are met
      */
     @Override
-    public boolean deposit(double amount)
+    public synchronized boolean depositCents(long cents)
     {
-        if (amount > 0)
+        if (this.canDepositCents(cents))
         {
-            this.deposits.add(amount);
-            super.deposit(amount);
+            this.addDeposit(cents);
+            this.credit(cents);
+            return true;
         }
+        BankMetrics.getDefault().recordRefusal(this, true, cents);
         return false;
     }
 
@@ -184,24 +430,84 @@ public class SavingsAccount
      * Subtracts money from the account balance if and only if the amount
      * does not put the balance below 300. Also records a withdrawal in
      * transaction history. Only six withdrawals can be executed per month
-     * @param amount Double containing amount to withdraw from account
+     * @param cents Long containing amount to withdraw from account in cents
      * @return Boolean representing whether conditions for withdraw are met
      */
     @Override
-    public boolean withdraw(double amount)
+    public synchronized boolean withdrawCents(long cents)
     {
-        this.endOfCycle(this.getEndDate());
-        if ((this.getWithdrawCount() < 6) && (this.getBalance() - amount >= 300) 
-            && amount > 0)
+        if (this.canWithdrawCents(cents))
         {
+            if (this.withdrawCount >= 6)
+            {
+                // The cycle ended without being reset, so it starts over
+                this.rollCycle();
+            }
             this.withdrawCount++;
-            super.withdraw(amount);
-            this.removeDeposits(amount);
+            // The lots go first, so the bank's totals see the new balance
+            this.removeDepositsCents(cents);
+            this.debit(cents);
             return true;
         }
+        BankMetrics.getDefault().recordRefusal(this, false, cents);
         return false;
     }
 
+    /**
+     * Checks whether a withdrawal of this amount would be accepted. Fewer
+     * than six withdrawals must have been made this cycle, and the balance
+     * must stay at or above 300. Cycles are normally reset by the bank's
+     * {@link CycleScheduler}; one that has ended without being reset counts
+     * as fresh, but is only started over by the withdrawal itself, so the
+     * check changes nothing.
+     * @param cents Long containing amount to withdraw from account in cents
+     * @return Boolean representing whether conditions for withdraw are met
+     */
+    @Override
+    public synchronized boolean canWithdrawCents(long cents)
+    {
+        return (this.getCycleWithdrawCount() < 6) 
+            && (this.getBalanceCents() - cents >= MINIMUM_BALANCE) 
+            && cents > 0;
+    }
+
+    /**
+     * Gets the number of withdrawals that count against the limit, which
+     * is none once the cycle has ended even if it has not been reset yet.
+     * The date is only read when the limit has been reached. Called with
+     * the account locked.
+     * @return Integer representing the withdrawals counted this cycle
+     */
+    private int getCycleWithdrawCount()
+    {
+        if (this.withdrawCount >= 6 && this.getClock().today() >= this.endDay)
+        {
+            return 0;
+        }
+        return this.withdrawCount;
+    }
+
+    /**
+     * Gets why a deposit or withdrawal was refused: the six withdrawals of
+     * the cycle were used up, or the balance would drop below 300
+     * @param deposit Boolean containing true for a deposit
+     * @param cents Long containing the amount in cents
+     * @return Reason representing the refusal reason
+     */
+    @Override
+    BankMetrics.Reason getRefusalReason(boolean deposit, long cents)
+    {
+        if (deposit || cents <= 0)
+        {
+            return super.getRefusalReason(deposit, cents);
+        }
+        if (this.getCycleWithdrawCount() >= 6)
+        {
+            return BankMetrics.Reason.SAVINGS_WITHDRAW_LIMIT;
+        }
+        return BankMetrics.Reason.SAVINGS_MINIMUM_BALANCE;
+    }
+
     /**
      * Updates the list of deposits when a withdrawal from account is
      * executed. Will traverse through the list starting from the end 
@@ -211,24 +517,41 @@ public class SavingsAccount
      */
     public void removeDeposits(double amount)
     {
-        for (int i = deposits.size() - 1; i >= 0; i--)
+        this.removeDepositsCents(Money.toCents(amount));
+    }
+
+    /**
+     * Updates the list of deposits when a withdrawal from account is
+     * executed, with the amount given in cents.
+     * @param cents Long containing the amount being withdrawn in cents
+     */
+    public synchronized void removeDepositsCents(long cents)
+    {
+        for (int i = depositCount - 1; i >= 0; i--)
         {
-            if (amount > deposits.get(i))
+            if (cents > deposits[i])
             {
-                amount -= deposits.get(i);
-                deposits.remove(i);
+                cents -= deposits[i];
+                discountedDeposits -= getDiscountedDeposit(deposits[i], i);
+                depositCount--;
             }
-            else if (amount == deposits.get(i))
+            else if (cents == deposits[i])
             {
-                deposits.remove(i);
+                discountedDeposits -= getDiscountedDeposit(deposits[i], i);
+                depositCount--;
                 break;
             }
             else
             {
-                deposits.set(i, deposits.get(i) - amount);
+                deposits[i] -= cents;
+                discountedDeposits -= getDiscountedDeposit(cents, i);
                 break;
             }
         }
+        if (depositCount == 0)
+        {
+            discountedDeposits = 0;
+        }
     }
 
     /**
@@ -248,17 +571,37 @@ public class SavingsAccount
      * Calculates compound interest accumulated on top of balance.
      * Proportionally sums up all the monthly deposits by determining each
      * deposits length of duration in this account. Interest is compounded daily, 
-     * while time will be in units of years
+     * while time will be in units of years. Runs in constant time using the
+     * incrementally maintained sum of discounted deposits.
      * @return Double representing the accrued interest on top of balance
      */
     @Override
-    public double getAccruedInterest()
+    public synchronized double getAccruedInterest()
+    {
+        int period = this.getPeriod();
+        if (period != this.growthPeriod)
+        {
+            this.growth = this.getAccruedInterest(1, period);
+            this.growthPeriod = period;
+        }
+        return this.growth * this.discountedDeposits;
+    }
+
+    /**
+     * Calculates compound interest accumulated on top of balance by summing
+     * every deposit lot directly. Gives the same result as
+     * {@link #getAccruedInterest()} up to floating point rounding, and can be
+     * used to verify it.
+     * @return Double representing the accrued interest on top of balance
+     */
+    public synchronized double recomputeAccruedInterest()
     {
         double sum = 0;
         int period = this.getPeriod();
-        for (double deposit : this.getDeposits())
+        for (int i = 0; i < this.depositCount; i++)
         {
-            sum += this.getAccruedInterest(deposit, period);
+            sum += this.getAccruedInterest(Money.toDollars(deposits[i]), 
+                period);
             period--;
         }
         return sum;
@@ -271,11 +614,7 @@ public class SavingsAccount
      */
     public int getPeriod()
     {
-        int initialMonth = this.dateToInt(this.getOpeningDate())[0];
-        int initialYear = this.dateToInt(this.getOpeningDate())[2];
-        int finalMonth = this.dateToInt(this.getCurrentDate())[0];
-        int finalYear = this.dateToInt(this.getCurrentDate())[2];
-        return ((finalYear - initialYear) * 12) + (finalMonth - initialMonth);
+        return this.getMonthsOpen();
     }
 
     /**
@@ -286,8 +625,9 @@ public class SavingsAccount
      */
     public int getPeriod(int finalMonth, int finalYear)
     {
-        int initialMonth = this.dateToInt(this.getOpeningDate())[0];
-        int initialYear = this.dateToInt(this.getOpeningDate())[2];
+        int[] opening = this.dateToInt(this.getOpeningDate());
+        int initialMonth = opening[0];
+        int initialYear = opening[2];
         return ((finalYear - initialYear) * 12) + (finalMonth - initialMonth);
     }
 
@@ -0,0 +1,186 @@
+//~ Imports ...............................................................
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Generates customer IDs that can never collide, in the style of a
+ * Snowflake ID. Each ID packs a node number (so several bank servers can
+ * share one ID space) with a sequence number, and is written as a fixed
+ * width string of 10 base 36 characters. The sequence is split over
+ * several counters so that threads generating IDs at the same time rarely
+ * touch the same counter; counter s only hands out sequence numbers that
+ * leave remainder s when divided by the number of counters.
+ * @author Farhan Abdulla
+ * @version 01.24.2022
+ */
+public class SequentialCustomerIdGenerator
+    implements CustomerIdGenerator
+{
+    //~ Fields ................................................................
+    /** Number of characters in every ID */
+    public static final int LENGTH = 10;
+    /** Largest node number */
+    public static final int MAX_NODE = 255;
+
+    private static final char[] DIGITS =
+        "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final int SEQUENCE_BITS = 43;
+    private static final int SHARDS = 16;
+    // Counters are spaced 8 longs (64 bytes) apart to keep them on separate
+    // cache lines.
+    private static final int SPACING = 8;
+
+    private final long nodeBits;
+    private final AtomicLongArray counters;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a generator for a single-server bank (node 0)
+     */
+    public SequentialCustomerIdGenerator()
+    {
+        this(0);
+    }
+
+    /**
+     * Represents a generator for one server of a multi-server bank
+     * @param node Integer containing this server's node number, 0 to 255
+     * @throws IllegalArgumentException if the node number is out of range
+     */
+    public SequentialCustomerIdGenerator(int node)
+    {
+        if (node < 0 || node > MAX_NODE)
+        {
+            throw new IllegalArgumentException("Node must be 0 to " 
+                + MAX_NODE + ": " + node);
+        }
+        this.nodeBits = (long) node << SEQUENCE_BITS;
+        this.counters = new AtomicLongArray(SHARDS * SPACING);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Generates the next customer ID
+     * @return String representing a new customer ID
+     */
+    @Override
+    public String next()
+    {
+        int shard = this.shardOfCurrentThread();
+        long count = this.counters.getAndIncrement(shard * SPACING);
+        return this.format(count, shard);
+    }
+
+    /**
+     * Generates a block of customer IDs with one update to a single counter
+     * @param count Integer containing how many IDs to generate
+     * @return Array of Strings representing the new customer IDs
+     */
+    @Override
+    public String[] reserve(int count)
+    {
+        int shard = this.shardOfCurrentThread();
+        long first = this.counters.getAndAdd(shard * SPACING, count);
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            ids[i] = this.format(first + i, shard);
+        }
+        return ids;
+    }
+
+    /**
+     * Sequential IDs never repeat
+     * @return Boolean representing true
+     */
+    @Override
+    public boolean isCollisionFree()
+    {
+        return true;
+    }
+
+    /**
+     * Makes sure an ID handed out earlier is never handed out again. IDs
+     * from other nodes, or that are not in this generator's format, are
+     * ignored since this generator could never produce them.
+     * @param customerId String containing a previously used ID
+     */
+    @Override
+    public void markUsed(String customerId)
+    {
+        if (customerId.length() != LENGTH)
+        {
+            return;
+        }
+        long value = 0;
+        for (int i = 0; i < LENGTH; i++)
+        {
+            int digit = Character.digit(customerId.charAt(i), 36);
+            if (digit < 0)
+            {
+                return;
+            }
+            value = value * 36 + digit;
+        }
+        if ((value & ~((1L << SEQUENCE_BITS) - 1)) != this.nodeBits)
+        {
+            return;
+        }
+        long sequence = value & ((1L << SEQUENCE_BITS) - 1);
+        int index = (int) (sequence % SHARDS) * SPACING;
+        long next = sequence / SHARDS + 1;
+        long current = this.counters.get(index);
+        while (current < next 
+            && !this.counters.compareAndSet(index, current, next))
+        {
+            current = this.counters.get(index);
+        }
+    }
+
+    /**
+     * Writes an ID value as 10 base 36 characters into an existing array,
+     * so callers that keep their own buffer can encode without allocating
+     * @param value Long containing the ID value
+     * @param dest Array of chars to write into
+     * @param offset Integer containing the position of the first character
+     */
+    public static void encode(long value, char[] dest, int offset)
+    {
+        for (int i = offset + LENGTH - 1; i >= offset; i--)
+        {
+            dest[i] = DIGITS[(int) (value % 36)];
+            value /= 36;
+        }
+    }
+
+    /**
+     * Builds the ID string for a counter value of a shard
+     * @param count Long containing the counter value
+     * @param shard Integer containing the shard that owns the counter
+     * @return String representing the customer ID
+     * @throws IllegalStateException if the sequence space is used up
+     */
+    private String format(long count, int shard)
+    {
+        long sequence = count * SHARDS + shard;
+        if (sequence >= (1L << SEQUENCE_BITS))
+        {
+            throw new IllegalStateException("Customer ID space exhausted");
+        }
+        char[] chars = new char[LENGTH];
+        encode(this.nodeBits | sequence, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Picks the counter the calling thread uses
+     * @return Integer representing the shard index
+     */
+    private int shardOfCurrentThread()
+    {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 4)) & (SHARDS - 1));
+    }
+
+} // End of class
@@ -0,0 +1,608 @@
+//~ Imports ...............................................................
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs account operations on a fixed set of shard threads instead of on
+ * the caller's thread. Every account number belongs to one shard, and only
+ * that shard's thread touches the account, so operations on an account run
+ * one after another in the order they were submitted and its lock is never
+ * contended. Callers submit deposit, withdraw, balance and transfer
+ * commands into the shard's bounded ring buffer and get a future back.
+ * <p>
+ * A transfer between accounts of the same shard runs as one command. A
+ * transfer between shards is a message exchange: the receiving shard
+ * checks that it would take the deposit, the paying shard then withdraws
+ * and sends a credit back, and the receiving shard deposits it. Deposits
+ * are only ever refused for a while (a CD during its term), never again
+ * once taken, so the credit is always accepted and a refused transfer
+ * changes neither account. While the credit is on its way the money is in
+ * neither account.
+ * <p>
+ * The shards own their accounts only as long as every change goes through
+ * this executor. Account methods keep their monitors, so a direct call from
+ * another thread is still safe, just no longer lock free. Changes made here
+ * go straight to the accounts without being written to a log, so the
+ * executor refuses a bank that keeps a write-ahead log rather than let its
+ * changes be lost on recovery.
+ * @author Farhan Abdulla
+ * @version 01.29.2022
+ */
+public class ShardedExecutor
+    implements AutoCloseable
+{
+    //~ Fields ................................................................
+    private static final byte DEPOSIT = 1;
+    private static final byte WITHDRAW = 2;
+    private static final byte BALANCE = 3;
+    private static final byte TRANSFER = 4;
+    private static final byte CHECK = 5;
+    private static final byte DEBIT = 6;
+    private static final byte CREDIT = 7;
+    private static final int SPINS = 100;
+
+    private final Bank bank;
+    private final TransferEngine transfers;
+    private final Shard[] shards;
+    private final int mask;
+    private final AtomicLong pending;
+    private volatile boolean closed;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an executor with one shard per available processor
+     * @param bank Bank containing the accounts
+     * @throws IllegalArgumentException if the bank keeps a write-ahead log
+     */
+    public ShardedExecutor(Bank bank)
+    {
+        this(bank, Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    /**
+     * Represents an executor. The shard threads start right away.
+     * @param bank Bank containing the accounts
+     * @param shardCount Integer containing the number of shards, rounded
+     *  up to a power of two
+     * @param ringCapacity Integer containing the commands each shard can
+     *  queue, rounded up to a power of two
+     * @throws IllegalArgumentException if the counts are not positive or
+     *  the bank keeps a write-ahead log
+     */
+    public ShardedExecutor(Bank bank, int shardCount, int ringCapacity)
+    {
+        if (shardCount < 1 || ringCapacity < 1)
+        {
+            throw new IllegalArgumentException(
+                "Shard count and ring capacity must be positive");
+        }
+        if (bank.getLog() != null)
+        {
+            throw new IllegalArgumentException(
+                "Sharded changes are not logged; the bank keeps a log");
+        }
+        this.bank = bank;
+        this.transfers = new TransferEngine();
+        this.pending = new AtomicLong();
+        int count = powerOfTwo(shardCount);
+        this.mask = count - 1;
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++)
+        {
+            this.shards[i] = new Shard(powerOfTwo(ringCapacity), i);
+        }
+        for (Shard shard : this.shards)
+        {
+            shard.thread.start();
+        }
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Deposits money into an account on its shard
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount in cents
+     * @return CompletableFuture representing whether the deposit was
+     *  accepted
+     */
+    public CompletableFuture<Boolean> deposit(int accountNumber, long cents)
+    {
+        Command command = new Command(DEPOSIT, accountNumber, 0, cents);
+        this.submit(accountNumber, command);
+        return command.done;
+    }
+
+    /**
+     * Withdraws money from an account on its shard
+     * @param accountNumber Integer containing the account number
+     * @param cents Long containing the amount in cents
+     * @return CompletableFuture representing whether the withdrawal was
+     *  accepted
+     */
+    public CompletableFuture<Boolean> withdraw(int accountNumber, long cents)
+    {
+        Command command = new Command(WITHDRAW, accountNumber, 0, cents);
+        this.submit(accountNumber, command);
+        return command.done;
+    }
+
+    /**
+     * Reads an account's balance on its shard, after every command
+     * submitted to the account before it
+     * @param accountNumber Integer containing the account number
+     * @return CompletableFuture representing the balance in cents, or -1 if
+     *  there is no such account
+     */
+    public CompletableFuture<Long> getBalanceCents(int accountNumber)
+    {
+        Command command = new Command(BALANCE, accountNumber, 0, 0);
+        command.value = new CompletableFuture<Long>();
+        this.submit(accountNumber, command);
+        return command.value;
+    }
+
+    /**
+     * Transfers money between two accounts
+     * @param fromAccountNumber Integer containing the account to withdraw
+     *  from
+     * @param toAccountNumber Integer containing the account to deposit into
+     * @param cents Long containing the amount in cents
+     * @return CompletableFuture representing whether the transfer happened
+     */
+    public CompletableFuture<Boolean> transferFunds(int fromAccountNumber,
+        int toAccountNumber, long cents)
+    {
+        Command command = new Command(TRANSFER, fromAccountNumber,
+            toAccountNumber, cents);
+        this.submit(fromAccountNumber, command);
+        return command.done;
+    }
+
+    /**
+     * Gets the number of shards
+     * @return Integer representing the shard count
+     */
+    public int getShardCount()
+    {
+        return this.shards.length;
+    }
+
+    /**
+     * Stops the shard threads once every command already submitted has
+     * finished, including transfers still passing between shards. Commands
+     * submitted afterwards are not run; their futures complete
+     * exceptionally with an IllegalStateException.
+     */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        for (Shard shard : this.shards)
+        {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : this.shards)
+        {
+            boolean interrupted = false;
+            while (shard.thread.isAlive())
+            {
+                try
+                {
+                    shard.thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the shard that owns an account number
+     * @param accountNumber Integer containing the account number
+     * @return Shard representing the owner
+     */
+    private Shard shardOf(int accountNumber)
+    {
+        int h = accountNumber * 0x9E3779B9;
+        return this.shards[(h ^ (h >>> 16)) & this.mask];
+    }
+
+    /**
+     * Puts a command on the ring of the shard owning an account, waiting
+     * while the ring is full, or fails it if the executor is closed. The
+     * command is counted before the closed flag is read, so the shards
+     * cannot stop while it is on its way.
+     * @param accountNumber Integer containing the account number
+     * @param command Command containing the command
+     */
+    private void submit(int accountNumber, Command command)
+    {
+        Shard shard = this.shardOf(accountNumber);
+        this.pending.incrementAndGet();
+        if (this.closed)
+        {
+            this.pending.decrementAndGet();
+            command.result().completeExceptionally(
+                new IllegalStateException("Executor is closed"));
+            return;
+        }
+        while (!shard.offer(command))
+        {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Runs one command on the thread of the shard that owns its account
+     * @param shard Shard containing the running shard
+     * @param command Command containing the command
+     */
+    private void run(Shard shard, Command command)
+    {
+        BankAccount account = this.bank.getAccount(command.account);
+        switch (command.type)
+        {
+            case DEPOSIT:
+                this.finish(command.done, account != null
+                    && account.depositCents(command.cents));
+                break;
+            case WITHDRAW:
+                this.finish(command.done, account != null
+                    && account.withdrawCents(command.cents));
+                break;
+            case BALANCE:
+                this.finish(command.value, account == null ? -1
+                    : account.getBalanceCents());
+                break;
+            case TRANSFER:
+                this.startTransfer(shard, command, account);
+                break;
+            case CHECK:
+                this.checkPayee(shard, command, account);
+                break;
+            case DEBIT:
+                if (account == null || !account.withdrawCents(command.cents))
+                {
+                    this.finish(command.done, false);
+                    break;
+                }
+                command.type = CREDIT;
+                this.sendToOther(shard, command);
+                break;
+            default:
+                if (!command.payee.depositCents(command.cents))
+                {
+                    throw new IllegalStateException("Account "
+                        + command.account + " refused a checked deposit");
+                }
+                this.finish(command.done, true);
+                break;
+        }
+    }
+
+    /**
+     * Runs the paying side of a transfer. Within one shard both accounts
+     * are changed here; otherwise the receiving shard is asked to check the
+     * deposit first.
+     * @param shard Shard containing the paying shard
+     * @param command Command containing the transfer
+     * @param from BankAccount containing the paying account, or null
+     */
+    private void startTransfer(Shard shard, Command command, BankAccount from)
+    {
+        int payee = command.other;
+        Shard target = this.shardOf(payee);
+        if (from == null || payee == command.account || command.cents <= 0)
+        {
+            this.finish(command.done, false);
+            return;
+        }
+        if (target == shard)
+        {
+            BankAccount to = this.bank.getAccount(payee);
+            this.finish(command.done, to != null
+                && this.transfers.transferCents(from, to, command.cents));
+            return;
+        }
+        command.type = CHECK;
+        this.sendToOther(shard, command);
+    }
+
+    /**
+     * Runs the receiving side's check of a transfer between shards, and
+     * sends the transfer back to the paying shard to withdraw if the deposit
+     * would be taken
+     * @param shard Shard containing the receiving shard
+     * @param command Command containing the transfer
+     * @param to BankAccount containing the receiving account, or null
+     */
+    private void checkPayee(Shard shard, Command command, BankAccount to)
+    {
+        if (to == null)
+        {
+            this.finish(command.done, false);
+            return;
+        }
+        if (!to.canDepositCents(command.cents))
+        {
+            BankMetrics.getDefault().recordRefusal(to, true, command.cents);
+            this.finish(command.done, false);
+            return;
+        }
+        command.payee = to;
+        command.type = DEBIT;
+        this.sendToOther(shard, command);
+    }
+
+    /**
+     * Sends a transfer to the shard of its other account, swapping the
+     * account it runs on with the other one
+     * @param shard Shard containing the sending shard
+     * @param command Command containing the transfer
+     */
+    private void sendToOther(Shard shard, Command command)
+    {
+        int next = command.other;
+        command.other = command.account;
+        command.account = next;
+        shard.send(this.shardOf(next), command);
+    }
+
+    /**
+     * Completes a command's future and counts the command as finished.
+     * Each future completes once, so each command is counted once, on
+     * whichever shard finishes it.
+     * @param <T> Type of the result
+     * @param future CompletableFuture containing the command's future
+     * @param result T containing the result
+     */
+    private <T> void finish(CompletableFuture<T> future, T result)
+    {
+        if (future.complete(result))
+        {
+            this.pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Rounds a positive number up to a power of two
+     * @param n Integer containing the number
+     * @return Integer representing the power of two
+     */
+    private static int powerOfTwo(int n)
+    {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents one operation on its way to, or between, shards
+     */
+    private static final class Command
+    {
+        private byte type;
+        private int account;
+        private int other;
+        private final long cents;
+        private final CompletableFuture<Boolean> done;
+        private CompletableFuture<Long> value;
+        private BankAccount payee;
+
+        /**
+         * Represents a command
+         * @param type Byte containing the command type
+         * @param account Integer containing the account it runs on
+         * @param other Integer containing the other account of a transfer
+         * @param cents Long containing the amount in cents
+         */
+        private Command(byte type, int account, int other, long cents)
+        {
+            this.type = type;
+            this.account = account;
+            this.other = other;
+            this.cents = cents;
+            this.done = type == BALANCE ? null
+                : new CompletableFuture<Boolean>();
+        }
+
+        /**
+         * Gets the future the caller is waiting on
+         * @return CompletableFuture representing the command's result
+         */
+        private CompletableFuture<?> result()
+        {
+            return this.done != null ? this.done : this.value;
+        }
+    }
+
+    /**
+     * Represents a shard thread and the ring buffer it drains. Any thread
+     * may add to the ring; only the shard thread takes from it. Each slot
+     * has a sequence number saying whether it is free or filled, so adding
+     * is one compare-and-set and taking needs no atomic update at all.
+     */
+    private final class Shard
+    {
+        private final Command[] slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail;
+        private final int ringMask;
+        private final ArrayDeque<Command> outbox;
+        private final Thread thread;
+        private long head;
+        private volatile boolean waiting;
+        private volatile boolean running;
+
+        /**
+         * Represents a shard with an empty ring
+         * @param capacity Integer containing a power of two ring size
+         * @param index Integer containing the shard's number
+         */
+        private Shard(int capacity, int index)
+        {
+            this.slots = new Command[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++)
+            {
+                this.sequences.set(i, i);
+            }
+            this.tail = new AtomicLong();
+            this.ringMask = capacity - 1;
+            this.outbox = new ArrayDeque<Command>();
+            this.running = true;
+            this.thread = new Thread(this::drain, "account-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Adds a command to the ring and wakes the shard if it is waiting
+         * @param command Command containing the command
+         * @return Boolean representing false if the ring is full
+         */
+        private boolean offer(Command command)
+        {
+            long t = this.tail.get();
+            while (true)
+            {
+                int slot = (int) t & this.ringMask;
+                long sequence = this.sequences.get(slot);
+                if (sequence == t)
+                {
+                    if (this.tail.compareAndSet(t, t + 1))
+                    {
+                        this.slots[slot] = command;
+                        this.sequences.set(slot, t + 1);
+                        if (this.waiting)
+                        {
+                            this.waiting = false;
+                            LockSupport.unpark(this.thread);
+                        }
+                        return true;
+                    }
+                    t = this.tail.get();
+                }
+                else if (sequence < t)
+                {
+                    return false;
+                }
+                else
+                {
+                    t = this.tail.get();
+                }
+            }
+        }
+
+        /**
+         * Takes the next command from the ring. Only the shard thread calls
+         * this.
+         * @return Command representing the command, or null if the ring is
+         *  empty
+         */
+        private Command poll()
+        {
+            int slot = (int) this.head & this.ringMask;
+            if (this.sequences.get(slot) != this.head + 1)
+            {
+                return null;
+            }
+            Command command = this.slots[slot];
+            this.slots[slot] = null;
+            this.sequences.set(slot, this.head + this.slots.length);
+            this.head++;
+            return command;
+        }
+
+        /**
+         * Sends a command to another shard. If that shard's ring is full the
+         * command waits in this shard's outbox, so two shards sending to
+         * each other can never both be stuck waiting.
+         * @param target Shard containing the receiving shard
+         * @param command Command containing the command
+         */
+        private void send(Shard target, Command command)
+        {
+            if (!this.outbox.isEmpty() || !target.offer(command))
+            {
+                this.outbox.add(command);
+            }
+        }
+
+        /**
+         * Retries sending the commands waiting in the outbox, in order
+         */
+        private void flushOutbox()
+        {
+            Command command;
+            while ((command = this.outbox.peek()) != null
+                && shardOf(command.account).offer(command))
+            {
+                this.outbox.poll();
+            }
+        }
+
+        /**
+         * Runs commands until the executor closes, parking when there is
+         * nothing to do
+         */
+        private void drain()
+        {
+            int idle = 0;
+            while (true)
+            {
+                Command command = this.poll();
+                if (command != null)
+                {
+                    idle = 0;
+                    try
+                    {
+                        run(this, command);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        if (command.result().completeExceptionally(e))
+                        {
+                            pending.decrementAndGet();
+                        }
+                    }
+                    continue;
+                }
+                if (!this.outbox.isEmpty())
+                {
+                    this.flushOutbox();
+                    Thread.yield();
+                    continue;
+                }
+                if (!this.running && pending.get() == 0)
+                {
+                    return;
+                }
+                if (++idle < SPINS)
+                {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                this.waiting = true;
+                if (this.sequences.get((int) this.head & this.ringMask)
+                    != this.head + 1 && (this.running || pending.get() != 0))
+                {
+                    LockSupport.parkNanos(this, 1_000_000);
+                }
+                this.waiting = false;
+            }
+        }
+    }
+
+} // End of class
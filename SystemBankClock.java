@@ -0,0 +1,78 @@
+//~ Imports ...............................................................
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Represents the real clock in the system time zone. The current epoch day
+ * is cached and only recomputed once the clock ticks past midnight, so
+ * reading today's date costs one call to System.currentTimeMillis() and an
+ * integer comparison.
+ * @author Farhan Abdulla
+ * @version 01.21.2022
+ */
+public class SystemBankClock
+    extends BankClock
+{
+    //~ Fields ................................................................
+    private final ZoneId zone;
+    private volatile int today;
+    private volatile long nextDayMillis;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents the system clock in the system default time zone
+     */
+    public SystemBankClock()
+    {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Represents the system clock in a given time zone
+     * @param zone ZoneId containing the time zone that decides the date
+     */
+    public SystemBankClock(ZoneId zone)
+    {
+        this.zone = zone;
+        this.refresh();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the current day, recomputing it only after midnight has passed
+     * @return Integer representing today as an epoch day
+     */
+    @Override
+    public int today()
+    {
+        if (System.currentTimeMillis() >= this.nextDayMillis)
+        {
+            this.refresh();
+        }
+        return this.today;
+    }
+
+    /**
+     * Gets the current time
+     * @return Long representing the current time in epoch milliseconds
+     */
+    @Override
+    public long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Recomputes today's epoch day and the time at which it ends
+     */
+    private synchronized void refresh()
+    {
+        LocalDate date = LocalDate.now(this.zone);
+        this.today = (int) date.toEpochDay();
+        this.nextDayMillis = date.plusDays(1).atStartOfDay(this.zone)
+            .toInstant().toEpochMilli();
+    }
+
+} // End of class
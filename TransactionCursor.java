@@ -0,0 +1,191 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks through a run of transactions in a {@link TransactionLedger}, in
+ * time order. A cursor can be used in two ways: as an Iterator of
+ * {@link TransactionRecord} objects, or without creating any objects by
+ * calling {@link #advance()} and reading the current transaction's fields
+ * through the getters.
+ * <p>
+ * The cursor sees the transactions that were recorded when it was made.
+ * The ledger only ever appends, so the cursor reads them without holding
+ * the account's lock, and transactions recorded later are not seen.
+ * @author Farhan Abdulla
+ * @version 01.31.2022
+ */
+public final class TransactionCursor
+    implements Iterator<TransactionRecord>
+{
+    //~ Fields ................................................................
+    private final long[] timestamps;
+    private final long[] amounts;
+    private final byte[] types;
+    private final int[] days;
+    private final int[] dayOffsets;
+    private final int dayCount;
+    private final int end;
+    private int position;
+    private int current;
+    private int daySlot;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a cursor over the transactions from one position up to
+     * another. The arrays are the ledger's own and are only read.
+     * @param timestamps Array of longs containing the transaction times
+     * @param amounts Array of longs containing the signed amounts in cents
+     * @param types Array of bytes containing the type codes
+     * @param days Array of integers containing each day with activity
+     * @param dayOffsets Array of integers containing where each day starts
+     * @param dayCount Integer containing the number of days in use
+     * @param start Integer containing the position of the first transaction
+     * @param end Integer containing the position just past the last one
+     */
+    TransactionCursor(long[] timestamps, long[] amounts, byte[] types,
+        int[] days, int[] dayOffsets, int dayCount, int start, int end)
+    {
+        this.timestamps = timestamps;
+        this.amounts = amounts;
+        this.types = types;
+        this.days = days;
+        this.dayOffsets = dayOffsets;
+        this.dayCount = dayCount;
+        this.position = start;
+        this.end = Math.max(start, end);
+        this.current = -1;
+        int slot = Arrays.binarySearch(dayOffsets, 0, dayCount, start);
+        this.daySlot = slot >= 0 ? slot : Math.max(0, -slot - 2);
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Moves to the next transaction
+     * @return Boolean representing true if there was one, false at the end
+     */
+    public boolean advance()
+    {
+        if (this.position >= this.end)
+        {
+            return false;
+        }
+        this.current = this.position++;
+        while (this.daySlot + 1 < this.dayCount
+            && this.dayOffsets[this.daySlot + 1] <= this.current)
+        {
+            this.daySlot++;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the time of the current transaction
+     * @return Long representing the time in epoch milliseconds
+     */
+    public long getTimestamp()
+    {
+        return this.timestamps[this.checkCurrent()];
+    }
+
+    /**
+     * Gets the day of the current transaction
+     * @return Integer representing the epoch day
+     */
+    public int getEpochDay()
+    {
+        this.checkCurrent();
+        return this.days[this.daySlot];
+    }
+
+    /**
+     * Gets the signed amount of the current transaction
+     * @return Long representing the amount in cents
+     */
+    public long getAmountCents()
+    {
+        return this.amounts[this.checkCurrent()];
+    }
+
+    /**
+     * Gets the type code of the current transaction
+     * @return Byte representing the transaction type
+     */
+    public byte getType()
+    {
+        return this.types[this.checkCurrent()];
+    }
+
+    /**
+     * Gets the current transaction as a record
+     * @return TransactionRecord representing the current transaction
+     */
+    public TransactionRecord toRecord()
+    {
+        return new TransactionRecord(this.getTimestamp(), this.getEpochDay(),
+            this.getAmountCents(), this.getType());
+    }
+
+    /**
+     * Gets the ledger position of the next transaction the cursor will move
+     * to. Positions never change, so a position can be used to pick up a
+     * range again later.
+     * @return Integer representing the position
+     */
+    public int getPosition()
+    {
+        return this.position;
+    }
+
+    /**
+     * Gets the number of transactions left to move through
+     * @return Integer representing the remaining count
+     */
+    public int remaining()
+    {
+        return this.end - this.position;
+    }
+
+    /**
+     * Checks whether there is another transaction
+     * @return Boolean representing true if there is one
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return this.position < this.end;
+    }
+
+    /**
+     * Moves to the next transaction and returns it as a record
+     * @return TransactionRecord representing the transaction
+     * @throws NoSuchElementException if there are no more transactions
+     */
+    @Override
+    public TransactionRecord next()
+    {
+        if (!this.advance())
+        {
+            throw new NoSuchElementException();
+        }
+        return this.toRecord();
+    }
+
+    /**
+     * Makes sure the cursor is on a transaction
+     * @return Integer representing the current position
+     * @throws IllegalStateException if advance has not yet been called
+     */
+    private int checkCurrent()
+    {
+        if (this.current < 0)
+        {
+            throw new IllegalStateException("Call advance first");
+        }
+        return this.current;
+    }
+
+} // End of class
@@ -0,0 +1,612 @@
+//~ Imports ...............................................................
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams a file of deposits and withdrawals into a bank. The file is read
+ * incrementally on the calling thread, and each record is handed to the
+ * worker that owns its account number, so records for one account are
+ * applied in file order while different accounts are applied in parallel.
+ * Records travel in small fixed-size chunks through bounded queues; when
+ * the workers fall behind the reader waits, so memory use does not depend
+ * on the size of the file.
+ * <p>
+ * Records are applied through {@link Bank#depositCents(int, long)} and
+ * {@link Bank#withdrawCents(int, long)}, so a durable bank logs them.
+ * Records that cannot be parsed, name an unknown account, or are refused
+ * by the account (such as a seventh savings withdrawal in a cycle) are
+ * passed to the error sink.
+ * <p>
+ * Two formats are read. The delimited format has one record per line:
+ * a type of D or W, the account number and the amount in dollars, for
+ * example {@code D,12345678,250.00}. Blank lines and lines starting with
+ * # are skipped. The binary format is a sequence of 13 byte big-endian
+ * records: a type byte (1 deposit, 2 withdrawal), the account number as an
+ * int and the amount in cents as a long.
+ * @author Farhan Abdulla
+ * @version 01.27.2022
+ */
+public class TransactionIngestor
+{
+    //~ Fields ................................................................
+    private static final int CHUNK_SIZE = 512;
+    private static final int BINARY_RECORD = 13;
+    private static final Chunk END = new Chunk();
+
+    private final Bank bank;
+    private final int workers;
+    private final int queueCapacity;
+    private volatile ErrorSink errors;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an ingestor with one worker per available processor
+     * @param bank Bank containing the accounts records are applied to
+     */
+    public TransactionIngestor(Bank bank)
+    {
+        this(bank, Runtime.getRuntime().availableProcessors(), 16);
+    }
+
+    /**
+     * Represents an ingestor. At most workers * (queueCapacity + 2) chunks
+     * of 512 records are held in memory at once.
+     * @param bank Bank containing the accounts records are applied to
+     * @param workers Integer containing the number of worker threads
+     * @param queueCapacity Integer containing the chunks each worker's
+     *  queue can hold
+     */
+    public TransactionIngestor(Bank bank, int workers, int queueCapacity)
+    {
+        if (workers < 1 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException(
+                "Workers and queue capacity must be positive");
+        }
+        this.bank = bank;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.errors = (number, record, reason) -> { };
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Sets where rejected and malformed records are sent. By default they
+     * are only counted.
+     * @param sink ErrorSink containing the destination
+     */
+    public void setErrorSink(ErrorSink sink)
+    {
+        this.errors = sink;
+    }
+
+    /**
+     * Creates an error sink that writes one line per rejected record:
+     * the record number, the record and the reason, separated by commas
+     * @param out Writer to write the lines to
+     * @return ErrorSink representing the sink
+     */
+    public static ErrorSink writeErrorsTo(Writer out)
+    {
+        return (number, record, reason) ->
+        {
+            synchronized (out)
+            {
+                try
+                {
+                    out.write(number + "," + record + "," + reason + "\n");
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(
+                        "Cannot write rejected record", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Ingests a delimited text file
+     * @param file Path containing the file
+     * @return Report representing what was applied and rejected
+     * @throws IOException if the file cannot be read
+     */
+    public Report ingestDelimited(Path file)
+        throws IOException
+    {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            return this.ingestDelimited(in);
+        }
+    }
+
+    /**
+     * Ingests delimited text from a reader
+     * @param in Reader containing the records
+     * @return Report representing what was applied and rejected
+     * @throws IOException if the reader fails
+     */
+    public Report ingestDelimited(Reader in)
+        throws IOException
+    {
+        BufferedReader lines = in instanceof BufferedReader
+            ? (BufferedReader) in : new BufferedReader(in);
+        Run run = new Run();
+        try
+        {
+            long number = 0;
+            String line;
+            while ((line = lines.readLine()) != null)
+            {
+                number++;
+                if (line.isBlank() || line.charAt(0) == '#')
+                {
+                    continue;
+                }
+                if (!this.parseLine(run, number, line))
+                {
+                    run.malformed++;
+                    this.errors.rejected(number, line, "malformed");
+                }
+            }
+        }
+        finally
+        {
+            run.finish();
+        }
+        return run.report();
+    }
+
+    /**
+     * Ingests a binary file
+     * @param file Path containing the file
+     * @return Report representing what was applied and rejected
+     * @throws IOException if the file cannot be read
+     */
+    public Report ingestBinary(Path file)
+        throws IOException
+    {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return this.ingestBinary(in);
+        }
+    }
+
+    /**
+     * Ingests binary records from a channel
+     * @param in ReadableByteChannel containing the records
+     * @return Report representing what was applied and rejected
+     * @throws IOException if the channel fails
+     */
+    public Report ingestBinary(ReadableByteChannel in)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BINARY_RECORD * 4096);
+        Run run = new Run();
+        try
+        {
+            long number = 0;
+            while (in.read(buffer) >= 0)
+            {
+                buffer.flip();
+                while (buffer.remaining() >= BINARY_RECORD)
+                {
+                    number++;
+                    byte type = buffer.get();
+                    int account = buffer.getInt();
+                    long cents = buffer.getLong();
+                    if (type != TransactionLedger.DEPOSIT
+                        && type != TransactionLedger.WITHDRAWAL)
+                    {
+                        run.malformed++;
+                        this.errors.rejected(number, "type " + type + ","
+                            + account + "," + Money.format(cents),
+                            "malformed");
+                        continue;
+                    }
+                    run.dispatch(number, type, account, cents);
+                }
+                buffer.compact();
+            }
+            if (buffer.position() > 0)
+            {
+                run.malformed++;
+                this.errors.rejected(number + 1, buffer.position() + " bytes",
+                    "truncated record");
+            }
+        }
+        finally
+        {
+            run.finish();
+        }
+        return run.report();
+    }
+
+    /**
+     * Parses one delimited line and hands the record to its worker
+     * @param run Run containing the workers
+     * @param number Long containing the line number
+     * @param line String containing the line
+     * @return Boolean representing whether the line could be parsed
+     */
+    private boolean parseLine(Run run, long number, String line)
+    {
+        int first = line.indexOf(',');
+        int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+        if (second < 0)
+        {
+            return false;
+        }
+        byte type;
+        String kind = line.substring(0, first).trim();
+        if (kind.equalsIgnoreCase("D"))
+        {
+            type = TransactionLedger.DEPOSIT;
+        }
+        else if (kind.equalsIgnoreCase("W"))
+        {
+            type = TransactionLedger.WITHDRAWAL;
+        }
+        else
+        {
+            return false;
+        }
+        try
+        {
+            int account = Integer.parseInt(
+                line.substring(first + 1, second).trim());
+            long cents = Money.toCents(Double.parseDouble(
+                line.substring(second + 1).trim()));
+            run.dispatch(number, type, account, cents);
+            return true;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Applies one record to the bank
+     * @param chunk Chunk containing the record
+     * @param i Integer containing the record's position in the chunk
+     * @param counts Array of longs counting applied and rejected records
+     */
+    private void apply(Chunk chunk, int i, long[] counts)
+    {
+        int account = chunk.accounts[i];
+        long cents = chunk.cents[i];
+        boolean deposit = chunk.types[i] == TransactionLedger.DEPOSIT;
+        String reason;
+        try
+        {
+            if (this.bank.getAccount(account) == null)
+            {
+                reason = "unknown account";
+            }
+            else if (deposit ? this.bank.depositCents(account, cents)
+                : this.bank.withdrawCents(account, cents))
+            {
+                counts[0]++;
+                return;
+            }
+            else
+            {
+                reason = "rejected";
+            }
+        }
+        catch (RuntimeException e)
+        {
+            reason = String.valueOf(e.getMessage());
+        }
+        counts[1]++;
+        this.errors.rejected(chunk.numbers[i], (deposit ? "D," : "W,")
+            + account + "," + Money.format(cents), reason);
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Receives records that were not applied. It is called from the reader
+     * and worker threads, possibly several at once.
+     */
+    public interface ErrorSink
+    {
+        /**
+         * Called for each record that was not applied
+         * @param recordNumber Long containing the line or record number,
+         *  starting at 1
+         * @param record String containing the record
+         * @param reason String containing why it was not applied
+         */
+        void rejected(long recordNumber, String record, String reason);
+    }
+
+    /**
+     * Represents what one ingestion did
+     */
+    public static final class Report
+    {
+        private long applied;
+        private long rejected;
+        private long malformed;
+        private long elapsedNanos;
+
+        /**
+         * Gets the number of records applied to the bank
+         * @return Long representing the applied count
+         */
+        public long getApplied()
+        {
+            return this.applied;
+        }
+
+        /**
+         * Gets the number of records refused by the bank
+         * @return Long representing the rejected count
+         */
+        public long getRejected()
+        {
+            return this.rejected;
+        }
+
+        /**
+         * Gets the number of records that could not be read
+         * @return Long representing the malformed count
+         */
+        public long getMalformed()
+        {
+            return this.malformed;
+        }
+
+        /**
+         * Gets how long the ingestion took
+         * @return Long representing the run time in nanoseconds
+         */
+        public long getElapsedNanos()
+        {
+            return this.elapsedNanos;
+        }
+
+        /**
+         * Gets the throughput of the ingestion
+         * @return Double representing records handled per second
+         */
+        public double getRecordsPerSecond()
+        {
+            return this.elapsedNanos == 0 ? 0
+                : (this.applied + this.rejected + this.malformed) * 1e9
+                    / this.elapsedNanos;
+        }
+
+        /**
+         * Describes the ingestion
+         * @return String representing the counts and throughput
+         */
+        @Override
+        public String toString()
+        {
+            return "applied=" + this.applied + " rejected=" + this.rejected
+                + " malformed=" + this.malformed
+                + String.format(" records/s=%.0f",
+                    this.getRecordsPerSecond());
+        }
+    }
+
+    /**
+     * Holds up to 512 records in parallel primitive arrays
+     */
+    private static final class Chunk
+    {
+        private final long[] numbers = new long[CHUNK_SIZE];
+        private final byte[] types = new byte[CHUNK_SIZE];
+        private final int[] accounts = new int[CHUNK_SIZE];
+        private final long[] cents = new long[CHUNK_SIZE];
+        private int size;
+    }
+
+    /**
+     * Holds the workers, queues and counters of one ingestion
+     */
+    private final class Run
+    {
+        private final long start;
+        private final BlockingQueue<Chunk>[] queues;
+        private final Chunk[] filling;
+        private final Thread[] threads;
+        private final long[][] counts;
+        private final RuntimeException[] failures;
+        private long malformed;
+
+        /**
+         * Starts the workers
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Run()
+        {
+            this.start = System.nanoTime();
+            this.queues = new BlockingQueue[workers];
+            this.filling = new Chunk[workers];
+            this.threads = new Thread[workers];
+            this.counts = new long[workers][2];
+            this.failures = new RuntimeException[workers];
+            for (int w = 0; w < workers; w++)
+            {
+                BlockingQueue<Chunk> queue =
+                    new ArrayBlockingQueue<Chunk>(queueCapacity);
+                int worker = w;
+                this.queues[w] = queue;
+                this.filling[w] = new Chunk();
+                this.threads[w] = new Thread(() -> this.work(queue, worker),
+                    "ingest-" + w);
+                this.threads[w].start();
+            }
+        }
+
+        /**
+         * Adds a record to the chunk of the worker that owns its account,
+         * sending the chunk when it is full
+         * @param number Long containing the record number
+         * @param type Byte containing the record type
+         * @param account Integer containing the account number
+         * @param cents Long containing the amount in cents
+         */
+        private void dispatch(long number, byte type, int account, long cents)
+        {
+            int h = account * 0x9E3779B9;
+            int w = Math.floorMod(h ^ (h >>> 16), workers);
+            Chunk chunk = this.filling[w];
+            int i = chunk.size++;
+            chunk.numbers[i] = number;
+            chunk.types[i] = type;
+            chunk.accounts[i] = account;
+            chunk.cents[i] = cents;
+            if (chunk.size == CHUNK_SIZE)
+            {
+                this.send(w, chunk);
+                this.filling[w] = new Chunk();
+            }
+        }
+
+        /**
+         * Sends the partly filled chunks, tells the workers to stop, and
+         * waits for them to apply everything they were sent
+         * @throws RuntimeException if a worker failed, for example because
+         *  the error sink threw
+         */
+        private void finish()
+        {
+            for (int w = 0; w < workers; w++)
+            {
+                if (this.filling[w].size > 0)
+                {
+                    this.send(w, this.filling[w]);
+                }
+                this.send(w, END);
+            }
+            boolean interrupted = false;
+            for (Thread thread : this.threads)
+            {
+                while (thread.isAlive())
+                {
+                    try
+                    {
+                        thread.join();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+            for (RuntimeException failure : this.failures)
+            {
+                if (failure != null)
+                {
+                    throw failure;
+                }
+            }
+        }
+
+        /**
+         * Puts a chunk on a worker's queue, waiting while it is full
+         * @param w Integer containing the worker
+         * @param chunk Chunk containing the records
+         */
+        private void send(int w, Chunk chunk)
+        {
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    this.queues[w].put(chunk);
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Applies chunks from a queue in order until told to stop. After a
+         * failure the worker keeps taking chunks without applying them, so
+         * the reader is never left waiting on a full queue.
+         * @param queue BlockingQueue containing the worker's chunks
+         * @param worker Integer containing the worker's number
+         */
+        private void work(BlockingQueue<Chunk> queue, int worker)
+        {
+            long[] workerCounts = this.counts[worker];
+            while (true)
+            {
+                Chunk chunk;
+                try
+                {
+                    chunk = queue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    continue;
+                }
+                if (chunk == END)
+                {
+                    return;
+                }
+                try
+                {
+                    for (int i = 0; i < chunk.size
+                        && this.failures[worker] == null; i++)
+                    {
+                        apply(chunk, i, workerCounts);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    this.failures[worker] = e;
+                }
+            }
+        }
+
+        /**
+         * Adds up the workers' counts. Only called after finish().
+         * @return Report representing the ingestion
+         */
+        private Report report()
+        {
+            Report report = new Report();
+            for (long[] workerCounts : this.counts)
+            {
+                report.applied += workerCounts[0];
+                report.rejected += workerCounts[1];
+            }
+            report.malformed = this.malformed;
+            report.elapsedNanos = System.nanoTime() - this.start;
+            return report;
+        }
+    }
+
+} // End of class
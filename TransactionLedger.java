@@ -0,0 +1,285 @@
+//~ Imports ...............................................................
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents the append-only transaction history of a single account. Each
+ * transaction is stored as a column entry in growable primitive arrays
+ * (timestamp, signed amount in cents, and type), and a small index maps each
+ * day that has activity to the offset of its first transaction. Appending
+ * is O(1) amortized and creates no objects; a day's history is only turned
+ * into a String when it is asked for. A range of days is found with two
+ * binary searches of the day index and read through a
+ * {@link TransactionCursor}, so it costs O(log n + k) for k transactions.
+ * @author Farhan Abdulla
+ * @version 01.20.2022
+ */
+public class TransactionLedger
+{
+    //~ Fields ................................................................
+    /** Type code for a deposit */
+    public static final byte DEPOSIT = 1;
+    /** Type code for a withdrawal */
+    public static final byte WITHDRAWAL = 2;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final long[] NO_LONGS = new long[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final int[] NO_INTS = new int[0];
+
+    private long[] timestamps;
+    private long[] amounts;
+    private byte[] types;
+    private int size;
+
+    private int[] days;
+    private int[] dayOffsets;
+    private int dayCount;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an empty transaction ledger. Its arrays are only made by
+     * the first transaction, so the many accounts that have none yet, such
+     * as accounts just opened in bulk, cost a single small object each.
+     */
+    public TransactionLedger()
+    {
+        this.timestamps = NO_LONGS;
+        this.amounts = NO_LONGS;
+        this.types = NO_BYTES;
+        this.days = NO_INTS;
+        this.dayOffsets = NO_INTS;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Records a transaction at the end of the ledger. Transactions must be
+     * appended in time order, which is always the case when they are
+     * recorded as they happen.
+     * @param timestamp Long containing the time in epoch milliseconds
+     * @param epochDay Integer containing the day of the transaction
+     * @param amountCents Long containing the signed amount in cents; positive
+     *  for money in, negative for money out
+     * @param type Byte containing the transaction type code
+     */
+    public void append(long timestamp, int epochDay, long amountCents,
+        byte type)
+    {
+        if (this.size == this.timestamps.length)
+        {
+            int capacity = Math.max(INITIAL_CAPACITY, this.size * 2);
+            this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+            this.amounts = Arrays.copyOf(this.amounts, capacity);
+            this.types = Arrays.copyOf(this.types, capacity);
+        }
+        if (this.dayCount == 0 || this.days[this.dayCount - 1] != epochDay)
+        {
+            if (this.dayCount == this.days.length)
+            {
+                int capacity = Math.max(INITIAL_CAPACITY, this.dayCount * 2);
+                this.days = Arrays.copyOf(this.days, capacity);
+                this.dayOffsets = Arrays.copyOf(this.dayOffsets, capacity);
+            }
+            this.days[this.dayCount] = epochDay;
+            this.dayOffsets[this.dayCount] = this.size;
+            this.dayCount++;
+        }
+        this.timestamps[this.size] = timestamp;
+        this.amounts[this.size] = amountCents;
+        this.types[this.size] = type;
+        this.size++;
+    }
+
+    /**
+     * Gets the number of transactions recorded
+     * @return Integer representing the number of transactions
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the day of the last transaction recorded
+     * @return Integer representing the epoch day
+     * @throws ArrayIndexOutOfBoundsException if the ledger is empty
+     */
+    public int getLastDay()
+    {
+        return this.days[this.dayCount - 1];
+    }
+
+    /**
+     * Gets the timestamp of a transaction
+     * @param index Integer containing the position of the transaction
+     * @return Long representing the time in epoch milliseconds
+     */
+    public long getTimestamp(int index)
+    {
+        return this.timestamps[index];
+    }
+
+    /**
+     * Gets the signed amount of a transaction
+     * @param index Integer containing the position of the transaction
+     * @return Long representing the signed amount in cents
+     */
+    public long getAmountCents(int index)
+    {
+        return this.amounts[index];
+    }
+
+    /**
+     * Gets the type code of a transaction
+     * @param index Integer containing the position of the transaction
+     * @return Byte representing the transaction type
+     */
+    public byte getType(int index)
+    {
+        return this.types[index];
+    }
+
+    /**
+     * Gets the position of the first transaction made on a day
+     * @param epochDay Integer containing the day
+     * @return Integer representing the offset, or -1 if the day has no
+     *  transactions
+     */
+    public int firstOffsetOf(int epochDay)
+    {
+        int slot = Arrays.binarySearch(this.days, 0, this.dayCount, epochDay);
+        if (slot < 0)
+        {
+            return -1;
+        }
+        return this.dayOffsets[slot];
+    }
+
+    /**
+     * Gets the position just past the last transaction made on a day
+     * @param epochDay Integer containing the day
+     * @return Integer representing the end offset, or -1 if the day has no
+     *  transactions
+     */
+    public int endOffsetOf(int epochDay)
+    {
+        int slot = Arrays.binarySearch(this.days, 0, this.dayCount, epochDay);
+        if (slot < 0)
+        {
+            return -1;
+        }
+        if (slot + 1 < this.dayCount)
+        {
+            return this.dayOffsets[slot + 1];
+        }
+        return this.size;
+    }
+
+    /**
+     * Gets a cursor over the transactions made from one day to another,
+     * both included
+     * @param fromDay Integer containing the first epoch day
+     * @param toDay Integer containing the last epoch day
+     * @return TransactionCursor representing the transactions in time order
+     */
+    public TransactionCursor range(int fromDay, int toDay)
+    {
+        return this.range(fromDay, toDay, 0);
+    }
+
+    /**
+     * Gets a cursor over the transactions made from one day to another,
+     * both included, that are at or after a ledger position
+     * @param fromDay Integer containing the first epoch day
+     * @param toDay Integer containing the last epoch day
+     * @param start Integer containing the first position to include
+     * @return TransactionCursor representing the transactions in time order
+     */
+    public TransactionCursor range(int fromDay, int toDay, int start)
+    {
+        int end = fromDay > toDay ? 0 : toDay == Integer.MAX_VALUE 
+            ? this.size : this.offsetOnOrAfter(toDay + 1);
+        return new TransactionCursor(this.timestamps, this.amounts, 
+            this.types, this.days, this.dayOffsets, this.dayCount, 
+            Math.max(start, this.offsetOnOrAfter(fromDay)), end);
+    }
+
+    /**
+     * Gets one page of the transactions made from one day to another, both
+     * included
+     * @param fromDay Integer containing the first epoch day
+     * @param toDay Integer containing the last epoch day
+     * @param start Integer containing the position from the previous page's
+     *  {@link TransactionPage#getNextStart()}, or 0 for the first page
+     * @param pageSize Integer containing the most transactions on the page
+     * @return TransactionPage representing the page
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public TransactionPage page(int fromDay, int toDay, int start, 
+        int pageSize)
+    {
+        if (pageSize <= 0)
+        {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        TransactionCursor cursor = this.range(fromDay, toDay, start);
+        List<TransactionRecord> records = new ArrayList<TransactionRecord>(
+            Math.min(pageSize, cursor.remaining()));
+        while (records.size() < pageSize && cursor.advance())
+        {
+            records.add(cursor.toRecord());
+        }
+        return new TransactionPage(records, 
+            cursor.hasNext() ? cursor.getPosition() : -1);
+    }
+
+    /**
+     * Gets the position of the first transaction made on or after a day
+     * @param epochDay Integer containing the day
+     * @return Integer representing the offset, or the size if there is none
+     */
+    private int offsetOnOrAfter(int epochDay)
+    {
+        int slot = Arrays.binarySearch(this.days, 0, this.dayCount, epochDay);
+        if (slot < 0)
+        {
+            slot = -slot - 1;
+        }
+        return slot < this.dayCount ? this.dayOffsets[slot] : this.size;
+    }
+
+    /**
+     * Renders all transactions made on a day as a comma separated list of
+     * signed dollar amounts, such as "+25.00,-3.50"
+     * @param epochDay Integer containing the day
+     * @return String representing the day's transactions, or null if the day
+     *  has no transactions
+     */
+    public String renderDay(int epochDay)
+    {
+        int start = this.firstOffsetOf(epochDay);
+        if (start < 0)
+        {
+            return null;
+        }
+        int end = this.endOffsetOf(epochDay);
+        StringBuilder sb = new StringBuilder((end - start) * 10);
+        for (int i = start; i < end; i++)
+        {
+            if (i > start)
+            {
+                sb.append(',');
+            }
+            if (this.amounts[i] >= 0)
+            {
+                sb.append('+');
+            }
+            Money.appendTo(sb, this.amounts[i]);
+        }
+        return sb.toString();
+    }
+
+} // End of class
@@ -0,0 +1,62 @@
+//~ Imports ...............................................................
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents one page of a date-range transaction query, along with where
+ * the next page starts. Pages are found by ledger position, which never
+ * changes because the ledger only appends, so a long history can be read a
+ * page at a time without holding anything open in between.
+ * @author Farhan Abdulla
+ * @version 01.31.2022
+ */
+public final class TransactionPage
+{
+    //~ Fields ................................................................
+    private final List<TransactionRecord> records;
+    private final int nextStart;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a page of transactions
+     * @param records List of TransactionRecords containing the page
+     * @param nextStart Integer containing the position the next page starts
+     *  at, or -1 if this is the last page
+     */
+    TransactionPage(List<TransactionRecord> records, int nextStart)
+    {
+        this.records = Collections.unmodifiableList(records);
+        this.nextStart = nextStart;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the transactions on this page, in time order
+     * @return List of TransactionRecords representing the page
+     */
+    public List<TransactionRecord> getRecords()
+    {
+        return this.records;
+    }
+
+    /**
+     * Gets the position to pass as the start of the next page
+     * @return Integer representing the position, or -1 on the last page
+     */
+    public int getNextStart()
+    {
+        return this.nextStart;
+    }
+
+    /**
+     * Checks whether another page follows this one
+     * @return Boolean representing true if there are more transactions
+     */
+    public boolean hasMore()
+    {
+        return this.nextStart >= 0;
+    }
+
+} // End of class
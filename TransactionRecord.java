@@ -0,0 +1,111 @@
+//~ Imports ...............................................................
+
+/**
+ * Represents one transaction from an account's history: when it happened,
+ * its signed amount and its type. Records are made on demand from a
+ * {@link TransactionLedger}; the ledger itself stores no objects.
+ * @author Farhan Abdulla
+ * @version 01.31.2022
+ */
+public final class TransactionRecord
+{
+    //~ Fields ................................................................
+    private final long timestamp;
+    private final int epochDay;
+    private final long amountCents;
+    private final byte type;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a transaction
+     * @param timestamp Long containing the time in epoch milliseconds
+     * @param epochDay Integer containing the day of the transaction
+     * @param amountCents Long containing the signed amount in cents
+     * @param type Byte containing the transaction type code
+     */
+    public TransactionRecord(long timestamp, int epochDay, long amountCents,
+        byte type)
+    {
+        this.timestamp = timestamp;
+        this.epochDay = epochDay;
+        this.amountCents = amountCents;
+        this.type = type;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets when the transaction happened
+     * @return Long representing the time in epoch milliseconds
+     */
+    public long getTimestamp()
+    {
+        return this.timestamp;
+    }
+
+    /**
+     * Gets the day the transaction happened
+     * @return Integer representing the epoch day
+     */
+    public int getEpochDay()
+    {
+        return this.epochDay;
+    }
+
+    /**
+     * Gets the day the transaction happened in M/d/yy format
+     * @return String representing the date
+     */
+    public String getDate()
+    {
+        return BankClock.format(this.epochDay);
+    }
+
+    /**
+     * Gets the signed amount of the transaction
+     * @return Long representing the amount in cents; positive for money in,
+     *  negative for money out
+     */
+    public long getAmountCents()
+    {
+        return this.amountCents;
+    }
+
+    /**
+     * Gets the type code of the transaction
+     * @return Byte representing {@link TransactionLedger#DEPOSIT} or
+     *  {@link TransactionLedger#WITHDRAWAL}
+     */
+    public byte getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * Checks whether the transaction was a deposit
+     * @return Boolean representing true for a deposit
+     */
+    public boolean isDeposit()
+    {
+        return this.type == TransactionLedger.DEPOSIT;
+    }
+
+    /**
+     * Describes the transaction as its date and signed dollar amount, such
+     * as "1/3/22 +25.00"
+     * @return String representing the transaction
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(this.getDate()).append(' ');
+        if (this.amountCents >= 0)
+        {
+            sb.append('+');
+        }
+        Money.appendTo(sb, this.amountCents);
+        return sb.toString();
+    }
+
+} // End of class
@@ -0,0 +1,212 @@
+//~ Imports ...............................................................
+
+/**
+ * Moves money between two bank accounts as a single atomic step. Both
+ * accounts are locked in a global order (by account number) so that two
+ * transfers running in opposite directions can never deadlock. The transfer
+ * is checked against both accounts before any money moves, so once the
+ * withdrawal is made the deposit cannot be refused.
+ * @author Farhan Abdulla
+ * @version 01.20.2022
+ */
+public class TransferEngine
+{
+    //~ Fields ................................................................
+    private static final Object TIE_LOCK = new Object();
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents an engine that transfers funds between accounts
+     */
+    public TransferEngine()
+    {
+        // No state; every transfer locks only the accounts involved
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Transfers funds from one account to another. Works for accounts owned
+     * by the same customer or by different customers. Either both the
+     * withdrawal and the deposit happen, or neither does.
+     * @param from Account object containing account to withdraw funds from
+     * @param to Account object containing account to deposit funds into
+     * @param amount Double containing amount of money to transfer
+     * @return Boolean representing whether conditions to transfer were met
+     */
+    public boolean transfer(BankAccount from, BankAccount to, double amount)
+    {
+        return this.transferCents(from, to, Money.toCents(amount));
+    }
+
+    /**
+     * Transfers funds from one account to another, with the amount given in
+     * cents. Either both the withdrawal and the deposit happen, or neither
+     * does.
+     * @param from Account object containing account to withdraw funds from
+     * @param to Account object containing account to deposit funds into
+     * @param cents Long containing amount of money to transfer in cents
+     * @return Boolean representing whether conditions to transfer were met
+     */
+    public boolean transferCents(BankAccount from, BankAccount to, long cents)
+    {
+        return this.transferCents(from, to, cents, null);
+    }
+
+    /**
+     * Transfers funds from one account to another, with the amount given in
+     * cents, and runs an action once the transfer has succeeded but before
+     * the account locks are released. The action sees the transfer in the
+     * same order as any other change to either account, which is what a
+     * log of account changes needs.
+     * @param from Account object containing account to withdraw funds from
+     * @param to Account object containing account to deposit funds into
+     * @param cents Long containing amount of money to transfer in cents
+     * @param whileLocked Runnable to run after a successful transfer, or null
+     * @return Boolean representing whether conditions to transfer were met
+     */
+    public boolean transferCents(BankAccount from, BankAccount to, long cents,
+        Runnable whileLocked)
+    {
+        if (from == null || to == null || from == to || cents <= 0)
+        {
+            return false;
+        }
+        int order = compare(from, to);
+        BankAccount first = order < 0 ? from : to;
+        BankAccount second = order < 0 ? to : from;
+        if (order == 0)
+        {
+            synchronized (TIE_LOCK)
+            {
+                return this.lockedTransfer(first, second, from, to, cents,
+                    whileLocked);
+            }
+        }
+        return this.lockedTransfer(first, second, from, to, cents,
+            whileLocked);
+    }
+
+    /**
+     * Takes both account locks in the given order and performs the transfer
+     * @param first Account object to lock first
+     * @param second Account object to lock second
+     * @param from Account object containing account to withdraw funds from
+     * @param to Account object containing account to deposit funds into
+     * @param cents Long containing amount of money to transfer in cents
+     * @param whileLocked Runnable to run after a successful transfer, or null
+     * @return Boolean representing whether the transfer happened
+     */
+    private boolean lockedTransfer(BankAccount first, BankAccount second,
+        BankAccount from, BankAccount to, long cents, Runnable whileLocked)
+    {
+        synchronized (first)
+        {
+            synchronized (second)
+            {
+                VersionClock versions = VersionClock.getDefault();
+                long epoch = versions.enter();
+                beginSection(from, epoch);
+                beginSection(to, epoch);
+                try
+                {
+                    return this.checkedTransfer(from, to, cents, whileLocked);
+                }
+                finally
+                {
+                    endSection(from);
+                    endSection(to);
+                    versions.exit(epoch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs the transfer once both accounts are locked, checking both
+     * accounts before any money moves
+     * @param from Account object containing account to withdraw funds from
+     * @param to Account object containing account to deposit funds into
+     * @param cents Long containing amount of money to transfer in cents
+     * @param whileLocked Runnable to run after a successful transfer, or null
+     * @return Boolean representing whether the transfer happened
+     * @throws IllegalStateException if the deposit is refused after both
+     *  checks passed
+     */
+    private boolean checkedTransfer(BankAccount from, BankAccount to,
+        long cents, Runnable whileLocked)
+    {
+        if (!from.canWithdrawCents(cents))
+        {
+            BankMetrics.getDefault().recordRefusal(from, false, cents);
+            return false;
+        }
+        if (!to.canDepositCents(cents))
+        {
+            BankMetrics.getDefault().recordRefusal(to, true, cents);
+            return false;
+        }
+        if (!from.withdrawCents(cents))
+        {
+            return false;
+        }
+        if (!to.depositCents(cents))
+        {
+            // A refund would not undo a penalty or a withdraw count
+            throw new IllegalStateException("Account "
+                + to.getAccountNumber() + " refused a checked deposit");
+        }
+        if (whileLocked != null)
+        {
+            whileLocked.run();
+        }
+        return true;
+    }
+
+    /**
+     * Makes an account's balance changes belong to a transfer's write
+     * section
+     * @param account Account object containing the locked account
+     * @param epoch Long containing the section's epoch
+     */
+    private static void beginSection(BankAccount account, long epoch)
+    {
+        if (account instanceof CheckingAccount)
+        {
+            ((CheckingAccount) account).beginSection(epoch);
+        }
+    }
+
+    /**
+     * Ends an account's part in a transfer's write section
+     * @param account Account object containing the locked account
+     */
+    private static void endSection(BankAccount account)
+    {
+        if (account instanceof CheckingAccount)
+        {
+            ((CheckingAccount) account).endSection();
+        }
+    }
+
+    /**
+     * Orders two accounts for locking, by account number and then by
+     * identity hash code
+     * @param a Account object containing the first account
+     * @param b Account object containing the second account
+     * @return Integer that is negative if a locks first, positive if b locks
+     *  first, and zero if no order could be decided
+     */
+    private static int compare(BankAccount a, BankAccount b)
+    {
+        int order = Integer.compare(a.getAccountNumber(), b.getAccountNumber());
+        if (order == 0)
+        {
+            order = Integer.compare(System.identityHashCode(a),
+                System.identityHashCode(b));
+        }
+        return order;
+    }
+
+} // End of class
@@ -0,0 +1,177 @@
+//~ Imports ...............................................................
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Divides the changes made to accounts and customers into numbered epochs,
+ * so that a report can read the bank as it stood at one moment while
+ * tellers keep writing. Every change runs inside a write section that
+ * belongs to the epoch current when the section was entered. Opening a
+ * report pins the current epoch and starts the next one, then waits only
+ * for the sections of the pinned epoch still running, which are a handful
+ * of single account changes or transfers, to finish. From then on every
+ * change belongs to a later epoch, and the objects it changes keep their
+ * state as of the pinned epoch alongside, for the report to read.
+ * <p>
+ * Writers never wait for a report: entering and leaving a section only
+ * counts the writer in and out of a counter striped by thread. A report
+ * opened while another is open shares its pinned epoch, so at most one
+ * epoch is ever pinned and one saved state per object is enough.
+ * @author Farhan Abdulla
+ * @version 02.05.2022
+ */
+public class VersionClock
+{
+    //~ Fields ................................................................
+    // Each stripe's two counters sit on a cache line of their own
+    private static final int STRIPE_WIDTH = 16;
+    private static final int STRIPES = stripeCount();
+    private static final VersionClock DEFAULT = new VersionClock();
+
+    private final AtomicLongArray writers;
+    private volatile long epoch;
+    private volatile long pinned;
+    private int pins;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a clock at its first epoch, with nothing pinned
+     */
+    public VersionClock()
+    {
+        this.writers = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+        this.epoch = 1;
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Gets the clock shared by every account and customer
+     * @return VersionClock representing the default clock
+     */
+    public static VersionClock getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Enters a write section. Every change made in the section belongs to
+     * the epoch returned, which must be passed to {@link #exit(long)}.
+     * @return Long representing the section's epoch
+     */
+    public long enter()
+    {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        while (true)
+        {
+            long current = this.epoch;
+            int slot = stripe * STRIPE_WIDTH + (int) (current & 1);
+            this.writers.getAndIncrement(slot);
+            // A report that moved on meanwhile may not have counted us
+            if (this.epoch == current)
+            {
+                return current;
+            }
+            this.writers.getAndDecrement(slot);
+        }
+    }
+
+    /**
+     * Leaves a write section
+     * @param sectionEpoch Long containing the epoch {@link #enter()} gave
+     */
+    public void exit(long sectionEpoch)
+    {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        this.writers.getAndDecrement(stripe * STRIPE_WIDTH
+            + (int) (sectionEpoch & 1));
+    }
+
+    /**
+     * Gets the epoch new write sections belong to
+     * @return Long representing the current epoch
+     */
+    public long current()
+    {
+        return this.epoch;
+    }
+
+    /**
+     * Checks whether a report has an epoch pinned. A change made in a later
+     * epoch while this is true must keep what it replaces.
+     * @return Boolean representing true while a report is open
+     */
+    public boolean isPinned()
+    {
+        return this.pinned != 0;
+    }
+
+    /**
+     * Pins an epoch for a report. If no report is open, the current epoch
+     * is pinned, the next one is started and the sections of the pinned
+     * epoch are waited for; otherwise the epoch already pinned is shared.
+     * Every call must be matched by a call to {@link #unpin()}.
+     * @return Long representing the pinned epoch: the report sees every
+     *  change of this epoch and earlier, and none made later
+     */
+    public synchronized long pin()
+    {
+        if (this.pins++ > 0)
+        {
+            return this.pinned;
+        }
+        long old = this.epoch;
+        this.pinned = old;
+        this.epoch = old + 1;
+        int parity = (int) (old & 1);
+        for (int stripe = 0; stripe < STRIPES; stripe++)
+        {
+            int slot = stripe * STRIPE_WIDTH + parity;
+            for (int spins = 0; this.writers.get(slot) != 0; spins++)
+            {
+                if (spins < 100)
+                {
+                    Thread.onSpinWait();
+                }
+                else
+                {
+                    LockSupport.parkNanos(1000);
+                }
+            }
+        }
+        return old;
+    }
+
+    /**
+     * Lets go of a report's pin. Once the last report lets go, saved states
+     * are no longer needed.
+     */
+    public synchronized void unpin()
+    {
+        if (this.pins == 0)
+        {
+            throw new IllegalStateException("Nothing is pinned");
+        }
+        if (--this.pins == 0)
+        {
+            this.pinned = 0;
+        }
+    }
+
+    /**
+     * Picks the number of stripes: the next power of two at or above the
+     * number of processors, at most 16
+     * @return Integer representing the stripe count
+     */
+    private static int stripeCount()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (processors <= 1)
+        {
+            return 1;
+        }
+        return Math.min(16, Integer.highestOneBit(processors - 1) << 1);
+    }
+
+} // End of class
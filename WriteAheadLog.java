@@ -0,0 +1,840 @@
+//~ Imports ...............................................................
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Represents an append-only log of every change made through a
+ * {@link Bank}, so the bank can be rebuilt after a restart. Each record is
+ * written as [length][type][payload][CRC32], where length counts the type
+ * and payload bytes.
+ * <p>
+ * Logging is split in two steps. A caller appends its record while it
+ * still holds the lock on what it changed, which puts records in the same
+ * order as the changes, and then waits for the record to become durable
+ * after releasing that lock. Waiting uses group commit: the first waiter
+ * writes and fsyncs everything appended so far in one go, while later
+ * callers keep appending to a second buffer and are covered by the next
+ * fsync. One fsync therefore covers many concurrent operations.
+ * <p>
+ * Deposits, withdrawals and transfers are logged as the effect they had,
+ * not as the request: the amount actually moved, including any penalty,
+ * the time it was recorded and, for savings accounts, the withdraw cycle
+ * it left. Replay makes the same changes again without checking any of
+ * the accounts' rules, which depend on the date, so a bank recovers the
+ * same whatever day it is recovered on.
+ * <p>
+ * Records that must be applied together are appended as a batch: a
+ * header giving their count, followed by the records with nothing else in
+ * between. Replay applies a batch only once all of its records have been
+ * read, so a crash part way through writing one loses the whole batch.
+ * @author Farhan Abdulla
+ * @version 01.27.2022
+ */
+public class WriteAheadLog
+    implements Closeable
+{
+    //~ Fields ................................................................
+    static final byte ADD_CUSTOMER = 1;
+    static final byte REMOVE_CUSTOMER = 2;
+    static final byte OPEN_ACCOUNT = 3;
+    static final byte CLOSE_ACCOUNT = 4;
+    static final byte DEPOSIT = 5;
+    static final byte WITHDRAW = 6;
+    static final byte TRANSFER = 7;
+    static final byte BATCH = 8;
+    static final byte INTEREST = 9;
+    static final byte RENAME_CUSTOMER = 10;
+
+    /** Longest string a record can hold, in UTF-8 bytes */
+    public static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock;
+    private final Condition flushed;
+    private final CRC32 crc;
+    private final long openedNanos;
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private long appended;
+    private long durable;
+    private boolean flushing;
+    private IOException failure;
+    private long fsyncs;
+    private int recoveredRecords;
+    private long recoveryNanos;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Opens a log file for appending, creating it if it does not exist.
+     * Replay the file with {@link #replay(Path, Bank)} first if it may
+     * already contain records.
+     * @param path Path containing the log file
+     * @throws IOException if the file cannot be opened
+     */
+    public WriteAheadLog(Path path)
+        throws IOException
+    {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.lock = new ReentrantLock();
+        this.flushed = this.lock.newCondition();
+        this.crc = new CRC32();
+        this.pending = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.spare = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.openedNanos = System.nanoTime();
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Appends a record of a new customer
+     * @param customerId String containing the customer ID
+     * @param name String containing the customer's name
+     * @return Long representing the record's sequence number
+     * @throws IllegalArgumentException if the ID or name is longer than
+     *  {@link #MAX_STRING_BYTES}
+     */
+    public long logAddCustomer(String customerId, String name)
+    {
+        byte[] id = encode(customerId);
+        byte[] text = encode(name);
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(ADD_CUSTOMER, 4 + id.length + text.length);
+            this.putBytes(id);
+            this.putBytes(text);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of a customer's new name
+     * @param customerId String containing the customer ID
+     * @param name String containing the customer's new name
+     * @return Long representing the record's sequence number
+     * @throws IllegalArgumentException if the ID or name is longer than
+     *  {@link #MAX_STRING_BYTES}
+     */
+    public long logRenameCustomer(String customerId, String name)
+    {
+        byte[] id = encode(customerId);
+        byte[] text = encode(name);
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(RENAME_CUSTOMER,
+                4 + id.length + text.length);
+            this.putBytes(id);
+            this.putBytes(text);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of a customer leaving the bank
+     * @param customerId String containing the customer ID
+     * @return Long representing the record's sequence number
+     */
+    public long logRemoveCustomer(String customerId)
+    {
+        byte[] id = encode(customerId);
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(REMOVE_CUSTOMER, 2 + id.length);
+            this.putBytes(id);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of a newly opened account
+     * @param customerId String containing the owner's customer ID
+     * @param type Integer containing the account type number
+     * @param accountNumber Integer containing the account number
+     * @param openingDay Integer containing the opening epoch day
+     * @param amountCents Long containing the opening amount passed to the
+     *  account in cents, or -1 if the account was opened with its defaults
+     * @param term Integer containing the CD term in months
+     * @return Long representing the record's sequence number
+     */
+    public long logOpenAccount(String customerId, int type, int accountNumber,
+        int openingDay, long amountCents, int term)
+    {
+        byte[] id = encode(customerId);
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(OPEN_ACCOUNT, 2 + id.length + 21);
+            this.putBytes(id);
+            this.pending.put((byte) type);
+            this.pending.putInt(accountNumber);
+            this.pending.putInt(openingDay);
+            this.pending.putLong(amountCents);
+            this.pending.putInt(term);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of a closed account
+     * @param customerId String containing the owner's customer ID
+     * @param accountNumber Integer containing the account number
+     * @return Long representing the record's sequence number
+     */
+    public long logCloseAccount(String customerId, int accountNumber)
+    {
+        byte[] id = encode(customerId);
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(CLOSE_ACCOUNT, 2 + id.length + 4);
+            this.putBytes(id);
+            this.pending.putInt(accountNumber);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of the effect of an accepted deposit, withdrawal
+     * or interest credit. Callers must hold the account lock, right after
+     * the change.
+     * @param type Byte containing {@link #DEPOSIT}, {@link #WITHDRAW} or
+     *  {@link #INTEREST}
+     * @param account CheckingAccount containing the changed account
+     * @return Long representing the record's sequence number
+     */
+    public long logEffect(byte type, CheckingAccount account)
+    {
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(type, 5 + account.getEffectSize());
+            this.putEffect(account);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record of the effects of a completed transfer on both
+     * accounts. Callers must hold both account locks, right after the
+     * transfer.
+     * @param from CheckingAccount containing the paying account
+     * @param to CheckingAccount containing the receiving account
+     * @return Long representing the record's sequence number
+     */
+    public long logTransfer(CheckingAccount from, CheckingAccount to)
+    {
+        this.lock.lock();
+        try
+        {
+            int start = this.begin(TRANSFER, 10 + from.getEffectSize()
+                + to.getEffectSize());
+            this.putEffect(from);
+            this.putEffect(to);
+            return this.end(start);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a batch of records that replay applies all together or not
+     * at all. The appends run while this thread holds the log lock, so no
+     * other record falls between them; they must append exactly the number
+     * of records given, through the other log methods of this log.
+     * @param records Integer containing the number of records in the batch
+     * @param appends Runnable containing the calls that append the records
+     * @return Long representing the sequence number of the last record
+     * @throws IllegalStateException if the appends added a different
+     *  number of records
+     * @throws RuntimeException thrown by the appends; in either case the
+     *  header and whatever the appends added are taken out of the log again
+     */
+    public long logBatch(int records, Runnable appends)
+    {
+        this.lock.lock();
+        int mark = this.pending.position();
+        long before = this.appended;
+        boolean complete = false;
+        try
+        {
+            int start = this.begin(BATCH, 4);
+            this.pending.putInt(records);
+            long header = this.end(start);
+            appends.run();
+            if (this.appended - header != records)
+            {
+                throw new IllegalStateException("Batch of " + records
+                    + " records appended " + (this.appended - header));
+            }
+            complete = true;
+            return this.appended;
+        }
+        finally
+        {
+            if (!complete)
+            {
+                // Still unwritten, as the lock has been held throughout
+                this.pending.position(mark);
+                this.appended = before;
+            }
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a record, and every record before it, is on disk. The
+     * first caller to arrive while no write is in progress writes and
+     * fsyncs everything appended so far on behalf of all waiting callers.
+     * @param sequence Long containing the record's sequence number
+     * @throws UncheckedIOException if the log could not be written
+     */
+    public void awaitDurable(long sequence)
+    {
+        this.lock.lock();
+        try
+        {
+            while (this.durable < sequence)
+            {
+                if (this.failure != null)
+                {
+                    throw new UncheckedIOException(this.failure);
+                }
+                if (this.flushing)
+                {
+                    this.flushed.awaitUninterruptibly();
+                    continue;
+                }
+                this.flushing = true;
+                ByteBuffer batch = this.pending;
+                long target = this.appended;
+                this.pending = this.spare;
+                this.spare = null;
+                this.lock.unlock();
+                IOException error = null;
+                try
+                {
+                    batch.flip();
+                    while (batch.hasRemaining())
+                    {
+                        this.channel.write(batch);
+                    }
+                    this.channel.force(false);
+                }
+                catch (IOException e)
+                {
+                    error = e;
+                }
+                finally
+                {
+                    this.lock.lock();
+                }
+                batch.clear();
+                this.spare = batch;
+                this.flushing = false;
+                if (error != null)
+                {
+                    this.failure = error;
+                }
+                else
+                {
+                    this.durable = target;
+                    this.fsyncs++;
+                }
+                this.flushed.signalAll();
+            }
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes out everything appended so far and closes the log file
+     * @throws IOException if the file cannot be written or closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        long last;
+        this.lock.lock();
+        try
+        {
+            last = this.appended;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+        try
+        {
+            this.awaitDurable(last);
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Gets the number of records appended since the log was opened
+     * @return Long representing the number of records
+     */
+    public long getRecordCount()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.appended;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of fsyncs performed since the log was opened
+     * @return Long representing the number of fsyncs
+     */
+    public long getFsyncCount()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.fsyncs;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the average rate at which records were logged since the log was
+     * opened
+     * @return Double representing logged operations per second
+     */
+    public double getOpsPerSecond()
+    {
+        return this.getRecordCount() / this.getSecondsOpen();
+    }
+
+    /**
+     * Gets the average rate of fsyncs since the log was opened. Comparing
+     * this with {@link #getOpsPerSecond()} shows how many operations each
+     * group commit covered.
+     * @return Double representing fsyncs per second
+     */
+    public double getFsyncsPerSecond()
+    {
+        return this.getFsyncCount() / this.getSecondsOpen();
+    }
+
+    /**
+     * Gets the number of records replayed before the log was opened
+     * @return Integer representing the number of recovered records
+     */
+    public int getRecoveredRecords()
+    {
+        return this.recoveredRecords;
+    }
+
+    /**
+     * Gets the rate at which records were replayed during recovery
+     * @return Double representing replayed records per second
+     */
+    public double getRecoveryOpsPerSecond()
+    {
+        if (this.recoveryNanos == 0)
+        {
+            return 0;
+        }
+        return this.recoveredRecords / (this.recoveryNanos / 1e9);
+    }
+
+    /**
+     * Records how much recovery work was done before this log was opened
+     * @param records Integer containing the number of replayed records
+     * @param nanos Long containing the time replay took in nanoseconds
+     */
+    void setRecovery(int records, long nanos)
+    {
+        this.recoveredRecords = records;
+        this.recoveryNanos = nanos;
+    }
+
+    /**
+     * Replays a log file into a bank, applying every complete record in
+     * order. A torn or corrupt record at the end of the file, left by a
+     * crash in the middle of a write, ends the replay and is cut off the
+     * file so new records follow the last good one; so is the rest of a
+     * batch that the crash left unfinished, none of which is applied. The
+     * bank must not have a log attached while it is replayed into.
+     * <p>
+     * A change logged for an account after it was closed, by a teller who
+     * found the account just before, is skipped as the money went with
+     * the account. A change for an account the log never opened means the
+     * log does not describe the bank, and recovery stops.
+     * @param path Path containing the log file
+     * @param bank Bank containing the bank to rebuild
+     * @return Integer representing the number of records applied
+     * @throws IOException if the file cannot be read or truncated
+     * @throws IllegalStateException if a record cannot be applied
+     */
+    public static int replay(Path path, Bank bank)
+        throws IOException
+    {
+        if (!Files.exists(path))
+        {
+            return 0;
+        }
+        long size = Files.size(path);
+        long valid = 0;
+        int count = 0;
+        byte[] record = new byte[256];
+        CRC32 check = new CRC32();
+        // Records of a batch whose header has been read, held back until
+        // the batch is complete
+        List<byte[]> batch = new ArrayList<byte[]>();
+        Set<Integer> closed = new HashSet<Integer>();
+        int batchMissing = 0;
+        long batchBytes = 0;
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path), 1 << 16)))
+        {
+            while (valid + batchBytes < size)
+            {
+                int length = in.readInt();
+                if (length < 1 || length > MAX_RECORD)
+                {
+                    break;
+                }
+                if (record.length < length)
+                {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+                int expected = in.readInt();
+                check.reset();
+                check.update(record, 0, length);
+                if ((int) check.getValue() != expected)
+                {
+                    break;
+                }
+                if (batchMissing > 0)
+                {
+                    batch.add(Arrays.copyOf(record, length));
+                    batchBytes += 8 + length;
+                    if (--batchMissing == 0)
+                    {
+                        for (byte[] held : batch)
+                        {
+                            apply(ByteBuffer.wrap(held), bank, closed);
+                        }
+                        count += batch.size() + 1;
+                        valid += batchBytes;
+                        batch.clear();
+                        batchBytes = 0;
+                    }
+                    continue;
+                }
+                if (record[0] == BATCH)
+                {
+                    batchMissing = ByteBuffer.wrap(record, 1, 4).getInt();
+                    batchBytes = 8 + length;
+                    if (batchMissing == 0)
+                    {
+                        count++;
+                        valid += batchBytes;
+                        batchBytes = 0;
+                    }
+                    continue;
+                }
+                apply(ByteBuffer.wrap(record, 0, length), bank, closed);
+                valid += 8 + length;
+                count++;
+            }
+        }
+        catch (EOFException e)
+        {
+            // A record was cut short; everything before it was applied
+        }
+        if (valid < size)
+        {
+            try (FileChannel file = FileChannel.open(path,
+                StandardOpenOption.WRITE))
+            {
+                file.truncate(valid);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies one record to a bank
+     * @param record ByteBuffer containing the type and payload
+     * @param bank Bank containing the bank being rebuilt
+     * @param closed Set of Integers containing the numbers of the accounts
+     *  closed so far in the replay
+     */
+    private static void apply(ByteBuffer record, Bank bank,
+        Set<Integer> closed)
+    {
+        byte type = record.get();
+        switch (type)
+        {
+            case ADD_CUSTOMER:
+                bank.restoreCustomer(getString(record), getString(record));
+                break;
+            case RENAME_CUSTOMER:
+                String renamedId = getString(record);
+                Customer renamed = bank.getCustomer(renamedId);
+                if (renamed == null)
+                {
+                    throw new IllegalStateException("Log renames customer "
+                        + renamedId + " that it never added");
+                }
+                renamed.setName(getString(record));
+                break;
+            case REMOVE_CUSTOMER:
+                String customerId = getString(record);
+                Customer leaving = bank.getCustomer(customerId);
+                if (leaving != null)
+                {
+                    for (BankAccount account : leaving.getAccounts())
+                    {
+                        closed.add(account.getAccountNumber());
+                    }
+                }
+                bank.removeCustomer(customerId);
+                break;
+            case OPEN_ACCOUNT:
+                bank.restoreAccount(getString(record), record.get(),
+                    record.getInt(), record.getInt(), record.getLong(),
+                    record.getInt());
+                break;
+            case CLOSE_ACCOUNT:
+                String ownerId = getString(record);
+                int number = record.getInt();
+                closed.add(number);
+                bank.closeAccount(ownerId, number);
+                break;
+            case DEPOSIT:
+            case WITHDRAW:
+            case INTEREST:
+                applyEffect(type, record, bank, closed);
+                break;
+            case TRANSFER:
+                applyEffect(type, record, bank, closed);
+                applyEffect(type, record, bank, closed);
+                break;
+            default:
+                throw new IllegalStateException("Unknown log record type "
+                    + type);
+        }
+    }
+
+    /**
+     * Makes one account's logged change again
+     * @param type Byte containing the type of the record
+     * @param record ByteBuffer containing the effect at its position
+     * @param bank Bank containing the bank being rebuilt
+     * @param closed Set of Integers containing the numbers of the accounts
+     *  closed so far in the replay
+     * @throws IllegalStateException if the account was never opened, or
+     *  the effect is not one its type writes
+     */
+    private static void applyEffect(byte type, ByteBuffer record, Bank bank,
+        Set<Integer> closed)
+    {
+        int accountNumber = record.getInt();
+        int size = record.get();
+        BankAccount account = bank.getAccount(accountNumber);
+        if (account == null && closed.contains(accountNumber))
+        {
+            record.position(record.position() + size);
+            return;
+        }
+        if (!(account instanceof CheckingAccount)
+            || ((CheckingAccount) account).getEffectSize() != size)
+        {
+            throw new IllegalStateException("Log record of type " + type
+                + " does not fit account " + accountNumber);
+        }
+        ((CheckingAccount) account).applyEffect(record);
+    }
+
+    /**
+     * Checks that a string fits in a record
+     * @param text String containing the text
+     * @throws IllegalArgumentException if the text is longer than
+     *  {@link #MAX_STRING_BYTES} in UTF-8
+     */
+    static void checkString(String text)
+    {
+        encode(text);
+    }
+
+    /**
+     * Encodes a string for a record
+     * @param text String containing the text
+     * @return Array of bytes representing the text in UTF-8
+     * @throws IllegalArgumentException if the text is longer than
+     *  {@link #MAX_STRING_BYTES} in UTF-8
+     */
+    private static byte[] encode(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES)
+        {
+            throw new IllegalArgumentException("Text of " + bytes.length
+                + " bytes is longer than a log record holds");
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from a record
+     * @param record ByteBuffer containing the record
+     * @return String representing the text read
+     */
+    private static String getString(ByteBuffer record)
+    {
+        int length = record.getShort() & 0xFFFF;
+        String text = new String(record.array(),
+            record.arrayOffset() + record.position(), length,
+            StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return text;
+    }
+
+    /**
+     * Starts a record in the pending buffer, making room for it first.
+     * Callers must hold the log lock.
+     * @param type Byte containing the record type
+     * @param payload Integer containing the payload size in bytes
+     * @return Integer representing the buffer position of the record
+     */
+    private int begin(byte type, int payload)
+    {
+        int needed = 4 + 1 + payload + 4;
+        if (this.pending.remaining() < needed)
+        {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(
+                this.pending.capacity() * 2, this.pending.position() + needed));
+            this.pending.flip();
+            bigger.put(this.pending);
+            this.pending = bigger;
+        }
+        int start = this.pending.position();
+        this.pending.putInt(0);
+        this.pending.put(type);
+        return start;
+    }
+
+    /**
+     * Finishes the record started at a position by filling in its length
+     * and checksum. Callers must hold the log lock.
+     * @param start Integer containing the buffer position of the record
+     * @return Long representing the record's sequence number
+     */
+    private long end(int start)
+    {
+        int length = this.pending.position() - start - 4;
+        this.pending.putInt(start, length);
+        this.crc.reset();
+        this.crc.update(this.pending.array(), start + 4, length);
+        this.pending.putInt((int) this.crc.getValue());
+        return ++this.appended;
+    }
+
+    /**
+     * Writes an account's number and the effect of its last change into
+     * the pending buffer
+     * @param account CheckingAccount containing the changed account
+     */
+    private void putEffect(CheckingAccount account)
+    {
+        this.pending.putInt(account.getAccountNumber());
+        this.pending.put((byte) account.getEffectSize());
+        account.writeEffect(this.pending);
+    }
+
+    /**
+     * Writes a length-prefixed byte string into the pending buffer
+     * @param bytes Array of bytes to write, at most
+     *  {@link #MAX_STRING_BYTES} long
+     */
+    private void putBytes(byte[] bytes)
+    {
+        this.pending.putShort((short) bytes.length);
+        this.pending.put(bytes);
+    }
+
+    /**
+     * Gets the time since the log was opened
+     * @return Double representing elapsed seconds
+     */
+    private double getSecondsOpen()
+    {
+        return Math.max(System.nanoTime() - this.openedNanos, 1) / 1e9;
+    }
+
+} // End of class
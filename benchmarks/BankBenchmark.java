@@ -0,0 +1,633 @@
+//~ Imports ...............................................................
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput and allocation rate of the core bank operations:
+ * deposit, withdraw, getBalance, getTransactionForDay and getTransactions
+ * (a 30-day statement, read through the cursor) on every account type,
+ * plus Customer.transferFunds and Bank.getCustomer. Every operation is run
+ * at several history sizes and thread counts; when more than one thread
+ * runs, they all share the same account so lock contention shows up in the
+ * numbers. Bank.addRemoveCustomer has every thread add customers to one
+ * shared bank and remove each again a few hundred calls later, so the
+ * threads contend on the customer registry the way tellers opening and
+ * closing memberships do. IndividualRetirementAccount.getValuation, the
+ * closed form, is compared with recomputeValuation, which adds up every
+ * monthly deposit, on IRAs up to 30 years old; each call changes the
+ * monthly deposit first so neither is served from the valuation cache.
+ * EndOfDayBatch.run is measured over a bank with one customer per
+ * history entry, with the thread count as the fork-join parallelism, and
+ * its speedup over one thread is printed. Results are printed and written
+ * as CSV so they can be compared between runs to catch regressions.
+ * <p>
+ * Run it through Maven with {@code mvn -B -P bench verify}. Options:
+ * --seconds N, --warmup N, --threads 1,4, --history 0,1000,100000,
+ * --filter text (only run benchmarks whose name contains the text),
+ * --out file.csv, and --metrics off (stop timing operations into
+ * BankMetrics, to see what timing costs). BankMetrics.recordLatency
+ * measures the cost of timing one operation on its own.
+ * <p>
+ * JMH cannot benchmark classes in the unnamed package, which is where the
+ * bank classes live, so this harness does its own warmup, timing and
+ * per-thread allocation accounting.
+ * @author Farhan Abdulla
+ * @version 01.25.2022
+ */
+public class BankBenchmark
+{
+    //~ Fields ................................................................
+    private static final String[] ACCOUNT_TYPES = {"CheckingAccount",
+        "SavingsAccount", "MoneyMarketAccount", "CertificateDepositAccount",
+        "IndividualRetirementAccount"};
+    private static final String[] ACCOUNT_OPERATIONS = {"deposit",
+        "withdraw", "getBalance", "getTransactionForDay", "getTransactions"};
+    private static final LocalDate START = LocalDate.of(2022, 1, 3);
+    private static final int CHECK_INTERVAL = 1024;
+    private static final int CHURN_WINDOW = 256;
+    private static final int[] VALUATION_MONTHS = {12, 120, 360};
+
+    private static volatile long sink;
+
+    private double measureSeconds = 1;
+    private double warmupSeconds = 0.5;
+    private int[] threadCounts = {1,
+        Runtime.getRuntime().availableProcessors()};
+    private int[] historySizes = {0, 1000, 100000};
+    private String filter = "";
+    private Path out = Paths.get("benchmark-results.csv");
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark run with default options
+     */
+    public BankBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs every benchmark and writes the results
+     * @param args Array of Strings containing the command line options
+     * @throws Exception if a benchmark thread fails or results cannot be
+     *  written
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        BankBenchmark benchmark = new BankBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.runAll();
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--seconds":
+                    this.measureSeconds = Double.parseDouble(value);
+                    break;
+                case "--warmup":
+                    this.warmupSeconds = Double.parseDouble(value);
+                    break;
+                case "--threads":
+                    this.threadCounts = parseList(value);
+                    break;
+                case "--history":
+                    this.historySizes = parseList(value);
+                    break;
+                case "--filter":
+                    this.filter = value;
+                    break;
+                case "--out":
+                    this.out = Paths.get(value);
+                    break;
+                case "--metrics":
+                    BankMetrics.getDefault().setEnabled(!value.equals("off"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs every benchmark that matches the filter and writes the CSV file
+     * @throws Exception if a benchmark thread fails or results cannot be
+     *  written
+     */
+    private void runAll()
+        throws Exception
+    {
+        List<String> rows = new ArrayList<String>();
+        rows.add("benchmark,account,history,threads,ops_per_sec,ns_per_op,"
+            + "bytes_per_op");
+        System.out.printf("%-48s %8s %7s %14s %10s %10s%n", "benchmark",
+            "history", "threads", "ops/s", "ns/op", "B/op");
+        for (String type : ACCOUNT_TYPES)
+        {
+            for (String operation : ACCOUNT_OPERATIONS)
+            {
+                this.runCase(rows, type, operation);
+            }
+        }
+        this.runCase(rows, "CheckingAccount", "Customer.transferFunds");
+        this.runCase(rows, "-", "Bank.getCustomer");
+        this.runCase(rows, "-", "Bank.addRemoveCustomer");
+        this.runCase(rows, "CheckingAccount", "BankMetrics.recordLatency");
+        this.runValuationCase(rows);
+        this.runBatchCase(rows);
+        Path parent = this.out.toAbsolutePath().getParent();
+        if (parent != null)
+        {
+            Files.createDirectories(parent);
+        }
+        try (PrintWriter writer = new PrintWriter(
+            Files.newBufferedWriter(this.out)))
+        {
+            for (String row : rows)
+            {
+                writer.println(row);
+            }
+        }
+        System.out.println("Results written to " + this.out);
+    }
+
+    /**
+     * Runs one benchmark at every history size and thread count
+     * @param rows List of Strings collecting the CSV rows
+     * @param type String containing the account class name
+     * @param operation String containing the operation name
+     * @throws Exception if a benchmark thread fails
+     */
+    private void runCase(List<String> rows, String type, String operation)
+        throws Exception
+    {
+        String name = operation.contains(".") ? operation
+            : type + "." + operation;
+        if (!name.contains(this.filter))
+        {
+            return;
+        }
+        for (int history : this.historySizes)
+        {
+            for (int threads : this.threadCounts)
+            {
+                Operation op = this.prepare(type, operation, history);
+                Result result = this.measure(op, threads);
+                System.out.printf("%-48s %8d %7d %14.0f %10.1f %10.1f%n",
+                    name, history, threads, result.opsPerSecond,
+                    result.nanosPerOp, result.bytesPerOp);
+                rows.add(String.format("%s,%s,%d,%d,%.0f,%.2f,%.2f",
+                    operation, type, history, threads, result.opsPerSecond,
+                    result.nanosPerOp, result.bytesPerOp));
+            }
+        }
+    }
+
+    /**
+     * Times the closed-form IRA valuation against adding up every monthly
+     * deposit, on one thread, for IRAs of several ages, and prints how
+     * many times faster the closed form is. The history column holds the
+     * age in months.
+     * @param rows List of Strings collecting the CSV rows
+     * @throws Exception if a benchmark thread fails
+     */
+    private void runValuationCase(List<String> rows)
+        throws Exception
+    {
+        String closed = "IndividualRetirementAccount.getValuation";
+        String summed = "IndividualRetirementAccount.recomputeValuation";
+        if (!closed.contains(this.filter) && !summed.contains(this.filter))
+        {
+            return;
+        }
+        for (int months : VALUATION_MONTHS)
+        {
+            ManualBankClock clock = new ManualBankClock(START);
+            BankClock.setDefault(clock);
+            IndividualRetirementAccount ira =
+                new IndividualRetirementAccount(500);
+            clock.advanceMonths(months);
+            long[] deposits = {50000, 49999};
+            Result fast = this.measure(i ->
+            {
+                ira.setMonthlyDepositCents(deposits[i & 1]);
+                return (long) ira.getValuation();
+            }, 1);
+            Result slow = this.measure(i ->
+            {
+                ira.setMonthlyDepositCents(deposits[i & 1]);
+                return (long) ira.recomputeValuation();
+            }, 1);
+            System.out.printf("%-48s %8d %7d %14.0f %10.1f %10.1f  x%.1f%n",
+                closed, months, 1, fast.opsPerSecond, fast.nanosPerOp,
+                fast.bytesPerOp, fast.opsPerSecond / slow.opsPerSecond);
+            System.out.printf("%-48s %8d %7d %14.0f %10.1f %10.1f%n",
+                summed, months, 1, slow.opsPerSecond, slow.nanosPerOp,
+                slow.bytesPerOp);
+            rows.add(String.format("%s,%s,%d,%d,%.0f,%.2f,%.2f",
+                "getValuation", "IndividualRetirementAccount", months, 1,
+                fast.opsPerSecond, fast.nanosPerOp, fast.bytesPerOp));
+            rows.add(String.format("%s,%s,%d,%d,%.0f,%.2f,%.2f",
+                "recomputeValuation", "IndividualRetirementAccount", months,
+                1, slow.opsPerSecond, slow.nanosPerOp, slow.bytesPerOp));
+        }
+    }
+
+    /**
+     * Runs the end-of-day batch at every bank size and parallelism. The
+     * clock moves forward a month before each run, so every run rolls
+     * cycles and revalues IRAs. Throughput is counted in accounts.
+     * @param rows List of Strings collecting the CSV rows
+     */
+    private void runBatchCase(List<String> rows)
+    {
+        String name = "EndOfDayBatch.run";
+        if (!name.contains(this.filter))
+        {
+            return;
+        }
+        for (int history : this.historySizes)
+        {
+            ManualBankClock clock = new ManualBankClock(START);
+            BankClock.setDefault(clock);
+            int customers = Math.max(history, 1000);
+            Bank bank = new Bank();
+            for (int i = 0; i < customers; i++)
+            {
+                String id = bank.addCustomer("Customer " + i);
+                bank.openAccount(id, 2 + i % 4, 1000, 1);
+            }
+            double single = 0;
+            for (int threads : this.threadCounts)
+            {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                EndOfDayBatch batch = new EndOfDayBatch(pool);
+                this.runBatch(batch, bank, clock, this.warmupSeconds);
+                double opsPerSecond = this.runBatch(batch, bank, clock,
+                    this.measureSeconds);
+                pool.shutdown();
+                if (threads == 1)
+                {
+                    single = opsPerSecond;
+                }
+                System.out.printf("%-48s %8d %7d %14.0f %10.1f %10s%s%n",
+                    name, customers, threads, opsPerSecond,
+                    1e9 * threads / opsPerSecond, "-", single == 0 ? ""
+                    : String.format("  x%.2f", opsPerSecond / single));
+                rows.add(String.format("%s,%s,%d,%d,%.0f,%.2f,", name, "-",
+                    customers, threads, opsPerSecond,
+                    1e9 * threads / opsPerSecond));
+            }
+        }
+    }
+
+    /**
+     * Runs the end-of-day batch repeatedly for a length of time
+     * @param batch EndOfDayBatch containing the batch to run
+     * @param bank Bank containing the customers
+     * @param clock ManualBankClock moved forward a month before each run
+     * @param seconds Double containing how long to keep running
+     * @return Double representing accounts processed per second of run time
+     */
+    private double runBatch(EndOfDayBatch batch, Bank bank,
+        ManualBankClock clock, double seconds)
+    {
+        long accounts = 0;
+        long nanos = 0;
+        do
+        {
+            clock.advanceMonths(1);
+            EndOfDayBatch.Report report = batch.run(bank);
+            accounts += report.getAccounts();
+            nanos += report.getElapsedNanos();
+        }
+        while (nanos < seconds * 1e9);
+        return accounts * 1e9 / nanos;
+    }
+
+    /**
+     * Builds the state a benchmark needs and returns the operation to time
+     * @param type String containing the account class name
+     * @param operation String containing the operation name
+     * @param history Integer containing the number of past transactions, or
+     *  the number of customers for Bank.getCustomer and the number already
+     *  in the bank for Bank.addRemoveCustomer
+     * @return Operation representing one timed call
+     */
+    private Operation prepare(String type, String operation, int history)
+    {
+        ManualBankClock clock = new ManualBankClock(START);
+        BankClock.setDefault(clock);
+        if (operation.equals("Bank.getCustomer"))
+        {
+            Bank bank = new Bank();
+            int customers = Math.max(history, 1);
+            String[] ids = new String[customers];
+            for (int i = 0; i < customers; i++)
+            {
+                ids[i] = bank.addCustomer("Customer " + i);
+            }
+            return i -> bank.getCustomer(ids[i % customers]).hashCode();
+        }
+        if (operation.equals("Bank.addRemoveCustomer"))
+        {
+            Bank bank = new Bank();
+            String[] names = new String[CHURN_WINDOW];
+            for (int i = 0; i < names.length; i++)
+            {
+                names[i] = "Customer " + i;
+            }
+            for (int i = 0; i < history; i++)
+            {
+                bank.addCustomer(names[i % names.length]);
+            }
+            // Each thread removes the customers it added, oldest first
+            ThreadLocal<ArrayDeque<String>> added =
+                ThreadLocal.withInitial(ArrayDeque::new);
+            return i ->
+            {
+                ArrayDeque<String> mine = added.get();
+                mine.add(bank.addCustomer(names[i & (CHURN_WINDOW - 1)]));
+                if (mine.size() > CHURN_WINDOW)
+                {
+                    bank.removeCustomer(mine.poll());
+                }
+                return mine.size();
+            };
+        }
+        if (operation.equals("BankMetrics.recordLatency"))
+        {
+            BankMetrics metrics = BankMetrics.getDefault();
+            BankAccount account = new CheckingAccount(1e9);
+            return i ->
+            {
+                metrics.recordLatency(BankMetrics.Operation.DEPOSIT, account,
+                    metrics.startTimer());
+                return i;
+            };
+        }
+        if (operation.equals("Customer.transferFunds"))
+        {
+            Customer customer = new Customer("bench", "Bench Customer");
+            BankAccount a = this.withHistory(new CheckingAccount(1e9), clock,
+                history);
+            BankAccount b = this.withHistory(new CheckingAccount(1e9), clock,
+                history);
+            return i -> (i & 1) == 0 ? (customer.transferFunds(a, b, 0.01)
+                ? 1 : 0) : (customer.transferFunds(b, a, 0.01) ? 1 : 0);
+        }
+        BankAccount account = this.withHistory(this.newAccount(type, clock),
+            clock, history);
+        String day = account.getCurrentDate();
+        switch (operation)
+        {
+            case "deposit":
+                return i -> account.deposit(1.00) ? 1 : 0;
+            case "withdraw":
+                return i -> account.withdraw(0.01) ? 1 : 0;
+            case "getBalance":
+                return i -> (long) account.getBalance();
+            case "getTransactions":
+                int today = clock.today();
+                return i ->
+                {
+                    long sum = 0;
+                    TransactionCursor cursor = ((CheckingAccount) account)
+                        .getTransactions(today - 29, today);
+                    while (cursor.advance())
+                    {
+                        sum += cursor.getAmountCents();
+                    }
+                    return sum;
+                };
+            default:
+                return i -> account.getTransactionForDay(day).length();
+        }
+    }
+
+    /**
+     * Creates an account of a type with a large balance. CDs are opened
+     * with a one month term and the clock is moved past it, so deposits
+     * and withdrawals are accepted.
+     * @param type String containing the account class name
+     * @param clock ManualBankClock the account reads dates from
+     * @return BankAccount representing the new account
+     */
+    private BankAccount newAccount(String type, ManualBankClock clock)
+    {
+        switch (type)
+        {
+            case "SavingsAccount":
+                return new SavingsAccount(1e9);
+            case "MoneyMarketAccount":
+                return new MoneyMarketAccount(1e9);
+            case "CertificateDepositAccount":
+                BankAccount cd = new CertificateDepositAccount(1e9, 1);
+                clock.advanceMonths(2);
+                return cd;
+            case "IndividualRetirementAccount":
+                BankAccount ira = new IndividualRetirementAccount(1e9);
+                ira.deposit(1e9);
+                return ira;
+            default:
+                return new CheckingAccount(1e9);
+        }
+    }
+
+    /**
+     * Gives an account a transaction history, with ten transactions a day,
+     * and leaves the clock on the last day of the history
+     * @param account BankAccount containing the account to fill
+     * @param clock ManualBankClock the account reads dates from
+     * @param history Integer containing the number of transactions
+     * @return BankAccount representing the same account
+     */
+    private BankAccount withHistory(BankAccount account, ManualBankClock clock,
+        int history)
+    {
+        for (int i = 0; i < history; i++)
+        {
+            if (i % 10 == 9)
+            {
+                clock.advanceDays(1);
+            }
+            if (i % 2 == 0)
+            {
+                account.deposit(5.00);
+            }
+            else
+            {
+                account.withdraw(1.00);
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Runs an operation on several threads, first for the warmup time and
+     * then for the measurement time
+     * @param op Operation containing the call to time
+     * @param threads Integer containing the number of threads
+     * @return Result representing throughput and allocation per operation
+     * @throws Exception if a benchmark thread fails
+     */
+    private Result measure(Operation op, int threads)
+        throws Exception
+    {
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        CyclicBarrier measured = new CyclicBarrier(threads + 1);
+        AtomicLong totalOps = new AtomicLong();
+        AtomicLong totalBytes = new AtomicLong();
+        long warmupNanos = (long) (this.warmupSeconds * 1e9);
+        long measureNanos = (long) (this.measureSeconds * 1e9);
+        List<Thread> workers = new ArrayList<Thread>();
+        List<Throwable> failures = new ArrayList<Throwable>();
+        for (int t = 0; t < threads; t++)
+        {
+            Thread worker = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    run(op, System.nanoTime() + warmupNanos);
+                    long bytesBefore = allocatedBytes();
+                    long ops = run(op, System.nanoTime() + measureNanos);
+                    totalBytes.addAndGet(allocatedBytes() - bytesBefore);
+                    totalOps.addAndGet(ops);
+                    measured.await();
+                }
+                catch (Exception e)
+                {
+                    synchronized (failures)
+                    {
+                        failures.add(e);
+                    }
+                }
+            }, "bench-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        start.await();
+        measured.await();
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        if (!failures.isEmpty())
+        {
+            throw new IllegalStateException("Benchmark thread failed",
+                failures.get(0));
+        }
+        long ops = Math.max(totalOps.get(), 1);
+        Result result = new Result();
+        result.opsPerSecond = ops / this.measureSeconds;
+        result.nanosPerOp = measureNanos * (double) threads / ops;
+        result.bytesPerOp = (double) totalBytes.get() / ops;
+        return result;
+    }
+
+    /**
+     * Calls an operation in a loop until a deadline passes
+     * @param op Operation containing the call to time
+     * @param deadline Long containing the System.nanoTime() to stop at
+     * @return Long representing the number of calls made
+     */
+    private static long run(Operation op, long deadline)
+    {
+        long ops = 0;
+        long acc = 0;
+        do
+        {
+            for (int i = 0; i < CHECK_INTERVAL; i++)
+            {
+                acc += op.run((int) ops + i);
+            }
+            ops += CHECK_INTERVAL;
+        }
+        while (System.nanoTime() < deadline);
+        sink += acc;
+        return ops;
+    }
+
+    /**
+     * Gets the number of bytes the current thread has allocated so far
+     * @return Long representing allocated bytes, or 0 if not supported
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Parses a comma separated list of integers
+     * @param text String containing the list
+     * @return Array of integers representing the values
+     */
+    private static int[] parseList(String text)
+    {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents one timed call; the returned value is consumed so the
+     * call cannot be optimized away
+     */
+    private interface Operation
+    {
+        /**
+         * Performs the call
+         * @param iteration Integer containing the loop counter
+         * @return Long representing a value derived from the result
+         */
+        long run(int iteration);
+    }
+
+    /**
+     * Holds the measurements of one benchmark run
+     */
+    private static final class Result
+    {
+        private double opsPerSecond;
+        private double nanosPerOp;
+        private double bytesPerOp;
+    }
+
+} // End of class
@@ -0,0 +1,343 @@
+//~ Imports ...............................................................
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many connections to a local {@link BankServer} at once and keeps
+ * all of them busy with deposits and balance checks, then reports the
+ * request rate, latency percentiles and whether every deposit arrived.
+ * All connections stay open for the whole run; a small number of client
+ * threads take turns sending one request on each of their connections.
+ * <p>
+ * Options: --connections N (default 10000), --clients N (default 64),
+ * --customers N (default 1000), --seconds N (default 10) and --port N.
+ * Without a port the server runs in the same process, which then needs
+ * two file descriptors per connection; raise the open file limit
+ * (ulimit -n) above twice the connection count, or start the server
+ * separately with {@code java BankServer 7070} and pass --port 7070.
+ * Customers are set up and balances checked over the protocol, so both
+ * ways work the same.
+ * @author Farhan Abdulla
+ * @version 01.28.2022
+ */
+public class BankServerLoadTest
+{
+    //~ Fields ................................................................
+    private static final int SAMPLES_PER_CLIENT = 1 << 16;
+
+    private int connections = 10000;
+    private int clients = 64;
+    private int customers = 1000;
+    private double seconds = 10;
+    private int port;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a load test with default options
+     */
+    public BankServerLoadTest()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs the load test
+     * @param args Array of Strings containing the command line options
+     * @throws Exception if the server cannot start or a client fails
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        BankServerLoadTest test = new BankServerLoadTest();
+        test.parseArguments(args);
+        test.run();
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--connections":
+                    this.connections = Integer.parseInt(value);
+                    break;
+                case "--clients":
+                    this.clients = Integer.parseInt(value);
+                    break;
+                case "--customers":
+                    this.customers = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    this.seconds = Double.parseDouble(value);
+                    break;
+                case "--port":
+                    this.port = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Starts the server unless a port was given, then runs the load
+     * @throws Exception if the server cannot start or a client fails
+     */
+    private void run()
+        throws Exception
+    {
+        if (this.port != 0)
+        {
+            this.load(this.port, null);
+            return;
+        }
+        try (BankServer server = new BankServer(new Bank(), 0))
+        {
+            server.start();
+            this.load(server.getPort(), server);
+        }
+    }
+
+    /**
+     * Sets up customers, connects every client, runs the load and prints
+     * the results
+     * @param serverPort Integer containing the server's port
+     * @param server BankServer containing the in-process server, or null
+     * @throws Exception if a client fails
+     */
+    private void load(int serverPort, BankServer server)
+        throws Exception
+    {
+        Connection setup = new Connection(serverPort);
+        int[] accounts = new int[this.customers];
+        for (int i = 0; i < this.customers; i++)
+        {
+            String id = setup.call("ADD Customer " + i).substring(3);
+            String[] words = setup.call("CUSTOMER " + id).split(" ");
+            accounts[i] = Integer.parseInt(words[2]);
+        }
+        long startingCents = this.totalBalance(setup, accounts);
+
+        long connectStart = System.nanoTime();
+        List<Connection> all = new ArrayList<Connection>();
+        for (int i = 0; i < this.connections; i++)
+        {
+            all.add(new Connection(serverPort));
+        }
+        while (server != null
+            && server.getOpenConnections() < this.connections + 1)
+        {
+            Thread.sleep(10);
+        }
+        for (Connection connection : all)
+        {
+            connection.call("PING");
+        }
+        System.out.printf("%d connections open at once (connected in "
+            + "%.1f s)%n", all.size(),
+            (System.nanoTime() - connectStart) / 1e9);
+
+        AtomicLong deposits = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long[][] samples = new long[this.clients][];
+        long[] counts = new long[this.clients];
+        Thread[] threads = new Thread[this.clients];
+        long deadline = System.nanoTime() + (long) (this.seconds * 1e9);
+        long start = System.nanoTime();
+        for (int c = 0; c < this.clients; c++)
+        {
+            int client = c;
+            threads[c] = new Thread(() ->
+            {
+                long[] latencies = new long[SAMPLES_PER_CLIENT];
+                long sent = 0;
+                try
+                {
+                    while (System.nanoTime() < deadline)
+                    {
+                        for (int i = client; i < all.size();
+                            i += this.clients)
+                        {
+                            int account = accounts[(int) ((sent + i)
+                                % accounts.length)];
+                            boolean deposit = (sent & 1) == 0;
+                            String request = deposit
+                                ? "DEPOSIT " + account + " 1.00"
+                                : "BALANCE " + account;
+                            long before = System.nanoTime();
+                            String reply = all.get(i).call(request);
+                            latencies[(int) (sent % SAMPLES_PER_CLIENT)] =
+                                System.nanoTime() - before;
+                            sent++;
+                            if (!reply.startsWith("OK"))
+                            {
+                                errors.incrementAndGet();
+                            }
+                            else if (deposit)
+                            {
+                                deposits.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    errors.incrementAndGet();
+                }
+                counts[client] = sent;
+                samples[client] = Arrays.copyOf(latencies,
+                    (int) Math.min(sent, SAMPLES_PER_CLIENT));
+            }, "load-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Connection connection : all)
+        {
+            connection.close();
+        }
+
+        long requests = 0;
+        int sampleCount = 0;
+        for (int c = 0; c < this.clients; c++)
+        {
+            requests += counts[c];
+            sampleCount += samples[c].length;
+        }
+        long[] latencies = new long[sampleCount];
+        int next = 0;
+        for (long[] clientSamples : samples)
+        {
+            System.arraycopy(clientSamples, 0, latencies, next,
+                clientSamples.length);
+            next += clientSamples.length;
+        }
+        Arrays.sort(latencies);
+        long endingCents = this.totalBalance(setup, accounts);
+        setup.close();
+        System.out.printf("%d requests in %.1f s: %.0f requests/s, "
+            + "%d errors%n", requests, elapsed, requests / elapsed,
+            errors.get());
+        System.out.printf("latency p50 %.1f us, p99 %.1f us, max %.1f us"
+            + "%n", percentile(latencies, 0.50) / 1e3,
+            percentile(latencies, 0.99) / 1e3,
+            percentile(latencies, 1.0) / 1e3);
+        System.out.println("every deposit arrived: "
+            + (endingCents - startingCents == deposits.get() * 100));
+    }
+
+    /**
+     * Adds up the balances of the test accounts over the protocol
+     * @param connection Connection containing the connection to ask on
+     * @param accounts Array of integers containing the account numbers
+     * @return Long representing the total in cents
+     * @throws IOException if the connection fails
+     */
+    private long totalBalance(Connection connection, int[] accounts)
+        throws IOException
+    {
+        long total = 0;
+        for (int account : accounts)
+        {
+            String reply = connection.call("BALANCE " + account);
+            total += Money.toCents(Double.parseDouble(reply.substring(3)));
+        }
+        return total;
+    }
+
+    /**
+     * Gets a percentile of sorted samples
+     * @param sorted Array of longs containing the sorted samples
+     * @param fraction Double containing the percentile from 0 to 1
+     * @return Long representing the sample at that percentile, or 0
+     */
+    private static long percentile(long[] sorted, double fraction)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents one client connection that sends a line and waits for the
+     * reply
+     */
+    private static final class Connection
+    {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+
+        /**
+         * Connects to the server
+         * @param port Integer containing the server's port
+         * @throws IOException if the connection fails
+         */
+        private Connection(int port)
+            throws IOException
+        {
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.socket.setTcpNoDelay(true);
+            this.out = this.socket.getOutputStream();
+            this.in = new BufferedReader(new InputStreamReader(
+                this.socket.getInputStream(), StandardCharsets.UTF_8), 256);
+        }
+
+        /**
+         * Sends a request and waits for its reply
+         * @param request String containing the request line
+         * @return String representing the reply line
+         * @throws IOException if the connection fails
+         */
+        private String call(String request)
+            throws IOException
+        {
+            this.out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+            this.out.flush();
+            String reply = this.in.readLine();
+            if (reply == null)
+            {
+                throw new IOException("Connection closed");
+            }
+            return reply;
+        }
+
+        /**
+         * Closes the connection
+         * @throws IOException if the socket cannot be closed
+         */
+        private void close()
+            throws IOException
+        {
+            this.socket.close();
+        }
+    }
+
+} // End of class
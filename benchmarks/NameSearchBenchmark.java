@@ -0,0 +1,272 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the customer name search on a large made-up population. Names
+ * are a first name from a short list and a surname built from syllables,
+ * drawn so that a few surnames are very common and most are rare, as in a
+ * real customer base. It prints how fast customers are added, how much
+ * heap the index takes, and the median and 99th percentile time of three
+ * kinds of query: a surname and initial such as "Abdulla, F", the first
+ * three letters of a surname, and a surname with one letter changed
+ * together with the first name, found by similarity. It then times
+ * renames.
+ * <p>
+ * Options: --customers N (default 1000000), --queries N per kind (default
+ * 10000) and --limit N matches per query (default 10). Ten million
+ * customers need about -Xmx4g.
+ * @author Farhan Abdulla
+ * @version 02.06.2022
+ */
+public class NameSearchBenchmark
+{
+    //~ Fields ................................................................
+    private static final String[] FIRST = {"Aaliyah", "Ahmed", "Alice",
+        "Amir", "Ana", "Benjamin", "Carlos", "Chen", "Daniel", "Elena",
+        "Emma", "Farhan", "Fatima", "George", "Hana", "Ivan", "James",
+        "Jose", "Julia", "Kenji", "Laura", "Liam", "Maria", "Mohammed",
+        "Noah", "Olivia", "Priya", "Rahul", "Sofia", "Thomas", "Wei",
+        "Yusuf"};
+    private static final String[] SYLLABLES = {"ab", "al", "an", "ar",
+        "be", "bo", "da", "de", "do", "el", "en", "er", "fa", "ga", "ha",
+        "in", "ka", "ki", "la", "le", "li", "lo", "ma", "me", "mi", "na",
+        "ne", "no", "or", "ra", "re", "ri", "ro", "sa", "se", "si", "ta",
+        "te", "to", "ul", "va", "ze"};
+
+    private int customers = 1000000;
+    private int queries = 10000;
+    private int limit = 10;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark with default options
+     */
+    public NameSearchBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Builds the population, runs every kind of query and prints the
+     * results
+     * @param args Array of Strings containing the command line options
+     */
+    public static void main(String[] args)
+    {
+        NameSearchBenchmark benchmark = new NameSearchBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.run();
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--customers":
+                    this.customers = Integer.parseInt(value);
+                    break;
+                case "--queries":
+                    this.queries = Integer.parseInt(value);
+                    break;
+                case "--limit":
+                    this.limit = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds the index and times each kind of query
+     */
+    private void run()
+    {
+        Random random = new Random(42);
+        String[] surnames = new String[Math.max(1000, this.customers / 50)];
+        for (int i = 0; i < surnames.length; i++)
+        {
+            surnames[i] = surname(random);
+        }
+        Customer[] people = new Customer[this.customers];
+        for (int i = 0; i < people.length; i++)
+        {
+            people[i] = new Customer(Integer.toString(i), pick(random,
+                FIRST) + " " + surnames[zipf(random, surnames.length)]);
+        }
+        long heapBefore = usedHeap();
+        CustomerNameIndex index = new CustomerNameIndex();
+        long start = System.nanoTime();
+        for (Customer person : people)
+        {
+            index.add(person);
+        }
+        double addSeconds = (System.nanoTime() - start) / 1e9;
+        long heapAfter = usedHeap();
+        System.out.printf("%,d customers, %,d surnames: added %,.0f/s, "
+            + "index %.1f B/customer%n", this.customers, surnames.length,
+            this.customers / addSeconds,
+            (double) Math.max(0, heapAfter - heapBefore) / this.customers);
+
+        System.out.printf("%-16s %10s %10s %10s%n", "query", "p50 us",
+            "p99 us", "found");
+        String[] initials = new String[this.queries];
+        String[] prefixes = new String[this.queries];
+        String[] typos = new String[this.queries];
+        for (int i = 0; i < this.queries; i++)
+        {
+            String[] name = people[random.nextInt(people.length)].getName()
+                .split(" ");
+            initials[i] = name[1] + ", " + name[0].charAt(0);
+            prefixes[i] = name[1].substring(0, 3);
+            typos[i] = name[0] + " " + typo(random, name[1]);
+        }
+        this.time("surname, initial", initials, q -> index.findByPrefix(q,
+            this.limit));
+        this.time("surname prefix", prefixes, q -> index.findByPrefix(q,
+            this.limit));
+        this.time("similar", typos, q -> index.findSimilar(q, this.limit));
+
+        start = System.nanoTime();
+        for (int i = 0; i < this.queries; i++)
+        {
+            Customer person = people[random.nextInt(people.length)];
+            String[] name = person.getName().split(" ");
+            person.setName(name[0] + " "
+                + surnames[random.nextInt(surnames.length)]);
+            index.update(person);
+        }
+        System.out.printf("renames %,.0f/s%n",
+            this.queries / ((System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Runs a kind of query once for each query text, after a warm-up, and
+     * prints its latency percentiles and the mean number of matches
+     * @param label String containing the kind of query
+     * @param texts Array of Strings containing the query texts
+     * @param search Search containing the query to run
+     */
+    private void time(String label, String[] texts, Search search)
+    {
+        for (int round = 0; round < 2; round++)
+        {
+            for (String text : texts)
+            {
+                search.find(text);
+            }
+        }
+        long[] nanos = new long[texts.length];
+        long found = 0;
+        for (int i = 0; i < texts.length; i++)
+        {
+            long start = System.nanoTime();
+            found += search.find(texts[i]).size();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-16s %10.1f %10.1f %10.1f%n", label,
+            nanos[nanos.length / 2] / 1e3,
+            nanos[(int) (nanos.length * 0.99)] / 1e3,
+            (double) found / texts.length);
+    }
+
+    /**
+     * Makes up a surname of two to four syllables
+     * @param random Random containing the source of randomness
+     * @return String representing the surname, capitalized
+     */
+    private static String surname(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++)
+        {
+            sb.append(pick(random, SYLLABLES));
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    /**
+     * Changes one letter of a word to another
+     * @param random Random containing the source of randomness
+     * @param word String containing the word
+     * @return String representing the misspelled word
+     */
+    private static String typo(Random random, String word)
+    {
+        char[] letters = word.toCharArray();
+        int at = 1 + random.nextInt(letters.length - 1);
+        letters[at] = (char) ('a' + (letters[at] - 'a' + 1
+            + random.nextInt(25)) % 26);
+        return new String(letters);
+    }
+
+    /**
+     * Picks an element at random
+     * @param random Random containing the source of randomness
+     * @param choices Array of Strings containing the choices
+     * @return String representing the element picked
+     */
+    private static String pick(Random random, String[] choices)
+    {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    /**
+     * Draws a position so that low positions are far more likely than high
+     * ones, roughly one over the position
+     * @param random Random containing the source of randomness
+     * @param count Integer containing the number of positions
+     * @return Integer representing the position drawn
+     */
+    private static int zipf(Random random, int count)
+    {
+        return (int) Math.min(count - 1,
+            Math.exp(random.nextDouble() * Math.log(count)) - 1);
+    }
+
+    /**
+     * Gets the heap in use after collecting garbage
+     * @return Long representing the bytes in use
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Represents one kind of query
+     */
+    private interface Search
+    {
+        /**
+         * Runs the query
+         * @param text String containing the query text
+         * @return List of Customers representing the matches
+         */
+        List<Customer> find(String text);
+    }
+
+} // End of class
@@ -0,0 +1,253 @@
+//~ Imports ...............................................................
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the memory and garbage collection cost of keeping accounts as
+ * objects on the heap, the way {@link Customer} makes them, with keeping
+ * them in an {@link OffHeapAccountStore}. For each layout it opens the same
+ * mix of account types and prints:
+ * <ul>
+ * <li>the heap each account takes once a full collection has run, and for
+ *  the store the memory it holds outside the heap;</li>
+ * <li>the pause of a full collection with every account live, the worst
+ *  case a long-lived bank sees;</li>
+ * <li>the young collections and their total pause while a deposit and
+ *  withdraw workload runs over random accounts and allocates short-lived
+ *  garbage alongside, as a server does.</li>
+ * </ul>
+ * Options: --accounts N (default 1000000), --gcs N full collections to
+ * average (default 5) and --seconds N of workload (default 5). Give the
+ * JVM a fixed heap, for example -Xms2g -Xmx2g, so both layouts run with
+ * the same collector settings.
+ * @author Farhan Abdulla
+ * @version 02.03.2022
+ */
+public class OffHeapBenchmark
+{
+    //~ Fields ................................................................
+    private static volatile long sink;
+    private static volatile byte[] lastRequest;
+
+    private int accounts = 1_000_000;
+    private int gcs = 5;
+    private double seconds = 5;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark with default options
+     */
+    public OffHeapBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Measures both layouts and prints the comparison
+     * @param args Array of Strings containing the command line options
+     */
+    public static void main(String[] args)
+    {
+        OffHeapBenchmark benchmark = new OffHeapBenchmark();
+        benchmark.parseArguments(args);
+        System.out.printf("%,d accounts%n", benchmark.accounts);
+        System.out.printf("%-9s %10s %10s %10s %8s %10s %10s%n", "layout",
+            "heap B/a", "off B/a", "full ms", "young", "young ms",
+            "ops/s");
+        benchmark.runObjects();
+        benchmark.runStore();
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--accounts":
+                    this.accounts = Integer.parseInt(value);
+                    break;
+                case "--gcs":
+                    this.gcs = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    this.seconds = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Measures accounts kept as objects on the heap
+     */
+    private void runObjects()
+    {
+        long before = usedHeap();
+        BankAccount[] objects = new BankAccount[this.accounts];
+        for (int i = 0; i < this.accounts; i++)
+        {
+            int type = i % 5 + 1;
+            objects[i] = Customer.createAccount(type, 1000, 12);
+        }
+        long heap = usedHeap() - before;
+        this.report("objects", heap, 0, objects, null);
+    }
+
+    /**
+     * Measures accounts kept in an off-heap store
+     */
+    private void runStore()
+    {
+        long before = usedHeap();
+        OffHeapAccountStore store = new OffHeapAccountStore(this.accounts);
+        for (int i = 0; i < this.accounts; i++)
+        {
+            store.open(i % 5 + 1, 100_000, 12);
+        }
+        long heap = usedHeap() - before;
+        this.report("off-heap", heap, store.getOffHeapBytes(), null, store);
+    }
+
+    /**
+     * Measures the collections with the accounts live and prints a line of
+     * results
+     * @param layout String containing the layout name
+     * @param heap Long containing the heap the accounts take in bytes
+     * @param offHeap Long containing the memory outside the heap in bytes
+     * @param objects Array of BankAccounts containing the accounts, or null
+     *  for a store
+     * @param store OffHeapAccountStore containing the accounts, or null
+     */
+    private void report(String layout, long heap, long offHeap,
+        BankAccount[] objects, OffHeapAccountStore store)
+    {
+        double fullMillis = this.fullCollections();
+        long[] young = this.workload(objects, store);
+        this.print(layout, heap, offHeap, fullMillis, young);
+        sink += objects == null ? store.size() : objects.length;
+    }
+
+    /**
+     * Prints one line of results
+     * @param layout String containing the layout name
+     * @param heap Long containing the heap the accounts take in bytes
+     * @param offHeap Long containing the memory outside the heap in bytes
+     * @param fullMillis Double containing the mean full collection pause
+     * @param young Array of longs containing the young collection count,
+     *  their total pause in milliseconds and the operations run
+     */
+    private void print(String layout, long heap, long offHeap,
+        double fullMillis, long[] young)
+    {
+        System.out.printf("%-9s %10.1f %10.1f %10.1f %8d %10d %,10.0f%n",
+            layout, (double) Math.max(0, heap) / this.accounts,
+            (double) offHeap / this.accounts, fullMillis, young[0], young[1],
+            young[2] / this.seconds);
+    }
+
+    /**
+     * Runs full collections with every account live
+     * @return Double representing the mean pause in milliseconds
+     */
+    private double fullCollections()
+    {
+        long total = 0;
+        for (int i = 0; i < this.gcs; i++)
+        {
+            long start = System.nanoTime();
+            System.gc();
+            total += System.nanoTime() - start;
+        }
+        return total / 1e6 / this.gcs;
+    }
+
+    /**
+     * Runs deposits and withdrawals over random accounts, allocating a
+     * short-lived buffer for each as a request would, and counts the young
+     * collections that happen meanwhile
+     * @param objects Array of BankAccounts containing the accounts, used
+     *  when there is no store
+     * @param store OffHeapAccountStore containing the accounts, or null
+     * @return Array of longs representing the collection count, their total
+     *  pause in milliseconds and the operations run
+     */
+    private long[] workload(BankAccount[] objects, OffHeapAccountStore store)
+    {
+        long[] start = youngCollections();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long deadline = System.nanoTime() + (long) (this.seconds * 1e9);
+        long ops = 0;
+        while (System.nanoTime() < deadline)
+        {
+            for (int i = 0; i < 1024; i++)
+            {
+                int index = random.nextInt(this.accounts);
+                BankAccount account = store == null ? objects[index]
+                    : store.getAccountAt(index);
+                byte[] request = new byte[128];
+                lastRequest = request;
+                if ((i & 1) == 0)
+                {
+                    account.depositCents(100 + request.length);
+                }
+                else
+                {
+                    account.withdrawCents(100);
+                }
+            }
+            ops += 1024;
+        }
+        long[] end = youngCollections();
+        return new long[] {end[0] - start[0], end[1] - start[1], ops};
+    }
+
+    /**
+     * Gets the count and total time of the collections that are not full
+     * collections so far
+     * @return Array of longs representing the count and time in
+     *  milliseconds
+     */
+    private static long[] youngCollections()
+    {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean bean
+            : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            String name = bean.getName();
+            if (name.contains("Young") || name.contains("Scavenge")
+                || name.equals("Copy") || name.contains("ParNew"))
+            {
+                count += bean.getCollectionCount();
+                millis += bean.getCollectionTime();
+            }
+        }
+        return new long[] {count, millis};
+    }
+
+    /**
+     * Gets the heap in use after a full collection
+     * @return Long representing the used heap in bytes
+     */
+    private static long usedHeap()
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+} // End of class
@@ -0,0 +1,235 @@
+//~ Imports ...............................................................
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how fast new customers and accounts can be opened. A made-up
+ * population, named as in NameSearchBenchmark, where each customer has a
+ * checking account and some have a savings account, money market account,
+ * CD and IRA in turn as well, is opened twice into empty banks: once one
+ * at a time through {@link Bank#addCustomer(String)} and
+ * {@link Bank#openAccount(String, int, double, int)}, and once in batches
+ * through an {@link OnboardingBatch}. For each it prints the customers and
+ * accounts opened per second.
+ * <p>
+ * Options: --customers N (default 1000000), --accounts N per customer on
+ * average, from 1 to 5 (default 2), --batch N customers per batch (default
+ * 100000), --threads N for the batch pool (default the processors) and
+ * --durable true to log both banks to a temporary file (default false).
+ * One million customers need about -Xmx4g.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class OnboardingBenchmark
+{
+    //~ Fields ................................................................
+    private static final String[] FIRST = {"Ahmed", "Alice", "Ana",
+        "Benjamin", "Carlos", "Chen", "Elena", "Farhan", "Fatima", "Ivan",
+        "James", "Julia", "Kenji", "Maria", "Priya", "Wei"};
+    private static final String[] SYLLABLES = {"ab", "al", "an", "ar",
+        "be", "bo", "da", "de", "do", "el", "en", "er", "fa", "ga", "ha",
+        "in", "ka", "ki", "la", "le", "li", "lo", "ma", "me", "mi", "na",
+        "ne", "no", "or", "ra", "re", "ri", "ro", "sa", "se", "si", "ta",
+        "te", "to", "ul", "va", "ze"};
+
+    private int customers = 1000000;
+    private double accounts = 2;
+    private int batch = 100000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean durable;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark with default options
+     */
+    public OnboardingBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Opens the population both ways and prints the comparison
+     * @param args Array of Strings containing the command line options
+     * @throws Exception if a log file cannot be made
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        OnboardingBenchmark benchmark = new OnboardingBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.run();
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--customers":
+                    this.customers = Integer.parseInt(value);
+                    break;
+                case "--accounts":
+                    this.accounts = Double.parseDouble(value);
+                    break;
+                case "--batch":
+                    this.batch = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    this.threads = Integer.parseInt(value);
+                    break;
+                case "--durable":
+                    this.durable = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Makes up the population and times opening it each way
+     * @throws Exception if a log file cannot be made
+     */
+    private void run()
+        throws Exception
+    {
+        Random random = new Random(42);
+        String[] surnames = new String[Math.max(1000, this.customers / 50)];
+        for (int i = 0; i < surnames.length; i++)
+        {
+            surnames[i] = surname(random);
+        }
+        String[] names = new String[this.customers];
+        int[][] types = new int[this.customers][];
+        long total = 0;
+        for (int c = 0; c < this.customers; c++)
+        {
+            names[c] = FIRST[random.nextInt(FIRST.length)] + " "
+                + surnames[zipf(random, surnames.length)];
+            // A whole number of accounts whose mean is the option
+            int count = (int) this.accounts
+                + (random.nextDouble() < this.accounts % 1 ? 1 : 0);
+            count = Math.max(1, Math.min(5, count));
+            types[c] = new int[count];
+            types[c][0] = 1;
+            for (int k = 1; k < count; k++)
+            {
+                types[c][k] = 1 + k;
+            }
+            total += count;
+        }
+        System.out.printf("%,d customers, %,d accounts%n", this.customers,
+            total);
+        System.out.printf("%-10s %14s %14s%n", "way", "customers/s",
+            "accounts/s");
+
+        Bank single = this.newBank();
+        long start = System.nanoTime();
+        for (int c = 0; c < this.customers; c++)
+        {
+            String id = single.addCustomer(names[c]);
+            for (int k = 1; k < types[c].length; k++)
+            {
+                single.openAccount(id, types[c][k], 1000, 12);
+            }
+        }
+        this.print("single", start, total);
+        single = null;
+        System.gc();
+
+        Bank batched = this.newBank();
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        start = System.nanoTime();
+        for (int from = 0; from < this.customers; from += this.batch)
+        {
+            OnboardingBatch onboarding = new OnboardingBatch(pool);
+            for (int c = from; c < Math.min(from + this.batch,
+                this.customers); c++)
+            {
+                int customer = onboarding.addCustomer(names[c]);
+                onboarding.openAccount(customer, 1);
+                for (int k = 1; k < types[c].length; k++)
+                {
+                    onboarding.openAccount(customer, types[c][k], 1000, 12);
+                }
+            }
+            onboarding.apply(batched);
+        }
+        this.print("batch", start, total);
+        pool.shutdown();
+    }
+
+    /**
+     * Makes up a surname of two to four syllables
+     * @param random Random containing the source of randomness
+     * @return String representing the surname, capitalized
+     */
+    private static String surname(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++)
+        {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    /**
+     * Draws a position so that low positions are far more likely than high
+     * ones, roughly one over the position
+     * @param random Random containing the source of randomness
+     * @param count Integer containing the number of positions
+     * @return Integer representing the position drawn
+     */
+    private static int zipf(Random random, int count)
+    {
+        return (int) Math.min(count - 1,
+            Math.exp(random.nextDouble() * Math.log(count)) - 1);
+    }
+
+    /**
+     * Makes an empty bank, logging to a new temporary file if asked to
+     * @return Bank representing the bank
+     * @throws Exception if the log file cannot be made
+     */
+    private Bank newBank()
+        throws Exception
+    {
+        if (!this.durable)
+        {
+            return new Bank();
+        }
+        Path file = Files.createTempFile("onboarding", ".log");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return Bank.open(file);
+    }
+
+    /**
+     * Prints the rates of one way of opening the population
+     * @param label String containing the way
+     * @param start Long containing when it started, from System.nanoTime
+     * @param total Long containing the accounts opened
+     */
+    private void print(String label, long start, long total)
+    {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %,14.0f %,14.0f%n", label,
+            this.customers / seconds, total / seconds);
+    }
+
+} // End of class
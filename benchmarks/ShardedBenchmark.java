@@ -0,0 +1,237 @@
+//~ Imports ...............................................................
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the lock-based path through {@link Bank} with the single-writer
+ * {@link ShardedExecutor} on the same mixed workload: 40% deposits, 30%
+ * withdrawals, 20% balance reads and 10% transfers spread over many
+ * checking accounts. Each client thread waits for every operation to
+ * finish before starting the next, so the latency is the full round trip.
+ * Prints throughput and latency percentiles for both, and checks that no
+ * money was created or lost.
+ * <p>
+ * Options: --threads N (default twice the processors), --accounts N
+ * (default 10000), --shards N (default the processors) and --seconds N
+ * (default 5).
+ * @author Farhan Abdulla
+ * @version 01.29.2022
+ */
+public class ShardedBenchmark
+{
+    //~ Fields ................................................................
+    private static final int SAMPLES_PER_THREAD = 1 << 18;
+
+    private int threads = Runtime.getRuntime().availableProcessors() * 2;
+    private int accounts = 10000;
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private double seconds = 5;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark with default options
+     */
+    public ShardedBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs the lock-based and sharded modes and prints the comparison
+     * @param args Array of Strings containing the command line options
+     * @throws Exception if a client thread is interrupted
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        ShardedBenchmark benchmark = new ShardedBenchmark();
+        benchmark.parseArguments(args);
+        System.out.printf("%-8s %14s %10s %10s %10s  %s%n", "mode", "ops/s",
+            "p50 us", "p99 us", "p99.9 us", "money kept");
+        benchmark.run(false);
+        benchmark.run(true);
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--threads":
+                    this.threads = Integer.parseInt(value);
+                    break;
+                case "--accounts":
+                    this.accounts = Integer.parseInt(value);
+                    break;
+                case "--shards":
+                    this.shards = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    this.seconds = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs the workload in one mode and prints a line of results
+     * @param sharded Boolean containing true for the sharded mode
+     * @throws Exception if a client thread is interrupted
+     */
+    private void run(boolean sharded)
+        throws Exception
+    {
+        Bank bank = new Bank();
+        int[] numbers = new int[this.accounts];
+        for (int i = 0; i < this.accounts; i++)
+        {
+            String id = bank.addCustomer("Customer " + i);
+            BankAccount account = bank.getCustomer(id).getAccounts().get(0);
+            account.depositCents(1_000_000);
+            numbers[i] = account.getAccountNumber();
+        }
+        long before = total(bank, numbers);
+        ShardedExecutor executor = sharded
+            ? new ShardedExecutor(bank, this.shards, 1024) : null;
+
+        long[] net = new long[this.threads];
+        long[] counts = new long[this.threads];
+        long[][] samples = new long[this.threads][];
+        Thread[] workers = new Thread[this.threads];
+        long deadline = System.nanoTime() + (long) (this.seconds * 1e9);
+        long start = System.nanoTime();
+        for (int t = 0; t < this.threads; t++)
+        {
+            int worker = t;
+            workers[t] = new Thread(() ->
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] latencies = new long[SAMPLES_PER_THREAD];
+                long ops = 0;
+                long change = 0;
+                while (System.nanoTime() < deadline)
+                {
+                    int a = numbers[random.nextInt(numbers.length)];
+                    int b = numbers[random.nextInt(numbers.length)];
+                    int kind = random.nextInt(10);
+                    long opStart = System.nanoTime();
+                    if (kind < 4)
+                    {
+                        boolean done = sharded ? executor.deposit(a, 100).join()
+                            : bank.depositCents(a, 100);
+                        change += done ? 100 : 0;
+                    }
+                    else if (kind < 7)
+                    {
+                        boolean done = sharded
+                            ? executor.withdraw(a, 100).join()
+                            : bank.withdrawCents(a, 100);
+                        change -= done ? 100 : 0;
+                    }
+                    else if (kind < 9)
+                    {
+                        long balance = sharded
+                            ? executor.getBalanceCents(a).join()
+                            : bank.getAccount(a).getBalanceCents();
+                        change += balance < 0 ? 1 : 0;
+                    }
+                    else if (sharded)
+                    {
+                        executor.transferFunds(a, b, 100).join();
+                    }
+                    else
+                    {
+                        bank.transferCents(a, b, 100);
+                    }
+                    latencies[(int) (ops % SAMPLES_PER_THREAD)] =
+                        System.nanoTime() - opStart;
+                    ops++;
+                }
+                net[worker] = change;
+                counts[worker] = ops;
+                samples[worker] = Arrays.copyOf(latencies,
+                    (int) Math.min(ops, SAMPLES_PER_THREAD));
+            }, "client-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        if (executor != null)
+        {
+            executor.close();
+        }
+
+        long ops = 0;
+        long change = 0;
+        int sampleCount = 0;
+        for (int t = 0; t < this.threads; t++)
+        {
+            ops += counts[t];
+            change += net[t];
+            sampleCount += samples[t].length;
+        }
+        long[] latencies = new long[sampleCount];
+        int next = 0;
+        for (long[] threadSamples : samples)
+        {
+            System.arraycopy(threadSamples, 0, latencies, next,
+                threadSamples.length);
+            next += threadSamples.length;
+        }
+        Arrays.sort(latencies);
+        boolean kept = total(bank, numbers) == before + change;
+        System.out.printf("%-8s %14.0f %10.1f %10.1f %10.1f  %s%n",
+            sharded ? "sharded" : "locked", ops / elapsed,
+            percentile(latencies, 0.50) / 1e3,
+            percentile(latencies, 0.99) / 1e3,
+            percentile(latencies, 0.999) / 1e3, kept);
+    }
+
+    /**
+     * Adds up the balances of the accounts
+     * @param bank Bank containing the accounts
+     * @param numbers Array of integers containing the account numbers
+     * @return Long representing the total in cents
+     */
+    private static long total(Bank bank, int[] numbers)
+    {
+        long sum = 0;
+        for (int number : numbers)
+        {
+            sum += bank.getAccount(number).getBalanceCents();
+        }
+        return sum;
+    }
+
+    /**
+     * Gets a percentile of sorted samples
+     * @param sorted Array of longs containing the sorted samples
+     * @param fraction Double containing the percentile from 0 to 1
+     * @return Long representing the sample at that percentile, or 0
+     */
+    private static long percentile(long[] sorted, double fraction)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+} // End of class
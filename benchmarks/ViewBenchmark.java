@@ -0,0 +1,181 @@
+//~ Imports ...............................................................
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures what a long-running report costs the tellers. Writer threads
+ * move money between random checking accounts, which never changes the
+ * bank's total, while one reader adds up every balance over and over.
+ * Three modes are run: no reader at all, a reader walking the live
+ * customers and accounts, and a reader going through a {@link BankView}.
+ * For each it prints the writers' throughput, the reports finished, their
+ * mean time, and how many of them got a total other than the real one,
+ * which for the live walk are the reports that read a transfer half done.
+ * <p>
+ * Options: --threads N writers (default twice the processors), --accounts
+ * N (default 100000) and --seconds N per mode (default 5).
+ * @author Farhan Abdulla
+ * @version 02.05.2022
+ */
+public class ViewBenchmark
+{
+    //~ Fields ................................................................
+    private int threads = Runtime.getRuntime().availableProcessors() * 2;
+    private int accounts = 100000;
+    private double seconds = 5;
+
+    //~ Constructor ...........................................................
+
+    /**
+     * Represents a benchmark with default options
+     */
+    public ViewBenchmark()
+    {
+        // Options are filled in by parseArguments
+    }
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs every mode and prints the comparison
+     * @param args Array of Strings containing the command line options
+     * @throws Exception if a thread is interrupted
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        ViewBenchmark benchmark = new ViewBenchmark();
+        benchmark.parseArguments(args);
+        Bank bank = new Bank();
+        int[] numbers = new int[benchmark.accounts];
+        for (int i = 0; i < benchmark.accounts; i++)
+        {
+            String id = bank.addCustomer("Customer " + i);
+            BankAccount account = bank.getCustomer(id).getAccounts().get(0);
+            account.depositCents(1_000_000);
+            numbers[i] = account.getAccountNumber();
+        }
+        long total;
+        try (BankView view = bank.openView())
+        {
+            total = view.getTotalCents();
+        }
+        System.out.printf("%-6s %14s %8s %10s %8s%n", "reader", "writes/s",
+            "reports", "report ms", "torn");
+        for (String mode : new String[] {"none", "walk", "view"})
+        {
+            benchmark.run(bank, numbers, total, mode);
+        }
+    }
+
+    /**
+     * Reads the command line options
+     * @param args Array of Strings containing the command line options
+     */
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--threads":
+                    this.threads = Integer.parseInt(value);
+                    break;
+                case "--accounts":
+                    this.accounts = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    this.seconds = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs the writers with one kind of reader and prints a line of results
+     * @param bank Bank containing the accounts
+     * @param numbers Array of integers containing the account numbers
+     * @param total Long containing the bank's total in cents
+     * @param mode String containing none, walk or view
+     * @throws Exception if a thread is interrupted
+     */
+    private void run(Bank bank, int[] numbers, long total, String mode)
+        throws Exception
+    {
+        AtomicLong writes = new AtomicLong();
+        long deadline = System.nanoTime() + (long) (this.seconds * 1e9);
+        Thread[] writers = new Thread[this.threads];
+        for (int t = 0; t < this.threads; t++)
+        {
+            writers[t] = new Thread(() ->
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long ops = 0;
+                while (System.nanoTime() < deadline)
+                {
+                    bank.transferCents(numbers[random.nextInt(numbers.length)],
+                        numbers[random.nextInt(numbers.length)],
+                        random.nextInt(1, 10000));
+                    ops++;
+                }
+                writes.addAndGet(ops);
+            }, "writer-" + t);
+            writers[t].start();
+        }
+        long reports = 0;
+        long torn = 0;
+        long reportNanos = 0;
+        while (!mode.equals("none") && System.nanoTime() < deadline)
+        {
+            long start = System.nanoTime();
+            long seen = mode.equals("view") ? viewTotal(bank)
+                : walkTotal(bank);
+            reportNanos += System.nanoTime() - start;
+            reports++;
+            torn += seen == total ? 0 : 1;
+        }
+        for (Thread writer : writers)
+        {
+            writer.join();
+        }
+        System.out.printf("%-6s %,14.0f %8d %10.1f %8d%n", mode,
+            writes.get() / this.seconds, reports,
+            reports == 0 ? 0 : reportNanos / 1e6 / reports, torn);
+    }
+
+    /**
+     * Adds up every balance through a view
+     * @param bank Bank containing the accounts
+     * @return Long representing the total in cents
+     */
+    private static long viewTotal(Bank bank)
+    {
+        try (BankView view = bank.openView())
+        {
+            return view.getTotalCents();
+        }
+    }
+
+    /**
+     * Adds up every balance by walking the live customers and accounts
+     * @param bank Bank containing the accounts
+     * @return Long representing the total in cents
+     */
+    private static long walkTotal(Bank bank)
+    {
+        long sum = 0;
+        for (Customer customer : bank.getAllCustomers())
+        {
+            for (BankAccount account : customer.getAccounts())
+            {
+                sum += account.getBalanceCents();
+            }
+        }
+        return sum;
+    }
+
+} // End of class
@@ -0,0 +1,78 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the under-minimum count follows the balance the minimum is
+ * enforced on, interest included, rather than the ledger balance.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class BankAggregatesTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private ManualBankClock clock;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the bank to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        this.clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(this.clock);
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Opens a savings account below its minimum, lets interest carry it
+     * over, then withdraws down to a ledger balance under the minimum that
+     * the balance with interest still meets
+     */
+    @Test
+    public void underMinimumFollowsEnforcedBalance()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        SavingsAccount savings =
+            (SavingsAccount) bank.openAccount(id, 2, 299, 0);
+        savings.setInterestRate(5);
+        BankAggregates totals = bank.getAggregates();
+        assertEquals(1, totals.getUnderMinimumCount());
+
+        // Interest carries it over without a transaction, until the batch
+        this.clock.advanceMonths(12);
+        assertEquals(1, totals.getUnderMinimumCount());
+        new EndOfDayBatch().run(bank);
+        assertEquals(0, totals.getUnderMinimumCount());
+        assertTrue(BankAggregates.recompute(bank).matches(totals));
+
+        assertTrue(bank.withdrawCents(savings.getAccountNumber(), 500));
+        synchronized (savings)
+        {
+            assertTrue(savings.getLedgerBalanceCents()
+                < SavingsAccount.MINIMUM_BALANCE);
+        }
+        assertEquals(0, totals.getUnderMinimumCount());
+        assertEquals(29400, totals.getLedgerCents(2));
+        assertTrue(BankAggregates.recompute(bank).matches(totals));
+    }
+
+} // End of class
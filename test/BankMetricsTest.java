@@ -0,0 +1,79 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that balance reads are timed where they enter the bank, and not
+ * when an account reads its own balance.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class BankMetricsTest
+{
+    //~ Fields ................................................................
+    private int savedInterval;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Times every operation for the test
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        BankMetrics metrics = BankMetrics.getDefault();
+        this.savedInterval = metrics.getSampleInterval();
+        metrics.setSampleInterval(1);
+    }
+
+    /**
+     * Puts the sample interval that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankMetrics.getDefault().setSampleInterval(this.savedInterval);
+    }
+
+    /**
+     * Reads balances directly and through the bank, counting the timed
+     * reads of each account type
+     */
+    @Test
+    public void onlyBankReadsAreTimed()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        BankAccount checking = bank.getCustomer(id).getAccounts().get(0);
+        BankAccount cd = bank.openAccount(id, 4, 5000, 12);
+        long checkingReads = this.reads(1);
+        long cdReads = this.reads(4);
+
+        checking.getBalance();
+        cd.getBalance();
+        cd.getAccruedInterest();
+        assertEquals(checkingReads, this.reads(1));
+        assertEquals(cdReads, this.reads(4));
+
+        assertEquals(Long.valueOf(checking.getBalanceCents()),
+            bank.getBalanceCents(checking.getAccountNumber()));
+        assertEquals(checkingReads + 1, this.reads(1));
+        assertNull(bank.getBalanceCents(-1));
+    }
+
+    /**
+     * Gets the number of timed balance reads of one account type
+     * @param type Integer containing the account type
+     * @return Long representing the timed read count
+     */
+    private long reads(int type)
+    {
+        return BankMetrics.getDefault()
+            .getLatency(BankMetrics.Operation.GET_BALANCE, type).getCount();
+    }
+
+} // End of class
@@ -0,0 +1,196 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the reply the server gives to each command of its protocol, and
+ * to requests with a bad number, a missing argument or an unknown customer
+ * or account, without going through a socket.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class BankServerTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private Bank bank;
+    private BankServer server;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place and makes a server for an empty bank,
+     * which is never started
+     * @throws IOException if a loopback port cannot be bound
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+        this.bank = new Bank();
+        this.server = new BankServer(this.bank, 0);
+    }
+
+    /**
+     * Closes the server and puts the clock that was in place back
+     * @throws IOException if the server socket cannot be closed
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        this.server.close();
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Adds, describes and removes a customer, and pings and quits
+     */
+    @Test
+    public void customerCommands()
+    {
+        assertEquals("OK PONG", this.server.handle("PING"));
+        assertEquals("OK PONG", this.server.handle("  ping  "));
+        assertEquals("OK BYE", this.server.handle("QUIT"));
+
+        String id = this.server.handle("ADD Ann  Lee").substring(3);
+        Customer customer = this.bank.getCustomer(id);
+        assertEquals("Ann  Lee", customer.getName());
+        int checking = customer.getAccounts().get(0).getAccountNumber();
+        assertEquals("OK Ann__Lee " + checking,
+            this.server.handle("CUSTOMER " + id));
+        assertEquals("ERR missing name", this.server.handle("ADD"));
+
+        assertEquals("OK", this.server.handle("REMOVE " + id));
+        assertNull(this.bank.getCustomer(id));
+        assertEquals("ERR unknown customer",
+            this.server.handle("CUSTOMER " + id));
+        assertEquals("ERR unknown command", this.server.handle("HELLO"));
+    }
+
+    /**
+     * Opens accounts with their default balance and with an amount and a
+     * term, refuses an amount without a term, and closes an account
+     */
+    @Test
+    public void openAndClose()
+    {
+        String id = this.bank.addCustomer("Ann Lee");
+        int savings = this.number(this.server.handle("OPEN " + id + " 2"));
+        assertTrue(this.bank.getAccount(savings) instanceof SavingsAccount);
+
+        int cd = this.number(this.server.handle("OPEN " + id + " 4 500 6"));
+        assertTrue(
+            this.bank.getAccount(cd) instanceof CertificateDepositAccount);
+        assertEquals(500 * Money.CENTS_PER_DOLLAR,
+            (long) this.bank.getBalanceCents(cd));
+
+        int accounts = this.bank.getAccountCount();
+        assertEquals("ERR missing argument",
+            this.server.handle("OPEN " + id + " 2 500"));
+        assertEquals(accounts, this.bank.getAccountCount());
+        assertEquals("ERR unknown customer",
+            this.server.handle("OPEN NOBODY 2"));
+
+        assertEquals("OK", this.server.handle("CLOSE " + id + " " + savings));
+        assertNull(this.bank.getAccount(savings));
+        assertEquals("ERR unknown account",
+            this.server.handle("CLOSE " + id + " " + savings));
+    }
+
+    /**
+     * Deposits, withdraws and transfers, checking each deposit and
+     * withdrawal replies with the balance it left
+     */
+    @Test
+    public void moneyCommands()
+    {
+        String id = this.bank.addCustomer("Ann Lee");
+        int checking =
+            this.bank.getCustomer(id).getAccounts().get(0).getAccountNumber();
+        int savings = this.bank.openAccount(id, 2, 100, 0).getAccountNumber();
+        long balance = this.bank.getBalanceCents(checking);
+
+        assertEquals("OK " + Money.format(balance + 1050),
+            this.server.handle("DEPOSIT " + checking + " 10.50"));
+        assertEquals("OK " + Money.format(balance + 800),
+            this.server.handle("WITHDRAW " + checking + " 2.50"));
+        assertEquals("OK " + Money.format(balance + 800),
+            this.server.handle("BALANCE " + checking));
+        assertEquals("ERR rejected",
+            this.server.handle("WITHDRAW " + checking + " 1000000"));
+        assertEquals("ERR rejected",
+            this.server.handle("DEPOSIT " + checking + " -5"));
+
+        assertEquals("OK", this.server.handle("TRANSFER " + checking + " "
+            + savings + " 3.00"));
+        assertEquals(balance + 500, (long) this.bank.getBalanceCents(checking));
+        assertEquals("ERR rejected", this.server.handle("TRANSFER "
+            + checking + " " + savings + " 1000000"));
+        assertEquals(balance + 500, (long) this.bank.getBalanceCents(checking));
+    }
+
+    /**
+     * Sends requests with numbers that do not parse, with words missing
+     * and naming accounts that do not exist
+     */
+    @Test
+    public void errorReplies()
+    {
+        String id = this.bank.addCustomer("Ann Lee");
+        int checking =
+            this.bank.getCustomer(id).getAccounts().get(0).getAccountNumber();
+        int unknown = checking + 1;
+        while (this.bank.getAccount(unknown) != null)
+        {
+            unknown++;
+        }
+
+        assertEquals("ERR bad number", this.server.handle("BALANCE abc"));
+        assertEquals("ERR bad number",
+            this.server.handle("DEPOSIT " + checking + " ten"));
+        assertEquals("ERR bad number",
+            this.server.handle("OPEN " + id + " two"));
+        assertEquals("ERR bad number",
+            this.server.handle("TRANSFER x " + checking + " 1"));
+
+        for (String request : new String[] {"REMOVE", "CUSTOMER", "OPEN",
+            "OPEN " + id, "CLOSE " + id, "DEPOSIT " + checking,
+            "WITHDRAW " + checking, "BALANCE", "TRANSFER " + checking})
+        {
+            assertEquals("ERR missing argument", this.server.handle(request),
+                request);
+        }
+
+        assertEquals("ERR unknown account",
+            this.server.handle("BALANCE " + unknown));
+        assertEquals("ERR unknown account",
+            this.server.handle("DEPOSIT " + unknown + " 1"));
+        assertEquals("ERR unknown account",
+            this.server.handle("WITHDRAW " + unknown + " 1"));
+        assertEquals("ERR unknown account",
+            this.server.handle("CLOSE " + id + " " + unknown));
+        assertEquals("ERR rejected", this.server.handle("TRANSFER "
+            + checking + " " + unknown + " 1"));
+        assertEquals(1, this.bank.getAccountCount());
+    }
+
+    /**
+     * Reads the account number from an OK reply
+     * @param reply String containing the reply
+     * @return Integer representing the account number
+     */
+    private int number(String reply)
+    {
+        assertTrue(reply.startsWith("OK "), reply);
+        return Integer.parseInt(reply.substring(3));
+    }
+
+} // End of class
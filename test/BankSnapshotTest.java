@@ -0,0 +1,137 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a snapshot written from a bank opens as the same bank, and
+ * that customers and accounts are only built when first looked up.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class BankSnapshotTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private Path file;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place and picks a fresh snapshot file
+     * @throws IOException if the temporary file cannot be made
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+        this.file = Files.createTempFile("bank", ".snapshot");
+    }
+
+    /**
+     * Puts the clock that was in place back and removes the snapshot
+     * @throws IOException if the snapshot cannot be removed
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        BankClock.setDefault(this.saved);
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Writes a bank with every account type, some customers owning several
+     * accounts and one with a closed account, then opens the snapshot and
+     * looks customers up by account number and by ID, checking each is
+     * built once and only when asked for
+     * @throws IOException if the snapshot cannot be written or read
+     */
+    @Test
+    public void roundTripLoadsLazily() throws IOException
+    {
+        Bank bank = new Bank();
+        List<String> ids = new ArrayList<String>();
+        List<Integer> numbers = new ArrayList<Integer>();
+        int savings = 0;
+        for (int c = 0; c < 20; c++)
+        {
+            String id = bank.addCustomer("Customer " + c);
+            ids.add(id);
+            numbers.add(bank.getCustomer(id).getAccounts().get(0)
+                .getAccountNumber());
+            for (int type = 2; type <= 5 && type <= c % 5 + 1; type++)
+            {
+                int number =
+                    bank.openAccount(id, type, 1000 + c, 6).getAccountNumber();
+                numbers.add(number);
+                if (type == 2 && savings == 0)
+                {
+                    savings = number;
+                }
+            }
+        }
+        int closed = numbers.remove(numbers.size() - 1);
+        bank.closeAccount(ids.get(ids.size() - 1), closed);
+        bank.depositCents(savings, 2500);
+        bank.withdrawCents(savings, 700);
+        bank.writeSnapshot(this.file);
+
+        Bank reopened = Bank.openSnapshot(this.file);
+        assertEquals(ids.size(), reopened.getCustomerCount());
+        assertEquals(numbers.size(), reopened.getAccountCount());
+        assertEquals(0, reopened.getNameIndex().size());
+
+        // Looking up one account builds its owner and nobody else
+        BankAccount account = reopened.getAccount(savings);
+        assertEquals(1, reopened.getNameIndex().size());
+        assertArrayEquals(state(bank.getAccount(savings)), state(account));
+        Customer owner = reopened.getAccountOwner(savings);
+        assertSame(owner, reopened.getCustomer(owner.getCustomerId()));
+        assertEquals(1, reopened.getNameIndex().size());
+
+        for (int number : numbers)
+        {
+            assertArrayEquals(state(bank.getAccount(number)),
+                state(reopened.getAccount(number)));
+        }
+        for (String id : ids)
+        {
+            assertEquals(bank.getCustomer(id).getName(),
+                reopened.getCustomer(id).getName());
+            assertEquals(bank.getCustomer(id).getAccounts().size(),
+                reopened.getCustomer(id).getAccounts().size());
+        }
+        assertNull(reopened.getAccount(closed));
+        assertNull(reopened.getCustomer("NOBODY"));
+        assertEquals(ids.size(), reopened.getNameIndex().size());
+        assertEquals(ids.size(), reopened.getCustomerCount());
+        assertEquals(numbers.size(), reopened.getAccountCount());
+    }
+
+    /**
+     * Gets the state an account saves in a snapshot
+     * @param account BankAccount containing the account
+     * @return Array of bytes representing the saved state
+     */
+    private static byte[] state(BankAccount account)
+    {
+        CheckingAccount checking = (CheckingAccount) account;
+        ByteBuffer out = ByteBuffer.allocate(checking.getStateSize());
+        checking.writeState(out);
+        return out.array();
+    }
+
+} // End of class
@@ -0,0 +1,129 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a CD whose interest rounds to no cents matures without a
+ * deposit, so neither the end-of-day batch nor the maturity scheduler
+ * counts a refusal for it.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class CertificateDepositAccountTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private ManualBankClock clock;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the accounts to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        this.clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(this.clock);
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Matures a CD at no interest and a CD too small to earn a cent, one
+     * through the end-of-day batch and one through the maturity scheduler,
+     * and checks both are marked credited with nothing deposited, no
+     * transaction and no refusal counted
+     */
+    @Test
+    public void noInterestMaturesWithoutRefusal()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        CertificateDepositAccount free =
+            (CertificateDepositAccount) bank.openAccount(id, 4, 5000, 1);
+        free.setInterestRate(0);
+        CertificateDepositAccount tiny =
+            (CertificateDepositAccount) bank.openAccount(id, 4, 0.01, 1);
+        long freeBalance = free.getBalanceCents();
+        long tinyBalance = tiny.getBalanceCents();
+        int freeHistory = count(free);
+        int tinyHistory = count(tiny);
+        long invalid = this.invalidAmounts();
+
+        this.clock.advanceMonths(2);
+        assertEquals(0, new EndOfDayBatch().run(bank)
+            .getCertificatesCredited());
+        bank.getMaturityScheduler().setAutoCredit(true);
+        bank.getMaturityScheduler().advance();
+        assertEquals(0, tiny.creditMaturedInterest());
+
+        assertEquals(invalid, this.invalidAmounts());
+        assertTrue(free.isInterestCredited());
+        assertTrue(tiny.isInterestCredited());
+        assertEquals(freeBalance, free.getBalanceCents());
+        assertEquals(tinyBalance, tiny.getBalanceCents());
+        assertEquals(freeHistory, count(free));
+        assertEquals(tinyHistory, count(tiny));
+    }
+
+    /**
+     * Checks that a CD earning interest still has it credited once
+     */
+    @Test
+    public void interestIsCreditedOnce()
+    {
+        CertificateDepositAccount cd = new CertificateDepositAccount(5000, 1);
+        long balance = cd.getBalanceCents();
+        this.clock.advanceMonths(2);
+        long credited = cd.creditMaturedInterest();
+        assertTrue(credited > 0);
+        assertEquals(balance + credited, cd.getBalanceCents());
+        assertEquals(0, cd.creditMaturedInterest());
+        assertEquals(balance + credited, cd.getBalanceCents());
+    }
+
+    /**
+     * Gets the number of refusals counted as invalid amounts
+     * @return Long representing the count
+     */
+    private long invalidAmounts()
+    {
+        return BankMetrics.getDefault()
+            .getCount(BankMetrics.Reason.INVALID_AMOUNT);
+    }
+
+    /**
+     * Counts the transactions in an account's history
+     * @param account CheckingAccount containing the account
+     * @return Integer representing the transaction count
+     */
+    private static int count(CheckingAccount account)
+    {
+        int count = 0;
+        synchronized (account)
+        {
+            TransactionCursor cursor =
+                account.getTransactions(0, Integer.MAX_VALUE);
+            while (cursor.advance())
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+} // End of class
@@ -0,0 +1,232 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that customers are found by the start of their names and by names
+ * spelled like theirs, that renamed and removed customers are filed under
+ * what is left of their names, and that words no name holds any more are
+ * dropped from the dictionary.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class CustomerNameIndexTest
+{
+    //~ Fields ................................................................
+    private static final String[] FIRST =
+        {"Ann", "Bo", "Farhan", "Fatima", "Jos\u00e9"};
+    private static final String[] LAST =
+        {"Lee", "Ng", "Abdulla", "Abdullah", "\u00c1lvarez", "Smith"};
+
+    //~ Methods ...............................................................
+
+    /**
+     * Looks customers up by the start of their names, in either order and
+     * ignoring case, accents and punctuation
+     */
+    @Test
+    public void findsByPrefix()
+    {
+        CustomerNameIndex index = new CustomerNameIndex();
+        Customer farhan = add(index, "C1", "Farhan Abdulla");
+        Customer fatima = add(index, "C2", "Fatima Abdullah");
+        Customer abdul = add(index, "C3", "Abdul Rahman");
+        Customer jose = add(index, "C4", "Jos\u00e9 \u00c1lvarez");
+
+        assertEquals(List.of(farhan, fatima),
+            index.findByPrefix("Abdulla, F", 10));
+        assertEquals(Set.of(farhan, fatima, abdul),
+            new HashSet<Customer>(index.findByPrefix("abdul", 10)));
+        assertEquals(1, index.findByPrefix("abdul", 1).size());
+        assertEquals(List.of(jose), index.findByPrefix("ALV jose", 10));
+        assertTrue(index.findByPrefix("Abdulla R", 10).isEmpty());
+        assertTrue(index.findByPrefix("", 10).isEmpty());
+    }
+
+    /**
+     * Looks customers up by misspelled names and initials
+     */
+    @Test
+    public void findsSimilarNames()
+    {
+        CustomerNameIndex index = new CustomerNameIndex();
+        Customer farhan = add(index, "C1", "Farhan Abdulla");
+        add(index, "C2", "Fatima Abdullah");
+        add(index, "C3", "Zoe Ng");
+        Customer jose = add(index, "C4", "Jos\u00e9 \u00c1lvarez");
+
+        assertEquals(farhan, index.findSimilar("Farhaan Abdula", 10).get(0));
+        assertEquals(farhan, index.findSimilar("Abdulla Farhan", 10).get(0));
+        assertEquals(jose, index.findSimilar("Jose Alvares", 10).get(0));
+        assertEquals(List.of(jose), index.findSimilar("J A", 10));
+        assertTrue(index.findSimilar("Qwxyz", 10).isEmpty());
+    }
+
+    /**
+     * Renames a customer of a bank through the customer and checks the
+     * bank's name search follows
+     */
+    @Test
+    public void renameThroughCustomerIsFiled()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        String other = bank.addCustomer("Bo Lee");
+        Customer customer = bank.getCustomer(id);
+        customer.setName("Ann Marsh");
+
+        CustomerNameIndex index = bank.getNameIndex();
+        assertEquals(List.of(bank.getCustomer(other)),
+            index.findByPrefix("Lee", 10));
+        assertEquals(List.of(customer), index.findByPrefix("Marsh", 10));
+        assertEquals(List.of(customer), index.findByPrefix("Ann", 10));
+        assertEquals(customer, index.findSimilar("Ann Mash", 10).get(0));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Adds, renames and removes customers sharing words at random, so that
+     * customers are taken out of the middle of a word's holders and the
+     * last holder is moved into their place, and after every change checks
+     * each word finds exactly the customers a plain list says hold it, and
+     * that the dictionary holds no word nobody has
+     */
+    @Test
+    public void changesKeepHoldersExact()
+    {
+        CustomerNameIndex index = new CustomerNameIndex();
+        List<Customer> filed = new ArrayList<Customer>();
+        Random random = new Random(42);
+        for (int step = 0; step < 2000; step++)
+        {
+            int choice = random.nextInt(3);
+            if (filed.isEmpty() || choice == 0 && filed.size() < 40)
+            {
+                filed.add(add(index, "C" + step, randomName(random)));
+            }
+            else if (choice == 1)
+            {
+                Customer customer = filed.get(random.nextInt(filed.size()));
+                customer.setName(randomName(random));
+                index.update(customer);
+            }
+            else
+            {
+                Customer customer =
+                    filed.remove(random.nextInt(filed.size()));
+                index.remove(customer);
+            }
+            assertEquals(filed.size(), index.size());
+            this.checkHolders(index, filed);
+        }
+        for (Customer customer : new ArrayList<Customer>(filed))
+        {
+            filed.remove(customer);
+            index.remove(customer);
+            this.checkHolders(index, filed);
+        }
+        assertEquals(0, index.getWordCount());
+    }
+
+    /**
+     * Renames one customer many times and checks that the dictionary only
+     * holds the words of the names in use, and that a word dropped and
+     * then used again is found by its trigrams
+     */
+    @Test
+    public void renameChurnDoesNotGrowDictionary()
+    {
+        CustomerNameIndex index = new CustomerNameIndex();
+        add(index, "C1", "Ann Lee");
+        Customer churned = add(index, "C2", "Bo Ng");
+        for (int i = 0; i < 1000; i++)
+        {
+            churned.setName("Bo Name" + i);
+            index.update(churned);
+        }
+        assertEquals(4, index.getWordCount());
+
+        churned.setName("Bo Lee");
+        index.update(churned);
+        assertEquals(3, index.getWordCount());
+        churned.setName("Bo Marsh");
+        index.update(churned);
+        assertEquals(List.of(churned), index.findSimilar("Bo Mash", 10));
+        assertTrue(index.findSimilar("Name999", 10).isEmpty());
+    }
+
+    /**
+     * Checks that every first and last name finds exactly the customers
+     * holding it, and that the index has no other words
+     * @param index CustomerNameIndex containing the customers
+     * @param filed List of Customers containing the customers filed
+     */
+    private void checkHolders(CustomerNameIndex index, List<Customer> filed)
+    {
+        Set<String> held = new HashSet<String>();
+        for (Customer customer : filed)
+        {
+            for (String word : CustomerNameIndex.split(customer.getName()))
+            {
+                held.add(word);
+            }
+        }
+        for (String[] names : new String[][] {FIRST, LAST})
+        {
+            for (String name : names)
+            {
+                String word = CustomerNameIndex.split(name)[0];
+                Set<Customer> expected = new HashSet<Customer>();
+                for (Customer customer : filed)
+                {
+                    for (String text
+                        : CustomerNameIndex.split(customer.getName()))
+                    {
+                        if (text.startsWith(word))
+                        {
+                            expected.add(customer);
+                        }
+                    }
+                }
+                List<Customer> found = index.findByPrefix(name, 100);
+                assertEquals(expected.size(), found.size());
+                assertEquals(expected, new HashSet<Customer>(found));
+            }
+        }
+        assertEquals(held.size(), index.getWordCount());
+    }
+
+    /**
+     * Makes a customer and adds them to an index
+     * @param index CustomerNameIndex containing the index
+     * @param id String containing the customer ID
+     * @param name String containing the customer's name
+     * @return Customer representing the new customer
+     */
+    private static Customer add(CustomerNameIndex index, String id,
+        String name)
+    {
+        Customer customer = new Customer(id, name);
+        index.add(customer);
+        return customer;
+    }
+
+    /**
+     * Picks a first and last name from a few shared ones
+     * @param random Random containing the source of choices
+     * @return String representing the name
+     */
+    private static String randomName(Random random)
+    {
+        return FIRST[random.nextInt(FIRST.length)] + " "
+            + LAST[random.nextInt(LAST.length)];
+    }
+
+} // End of class
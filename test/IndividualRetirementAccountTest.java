@@ -0,0 +1,90 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the closed-form IRA valuation against adding up every monthly
+ * deposit, month by month for thirty years, and after the rate or the
+ * monthly deposit changes.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class IndividualRetirementAccountTest
+{
+    //~ Fields ................................................................
+    private static final int MONTHS = 360;
+    // Half a cent: the two may differ in rounding, never by a whole cent
+    private static final double TOLERANCE = 0.005;
+
+    private BankClock saved;
+    private ManualBankClock clock;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the accounts to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        this.clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(this.clock);
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Checks every month of a thirty year IRA at several rates
+     */
+    @Test
+    public void valuationMatchesRecomputedEveryMonth()
+    {
+        double[] rates = {0, 0.5, 7, 12};
+        for (double rate : rates)
+        {
+            this.clock.setToday(LocalDate.of(2022, 1, 3));
+            IndividualRetirementAccount ira =
+                new IndividualRetirementAccount(500);
+            ira.setInterestRate(rate);
+            for (int month = 0; month <= MONTHS; month++)
+            {
+                assertEquals(ira.recomputeValuation(), ira.getValuation(),
+                    TOLERANCE, "rate " + rate + " month " + month);
+                this.clock.advanceMonths(1);
+            }
+        }
+    }
+
+    /**
+     * Checks that a cached valuation is dropped when the rate or the
+     * monthly deposit changes
+     */
+    @Test
+    public void valuationFollowsChanges()
+    {
+        IndividualRetirementAccount ira = new IndividualRetirementAccount(300);
+        this.clock.advanceMonths(MONTHS);
+        assertEquals(ira.recomputeValuation(), ira.getValuation(), TOLERANCE);
+        ira.setMonthlyDeposit(450);
+        assertEquals(ira.recomputeValuation(), ira.getValuation(), TOLERANCE);
+        ira.setInterestRate(4);
+        assertEquals(ira.recomputeValuation(), ira.getValuation(), TOLERANCE);
+        // Held to the $500 cap
+        ira.setMonthlyDeposit(10000);
+        assertEquals(500, ira.getMonthlyDeposit(), 0);
+        assertEquals(ira.recomputeValuation(), ira.getValuation(), TOLERANCE);
+    }
+
+} // End of class
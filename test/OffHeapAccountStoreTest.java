@@ -0,0 +1,84 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that transfers between rows whose lock stripes alias each other
+ * neither deadlock nor lose money.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class OffHeapAccountStoreTest
+{
+    //~ Fields ................................................................
+    private static final int ROUNDS = 200000;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Runs transfers from row 2 to row 1025 and from row 1 to row 1026 at
+     * the same time, so each thread needs stripes 1 and 2 while the rows
+     * themselves are in opposite orders, and a transfer between two rows of
+     * the same stripe alongside them
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void aliasedStripesDoNotDeadlock() throws InterruptedException
+    {
+        OffHeapAccountStore store = new OffHeapAccountStore(2048);
+        for (int i = 0; i < 2048; i++)
+        {
+            store.open(1, 1000000, 0);
+        }
+        int[][] pairs = {{2, 1025}, {1, 1026}, {3, 1027}};
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[pairs.length];
+        for (int t = 0; t < pairs.length; t++)
+        {
+            int from = store.getAccountAt(pairs[t][0]).getAccountNumber();
+            int to = store.getAccountAt(pairs[t][1]).getAccountNumber();
+            threads[t] = new Thread(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (int i = 0; i < ROUNDS; i++)
+                {
+                    // Back and forth so neither side runs dry
+                    if (i % 2 == 0)
+                    {
+                        store.transferCents(from, to, 100);
+                    }
+                    else
+                    {
+                        store.transferCents(to, from, 100);
+                    }
+                }
+            });
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join(60000);
+            assertFalse(thread.isAlive(), "transfers deadlocked");
+        }
+        long total = 0;
+        for (int row = 0; row < store.size(); row++)
+        {
+            total += store.getAccountAt(row).getBalanceCents();
+        }
+        assertEquals(2048L * 1000000, total);
+        assertEquals(1000000, store.getAccountAt(1025).getBalanceCents());
+        assertEquals(1000000, store.getAccountAt(1026).getBalanceCents());
+    }
+
+} // End of class
@@ -0,0 +1,204 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that an onboarding batch is added to a bank completely or not at
+ * all, in the registry, the account index, the name search, the log and
+ * the views, and that opening a CD by type opens nothing else.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class OnboardingBatchTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private Path log;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place and picks a fresh log file
+     * @throws IOException if the temporary file cannot be made
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+        this.log = Files.createTempFile("onboard", ".log");
+        Files.delete(this.log);
+    }
+
+    /**
+     * Puts the clock that was in place back and removes the log
+     * @throws IOException if the log cannot be removed
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        BankClock.setDefault(this.saved);
+        Files.deleteIfExists(this.log);
+    }
+
+    /**
+     * Opens an account by hand under the number the batch is about to be
+     * given, then checks that the failed batch left no customer, account,
+     * name or log record behind, before and after recovery
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void collisionLeavesNothing() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String hand = bank.addCustomer("Hand Opened");
+        int taken = nextAccountNumber();
+        bank.getCustomer(hand).addAccount(new CheckingAccount(
+            new OpeningDay(BankClock.getDefault()), taken, 0));
+        int customers = bank.getCustomerCount();
+        int accounts = bank.getAccountCount();
+        int names = bank.getNameIndex().size();
+        long records = bank.getLog().getRecordCount();
+
+        OnboardingBatch batch = new OnboardingBatch();
+        for (int c = 0; c < 3; c++)
+        {
+            int customer = batch.addCustomer("Batch Person" + c);
+            batch.openAccount(customer, 1);
+            batch.openAccount(customer, 2, 500, 0);
+        }
+        assertThrows(IllegalStateException.class, () -> batch.apply(bank));
+
+        assertEquals(customers, bank.getCustomerCount());
+        assertEquals(accounts, bank.getAccountCount());
+        assertEquals(names, bank.getNameIndex().size());
+        assertEquals(records, bank.getLog().getRecordCount());
+        assertTrue(bank.findCustomers("Batch", 10).isEmpty());
+        assertSame(bank.getCustomer(hand), bank.getAccountOwner(taken));
+        try (BankView view = bank.openView())
+        {
+            assertEquals(customers, view.getCustomers().size());
+        }
+        bank.getLog().close();
+
+        Bank recovered = Bank.open(this.log);
+        assertEquals(Set.of(hand), recovered.getAllCustomerId());
+        assertTrue(recovered.findCustomers("Batch", 10).isEmpty());
+        recovered.getLog().close();
+    }
+
+    /**
+     * Applies a batch while a view is open and checks that the view sees
+     * none of it, and that a view opened afterwards sees all of it. Views
+     * open at once share an epoch, so the second is opened after the first
+     * is closed.
+     */
+    @Test
+    public void appliedBatchIsWhollyVisible()
+    {
+        Bank bank = new Bank();
+        String existing = bank.addCustomer("Ann Lee");
+        OnboardingBatch batch = new OnboardingBatch();
+        long opened = 0;
+        for (int c = 0; c < 50; c++)
+        {
+            int customer = batch.addCustomer("Batch Person" + c);
+            batch.openAccount(customer, 1, 100 + c, 0);
+            opened += (100 + c) * Money.CENTS_PER_DOLLAR;
+            if (c % 2 == 0)
+            {
+                batch.openAccount(customer, 2, 400, 0);
+                opened += 400 * Money.CENTS_PER_DOLLAR;
+            }
+        }
+
+        OnboardingBatch.Report report;
+        long accounts;
+        long total;
+        try (BankView before = bank.openView())
+        {
+            report = batch.apply(bank);
+            assertEquals(1, before.getCustomers().size());
+            accounts = before.getAccountCount();
+            total = before.getTotalCents();
+        }
+        try (BankView after = bank.openView())
+        {
+            assertEquals(51, after.getCustomers().size());
+            assertEquals(accounts + 75, after.getAccountCount());
+            assertEquals(total + opened, after.getTotalCents());
+
+            Set<String> seen = new HashSet<String>();
+            for (Customer customer : after.getCustomers())
+            {
+                seen.add(customer.getCustomerId());
+            }
+            assertTrue(seen.contains(existing));
+            for (int c = 0; c < report.getCustomers(); c++)
+            {
+                String id = report.getCustomerId(c);
+                assertTrue(seen.contains(id));
+                Customer customer = bank.getCustomer(id);
+                assertEquals(c % 2 == 0 ? 2 : 1,
+                    after.getAccounts(customer).size());
+            }
+            for (int a = 0; a < report.getAccounts(); a++)
+            {
+                assertNotNull(bank.getAccount(report.getAccountNumber(a)));
+            }
+        }
+        assertEquals(50, bank.findCustomers("Batch Person", 100).size());
+    }
+
+    /**
+     * Opens a CD by type number and checks that no IRA is opened after it
+     */
+    @Test
+    public void openingCdByTypeOpensOneAccount()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        Customer customer = bank.getCustomer(id);
+        customer.openAccount(4);
+        List<BankAccount> accounts = customer.getAccounts();
+        assertEquals(2, accounts.size());
+        assertTrue(accounts.get(1) instanceof CertificateDepositAccount);
+        assertEquals(2, bank.getAccountCount());
+
+        Customer alone = new Customer("X1", "Bo Ng");
+        alone.openAccount(4);
+        assertEquals(1, alone.getAccounts().size());
+        assertTrue(alone.getAccounts().get(0)
+            instanceof CertificateDepositAccount);
+    }
+
+    /**
+     * Works out the account number the default allocator hands out next,
+     * without handing it out. The allocator steps through its permutation
+     * by a fixed stride, which two allocations in a row show.
+     * @return Integer representing the next account number
+     */
+    private static int nextAccountNumber()
+    {
+        int[] two = AccountNumberAllocator.getDefault().reserve(2);
+        long capacity = AccountNumberAllocator.CAPACITY;
+        long first = AccountNumberAllocator.FIRST_NUMBER;
+        long stride = Math.floorMod(two[1] - two[0], capacity);
+        return (int) (first + (two[1] - first + stride) % capacity);
+    }
+
+} // End of class
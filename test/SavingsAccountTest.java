@@ -0,0 +1,142 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the incrementally maintained accrued interest of savings and money
+ * market accounts against a sum over every deposit lot, across random runs
+ * of deposits, withdrawals, rate changes and months going by, and checks
+ * how withdraw cycles end.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class SavingsAccountTest
+{
+    //~ Fields ................................................................
+    private static final int RUNS = 200;
+    private static final int STEPS = 400;
+    // Half a cent: the two may differ in rounding, never by a whole cent
+    private static final double TOLERANCE = 0.005;
+
+    private BankClock saved;
+    private ManualBankClock clock;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the accounts to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        this.clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(this.clock);
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Checks savings accounts
+     */
+    @Test
+    public void savingsInterestMatchesRecomputed()
+    {
+        for (int run = 0; run < RUNS; run++)
+        {
+            this.clock.setToday(LocalDate.of(2022, 1, 3));
+            this.drive(new SavingsAccount(1000), new Random(run));
+        }
+    }
+
+    /**
+     * Checks money market accounts, which add a floor of their own
+     */
+    @Test
+    public void moneyMarketInterestMatchesRecomputed()
+    {
+        for (int run = 0; run < RUNS; run++)
+        {
+            this.clock.setToday(LocalDate.of(2022, 1, 3));
+            this.drive(new MoneyMarketAccount(2000), new Random(-run));
+        }
+    }
+
+    /**
+     * Checks that a cycle that ended without being reset counts as fresh,
+     * and that only the withdrawal, not the check, starts it over
+     */
+    @Test
+    public void endedCycleIsCheckedWithoutReset()
+    {
+        SavingsAccount account = new SavingsAccount(1000);
+        for (int i = 0; i < 6; i++)
+        {
+            assertTrue(account.withdrawCents(100));
+        }
+        assertFalse(account.canWithdrawCents(100));
+        int startDay = account.getStartDay();
+        this.clock.advanceMonths(1);
+
+        assertTrue(account.canWithdrawCents(100));
+        assertEquals(6, account.getWithdrawCount());
+        assertEquals(startDay, account.getStartDay());
+        assertTrue(account.withdrawCents(100));
+        assertEquals(1, account.getWithdrawCount());
+        assertEquals(this.clock.today(), account.getStartDay());
+    }
+
+    /**
+     * Makes random changes to an account, checking after each that the
+     * incremental interest matches the recomputed one
+     * @param account SavingsAccount containing the account to drive
+     * @param random Random containing the seeded source of the steps
+     */
+    private void drive(SavingsAccount account, Random random)
+    {
+        for (int step = 0; step < STEPS; step++)
+        {
+            int choice = random.nextInt(10);
+            long cents = 1 + random.nextInt(200000);
+            if (choice < 4)
+            {
+                account.depositCents(cents);
+            }
+            else if (choice < 7)
+            {
+                account.withdrawCents(cents);
+            }
+            else if (choice < 8)
+            {
+                account.setInterestRate(random.nextInt(500) / 100.0);
+            }
+            else if (choice < 9)
+            {
+                this.clock.advanceMonths(1 + random.nextInt(3));
+            }
+            else
+            {
+                this.clock.advanceDays(1 + random.nextInt(20));
+            }
+            assertEquals(account.recomputeAccruedInterest(),
+                account.getAccruedInterest(), TOLERANCE,
+                "step " + step + " of " + account.getDepositsCents().length
+                + " lots");
+        }
+    }
+
+} // End of class
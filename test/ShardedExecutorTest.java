@@ -0,0 +1,135 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that transfers refused on the receiving shard leave the paying
+ * account exactly as it was, as a refused lock-based transfer does, and
+ * that commands submitted after closing fail instead of hanging.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class ShardedExecutorTest
+{
+    //~ Fields ................................................................
+    private static final int PAYEES = 16;
+
+    private BankClock saved;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the bank to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Sends transfers from a savings account and an IRA to CDs still in
+     * their term, which refuse deposits. With two shards most of the CDs
+     * live on the other shard than the payer, so the exchange between
+     * shards is exercised along with the one-shard path.
+     */
+    @Test
+    public void refusedTransfersLeavePayerUnchanged()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        SavingsAccount savings =
+            (SavingsAccount) bank.openAccount(id, 2, 1000, 0);
+        BankAccount ira = bank.openAccount(id, 5, 1000, 0);
+        int[] certificates = new int[PAYEES];
+        for (int i = 0; i < PAYEES; i++)
+        {
+            certificates[i] =
+                bank.openAccount(id, 4, 1000, 12).getAccountNumber();
+        }
+        String savingsBefore = describe(savings);
+        String iraBefore = describe(ira);
+
+        try (ShardedExecutor executor = new ShardedExecutor(bank, 2, 16))
+        {
+            for (int cd : certificates)
+            {
+                assertFalse(executor.transferFunds(
+                    savings.getAccountNumber(), cd, 100).join());
+                assertFalse(executor.transferFunds(
+                    ira.getAccountNumber(), cd, 100).join());
+            }
+        }
+        assertEquals(savingsBefore, describe(savings));
+        assertEquals(iraBefore, describe(ira));
+        assertEquals(0, savings.getWithdrawCount());
+        assertTrue(savings.canWithdrawCents(100));
+    }
+
+    /**
+     * Closes an executor and checks that later commands fail right away,
+     * and that closing again still returns
+     */
+    @Test
+    public void commandsAfterCloseFail()
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        int checking =
+            bank.getCustomer(id).getAccounts().get(0).getAccountNumber();
+        long opening = bank.getBalanceCents(checking);
+        ShardedExecutor executor = new ShardedExecutor(bank, 4, 16);
+        assertTrue(executor.deposit(checking, 500).join());
+        executor.close();
+
+        assertThrows(CompletionException.class,
+            () -> executor.deposit(checking, 500).join());
+        assertThrows(CompletionException.class,
+            () -> executor.getBalanceCents(checking).join());
+        assertThrows(CompletionException.class,
+            () -> executor.transferFunds(checking, checking + 1, 1).join());
+        executor.close();
+        assertEquals(opening + 500, bank.getBalanceCents(checking));
+    }
+
+    /**
+     * Describes an account's balance and every transaction in its history
+     * @param account BankAccount containing the account
+     * @return String representing the account
+     */
+    private static String describe(BankAccount account)
+    {
+        StringBuilder text = new StringBuilder();
+        synchronized (account)
+        {
+            text.append(account.getBalanceCents());
+            TransactionCursor cursor = ((CheckingAccount) account)
+                .getTransactions(0, Integer.MAX_VALUE);
+            while (cursor.advance())
+            {
+                text.append(" [").append(cursor.getTimestamp()).append(", ")
+                    .append(cursor.getAmountCents()).append(']');
+            }
+        }
+        return text.toString();
+    }
+
+} // End of class
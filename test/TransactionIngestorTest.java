@@ -0,0 +1,323 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the guarantees of the ingestor: records for one account are
+ * applied in file order even with several workers, records the bank
+ * refuses reach the error sink, and a reader ahead of stalled workers waits
+ * instead of holding more than the queues allow.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class TransactionIngestorTest
+{
+    //~ Fields ................................................................
+    private static final int CHUNK_SIZE = 512;
+
+    private BankClock saved;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the bank to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Interleaves deposits to many accounts, each deposit's amount in cents
+     * being its line number, and checks with four workers that every
+     * account's history lists its deposits in line order
+     * @throws IOException if the reader fails
+     */
+    @Test
+    public void appliesEachAccountInFileOrder()
+        throws IOException
+    {
+        Bank bank = new Bank();
+        int accounts = 24;
+        int[] numbers = new int[accounts];
+        int[] opening = new int[accounts];
+        for (int a = 0; a < accounts; a++)
+        {
+            String id = bank.addCustomer("Customer " + a);
+            numbers[a] = bank.getCustomer(id).getAccounts().get(0)
+                .getAccountNumber();
+            opening[a] = amounts(bank, numbers[a]).size();
+        }
+        StringBuilder file = new StringBuilder();
+        int records = accounts * 200;
+        for (int line = 1; line <= records; line++)
+        {
+            file.append("D,").append(numbers[(line * 7) % accounts])
+                .append(',').append(line / 100).append('.')
+                .append(String.format("%02d", line % 100)).append('\n');
+        }
+
+        TransactionIngestor ingestor = new TransactionIngestor(bank, 4, 2);
+        TransactionIngestor.Report report =
+            ingestor.ingestDelimited(new StringReader(file.toString()));
+        assertEquals(records, report.getApplied());
+        assertEquals(0, report.getRejected());
+        for (int a = 0; a < accounts; a++)
+        {
+            List<Long> seen = amounts(bank, numbers[a]);
+            List<Long> deposits = seen.subList(opening[a], seen.size());
+            assertEquals(records / accounts, deposits.size());
+            for (int i = 1; i < deposits.size(); i++)
+            {
+                assertTrue(deposits.get(i - 1) < deposits.get(i),
+                    "Account " + numbers[a] + " applied out of order");
+            }
+        }
+    }
+
+    /**
+     * Withdraws from a savings account seven times in one cycle and checks
+     * that only the seventh, with an unknown account and a malformed line,
+     * reaches the error sink with its line number and reason
+     * @throws IOException if the reader fails
+     */
+    @Test
+    public void seventhSavingsWithdrawalIsRejected()
+        throws IOException
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        int savings = bank.openAccount(id, 2, 1000, 0).getAccountNumber();
+        long balance = bank.getBalanceCents(savings);
+        StringBuilder file = new StringBuilder("# seven withdrawals\n");
+        for (int i = 0; i < 7; i++)
+        {
+            file.append("W,").append(savings).append(",10.00\n");
+        }
+        file.append("D,1,10.00\n");
+        file.append("X,").append(savings).append(",10.00\n");
+
+        List<String> errors = new ArrayList<String>();
+        TransactionIngestor ingestor = new TransactionIngestor(bank, 3, 4);
+        ingestor.setErrorSink((number, record, reason) ->
+        {
+            synchronized (errors)
+            {
+                errors.add(number + "|" + record + "|" + reason);
+            }
+        });
+        TransactionIngestor.Report report =
+            ingestor.ingestDelimited(new StringReader(file.toString()));
+
+        assertEquals(6, report.getApplied());
+        assertEquals(2, report.getRejected());
+        assertEquals(1, report.getMalformed());
+        assertEquals(balance - 6000, bank.getBalanceCents(savings));
+        assertEquals(3, errors.size());
+        assertTrue(errors.contains("8|W," + savings + ","
+            + Money.format(1000) + "|rejected"), errors.toString());
+        assertTrue(errors.contains("9|D,1," + Money.format(1000)
+            + "|unknown account"), errors.toString());
+        assertTrue(errors.contains("10|X," + savings + ",10.00|malformed"),
+            errors.toString());
+    }
+
+    /**
+     * Stalls the only worker inside the error sink and checks that the
+     * reader stops taking lines once the worker's queue is full, then lets
+     * the worker go and checks everything is applied
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void readerWaitsForStalledWorkers()
+        throws InterruptedException
+    {
+        Bank bank = new Bank();
+        String id = bank.addCustomer("Ann Lee");
+        int checking =
+            bank.getCustomer(id).getAccounts().get(0).getAccountNumber();
+        long opening = bank.getBalanceCents(checking);
+        int capacity = 2;
+        int lines = 50000;
+        String deposit = "D," + checking + ",0.01\n";
+        LineSource source = new LineSource("D,1,0.01\n", deposit, lines);
+
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionIngestor ingestor =
+            new TransactionIngestor(bank, 1, capacity);
+        ingestor.setErrorSink((number, record, reason) ->
+        {
+            stalled.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicReference<TransactionIngestor.Report> result =
+            new AtomicReference<TransactionIngestor.Report>();
+        Thread reader = new Thread(() ->
+        {
+            try
+            {
+                result.set(ingestor.ingestDelimited(source));
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }, "ingest-reader");
+        reader.start();
+
+        try
+        {
+            assertTrue(stalled.await(60, TimeUnit.SECONDS));
+            // The worker holds a chunk, the queue holds capacity chunks and the
+            // reader fills one more before it must wait
+            long floor = (long) (capacity + 1) * CHUNK_SIZE;
+            long deadline = System.nanoTime() + 60_000_000_000L;
+            while (source.served.get() < floor && System.nanoTime() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            long bound = (capacity + 2L) * CHUNK_SIZE
+                + 8192 / deposit.length() + 1;
+            long served = source.served.get();
+            assertTrue(served >= floor, "Reader stopped early at " + served);
+            assertTrue(served <= bound, "Reader ran ahead to " + served);
+            assertTrue(reader.isAlive());
+        }
+        finally
+        {
+            // A stalled worker would keep the test run from ending
+            release.countDown();
+        }
+        reader.join(60_000);
+        assertFalse(reader.isAlive());
+        assertEquals(lines, result.get().getApplied());
+        assertEquals(1, result.get().getRejected());
+        assertEquals(opening + lines, bank.getBalanceCents(checking));
+    }
+
+    /**
+     * Gets the amounts in an account's history, oldest first
+     * @param bank Bank containing the account
+     * @param accountNumber Integer containing the account number
+     * @return List of Longs representing the amounts in cents
+     */
+    private static List<Long> amounts(Bank bank, int accountNumber)
+    {
+        CheckingAccount account =
+            (CheckingAccount) bank.getAccount(accountNumber);
+        List<Long> amounts = new ArrayList<Long>();
+        synchronized (account)
+        {
+            TransactionCursor cursor =
+                account.getTransactions(0, Integer.MAX_VALUE);
+            while (cursor.advance())
+            {
+                amounts.add(cursor.getAmountCents());
+            }
+        }
+        return amounts;
+    }
+
+    //~ Nested classes ........................................................
+
+    /**
+     * Serves a first line and then a repeated line, a line at a time,
+     * counting the lines handed out so far
+     */
+    private static final class LineSource extends Reader
+    {
+        private final String first;
+        private final String repeated;
+        private final int count;
+        private final AtomicLong served = new AtomicLong();
+        private String line;
+        private int offset;
+
+        /**
+         * Represents a source of lines
+         * @param first String containing the first line
+         * @param repeated String containing the line served after it
+         * @param count Integer containing how often to serve it
+         */
+        private LineSource(String first, String repeated, int count)
+        {
+            this.first = first;
+            this.repeated = repeated;
+            this.count = count;
+        }
+
+        /**
+         * Copies characters of the current line, moving to the next line
+         * when it is used up
+         * @param buffer Array of chars to copy into
+         * @param start Integer containing where to start copying
+         * @param length Integer containing the most characters to copy
+         * @return Integer representing the characters copied, or -1 once
+         *  every line has been served
+         */
+        @Override
+        public int read(char[] buffer, int start, int length)
+        {
+            if (this.line == null || this.offset == this.line.length())
+            {
+                long next = this.served.get();
+                if (next > this.count)
+                {
+                    return -1;
+                }
+                this.line = next == 0 ? this.first : this.repeated;
+                this.offset = 0;
+                this.served.incrementAndGet();
+            }
+            int copied = Math.min(length, this.line.length() - this.offset);
+            this.line.getChars(this.offset, this.offset + copied, buffer,
+                start);
+            this.offset += copied;
+            return copied;
+        }
+
+        /**
+         * Does nothing, as there is nothing to release
+         */
+        @Override
+        public void close()
+        {
+        }
+    }
+
+} // End of class
@@ -0,0 +1,272 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks ranges and pages of a ledger against picking the transactions out
+ * one by one: both bounds are included, days without activity are skipped,
+ * an empty or open-ended range is handled, each transaction reports its own
+ * day, and walking the pages returns every transaction once. Also checks an
+ * account's history for a day with no activity.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class TransactionLedgerTest
+{
+    //~ Fields ................................................................
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Days with activity, with gaps between some, and transactions on each
+    private static final int[] DAYS = {19000, 19001, 19003, 19007, 19008,
+        19020};
+    private static final int[] PER_DAY = {2, 1, 3, 1, 4, 2};
+
+    private BankClock saved;
+    private TransactionLedger ledger;
+    private List<TransactionRecord> all;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Fills a ledger, keeping a list of what was appended to it
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        this.ledger = new TransactionLedger();
+        this.all = new ArrayList<TransactionRecord>();
+        int amount = 100;
+        for (int d = 0; d < DAYS.length; d++)
+        {
+            for (int i = 0; i < PER_DAY[d]; i++)
+            {
+                long timestamp = DAYS[d] * MILLIS_PER_DAY + i;
+                long cents = i % 2 == 0 ? amount : -amount;
+                byte type = cents > 0 ? TransactionLedger.DEPOSIT
+                    : TransactionLedger.WITHDRAWAL;
+                this.ledger.append(timestamp, DAYS[d], cents, type);
+                this.all.add(new TransactionRecord(timestamp, DAYS[d], cents,
+                    type));
+                amount++;
+            }
+        }
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Reads every range of days around the active ones, from every start
+     * position, and compares each with the transactions picked out by hand,
+     * including the day each one reports
+     */
+    @Test
+    public void rangesMatchEveryDayPair()
+    {
+        int first = DAYS[0] - 2;
+        int last = DAYS[DAYS.length - 1] + 2;
+        for (int from = first; from <= last; from++)
+        {
+            for (int to = first; to <= last; to++)
+            {
+                for (int start = 0; start <= this.all.size(); start++)
+                {
+                    assertEquals(this.expected(from, to, start),
+                        describe(this.ledger.range(from, to, start)),
+                        from + ".." + to + " from " + start);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the bounds of a range are included, and that days with no
+     * activity inside or at the ends of a range give nothing
+     */
+    @Test
+    public void boundsAreIncluded()
+    {
+        // 19003 and 19007 are active, 19004 to 19006 are not
+        assertEquals(4, this.ledger.range(19003, 19007).remaining());
+        assertEquals(3, this.ledger.range(19002, 19006).remaining());
+        assertEquals(0, this.ledger.range(19004, 19006).remaining());
+        assertEquals(1, this.ledger.range(19001, 19001).remaining());
+        assertEquals(0, this.ledger.range(19021, 19030).remaining());
+        assertEquals(0, this.ledger.range(18000, 18999).remaining());
+    }
+
+    /**
+     * Reads ranges running backwards and ranges open at either end
+     */
+    @Test
+    public void emptyAndOpenRanges()
+    {
+        assertEquals(0, this.ledger.range(19007, 19003).remaining());
+        assertFalse(this.ledger.range(19007, 19003).advance());
+        assertEquals(0,
+            this.ledger.range(Integer.MAX_VALUE, 19003).remaining());
+        assertEquals(this.all.size(),
+            this.ledger.range(Integer.MIN_VALUE, Integer.MAX_VALUE)
+                .remaining());
+        assertEquals(this.expected(19008, Integer.MAX_VALUE, 0),
+            describe(this.ledger.range(19008, Integer.MAX_VALUE)));
+        assertEquals(0,
+            this.ledger.range(Integer.MAX_VALUE, Integer.MAX_VALUE)
+                .remaining());
+        assertFalse(this.ledger.page(19007, 19003, 0, 10).hasMore());
+        assertTrue(this.ledger.page(19007, 19003, 0, 10).getRecords()
+            .isEmpty());
+
+        TransactionLedger empty = new TransactionLedger();
+        assertFalse(empty.range(0, Integer.MAX_VALUE).advance());
+        assertEquals(-1, empty.page(0, Integer.MAX_VALUE, 0, 5)
+            .getNextStart());
+    }
+
+    /**
+     * Walks ranges page by page with every page size, checking the walk
+     * returns each transaction of the range exactly once, in order
+     */
+    @Test
+    public void pagesReturnEveryTransactionOnce()
+    {
+        int[][] ranges = {{Integer.MIN_VALUE, Integer.MAX_VALUE},
+            {19001, 19008}, {19002, 19007}, {19008, 19008}};
+        for (int[] range : ranges)
+        {
+            String wanted = this.expected(range[0], range[1], 0);
+            for (int size = 1; size <= this.all.size() + 1; size++)
+            {
+                StringBuilder walked = new StringBuilder();
+                Set<Long> seen = new HashSet<Long>();
+                int start = 0;
+                int pages = 0;
+                do
+                {
+                    TransactionPage page =
+                        this.ledger.page(range[0], range[1], start, size);
+                    assertTrue(page.getRecords().size() <= size);
+                    for (TransactionRecord record : page.getRecords())
+                    {
+                        assertTrue(seen.add(record.getTimestamp()),
+                            "Returned twice: " + record.getTimestamp());
+                        walked.append(describe(record));
+                    }
+                    assertEquals(page.hasMore(), page.getNextStart() >= 0);
+                    start = page.getNextStart();
+                    pages++;
+                    assertTrue(pages <= this.all.size() + 1);
+                }
+                while (start >= 0);
+                assertEquals(wanted, walked.toString(),
+                    range[0] + ".." + range[1] + " by " + size);
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> this.ledger.page(0, Integer.MAX_VALUE, 0, 0));
+    }
+
+    /**
+     * Checks an account's history for a day shows its transactions, and
+     * says there are none for a day without activity or a bad date rather
+     * than printing null
+     */
+    @Test
+    public void dayWithoutActivityHasNoTransactions()
+    {
+        ManualBankClock clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(clock);
+        CheckingAccount account = new CheckingAccount(100);
+        account.depositCents(125);
+        String opened = clock.todayString();
+        clock.advanceDays(2);
+        account.depositCents(550);
+        String quiet = BankClock.format(clock.today() - 1);
+
+        String busy = account.getTransactionForDay(clock.todayString());
+        assertTrue(busy.endsWith("\n+5.50"), busy);
+        String first = account.getTransactionForDay(opened);
+        assertTrue(first.endsWith("\n+1.25"), first);
+        for (String date : new String[] {quiet, "13/45/22", "not a date"})
+        {
+            String day = account.getTransactionForDay(date);
+            assertEquals(date + "\n" + "-".repeat(10) + "\nNo transactions",
+                day);
+            assertFalse(day.contains("null"));
+        }
+    }
+
+    /**
+     * Picks out by hand the transactions of a range at or after a position
+     * @param from Integer containing the first day
+     * @param to Integer containing the last day
+     * @param start Integer containing the first position
+     * @return String representing the transactions
+     */
+    private String expected(int from, int to, int start)
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i < this.all.size(); i++)
+        {
+            TransactionRecord record = this.all.get(i);
+            if (record.getEpochDay() >= from && record.getEpochDay() <= to)
+            {
+                text.append(describe(record));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Describes what a cursor walks through, reading each transaction both
+     * through the getters and as a record
+     * @param cursor TransactionCursor containing the transactions
+     * @return String representing the transactions
+     */
+    private static String describe(TransactionCursor cursor)
+    {
+        StringBuilder text = new StringBuilder();
+        int remaining = cursor.remaining();
+        int count = 0;
+        while (cursor.advance())
+        {
+            TransactionRecord record = cursor.toRecord();
+            assertEquals(cursor.getEpochDay(), record.getEpochDay());
+            assertEquals(cursor.getTimestamp() / MILLIS_PER_DAY,
+                cursor.getEpochDay());
+            text.append(describe(record));
+            count++;
+        }
+        assertEquals(remaining, count);
+        return text.toString();
+    }
+
+    /**
+     * Describes one transaction
+     * @param record TransactionRecord containing the transaction
+     * @return String representing its day, time, amount and type
+     */
+    private static String describe(TransactionRecord record)
+    {
+        return "[" + record.getEpochDay() + " " + record.getTimestamp() + " "
+            + record.getAmountCents() + " " + record.getType() + "]";
+    }
+
+} // End of class
@@ -0,0 +1,194 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that transfers running in opposite directions between the same
+ * accounts neither deadlock nor lose money, that a transfer either account
+ * refuses leaves both exactly as they were, and that a deposit refused
+ * after both checks passed is reported instead of refunded.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class TransferEngineTest
+{
+    //~ Fields ................................................................
+    private static final int THREADS = 4;
+    private static final int TRANSFERS = 20000;
+
+    private BankClock saved;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place for the accounts to read
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        this.saved = BankClock.getDefault();
+        BankClock.setDefault(new ManualBankClock(LocalDate.of(2022, 1, 3)));
+    }
+
+    /**
+     * Puts the clock that was in place back
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        BankClock.setDefault(this.saved);
+    }
+
+    /**
+     * Runs threads that each move money round three accounts, half of them
+     * one way and half the other, so every pair of accounts sees transfers
+     * in both directions at once
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void oppositeTransfersDoNotDeadlock()
+        throws InterruptedException
+    {
+        TransferEngine engine = new TransferEngine();
+        BankAccount[] accounts = {new CheckingAccount(1000),
+            new CheckingAccount(1000), new CheckingAccount(1000)};
+        long total = 0;
+        for (BankAccount account : accounts)
+        {
+            total += account.getBalanceCents();
+        }
+        AtomicInteger moved = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++)
+        {
+            int step = t % 2 == 0 ? 1 : accounts.length - 1;
+            threads[t] = new Thread(() ->
+            {
+                for (int i = 0; i < TRANSFERS; i++)
+                {
+                    BankAccount from = accounts[i % accounts.length];
+                    BankAccount to =
+                        accounts[(i + step) % accounts.length];
+                    if (engine.transferCents(from, to, 1 + i % 7))
+                    {
+                        moved.incrementAndGet();
+                    }
+                }
+            }, "transfer-" + t);
+            // A deadlock fails the test instead of keeping the run alive
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(60000);
+            assertFalse(thread.isAlive(), "Transfers deadlocked");
+        }
+
+        long after = 0;
+        for (BankAccount account : accounts)
+        {
+            after += account.getBalanceCents();
+        }
+        assertEquals(total, after);
+        assertEquals(THREADS * TRANSFERS, moved.get());
+    }
+
+    /**
+     * Transfers into and out of a CD in its term and out of a savings
+     * account that has used its withdrawals for the cycle, and checks that
+     * neither side changed, down to the savings withdraw count
+     */
+    @Test
+    public void refusedTransfersChangeNothing()
+    {
+        TransferEngine engine = new TransferEngine();
+        CheckingAccount checking = new CheckingAccount(1000);
+        CertificateDepositAccount cd =
+            new CertificateDepositAccount(1000, 12);
+        SavingsAccount savings = new SavingsAccount(1000);
+        for (int i = 0; i < 6; i++)
+        {
+            assertTrue(savings.withdrawCents(1000));
+        }
+        String checkingBefore = describe(checking);
+        String cdBefore = describe(cd);
+        String savingsBefore = describe(savings);
+        int withdrawals = savings.getWithdrawCount();
+        long savingsBalance = savings.getBalanceCents();
+
+        assertFalse(engine.transferCents(checking, cd, 500));
+        assertFalse(engine.transferCents(cd, checking, 500));
+        assertFalse(engine.transferCents(savings, checking, 500));
+        assertFalse(engine.transferCents(savings, cd, 500,
+            () -> { throw new AssertionError("Ran for a refusal"); }));
+        assertFalse(engine.transferCents(checking, checking, 500));
+        assertFalse(engine.transferCents(checking, savings, 0));
+        assertFalse(engine.transferCents(checking, savings, 100000000));
+
+        assertEquals(checkingBefore, describe(checking));
+        assertEquals(cdBefore, describe(cd));
+        assertEquals(savingsBefore, describe(savings));
+        assertEquals(withdrawals, savings.getWithdrawCount());
+
+        // Deposits into the savings account are still taken
+        assertTrue(engine.transferCents(checking, savings, 500));
+        assertEquals(savingsBalance + 500, savings.getBalanceCents());
+    }
+
+    /**
+     * Transfers into an account whose deposit is refused even though it
+     * said it would take it, and checks the transfer fails loudly and runs
+     * nothing, instead of refunding the payer
+     */
+    @Test
+    public void refusedCheckedDepositIsReported()
+    {
+        TransferEngine engine = new TransferEngine();
+        CheckingAccount payer = new CheckingAccount(1000);
+        CheckingAccount payee = new CheckingAccount(1000)
+        {
+            @Override
+            public synchronized boolean depositCents(long cents)
+            {
+                return false;
+            }
+        };
+        long before = payer.getBalanceCents();
+        assertThrows(IllegalStateException.class,
+            () -> engine.transferCents(payer, payee, 500,
+                () -> { throw new AssertionError("Ran for a failure"); }));
+        assertEquals(before - 500, payer.getBalanceCents());
+    }
+
+    /**
+     * Describes an account's balance and every transaction in its history
+     * @param account CheckingAccount containing the account
+     * @return String representing the account
+     */
+    private static String describe(CheckingAccount account)
+    {
+        StringBuilder text = new StringBuilder();
+        synchronized (account)
+        {
+            text.append(account.getBalanceCents());
+            TransactionCursor cursor =
+                account.getTransactions(0, Integer.MAX_VALUE);
+            while (cursor.advance())
+            {
+                text.append(" [").append(cursor.getTimestamp()).append(", ")
+                    .append(cursor.getAmountCents()).append(']');
+            }
+        }
+        return text.toString();
+    }
+
+} // End of class
@@ -0,0 +1,289 @@
+//~ Imports ...............................................................
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that replaying the log rebuilds the effects that were applied,
+ * not the effects the business rules would give on the day of recovery:
+ * refused withdrawals stay refused, penalties stay charged and every
+ * transaction keeps its original day, and renamed customers keep their new
+ * names. Also checks that a batch that fails while being appended, or a
+ * name too long for a record, leaves nothing in the log.
+ * @author Farhan Abdulla
+ * @version 02.07.2022
+ */
+public class WriteAheadLogTest
+{
+    //~ Fields ................................................................
+    private BankClock saved;
+    private ManualBankClock clock;
+    private Path log;
+
+    //~ Methods ...............................................................
+
+    /**
+     * Puts a manual clock in place and picks a fresh log file
+     * @throws IOException if the temporary file cannot be made
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.saved = BankClock.getDefault();
+        this.clock = new ManualBankClock(LocalDate.of(2022, 1, 3));
+        BankClock.setDefault(this.clock);
+        this.log = Files.createTempFile("wal", ".log");
+        Files.delete(this.log);
+    }
+
+    /**
+     * Puts the clock that was in place back and removes the log
+     * @throws IOException if the log cannot be removed
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        BankClock.setDefault(this.saved);
+        Files.deleteIfExists(this.log);
+    }
+
+    /**
+     * Runs savings withdrawals past the monthly limit and an early IRA
+     * withdrawal, then recovers years later and compares every account
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void replayKeepsAppliedEffects() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String id = bank.addCustomer("Ann Lee");
+        int checking =
+            bank.getCustomer(id).getAccounts().get(0).getAccountNumber();
+        int savings = bank.openAccount(id, 2, 100000, 0).getAccountNumber();
+        int ira = bank.openAccount(id, 5, 300, 0).getAccountNumber();
+        bank.depositCents(checking, 1000000);
+        for (int month = 0; month < 4; month++)
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                bank.withdrawCents(savings, 100);
+            }
+            this.clock.advanceMonths(1);
+            bank.getCycleScheduler().advance();
+        }
+        assertTrue(bank.withdrawCents(ira, 5000));
+        assertTrue(bank.transferCents(checking, savings, 2500));
+        int[] numbers = {checking, savings, ira};
+        String[] before = new String[numbers.length];
+        for (int i = 0; i < numbers.length; i++)
+        {
+            before[i] = this.describe(bank, numbers[i]);
+        }
+        bank.getLog().close();
+
+        // Six years on, every withdrawal cycle and the IRA term have ended
+        this.clock.advanceMonths(72);
+        Bank recovered = Bank.open(this.log);
+        for (int i = 0; i < numbers.length; i++)
+        {
+            assertEquals(before[i], this.describe(recovered, numbers[i]));
+        }
+        recovered.getLog().close();
+    }
+
+    /**
+     * Credits a matured CD's interest in the end-of-day batch and checks
+     * that the credit is replayed
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void replayKeepsBatchInterest() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String id = bank.addCustomer("Ann Lee");
+        int cd = bank.openAccount(id, 4, 5000, 1).getAccountNumber();
+        this.clock.advanceMonths(2);
+        EndOfDayBatch.Report report = new EndOfDayBatch().run(bank);
+        assertEquals(1, report.getCertificatesCredited());
+        String before = this.describe(bank, cd);
+        bank.getLog().close();
+
+        Bank recovered = Bank.open(this.log);
+        assertEquals(before, this.describe(recovered, cd));
+        assertTrue(((CertificateDepositAccount) recovered.getAccount(cd))
+            .isInterestCredited());
+        recovered.getLog().close();
+    }
+
+    /**
+     * Credits a matured CD's interest from the maturity scheduler and
+     * checks that the credit is replayed
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void replayKeepsAutoCreditedInterest() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String id = bank.addCustomer("Ann Lee");
+        int cd = bank.openAccount(id, 4, 5000, 1).getAccountNumber();
+        bank.getMaturityScheduler().setAutoCredit(true);
+        this.clock.advanceMonths(2);
+        assertEquals(1, bank.getMaturityScheduler().advance());
+        String before = this.describe(bank, cd);
+        bank.getLog().close();
+
+        Bank recovered = Bank.open(this.log);
+        assertEquals(before, this.describe(recovered, cd));
+        assertTrue(((CertificateDepositAccount) recovered.getAccount(cd))
+            .isInterestCredited());
+        recovered.getLog().close();
+    }
+
+    /**
+     * Renames customers, one of whom then leaves, and checks that recovery
+     * brings the remaining customer back under the new name, in the name
+     * search as well
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void replayKeepsRenames() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String id = bank.addCustomer("Ann Lee");
+        String leaving = bank.addCustomer("Bo Ng");
+        bank.getCustomer(id).setName("Ann Marsh");
+        bank.getCustomer(id).setName("Ann Lee Marsh");
+        bank.getCustomer(leaving).setName("Bo Ngo");
+        bank.removeCustomer(leaving);
+        bank.getLog().close();
+
+        Bank recovered = Bank.open(this.log);
+        Customer customer = recovered.getCustomer(id);
+        assertEquals("Ann Lee Marsh", customer.getName());
+        assertNull(recovered.getCustomer(leaving));
+        assertEquals(List.of(customer),
+            recovered.findCustomers("Marsh", 10));
+        assertTrue(recovered.findCustomers("Bo", 10).isEmpty());
+        recovered.getLog().close();
+    }
+
+    /**
+     * Fails batches part way through appending, by appending too few
+     * records and by throwing, and checks that recovery sees neither the
+     * batches nor anything they appended, and that the customers added
+     * around them come back with their accounts
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void failedBatchLeavesNoRecords() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        WriteAheadLog wal = bank.getLog();
+        String first = bank.addCustomer("Ann Lee");
+        long records = wal.getRecordCount();
+        assertThrows(IllegalStateException.class, () -> wal.logBatch(2,
+            () -> wal.logAddCustomer("GHOST1", "Ghost One")));
+        assertThrows(IllegalArgumentException.class, () -> wal.logBatch(1,
+            () ->
+            {
+                wal.logAddCustomer("GHOST2", "Ghost Two");
+                throw new IllegalArgumentException("Failed on purpose");
+            }));
+        assertEquals(records, wal.getRecordCount());
+        String second = bank.addCustomer("Bo Ng");
+        int checking = bank.getCustomer(second).getAccounts().get(0)
+            .getAccountNumber();
+        bank.depositCents(checking, 700);
+        wal.close();
+
+        Bank recovered = Bank.open(this.log);
+        assertEquals(Set.of(first, second), recovered.getAllCustomerId());
+        assertEquals(bank.getBalanceCents(checking),
+            recovered.getBalanceCents(checking));
+        recovered.getLog().close();
+    }
+
+    /**
+     * Checks that a name too long for a log record is refused before the
+     * bank changes, rather than written with a wrapped length
+     * @throws IOException if the log cannot be written or read
+     */
+    @Test
+    public void oversizedNameIsRefused() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        String id = bank.addCustomer("Ann Lee");
+        String name = "x".repeat(WriteAheadLog.MAX_STRING_BYTES + 1);
+        assertThrows(IllegalArgumentException.class,
+            () -> bank.addCustomer(name));
+        assertThrows(IllegalArgumentException.class,
+            () -> new OnboardingBatch().addCustomer(name));
+        assertEquals(1, bank.getCustomerCount());
+        String next = bank.addCustomer("Bo Ng");
+        bank.getLog().close();
+
+        Bank recovered = Bank.open(this.log);
+        assertEquals(Set.of(id, next), recovered.getAllCustomerId());
+        recovered.getLog().close();
+    }
+
+    /**
+     * Checks that a sharded executor, whose changes are not logged, is
+     * refused for a bank that keeps a log
+     * @throws IOException if the log cannot be written
+     */
+    @Test
+    public void shardedExecutorRefusesLoggedBank() throws IOException
+    {
+        Bank bank = Bank.open(this.log);
+        assertThrows(IllegalArgumentException.class,
+            () -> new ShardedExecutor(bank, 2, 16));
+        bank.getLog().close();
+    }
+
+    /**
+     * Describes the logged state of an account: its ledger, its deposit
+     * lots and withdraw count, and every transaction with its day
+     * @param bank Bank containing the account
+     * @param accountNumber Integer containing the account number
+     * @return String representing the account
+     */
+    private String describe(Bank bank, int accountNumber)
+    {
+        CheckingAccount account =
+            (CheckingAccount) bank.getAccount(accountNumber);
+        StringBuilder text = new StringBuilder();
+        synchronized (account)
+        {
+            text.append(account.getLedgerBalanceCents());
+            if (account instanceof SavingsAccount)
+            {
+                SavingsAccount savings = (SavingsAccount) account;
+                text.append(' ')
+                    .append(Arrays.toString(savings.getDepositsCents()))
+                    .append(' ').append(savings.getWithdrawCount());
+            }
+            TransactionCursor cursor =
+                account.getTransactions(0, Integer.MAX_VALUE);
+            while (cursor.advance())
+            {
+                text.append(" [").append(cursor.getTimestamp()).append(", ")
+                    .append(cursor.getAmountCents()).append(']');
+            }
+        }
+        return text.toString();
+    }
+
+} // End of class